@@ -1,35 +1,167 @@
 package com.bhuang;
 
-import java.util.LinkedList;
+import com.bhuang.cancel.CancellationToken;
+import com.bhuang.histogram.HandoffTimer;
+import com.bhuang.histogram.LatencyRecorder;
+import com.bhuang.jfr.QueueStallEvent;
+import com.bhuang.profiler.LockProbe;
+import com.bhuang.profiler.LockProfiler;
+import com.bhuang.watchdog.ThreadActivity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 
 class BlockingQueue {
-    private final Queue<String> buffer = new LinkedList<>();
+    // ArrayDeque 的数组长到容量之后就不再分配；LinkedList 每放入一个元素都要分配一个节点
+    private final Queue<String> buffer;
     private final int capacity;
+    // synchronized 无法包装，在 give/take 的同步块两边调用探针来统计监视器锁的竞争
+    private final LockProbe monitor = LockProfiler.probe("BlockingQueue.monitor");
+
+    // 每次 give/take 都打印一行，便于观察交互过程；压力测试和基准测试中关闭，否则测到的主要是 System.out 的锁
+    private final boolean verbose;
+
+    // 取消回调只创建一次：每次 give/take 都写 this::wakeAll 会分配一个新的对象
+    private final Runnable wakeOnCancel = this::wakeAll;
+    // 开启后记录每个元素从 give 到 take 的时间；只在持有监视器锁时访问
+    private HandoffTimer handoff;
 
     public BlockingQueue(int capacity) {
+        this(capacity, true);
+    }
+
+    public BlockingQueue(int capacity, boolean verbose) {
         this.capacity = capacity;
+        this.verbose = verbose;
+        this.buffer = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    public void give(String data) throws InterruptedException {
+        give(data, CancellationToken.NONE);
     }
 
-    public synchronized void give(String data) throws InterruptedException {
-        while (buffer.size() == capacity) {
-            // wait() 方法是 Java 中线程间通信的一部分，用于让当前线程进入等待状态，直到被其他线程唤醒。
-            // 它通常与 notify() 或 notifyAll() 方法配合使用，以实现线程之间的协作
-            wait();  // 缓冲区满，等待消费者取走数据
+    /**
+     * 可以取消的 give：令牌被取消时，wait() 中的生产者会被 notifyAll() 立即唤醒，并抛出 CancellationException。
+     */
+    public void give(String data, CancellationToken token) throws InterruptedException {
+        CancellationToken.Registration registration = token.register(wakeOnCancel);
+        try {
+            long start = monitor.beforeAcquire();
+            synchronized (this) {
+                monitor.acquired(start);
+                try {
+                    // 在持有监视器锁时检查令牌：取消回调要先拿到监视器锁才能 notifyAll，所以不会错过唤醒
+                    token.throwIfCancelled();
+                    // 只有真正阻塞时才创建 JFR 事件，没有阻塞的 give 没有额外开销
+                    QueueStallEvent stall = null;
+                    try {
+                        while (buffer.size() == capacity) {
+                            if (stall == null) {
+                                stall = QueueStallEvent.begin("BlockingQueue", QueueStallEvent.FULL, capacity);
+                                ThreadActivity.beginWait("BlockingQueue.give (full)");
+                            }
+                            // wait() 方法是 Java 中线程间通信的一部分，用于让当前线程进入等待状态，直到被其他线程唤醒。
+                            // 它通常与 notify() 或 notifyAll() 方法配合使用，以实现线程之间的协作
+                            monitor.await(this);  // 缓冲区满，等待消费者取走数据（即 wait()，等待期间不计入持有时间）
+                            token.throwIfCancelled();
+                        }
+                    } finally {
+                        if (stall != null) {
+                            ThreadActivity.endWait();
+                        }
+                        QueueStallEvent.end(stall);
+                    }
+                    buffer.add(data);
+                    if (handoff != null) {
+                        handoff.enqueued();
+                    }
+                    if (verbose) {
+                        System.out.println("Produced: " + data);
+                    }
+                    notifyAll();  // 唤醒等待的消费者
+                } finally {
+                    monitor.releasing();
+                }
+            }
+        } finally {
+            registration.close();
         }
-        buffer.add(data);
-        System.out.println("Produced: " + data);
-        notifyAll();  // 唤醒等待的消费者
     }
 
-    public synchronized String take() throws InterruptedException {
-        while (buffer.isEmpty()) {
-            wait();  // 缓冲区空，等待生产者添加数据
+    public String take() throws InterruptedException {
+        return take(CancellationToken.NONE);
+    }
+
+    /**
+     * 可以取消的 take：令牌被取消时，wait() 中的消费者会被 notifyAll() 立即唤醒，并抛出 CancellationException。
+     */
+    public String take(CancellationToken token) throws InterruptedException {
+        CancellationToken.Registration registration = token.register(wakeOnCancel);
+        try {
+            long start = monitor.beforeAcquire();
+            synchronized (this) {
+                monitor.acquired(start);
+                try {
+                    token.throwIfCancelled();
+                    QueueStallEvent stall = null;
+                    try {
+                        while (buffer.isEmpty()) {
+                            if (stall == null) {
+                                stall = QueueStallEvent.begin("BlockingQueue", QueueStallEvent.EMPTY, capacity);
+                                ThreadActivity.beginWait("BlockingQueue.take (empty)");
+                            }
+                            monitor.await(this);  // 缓冲区空，等待生产者添加数据
+                            token.throwIfCancelled();
+                        }
+                    } finally {
+                        if (stall != null) {
+                            ThreadActivity.endWait();
+                        }
+                        QueueStallEvent.end(stall);
+                    }
+                    String data = buffer.remove();
+                    if (handoff != null) {
+                        handoff.dequeued();
+                    }
+                    if (verbose) {
+                        System.out.println("Consumed: " + data);
+                    }
+                    notifyAll();  // 唤醒等待的生产者
+                    return data;
+                } finally {
+                    monitor.releasing();
+                }
+            }
+        } finally {
+            registration.close();
+        }
+    }
+
+    /**
+     * 开始把每个元素从放入到取出的时间记到 recorder 里，传入 null 停止记录。开启时已经在队列里的元素不记录。
+     */
+    public synchronized void recordHandoffLatency(LatencyRecorder recorder) {
+        handoff = recorder == null ? null : new HandoffTimer(capacity, buffer.size(), recorder);
+    }
+
+    /**
+     * 取出缓冲区中剩余的全部数据，关闭流水线时用来交给调用方处理，而不是悄悄丢掉。
+     */
+    public synchronized List<String> drain() {
+        List<String> remaining = new ArrayList<>(buffer);
+        buffer.clear();
+        if (handoff != null) {
+            handoff.cleared();
         }
-        String data = buffer.remove();
-        System.out.println("Consumed: " + data);
-        notifyAll();  // 唤醒等待的生产者
-        return data;
+        notifyAll();
+        return remaining;
+    }
+
+    // 取消回调：唤醒所有等待者，让它们重新检查自己的令牌
+    private synchronized void wakeAll() {
+        notifyAll();
     }
 
     static class Producer implements Runnable {
@@ -1,50 +1,286 @@
 package com.bhuang;
 
-import java.util.LinkedList;
+import com.bhuang.cancel.CancellationToken;
+import com.bhuang.histogram.HandoffTimer;
+import com.bhuang.histogram.LatencyRecorder;
+import com.bhuang.jfr.QueueStallEvent;
+import com.bhuang.profiler.LockProfiler;
+import com.bhuang.watchdog.ThreadActivity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class BlockingQueueWithCondition {
 
-    private final Queue<String> buffer = new LinkedList<>();
+    // ArrayDeque 的数组长到容量之后就不再分配；LinkedList 每放入一个元素都要分配一个节点
+    private final Queue<String> buffer;
     private final int capacity;
-    private final Lock lock = new ReentrantLock();
+    // 开启 LockProfiler 时统计这把锁的等待时间、持有时间和竞争位置，关闭时几乎没有开销
+    private final Lock lock = LockProfiler.profile("BlockingQueueWithCondition.lock", new ReentrantLock());
     private final Condition notFull = lock.newCondition();
     private final Condition notEmpty = lock.newCondition();
 
+    // 每次 give/take 都打印一行，便于观察交互过程；压力测试和基准测试中关闭，否则测到的主要是 System.out 的锁
+    private final boolean verbose;
+
+    // 放入数据之后在锁外调用，供 flow.QueuePublisher 这类不占用线程的消费者得知有数据可取
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    // 取出数据之后在锁外调用，供 coroutines.SuspendingQueue 这类挂起而不是阻塞的生产者得知有空位
+    private final List<Runnable> spaceListeners = new CopyOnWriteArrayList<>();
+    // 取消回调只创建一次：每次 give/take 都写 this::wakeAll 会分配一个新的对象
+    private final Runnable wakeOnCancel = this::wakeAll;
+    // 开启后记录每个元素从 give 到 take 的时间；只在持有 lock 时访问
+    private HandoffTimer handoff;
+
     public BlockingQueueWithCondition(int capacity) {
+        this(capacity, true);
+    }
+
+    public BlockingQueueWithCondition(int capacity, boolean verbose) {
         this.capacity = capacity;
+        this.verbose = verbose;
+        this.buffer = new ArrayDeque<>(Math.min(capacity, 1024));
     }
 
 
     public void give(String data) throws InterruptedException {
+        give(data, CancellationToken.NONE);
+    }
+
+    /**
+     * 可以取消的 give：令牌被取消时，阻塞在 notFull 上的生产者会被立即唤醒，并抛出 CancellationException。
+     */
+    public void give(String data, CancellationToken token) throws InterruptedException {
+        CancellationToken.Registration registration = token.register(wakeOnCancel);
+        try {
+            lock.lock();
+            try {
+                // 在持有锁时检查令牌：取消回调要先拿到锁才能 signalAll，所以检查之后、await() 之前的取消不会被错过
+                token.throwIfCancelled();
+                // 在 while 的条件里检测 queue 是不是已经满了，如果已经满了，则调用 notFull 的 await() 阻塞生产者线程并释放 Lock，
+                // 如果没有满，则往队列放入数据并利用 notEmpty.signalAll() 通知正在等待的所有消费者并唤醒它们。
+                // 只有真正阻塞时才创建 JFR 事件，没有阻塞的 give 没有额外开销
+                QueueStallEvent stall = null;
+                try {
+                    while (buffer.size() == capacity) {
+                        if (stall == null) {
+                            stall = QueueStallEvent.begin("BlockingQueueWithCondition", QueueStallEvent.FULL, capacity);
+                            ThreadActivity.beginWait("BlockingQueueWithCondition.give (full)");
+                        }
+                        notFull.await();  // 缓冲区满，等待消费者取走数据
+                        token.throwIfCancelled();
+                    }
+                } finally {
+                    if (stall != null) {
+                        ThreadActivity.endWait();
+                    }
+                    QueueStallEvent.end(stall);
+                }
+                buffer.add(data);
+                if (handoff != null) {
+                    handoff.enqueued();
+                }
+                if (verbose) {
+                    System.out.println("Produced: " + data);
+                }
+                notEmpty.signalAll();  // 唤醒等待在 notEmpty 上的消费者
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            registration.close();
+        }
+        fireListeners(listeners);
+    }
+
+    /**
+     * 不阻塞的 give：缓冲区满时立即返回 false。
+     */
+    public boolean offer(String data) {
         lock.lock();
         try {
-            // 在 while 的条件里检测 queue 是不是已经满了，如果已经满了，则调用 notFull 的 await() 阻塞生产者线程并释放 Lock，
-            // 如果没有满，则往队列放入数据并利用 notEmpty.signalAll() 通知正在等待的所有消费者并唤醒它们。
-            while (buffer.size() == capacity) {
-                notFull.await();  // 缓冲区满，等待消费者取走数据
+            if (buffer.size() == capacity) {
+                return false;
             }
             buffer.add(data);
-            System.out.println("Produced: " + data);
-            notEmpty.signalAll();  // 唤醒等待在 notEmpty 上的消费者
+            if (handoff != null) {
+                handoff.enqueued();
+            }
+            if (verbose) {
+                System.out.println("Produced: " + data);
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireListeners(listeners);
+        return true;
+    }
+
+    /**
+     * 不阻塞的 take：缓冲区空时立即返回 null。
+     */
+    public String poll() {
+        String data;
+        lock.lock();
+        try {
+            data = buffer.poll();
+            if (data == null) {
+                return null;
+            }
+            if (handoff != null) {
+                handoff.dequeued();
+            }
+            if (verbose) {
+                System.out.println("Consumed: " + data);
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireListeners(spaceListeners);
+        return data;
+    }
+
+    /**
+     * 开始把每个元素从放入到取出的时间记到 recorder 里，传入 null 停止记录。
+     * 不包装元素、也不为每个元素分配对象，见 {@link HandoffTimer}。开启时已经在队列里的元素不记录。
+     */
+    public void recordHandoffLatency(LatencyRecorder recorder) {
+        lock.lock();
+        try {
+            handoff = recorder == null ? null : new HandoffTimer(capacity, buffer.size(), recorder);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return buffer.size();
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * 注册一个监听器，每次 give/offer 放入数据之后调用。监听器在生产者线程上、锁外执行，
+     * 应该只做很轻的事情（例如把排空任务交给线程池），不能在里面阻塞。
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 注册一个监听器，每次 take/poll/drain 取出数据之后调用。约束与 {@link #addListener(Runnable)} 相同。
+     */
+    public void addSpaceListener(Runnable listener) {
+        spaceListeners.add(listener);
+    }
+
+    public void removeSpaceListener(Runnable listener) {
+        spaceListeners.remove(listener);
+    }
+
+    private static void fireListeners(List<Runnable> listeners) {
+        // 没有监听器时只多一次 isEmpty 检查
+        if (listeners.isEmpty()) {
+            return;
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
     public String take() throws InterruptedException {
+        return take(CancellationToken.NONE);
+    }
+
+    /**
+     * 可以取消的 take：令牌被取消时，阻塞在 notEmpty 上的消费者会被立即唤醒，并抛出 CancellationException。
+     */
+    public String take(CancellationToken token) throws InterruptedException {
+        String data;
+        CancellationToken.Registration registration = token.register(wakeOnCancel);
+        try {
+            lock.lock();
+            try {
+                token.throwIfCancelled();
+                QueueStallEvent stall = null;
+                try {
+                    while (buffer.isEmpty()) {
+                        if (stall == null) {
+                            stall = QueueStallEvent.begin("BlockingQueueWithCondition", QueueStallEvent.EMPTY, capacity);
+                            ThreadActivity.beginWait("BlockingQueueWithCondition.take (empty)");
+                        }
+                        notEmpty.await();  // 缓冲区空，等待生产者添加数据
+                        token.throwIfCancelled();
+                    }
+                } finally {
+                    if (stall != null) {
+                        ThreadActivity.endWait();
+                    }
+                    QueueStallEvent.end(stall);
+                }
+                data = buffer.remove();
+                if (handoff != null) {
+                    handoff.dequeued();
+                }
+                if (verbose) {
+                    System.out.println("Consumed: " + data);
+                }
+                notFull.signalAll();  // 唤醒等待在 notFull 上的生产者
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            registration.close();
+        }
+        fireListeners(spaceListeners);
+        return data;
+    }
+
+    /**
+     * 取出缓冲区中剩余的全部数据，关闭流水线时用来交给调用方处理，而不是悄悄丢掉。
+     */
+    public List<String> drain() {
+        List<String> remaining;
         lock.lock();
         try {
-            while (buffer.isEmpty()) {
-                notEmpty.await();  // 缓冲区空，等待生产者添加数据
+            remaining = new ArrayList<>(buffer);
+            buffer.clear();
+            if (handoff != null) {
+                handoff.cleared();
             }
-            String data = buffer.remove();
-            System.out.println("Consumed: " + data);
-            notFull.signalAll();  // 唤醒等待在 notFull 上的生产者
-            return data;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireListeners(spaceListeners);
+        return remaining;
+    }
+
+    // 取消回调：唤醒所有等待者，让它们重新检查自己的令牌。没有被取消的等待者检查之后会继续等待
+    private void wakeAll() {
+        lock.lock();
+        try {
+            notFull.signalAll();
+            notEmpty.signalAll();
         } finally {
             lock.unlock();
         }
@@ -0,0 +1,116 @@
+package com.bhuang.bsp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 分区在一次 compute() 调用中可以使用的上下文：当前超步、收到的消息以及发送消息的出口。
+ *
+ * 每个工作线程只持有一个 BspContext 并在处理不同分区时复用它，所以它不能被保存到 compute() 之外使用。
+ */
+public final class BspContext<M> implements Iterable<M> {
+
+    private final int worker;
+    private int superstep;
+    private int partitionIndex;
+    private int partitionCount;
+
+    // 上一个超步的消息矩阵（只读），messages[w][p] 是工作线程 w 发给分区 p 的消息
+    private ArrayList<M>[][] inbox;
+    // 当前超步的消息矩阵，当前线程只会写自己的那一行 outbox[worker]
+    private ArrayList<M>[][] outbox;
+    private int sent;
+
+    BspContext(int worker) {
+        this.worker = worker;
+    }
+
+    void reset(int superstep, int partitionIndex, int partitionCount,
+               ArrayList<M>[][] inbox, ArrayList<M>[][] outbox) {
+        this.superstep = superstep;
+        this.partitionIndex = partitionIndex;
+        this.partitionCount = partitionCount;
+        this.inbox = inbox;
+        this.outbox = outbox;
+    }
+
+    public int superstep() {
+        return superstep;
+    }
+
+    public int partitionIndex() {
+        return partitionIndex;
+    }
+
+    public int partitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * 上一个超步中所有分区发给当前分区的消息，第 0 个超步没有消息。
+     */
+    public Iterable<M> messages() {
+        return this;
+    }
+
+    public boolean hasMessages() {
+        if (inbox == null) {
+            return false;
+        }
+        for (ArrayList<M>[] row : inbox) {
+            if (!row[partitionIndex].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 给目标分区发送一条消息，对方在下一个超步可以读到。
+     */
+    public void send(int targetPartition, M message) {
+        if (targetPartition < 0 || targetPartition >= partitionCount) {
+            throw new IndexOutOfBoundsException("No partition " + targetPartition + ", partitions: " + partitionCount);
+        }
+        outbox[worker][targetPartition].add(message);
+        sent++;
+    }
+
+    int drainSentCount() {
+        int count = sent;
+        sent = 0;
+        return count;
+    }
+
+    @Override
+    public Iterator<M> iterator() {
+        return new Iterator<>() {
+            private int row;
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                if (inbox == null) {
+                    return false;
+                }
+                while (row < inbox.length) {
+                    if (index < inbox[row][partitionIndex].size()) {
+                        return true;
+                    }
+                    row++;
+                    index = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public M next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return inbox[row][partitionIndex].get(index++);
+            }
+        };
+    }
+}
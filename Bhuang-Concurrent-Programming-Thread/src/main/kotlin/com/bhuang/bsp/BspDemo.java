@@ -0,0 +1,114 @@
+package com.bhuang.bsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 用 BspEngine 计算无向图的连通分量（标签传播）：
+ * 每个顶点的初始标签是自己的编号，每个超步把更小的标签传给邻居，标签不再变化时所有分区投票停止。
+ */
+public class BspDemo {
+
+    // 分区之间传递的消息：把 label 传给顶点 vertex
+    record Label(int vertex, int label) {
+    }
+
+    static class Partition {
+        private final int from;
+        private final int to;
+        private final int[][] adjacency;
+        private final int[] labels;
+        private final int verticesPerPartition;
+
+        Partition(int from, int to, int[][] adjacency, int verticesPerPartition) {
+            this.from = from;
+            this.to = to;
+            this.adjacency = adjacency;
+            this.verticesPerPartition = verticesPerPartition;
+            this.labels = new int[to - from];
+            for (int v = from; v < to; v++) {
+                labels[v - from] = v;
+            }
+        }
+
+        int owner(int vertex) {
+            return vertex / verticesPerPartition;
+        }
+    }
+
+    static class ConnectedComponents implements Computation<Partition, Label> {
+        @Override
+        public boolean compute(Partition partition, BspContext<Label> context) {
+            boolean[] changed = new boolean[partition.labels.length];
+            if (context.superstep() == 0) {
+                Arrays.fill(changed, true);
+            }
+            for (Label message : context.messages()) {
+                int local = message.vertex() - partition.from;
+                if (message.label() < partition.labels[local]) {
+                    partition.labels[local] = message.label();
+                    changed[local] = true;
+                }
+            }
+            // 只有标签变小的顶点才需要通知邻居
+            boolean active = false;
+            for (int v = partition.from; v < partition.to; v++) {
+                if (!changed[v - partition.from]) {
+                    continue;
+                }
+                active = true;
+                for (int neighbour : partition.adjacency[v]) {
+                    context.send(partition.owner(neighbour), new Label(neighbour, partition.labels[v - partition.from]));
+                }
+            }
+            return active;
+        }
+    }
+
+    static int[][] randomGraph(int vertices, int edges, long seed) {
+        Random random = new Random(seed);
+        List<List<Integer>> lists = new ArrayList<>();
+        for (int i = 0; i < vertices; i++) {
+            lists.add(new ArrayList<>());
+        }
+        for (int i = 0; i < edges; i++) {
+            int a = random.nextInt(vertices);
+            int b = random.nextInt(vertices);
+            lists.get(a).add(b);
+            lists.get(b).add(a);
+        }
+        int[][] adjacency = new int[vertices][];
+        for (int i = 0; i < vertices; i++) {
+            adjacency[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return adjacency;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int vertices = 100_000;
+        int partitionCount = 16;
+        int[][] adjacency = randomGraph(vertices, 60_000, 42);
+        int perPartition = (vertices + partitionCount - 1) / partitionCount;
+
+        List<Partition> partitions = new ArrayList<>();
+        for (int p = 0; p < partitionCount; p++) {
+            partitions.add(new Partition(p * perPartition, Math.min(vertices, (p + 1) * perPartition), adjacency, perPartition));
+        }
+
+        // 4 个工作线程处理 16 个分区，线程在整个计算过程中一直复用
+        try (BspEngine engine = new BspEngine(4)) {
+            long start = System.nanoTime();
+            int supersteps = engine.run(partitions, new ConnectedComponents(), 1_000);
+            long elapsed = System.nanoTime() - start;
+
+            long components = partitions.stream()
+                    .flatMapToInt(p -> Arrays.stream(p.labels))
+                    .distinct()
+                    .count();
+            System.out.println("supersteps: " + supersteps + ", components: " + components
+                    + ", elapsed: " + elapsed / 1_000_000 + " ms");
+        }
+    }
+}
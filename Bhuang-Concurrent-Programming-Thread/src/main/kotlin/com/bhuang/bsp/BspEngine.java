@@ -0,0 +1,202 @@
+package com.bhuang.bsp;
+
+import com.bhuang.cooperation.CombiningTreeBarrier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * BSP（Bulk Synchronous Parallel）计算引擎：把 CyclicBarrierDemo 中“所有人到齐再进入下一阶段”的模式做成可复用的组件。
+ *
+ * 工作方式：
+ * 1. 数据集被切分成若干分区，分区 p 固定交给工作线程 {@code p % workers} 处理。
+ * 2. 每个超步（superstep）中，每个工作线程依次对自己负责的分区调用 {@link Computation#compute}。
+ * 3. 所有工作线程在屏障处会合，屏障动作（barrierAction）判断是否收敛，分区间的消息在这个边界上交付给下一个超步。
+ * 4. 所有分区都投票停止并且没有新的消息，或者达到最大超步数时，计算结束。
+ *
+ * 工作线程在引擎创建时启动，之后一直复用：每一轮超步、甚至每一次 run() 都不会创建新线程。
+ * 消息使用两份按超步奇偶交替的矩阵，每个线程只写自己的一行，所以发送消息不需要加锁。
+ */
+public class BspEngine implements AutoCloseable {
+
+    private final int workers;
+    private final Thread[] threads;
+    private final List<BlockingQueue<Job<?, ?>>> mailboxes = new ArrayList<>();
+    private final CombiningTreeBarrier barrier;
+
+    // 当前正在执行的任务，只在 run() 中被赋值，屏障动作通过它判断收敛
+    private volatile Job<?, ?> current;
+    private volatile boolean closed;
+
+    public BspEngine(int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        this.workers = workers;
+        this.barrier = new CombiningTreeBarrier(workers, this::endOfSuperstep);
+        this.threads = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            mailboxes.add(new ArrayBlockingQueue<>(1));
+            threads[i] = new Thread(new Worker(i), "bsp-worker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * 执行一次 BSP 计算，阻塞直到收敛、达到最大超步数或者某个分区抛出异常。
+     *
+     * @return 实际执行的超步数
+     * @throws ExecutionException 某个分区的 compute() 抛出了异常，或者有工作线程在屏障上等待时被中断（屏障因此被破坏）
+     * @throws IllegalStateException 引擎已经关闭，或者之前的计算破坏了屏障
+     */
+    public synchronized <P, M> int run(List<P> partitions, Computation<P, M> computation, int maxSupersteps)
+            throws InterruptedException, ExecutionException {
+        if (closed) {
+            throw new IllegalStateException("BspEngine is closed");
+        }
+        if (barrier.isBroken()) {
+            // 屏障不能重置，被破坏之后工作线程无法再会合
+            throw new IllegalStateException("barrier is broken, BspEngine can no longer run");
+        }
+        if (maxSupersteps <= 0) {
+            throw new IllegalArgumentException("maxSupersteps must be positive: " + maxSupersteps);
+        }
+        Job<P, M> job = new Job<>(partitions, computation, maxSupersteps, workers);
+        current = job;
+        for (BlockingQueue<Job<?, ?>> mailbox : mailboxes) {
+            mailbox.put(job);
+        }
+        job.finished.await();
+        current = null;
+        if (job.failure.get() != null) {
+            throw new ExecutionException(job.failure.get());
+        }
+        return job.supersteps;
+    }
+
+    /**
+     * 屏障动作：由最后一个到达屏障的工作线程执行，此时其他工作线程都在屏障处等待，
+     * 所以这里可以安全地读取所有工作线程在本超步写下的状态。
+     */
+    private void endOfSuperstep() {
+        Job<?, ?> job = current;
+        boolean active = false;
+        long sent = 0;
+        for (int i = 0; i < workers; i++) {
+            active |= job.active[i];
+            sent += job.sent[i];
+        }
+        job.supersteps++;
+        if (job.failure.get() != null || (!active && sent == 0) || job.supersteps >= job.maxSupersteps) {
+            job.done = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    private static final class Job<P, M> {
+        final List<P> partitions;
+        final Computation<P, M> computation;
+        final int maxSupersteps;
+        // 两份消息矩阵，超步 s 写 messages[s % 2]，读 messages[(s + 1) % 2]
+        final ArrayList<M>[][][] messages;
+        final boolean[] active;
+        final long[] sent;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch finished;
+        int supersteps;
+        volatile boolean done;
+
+        Job(List<P> partitions, Computation<P, M> computation, int maxSupersteps, int workers) {
+            this.partitions = partitions;
+            this.computation = computation;
+            this.maxSupersteps = maxSupersteps;
+            // Java 不能创建泛型数组，只能创建原始类型的数组再转换；每个元素都在下面被赋值为 ArrayList<M>
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            ArrayList<M>[][][] messages = new ArrayList[2][workers][partitions.size()];
+            this.messages = messages;
+            for (ArrayList<M>[][] matrix : messages) {
+                for (ArrayList<M>[] row : matrix) {
+                    for (int p = 0; p < row.length; p++) {
+                        row[p] = new ArrayList<>();
+                    }
+                }
+            }
+            this.active = new boolean[workers];
+            this.sent = new long[workers];
+            this.finished = new CountDownLatch(workers);
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final int index;
+
+        Worker(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    Job<?, ?> job = mailboxes.get(index).take();
+                    try {
+                        execute(job);
+                    } catch (BrokenBarrierException e) {
+                        // 其他工作线程在屏障上被中断了：这次计算失败，交给 run() 的调用方，工作线程本身不退出
+                        job.failure.compareAndSet(null, e);
+                    } catch (InterruptedException e) {
+                        job.failure.compareAndSet(null, e);
+                        throw e;
+                    } finally {
+                        job.finished.countDown();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // close() 会中断工作线程，线程直接退出
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private <P, M> void execute(Job<P, M> job) throws InterruptedException, BrokenBarrierException {
+            BspContext<M> context = new BspContext<>(index);
+            int partitionCount = job.partitions.size();
+            for (int step = 0; !job.done; step++) {
+                ArrayList<M>[][] outbox = job.messages[step % 2];
+                ArrayList<M>[][] inbox = step == 0 ? null : job.messages[(step + 1) % 2];
+                // 清空自己这一行：它保存的是两个超步之前的消息，已经在上一个超步被读完了
+                for (ArrayList<M> list : outbox[index]) {
+                    list.clear();
+                }
+                boolean active = false;
+                if (job.failure.get() == null) {
+                    try {
+                        for (int p = index; p < partitionCount; p += workers) {
+                            context.reset(step, p, partitionCount, inbox, outbox);
+                            active |= job.computation.compute(job.partitions.get(p), context);
+                        }
+                    } catch (RuntimeException | Error e) {
+                        // 出错的线程仍然要到达屏障，否则其他线程会一直等下去；屏障动作看到 failure 后结束计算
+                        job.failure.compareAndSet(null, e);
+                    }
+                }
+                job.active[index] = active;
+                job.sent[index] = context.drainSentCount();
+                barrier.await();
+            }
+        }
+    }
+}
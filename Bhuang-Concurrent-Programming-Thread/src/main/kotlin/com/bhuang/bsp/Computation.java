@@ -0,0 +1,21 @@
+package com.bhuang.bsp;
+
+/**
+ * BSP（Bulk Synchronous Parallel）计算中，用户为每个分区编写的计算逻辑。
+ *
+ * 每一个超步（superstep）里，引擎会对每个分区调用一次 compute()：
+ * 分区可以读取上一个超步发给它的消息，更新自己的状态，再通过 {@link BspContext#send(int, Object)} 给其他分区发消息，
+ * 这些消息在下一个超步开始时才会被对方看到。
+ *
+ * @param <P> 分区的类型
+ * @param <M> 分区之间传递的消息类型
+ */
+@FunctionalInterface
+public interface Computation<P, M> {
+
+    /**
+     * @return true 表示这个分区在下一个超步仍然需要计算；false 表示投票停止（vote to halt）。
+     * 所有分区在同一个超步里都投票停止，并且这个超步没有发出任何消息时，整个计算收敛结束。
+     */
+    boolean compute(P partition, BspContext<M> context);
+}
@@ -0,0 +1,196 @@
+package com.bhuang.bulkhead;
+
+import com.bhuang.profiler.Log2Histogram;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个隔离舱：一个依赖（或者一类工作负载）专用的有界执行器，由 {@link BulkheadRegistry#register} 创建。
+ *
+ * 任务按下面的顺序找地方执行：
+ * 1. 自己的 reserved 个线程中有空闲的，直接交给自己的线程。
+ * 2. 自己的线程都在忙，并且借用的备用线程少于 maxBorrow 个，从共享的备用线程中借一个。
+ * 3. 借不到时在自己的有界队列里排队，等自己的线程空出来。
+ * 4. 队列也满了，抛出 RejectedExecutionException。
+ *
+ * 一个依赖变慢时，最多占用自己的 reserved 个线程加上 maxBorrow 个备用线程，之后的请求排队、被拒绝，
+ * 而其他隔离舱的 reserved 个线程不受影响，剩下的备用线程也还能借给它们。
+ * 先用自己的线程再借用，是为了把备用线程留给真正需要的时候；先借用再排队，是为了在突发流量时不让任务空等。
+ */
+public final class Bulkhead implements Executor {
+
+    private final String name;
+    private final int reserved;
+    private final int queueCapacity;
+    private final int maxBorrow;
+    private final SparePool spare;
+    private final ThreadPoolExecutor pool;
+
+    // 已经交给自己的线程池、还没开始执行的任务数
+    private final AtomicInteger pending = new AtomicInteger();
+    // 正在自己的线程上执行的任务数
+    private final AtomicInteger running = new AtomicInteger();
+    // 正在借用的备用线程上执行的任务数
+    private final AtomicInteger borrowed = new AtomicInteger();
+    private final AtomicInteger peakConcurrency = new AtomicInteger();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder ranReserved = new LongAdder();
+    private final LongAdder ranBorrowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Log2Histogram queueWait = new Log2Histogram();
+
+    Bulkhead(String name, int reserved, int queueCapacity, int maxBorrow, SparePool spare) {
+        if (reserved <= 0) {
+            throw new IllegalArgumentException("reserved must be positive: " + reserved);
+        }
+        if (queueCapacity < 0 || maxBorrow < 0) {
+            throw new IllegalArgumentException("queueCapacity and maxBorrow must not be negative");
+        }
+        this.name = name;
+        this.reserved = reserved;
+        this.queueCapacity = queueCapacity;
+        this.maxBorrow = Math.min(maxBorrow, spare.threads());
+        this.spare = spare;
+        BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger index = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(reserved, reserved, 0, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 预先启动所有线程：队列容量为 0 时，只有已经在等待的线程才能接住任务
+        pool.prestartAllCoreThreads();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submitted.increment();
+        long submittedAt = System.nanoTime();
+        // 计数不是原子地一起读的，并发提交时可能多借或少借一个线程，只影响任务在哪里执行，不影响上限
+        if (running.get() + pending.get() < reserved && runReserved(task, submittedAt)) {
+            return;
+        }
+        if (tryBorrow(task, submittedAt)) {
+            return;
+        }
+        if (runReserved(task, submittedAt)) {
+            return;
+        }
+        rejected.increment();
+        throw new RejectedExecutionException("bulkhead " + name + " is saturated: running=" + running.get()
+                + " borrowed=" + borrowed.get() + " queued=" + pending.get());
+    }
+
+    private boolean runReserved(Runnable task, long submittedAt) {
+        pending.incrementAndGet();
+        try {
+            pool.execute(() -> {
+                pending.decrementAndGet();
+                started(running.incrementAndGet() + borrowed.get(), submittedAt);
+                ranReserved.increment();
+                try {
+                    task.run();
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            return false;
+        }
+    }
+
+    private boolean tryBorrow(Runnable task, long submittedAt) {
+        while (true) {
+            int current = borrowed.get();
+            if (current >= maxBorrow) {
+                return false;
+            }
+            if (borrowed.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        boolean ran = spare.tryRun(() -> {
+            started(running.get() + borrowed.get(), submittedAt);
+            ranBorrowed.increment();
+            try {
+                task.run();
+            } finally {
+                borrowed.decrementAndGet();
+            }
+        });
+        if (!ran) {
+            borrowed.decrementAndGet();
+        }
+        return ran;
+    }
+
+    private void started(int concurrency, long submittedAt) {
+        peakConcurrency.accumulateAndGet(concurrency, Math::max);
+        queueWait.record(System.nanoTime() - submittedAt);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * 当前并发数占上限（reserved + maxBorrow）的比例，1.0 表示再来的任务只能排队。
+     */
+    public double saturation() {
+        return (running.get() + borrowed.get()) / (double) (reserved + maxBorrow);
+    }
+
+    public int running() {
+        return running.get();
+    }
+
+    public int borrowed() {
+        return borrowed.get();
+    }
+
+    public int queued() {
+        return pending.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    public long submitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * 任务从提交到开始执行的等待时间（纳秒）。
+     */
+    public Log2Histogram queueWait() {
+        return queueWait;
+    }
+
+    public String report() {
+        return String.format("%-12s reserved=%d borrow<=%d queue<=%-4d saturation=%3.0f%% peak=%-3d queued=%-4d "
+                        + "submitted=%-6d reserved-runs=%-6d borrowed-runs=%-6d rejected=%-6d wait p99=%7dus",
+                name, reserved, maxBorrow, queueCapacity, saturation() * 100, peakConcurrency.get(), pending.get(),
+                submitted.sum(), ranReserved.sum(), ranBorrowed.sum(), rejected.sum(),
+                TimeUnit.NANOSECONDS.toMicros(queueWait.percentile(99)));
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,82 @@
+package com.bhuang.bulkhead;
+
+import com.bhuang.profiler.Log2Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 两个依赖：inventory 突然变慢（每次调用 2 秒，相当于 CompletableFutureDemo 中的 SupplierTask），
+ * pricing 正常（每次 2ms，每秒 200 次）。持续 3 秒，inventory 在第 0.5 秒时收到 100 个请求。
+ *
+ * 1. 共享线程池：两个依赖都在同一个 8 线程的 ForkJoinPool 上（模拟 8 核机器上的 commonPool；
+ *    这台机器只有 1 个核，CompletableFuture 在单核时不使用 commonPool，而是每个任务一个线程）。
+ * 2. 隔离舱：inventory 专用 4 个线程、最多借 2 个备用线程、排队 20 个；pricing 专用 2 个线程、最多借 2 个；共享 4 个备用线程。
+ *
+ * 对比 pricing 的延迟和按时完成的数量。
+ */
+public class BulkheadDemo {
+
+    static int call(long micros) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        return 1;
+    }
+
+    static void run(String name, Executor inventory, Executor pricing) {
+        Log2Histogram pricingLatency = new Log2Histogram();
+        LongAdder inventoryRejected = new LongAdder();
+        LongAdder pricingRejected = new LongAdder();
+        int pricingSubmitted = 0;
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        boolean flooded = false;
+        while (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3)) {
+            if (!flooded && System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(500)) {
+                for (int i = 0; i < 100; i++) {
+                    try {
+                        futures.add(CompletableFuture.supplyAsync(() -> call(2_000_000), inventory));
+                    } catch (RejectedExecutionException e) {
+                        inventoryRejected.increment();
+                    }
+                }
+                flooded = true;
+            }
+            long submitted = System.nanoTime();
+            pricingSubmitted++;
+            try {
+                futures.add(CompletableFuture.supplyAsync(() -> call(2_000), pricing)
+                        .thenRun(() -> pricingLatency.record(System.nanoTime() - submitted)));
+            } catch (RejectedExecutionException e) {
+                pricingRejected.increment();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        // 窗口结束后最多再等 1 秒，之后还没完成的请求不再等待
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .completeOnTimeout(null, 1, TimeUnit.SECONDS).join();
+        System.out.printf("%-12s pricing completed=%d/%d p50=%6dus p99=%6dus rejected=%d; inventory rejected=%d%n",
+                name, pricingLatency.count(), pricingSubmitted, TimeUnit.NANOSECONDS.toMicros(pricingLatency.percentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(pricingLatency.percentile(99)), pricingRejected.sum(),
+                inventoryRejected.sum());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ForkJoinPool shared = new ForkJoinPool(8);
+        run("shared pool", shared, shared);
+        shared.shutdownNow();
+
+        BulkheadRegistry registry = new BulkheadRegistry("deps", 4);
+        Bulkhead inventory = registry.register("inventory", 4, 20, 2);
+        Bulkhead pricing = registry.register("pricing", 2, 50, 2);
+        run("bulkheads", inventory, pricing);
+        System.out.println(registry.report());
+        registry.shutdown();
+    }
+}
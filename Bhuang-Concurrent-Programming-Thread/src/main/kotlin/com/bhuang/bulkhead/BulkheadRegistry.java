@@ -0,0 +1,95 @@
+package com.bhuang.bulkhead;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 隔离舱的注册表：每个依赖（库存服务、价格服务……）或者每类工作负载注册一个有名字的 {@link Bulkhead}，
+ * 所有隔离舱共享一组备用线程。
+ *
+ * <pre>
+ * BulkheadRegistry registry = new BulkheadRegistry("deps", 4);
+ * Bulkhead inventory = registry.register("inventory", 4, 20, 2);
+ * CompletableFuture.supplyAsync(() -> inventoryClient.stock(sku), inventory);
+ * </pre>
+ *
+ * CompletableFutureDemo 中的异步阶段默认都在 ForkJoinPool.commonPool() 上执行，一个很慢的依赖（比如 5 秒的 SupplierTask）
+ * 会占满公共线程池，整个 JVM 里的其他异步阶段都要等它。分到各自的隔离舱之后，慢依赖只会耗尽它自己的线程和能借到的备用线程。
+ */
+public class BulkheadRegistry implements AutoCloseable {
+
+    private final String name;
+    private final SparePool spare;
+    private final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public BulkheadRegistry(String name, int spareThreads) {
+        if (spareThreads < 0) {
+            throw new IllegalArgumentException("spareThreads must not be negative: " + spareThreads);
+        }
+        this.name = name;
+        this.spare = new SparePool(name, spareThreads);
+    }
+
+    /**
+     * @param reserved      专用线程数
+     * @param queueCapacity 专用线程都在忙、又借不到备用线程时最多排队的任务数
+     * @param maxBorrow     最多同时借用的备用线程数，不超过备用线程总数
+     */
+    public Bulkhead register(String bulkhead, int reserved, int queueCapacity, int maxBorrow) {
+        Bulkhead created = new Bulkhead(name + "-" + bulkhead, reserved, queueCapacity, maxBorrow, spare);
+        Bulkhead existing = bulkheads.putIfAbsent(bulkhead, created);
+        if (existing != null) {
+            created.shutdown();
+            throw new IllegalStateException("bulkhead already registered: " + bulkhead);
+        }
+        return created;
+    }
+
+    public Bulkhead get(String bulkhead) {
+        Bulkhead found = bulkheads.get(bulkhead);
+        if (found == null) {
+            throw new IllegalArgumentException("unknown bulkhead: " + bulkhead);
+        }
+        return found;
+    }
+
+    public Collection<Bulkhead> bulkheads() {
+        return Collections.unmodifiableCollection(bulkheads.values());
+    }
+
+    /**
+     * @return 每个隔离舱一行的饱和度、借用次数、拒绝次数和等待时间，最后一行是备用线程的使用情况
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            sb.append(bulkhead.report()).append(System.lineSeparator());
+        }
+        sb.append(String.format("spare threads in use: %d/%d", spare.inUse(), spare.threads()));
+        return sb.toString();
+    }
+
+    public void shutdown() {
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            bulkhead.shutdown();
+        }
+        spare.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            if (!bulkhead.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return spare.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
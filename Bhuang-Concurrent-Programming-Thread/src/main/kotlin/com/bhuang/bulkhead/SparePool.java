@@ -0,0 +1,72 @@
+package com.bhuang.bulkhead;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 所有隔离舱共享的备用线程。隔离舱自己的线程都在忙时，可以从这里借一个线程执行任务，执行完立即归还。
+ *
+ * 信号量的许可数等于线程数：拿到许可的任务一定有线程可用。线程池用的是无界队列而不是 SynchronousQueue，
+ * 因为归还许可发生在线程回到空闲状态之前，紧接着提交的任务可能要排队等这个线程一小会儿，SynchronousQueue 会直接拒绝它。
+ */
+final class SparePool {
+
+    private final int threads;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+
+    SparePool(String name, int threads) {
+        this.threads = threads;
+        this.permits = new Semaphore(threads);
+        if (threads == 0) {
+            this.executor = null;
+            return;
+        }
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-spare-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 借一个线程执行 task，没有空闲的备用线程时返回 false。
+     */
+    boolean tryRun(Runnable task) {
+        if (threads == 0 || !permits.tryAcquire()) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+        return true;
+    }
+
+    int threads() {
+        return threads;
+    }
+
+    int inUse() {
+        return threads - permits.availablePermits();
+    }
+
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor == null || executor.awaitTermination(timeout, unit);
+    }
+}
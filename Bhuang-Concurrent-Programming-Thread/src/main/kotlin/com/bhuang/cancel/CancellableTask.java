@@ -0,0 +1,10 @@
+package com.bhuang.cancel;
+
+/**
+ * 接收取消令牌的任务。任务应该定期检查令牌，并把令牌传给它调用的阻塞操作（队列的 give/take 等）。
+ */
+@FunctionalInterface
+public interface CancellableTask {
+
+    void run(CancellationToken token) throws Exception;
+}
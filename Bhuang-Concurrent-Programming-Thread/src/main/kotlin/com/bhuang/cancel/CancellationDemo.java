@@ -0,0 +1,112 @@
+package com.bhuang.cancel;
+
+import com.bhuang.BlockingQueueWithCondition;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class CancellationDemo {
+
+    /**
+     * Main.Producer 的令牌版本：消费者不再需要数据时取消令牌，阻塞在 give() 里的生产者立即醒来退出，
+     * 而不是像 volatile canceled 那样永远等下去。
+     */
+    static void stopBlockedProducer() throws InterruptedException {
+        BlockingQueueWithCondition storage = new BlockingQueueWithCondition(8);
+        CancellationToken token = new CancellationToken();
+
+        Thread producer = new Thread(() -> {
+            int num = 0;
+            try {
+                while (num <= 100000) {
+                    if (num % 50 == 0) {
+                        storage.give(String.valueOf(num), token);
+                    }
+                    num++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (CancellationException e) {
+                System.out.println("生产者被取消: " + e.getMessage());
+            } finally {
+                System.out.println("生产者结束运行");
+            }
+        });
+        producer.start();
+        Thread.sleep(500);
+
+        while (Math.random() <= 0.97) {
+            storage.take();
+            Thread.sleep(20);
+        }
+        System.out.println("消费者不需要更多数据了。");
+        long start = System.nanoTime();
+        token.cancel("consumer has enough data");
+        producer.join();
+        System.out.printf("生产者在 %d us 内停止，缓冲区中剩余 %s%n",
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), storage.drain());
+    }
+
+    /**
+     * 流水线运行在 GracefulExecutor 上，关闭时：排空一段时间，然后取消仍在运行的阶段，报告没有执行的任务和缓冲区里剩下的数据。
+     */
+    static void shutdownPipeline() throws InterruptedException {
+        GracefulExecutor executor = new GracefulExecutor("pipeline", 3);
+        BlockingQueueWithCondition buffer = new BlockingQueueWithCondition(4);
+
+        // 生产者：一直生产，只会因为取消而停止
+        executor.execute((CancellableTask) token -> {
+            for (int i = 0; ; i++) {
+                buffer.give("item-" + i, token);
+            }
+        });
+        // 消费者：比生产者慢，缓冲区会被填满
+        executor.execute((CancellableTask) token -> {
+            while (true) {
+                buffer.take(token);
+                Thread.sleep(50);
+            }
+        });
+        // 一个不检查令牌、也不响应中断的任务，会被报告为 stuck
+        executor.execute(() -> {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+        });
+        // 线程都被占满，这些任务在截止时间之前不会开始执行
+        for (int i = 0; i < 3; i++) {
+            int id = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    System.out.println("report-" + id);
+                }
+
+                @Override
+                public String toString() {
+                    return "report-" + id;
+                }
+            });
+        }
+
+        // 与执行器令牌绑定的 CompletableFuture，关闭时以 CancellationException 结束
+        CompletableFuture<String> pending = executor.token().bind(new CompletableFuture<>());
+        CompletableFuture<String> dependent = pending.thenApply(String::toUpperCase);
+
+        Thread.sleep(300);
+        GracefulExecutor.DrainReport report = executor.shutdownGracefully(200, TimeUnit.MILLISECONDS);
+        List<String> leftovers = buffer.drain();
+        System.out.println(report);
+        System.out.println("dropped tasks: " + report.dropped());
+        System.out.println("items left in buffer: " + leftovers);
+        System.out.println("dependent future cancelled: " + dependent.isCompletedExceptionally());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        stopBlockedProducer();
+        shutdownPipeline();
+    }
+}
@@ -0,0 +1,180 @@
+package com.bhuang.cancel;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 协作式取消令牌。
+ *
+ * Main.Producer 用 volatile canceled 标记取消，但生产者阻塞在 put() 里时根本没有机会检查这个标记；
+ * 改用 interrupt 又要在每一层 catch 里手动恢复中断状态（见 InterruptedDemo.StopDuringSleep）。
+ *
+ * 令牌把“取消”变成一个可以订阅的事件：
+ * 1. 长时间运行的代码在循环里调用 {@link #throwIfCancelled()}。
+ * 2. 阻塞操作通过 {@link #register(Runnable)} 注册一个唤醒回调（signalAll / notifyAll），取消时立即被唤醒，
+ *    醒来之后检查令牌并抛出 {@link CancellationException}，不需要借助中断。
+ * 3. {@link #child()} 创建子令牌：父令牌取消时子令牌跟着取消，子令牌可以单独取消而不影响父令牌，
+ *    适合“整个执行器关闭”与“某一条流水线结束”这样的层级关系。
+ *
+ * 令牌只能从未取消变为已取消，取消是幂等的。
+ */
+public final class CancellationToken {
+
+    /**
+     * 永远不会被取消的令牌，用于不需要取消的调用。
+     */
+    public static final CancellationToken NONE = new CancellationToken(false);
+
+    // NONE 上的所有注册共用这一个，不会被触发，close() 什么也不做
+    private static final Registration NOOP = new Registration(NONE, () -> { });
+
+    private final boolean cancellable;
+    private volatile String reason;
+    // 取消之后置为 null，之后注册的回调会直接执行
+    private Set<Registration> registrations = new LinkedHashSet<>();
+
+    public CancellationToken() {
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * @return 取消的原因，没有被取消时返回 null
+     */
+    public String reason() {
+        return reason;
+    }
+
+    public void throwIfCancelled() {
+        String r = reason;
+        if (r != null) {
+            throw new CancellationException(r);
+        }
+    }
+
+    public boolean cancel() {
+        return cancel("cancelled");
+    }
+
+    /**
+     * 取消令牌，并在当前线程中依次执行所有已注册的回调。
+     *
+     * @return 这一次调用是否真正取消了令牌（已经取消过则返回 false）
+     */
+    public boolean cancel(String reason) {
+        if (!cancellable) {
+            throw new UnsupportedOperationException("CancellationToken.NONE cannot be cancelled");
+        }
+        Set<Registration> callbacks;
+        synchronized (this) {
+            if (this.reason != null) {
+                return false;
+            }
+            this.reason = reason == null ? "cancelled" : reason;
+            callbacks = registrations;
+            registrations = null;
+        }
+        // 回调在锁外执行：回调里通常要获取队列的锁，持有令牌的锁去获取别的锁容易死锁
+        RuntimeException failure = null;
+        for (Registration registration : callbacks) {
+            try {
+                registration.action.run();
+            } catch (RuntimeException e) {
+                // 一个回调失败不能让其他等待者收不到取消信号
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return true;
+    }
+
+    /**
+     * 注册取消回调。令牌已经被取消时，回调会在当前线程中立即执行。
+     *
+     * 回调不保证只在 {@link Registration#close()} 之前执行：close() 与 cancel() 并发时，回调可能刚好正在执行，
+     * 所以回调应该是无害的唤醒操作（signalAll、notifyAll、取消 future），而不是 interrupt 这种会遗留状态的操作。
+     */
+    public Registration register(Runnable action) {
+        if (!cancellable) {
+            // NONE 永远不会触发回调，不需要保存（否则每次调用都会在这个全局对象上留下一个回调），也不需要新建注册：
+            // 队列的 give/take 默认传入 NONE，这里不分配对象，热路径上就没有分配
+            return NOOP;
+        }
+        Registration registration = new Registration(this, action);
+        synchronized (this) {
+            if (registrations != null) {
+                registrations.add(registration);
+                return registration;
+            }
+        }
+        action.run();
+        return registration;
+    }
+
+    /**
+     * @return 一个新的子令牌：当前令牌取消时子令牌随之取消，子令牌取消时会从当前令牌上注销
+     */
+    public CancellationToken child() {
+        CancellationToken child = new CancellationToken();
+        if (this == NONE) {
+            return child;
+        }
+        Registration link = register(() -> child.cancel(reason));
+        child.register(link::close);
+        return child;
+    }
+
+    /**
+     * 令牌取消时取消 future，future 的依赖阶段会以 CancellationException 结束。
+     * future 完成之后自动注销，避免长期存活的令牌上积累回调。
+     */
+    public <T> CompletableFuture<T> bind(CompletableFuture<T> future) {
+        if (this == NONE) {
+            return future;
+        }
+        Registration registration = register(() -> future.cancel(false));
+        future.whenComplete((value, error) -> registration.close());
+        return future;
+    }
+
+    private synchronized void unregister(Registration registration) {
+        if (registrations != null) {
+            registrations.remove(registration);
+        }
+    }
+
+    /**
+     * 一个已注册的取消回调，close() 之后不会再被取消操作触发。
+     */
+    public static final class Registration implements AutoCloseable {
+        private final CancellationToken token;
+        private final Runnable action;
+
+        private Registration(CancellationToken token, Runnable action) {
+            this.token = token;
+            this.action = action;
+        }
+
+        @Override
+        public void close() {
+            if (token.cancellable) {
+                token.unregister(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.bhuang.cancel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 支持有截止时间的优雅关闭的固定大小线程池。
+ *
+ * ExecutorService.shutdown() 会一直等到所有任务结束，卡住的任务会让发布也卡住；shutdownNow() 只会中断线程，
+ * 并且不区分“还没开始的任务”和“正在执行的任务”。{@link #shutdownGracefully(long, TimeUnit)} 分三步：
+ * 1. 不再接受新任务，工作线程继续执行队列中的任务，直到截止时间。
+ * 2. 截止时间到了还没开始的任务不再执行，原样放进 {@link DrainReport#dropped()} 交还给调用方（可以持久化或者重新提交）。
+ * 3. 取消执行器的令牌，正在执行的 {@link CancellableTask} 会在阻塞的 give/take 中被立即唤醒；
+ *    同时中断工作线程，照顾那些只响应中断的普通 Runnable。最多再等待 cancelGrace，仍然没有结束的线程记在报告里，不再等待。
+ */
+public class GracefulExecutor implements Executor {
+
+    private static final long DEFAULT_CANCEL_GRACE_MILLIS = 100;
+
+    // 队列中的毒丸，工作线程取到之后退出
+    private static final Task POISON = new Task(null);
+
+    private final LinkedBlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private final CancellationToken token = new CancellationToken();
+    private final Worker[] workers;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean shutdown;
+    // 截止时间已到、队列中剩余的任务已经被取走
+    private volatile boolean drained;
+
+    public GracefulExecutor(String name, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(name + "-" + i);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * @return 执行器的令牌，{@link #shutdownGracefully} 在截止时间到达时取消它
+     */
+    public CancellationToken token() {
+        return token;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submit(new Task(command));
+    }
+
+    public void execute(CancellableTask task) {
+        submit(new Task(task));
+    }
+
+    private void submit(Task task) {
+        if (task.body == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("executor is shutting down");
+        }
+        queue.add(task);
+        // 检查 shutdown 和入队之间可能恰好开始关闭：入队之后看到 drained 为 false，说明 drainTo 一定能取到这个任务；
+        // 否则自己把任务拿回来并拒绝，任务不会悄悄留在队列里
+        if (drained && queue.remove(task)) {
+            throw new RejectedExecutionException("executor is shut down");
+        }
+    }
+
+    public DrainReport shutdownGracefully(long timeout, TimeUnit unit) throws InterruptedException {
+        return shutdownGracefully(unit.toMillis(timeout), DEFAULT_CANCEL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param timeout     排空队列的时间上限
+     * @param cancelGrace 取消之后等待正在执行的任务结束的时间上限
+     */
+    public DrainReport shutdownGracefully(long timeout, long cancelGrace, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        long completedBefore = completed.get();
+        shutdown = true;
+        for (int i = 0; i < workers.length; i++) {
+            queue.add(POISON);
+        }
+
+        // 第一步：排空
+        joinUntil(start + unit.toNanos(timeout));
+
+        // 第二步：截止时间到了还没开始的任务（包括在关闭过程中刚好入队的任务）
+        drained = true;
+        List<Task> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        List<Object> dropped = new ArrayList<>();
+        for (Task task : remaining) {
+            if (task != POISON) {
+                dropped.add(task.body);
+            }
+        }
+
+        // 第三步：取消正在执行的任务
+        List<String> cancelled = new ArrayList<>();
+        List<String> stuck = new ArrayList<>();
+        String reason = "executor shut down after " + unit.toMillis(timeout) + " ms";
+        if (isTerminated()) {
+            // 没有正在执行的任务也取消令牌，让通过 token() 拿到令牌的其他代码知道执行器已经关闭
+            token.cancel(reason);
+        } else {
+            for (Worker worker : workers) {
+                Task current = worker.current;
+                if (current != null) {
+                    cancelled.add(worker.getName() + ": " + current.body);
+                }
+            }
+            token.cancel(reason);
+            for (Worker worker : workers) {
+                // 只响应中断的任务也能停下来；drainTo 取走了毒丸，重新放入，让执行完当前任务的线程退出
+                worker.interrupt();
+                queue.add(POISON);
+            }
+            joinUntil(System.nanoTime() + unit.toNanos(cancelGrace));
+            for (Worker worker : workers) {
+                Task current = worker.current;
+                if (worker.isAlive() && current != null) {
+                    stuck.add(worker.getName() + ": " + current.body);
+                }
+            }
+        }
+
+        return new DrainReport(completed.get() - completedBefore, dropped, cancelled, stuck,
+                System.nanoTime() - start);
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        for (Worker worker : workers) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 执行失败（抛出异常，不包括被取消）的任务数
+     */
+    public long failedCount() {
+        return failed.get();
+    }
+
+    private void joinUntil(long deadline) throws InterruptedException {
+        for (Worker worker : workers) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+        }
+    }
+
+    private static final class Task {
+        // Runnable 或 CancellableTask
+        final Object body;
+
+        Task(Object body) {
+            this.body = body;
+        }
+
+        void run(CancellationToken token) throws Exception {
+            if (body instanceof CancellableTask) {
+                ((CancellableTask) body).run(token);
+            } else {
+                ((Runnable) body).run();
+            }
+        }
+    }
+
+    private final class Worker extends Thread {
+        // 正在执行的任务，关闭时用来生成报告
+        volatile Task current;
+
+        Worker(String name) {
+            super(name);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Task task = queue.take();
+                    if (task == POISON) {
+                        return;
+                    }
+                    current = task;
+                    try {
+                        task.run(token);
+                        completed.incrementAndGet();
+                    } catch (CancellationException e) {
+                        // 被取消的任务不算失败
+                    } catch (InterruptedException e) {
+                        if (!token.isCancelled()) {
+                            failed.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        e.printStackTrace();
+                    } finally {
+                        current = null;
+                        // 清除任务遗留的中断状态，不影响下一个任务
+                        Thread.interrupted();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 空闲时被中断只会发生在关闭阶段，直接退出
+            }
+        }
+    }
+
+    /**
+     * 一次优雅关闭的结果。
+     */
+    public static final class DrainReport {
+        private final long completed;
+        private final List<Object> dropped;
+        private final List<String> cancelled;
+        private final List<String> stuck;
+        private final long elapsedNanos;
+
+        DrainReport(long completed, List<Object> dropped, List<String> cancelled, List<String> stuck, long elapsedNanos) {
+            this.completed = completed;
+            this.dropped = Collections.unmodifiableList(dropped);
+            this.cancelled = Collections.unmodifiableList(cancelled);
+            this.stuck = Collections.unmodifiableList(stuck);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return 关闭过程中正常完成的任务数
+         */
+        public long completed() {
+            return completed;
+        }
+
+        /**
+         * @return 截止时间到达时还没有开始执行的任务（Runnable 或 CancellableTask 原对象）
+         */
+        public List<Object> dropped() {
+            return dropped;
+        }
+
+        /**
+         * @return 截止时间到达时正在执行、因此被取消的任务
+         */
+        public List<String> cancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return 取消之后在 cancelGrace 内仍然没有结束的任务，它们所在的线程没有被等待
+         */
+        public List<String> stuck() {
+            return stuck;
+        }
+
+        /**
+         * @return 是否所有任务都在截止时间之前完成
+         */
+        public boolean isClean() {
+            return dropped.isEmpty() && cancelled.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "DrainReport{completed=" + completed
+                    + ", dropped=" + dropped.size()
+                    + ", cancelled=" + cancelled
+                    + ", stuck=" + stuck
+                    + ", elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms}";
+        }
+    }
+}
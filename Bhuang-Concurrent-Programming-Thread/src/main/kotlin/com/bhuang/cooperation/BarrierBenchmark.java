@@ -0,0 +1,105 @@
+package com.bhuang.cooperation;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在线程数逐渐增加的情况下，对比 CyclicBarrier、Phaser 和 CombiningTreeBarrier 每一轮同步的开销。
+ *
+ * 每个线程在两次 await 之间只做很少的工作（模拟短小的迭代计算），这样测到的基本就是屏障本身的成本。
+ * 三种屏障都带有同一个 barrierAction（对轮次计数），与 {@code new CyclicBarrier(3, action)} 的用法保持一致。
+ */
+public class BarrierBenchmark {
+
+    private static final int ROUNDS = 20_000;
+    private static final int[] THREAD_COUNTS = {2, 4, 8, 16, 32, 64};
+
+    interface Barrier {
+        void await() throws Exception;
+    }
+
+    static class Worker implements Runnable {
+        private final Barrier barrier;
+        private final int rounds;
+        private long sink;
+
+        Worker(Barrier barrier, int rounds) {
+            this.barrier = barrier;
+            this.rounds = rounds;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < rounds; i++) {
+                    // 模拟每一轮很小的计算量
+                    for (int j = 0; j < 64; j++) {
+                        sink += j * i;
+                    }
+                    barrier.await();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    static long run(int threads, Barrier barrier) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Worker(barrier, ROUNDS), "barrier-worker-" + i);
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    static long cyclicBarrier(int threads, Runnable action) throws InterruptedException {
+        CyclicBarrier barrier = new CyclicBarrier(threads, action);
+        return run(threads, barrier::await);
+    }
+
+    static long phaser(int threads, Runnable action) throws InterruptedException {
+        Phaser phaser = new Phaser(threads) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                action.run();
+                return false;
+            }
+        };
+        return run(threads, phaser::arriveAndAwaitAdvance);
+    }
+
+    static long combiningTree(int threads, Runnable action) throws InterruptedException {
+        CombiningTreeBarrier barrier = new CombiningTreeBarrier(threads, action);
+        return run(threads, barrier::await);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        AtomicLong phases = new AtomicLong();
+        Runnable action = phases::incrementAndGet;
+
+        // 预热，让 JIT 先把三种屏障的热点代码编译好
+        cyclicBarrier(4, action);
+        phaser(4, action);
+        combiningTree(4, action);
+
+        System.out.println("CPU cores: " + Runtime.getRuntime().availableProcessors() + ", rounds: " + ROUNDS);
+        System.out.printf("%8s %18s %18s %18s%n", "threads", "CyclicBarrier", "Phaser", "CombiningTree");
+        for (int threads : THREAD_COUNTS) {
+            long cyclic = cyclicBarrier(threads, action);
+            long phaser = phaser(threads, action);
+            long tree = combiningTree(threads, action);
+            // 输出每一轮屏障的平均耗时（ns/round）
+            System.out.printf("%8d %15d ns %15d ns %15d ns%n", threads,
+                    cyclic / ROUNDS, phaser / ROUNDS, tree / ROUNDS);
+        }
+        System.out.println("barrier actions run: " + phases.get());
+    }
+}
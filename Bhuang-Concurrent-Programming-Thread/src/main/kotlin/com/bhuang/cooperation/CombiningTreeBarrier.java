@@ -0,0 +1,237 @@
+package com.bhuang.cooperation;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CombiningTreeBarrier 是一个可以重复使用的屏障，语义上对齐 {@code new CyclicBarrier(parties, barrierAction)}：
+ * 所有参与线程到齐后，由最后一个到达的线程执行 barrierAction，然后所有线程一起进入下一轮。
+ *
+ * 与 CyclicBarrier 的区别：
+ * CyclicBarrier 的每一次 await() 都要先抢同一把 ReentrantLock，参与线程一多（64+），并且每一轮的工作量很小的时候，
+ * 这把锁本身就成了瓶颈。这里使用“合并树（combining tree）+ 感应反转（sense reversal）”：
+ * 1. 参与线程被分配到叶子节点，每个节点最多只有 radix 个参与者，到达时只在自己的节点上做一次原子递减，
+ *    最后到达某个节点的线程再代表这一组去上一层节点递减，所以不会有所有线程争抢同一个计数器的情况。
+ * 2. 每个节点有自己的 sense 标记，等待的线程只在自己节点的 sense 上自旋（本地自旋），释放时自顶向下逐层翻转。
+ * 3. 每个线程每一轮翻转自己的 sense，所以屏障不需要重置计数以外的任何状态就可以被下一轮复用。
+ * 4. 等待策略是先自旋一小段时间（适合每轮工作量很小的场景），超过自旋次数后再 park，避免线程数多于 CPU 核数时空转。
+ *
+ * 参与线程在第一次调用 await() 时按到达顺序登记一个固定的编号（只在第一次登记时使用一个共享的原子计数器），
+ * 因此同一个屏障应由固定的 parties 个线程反复使用，这也是 CyclicBarrier 多轮迭代的典型用法。
+ */
+public class CombiningTreeBarrier {
+
+    // 默认每个节点的扇入数，4 个参与者共享一个计数器，既能分散竞争，树的高度也不会太高
+    private static final int DEFAULT_RADIX = 4;
+
+    // 进入 park 之前的自旋次数；单核机器上自旋只会占着 CPU 让释放者跑不起来，所以直接 park
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1 << 10 : 0;
+
+    private final int parties;
+    private final Runnable barrierAction;
+    private final Node[] leaves;
+    private final int radix;
+
+    // 线程到参与者编号的映射，只在第一次 await 的时候登记
+    private final ThreadLocal<Party> party = new ThreadLocal<>();
+    private final AtomicInteger registered = new AtomicInteger();
+
+    private volatile boolean broken;
+
+    public CombiningTreeBarrier(int parties) {
+        this(parties, null);
+    }
+
+    public CombiningTreeBarrier(int parties, Runnable barrierAction) {
+        this(parties, DEFAULT_RADIX, barrierAction);
+    }
+
+    public CombiningTreeBarrier(int parties, int radix, Runnable barrierAction) {
+        if (parties <= 0) {
+            throw new IllegalArgumentException("parties must be positive: " + parties);
+        }
+        if (radix < 2) {
+            throw new IllegalArgumentException("radix must be at least 2: " + radix);
+        }
+        this.parties = parties;
+        this.radix = radix;
+        this.barrierAction = barrierAction;
+        this.leaves = buildTree(parties, radix);
+    }
+
+    /**
+     * 自底向上建树：第一层是叶子，每个叶子最多 radix 个参与线程；
+     * 之后每 radix 个节点合并成一个父节点，直到只剩下根节点。
+     */
+    private static Node[] buildTree(int parties, int radix) {
+        int leafCount = (parties + radix - 1) / radix;
+        Node[] leaves = new Node[leafCount];
+        for (int i = 0; i < leafCount; i++) {
+            leaves[i] = new Node(Math.min(radix, parties - i * radix));
+        }
+        Node[] level = leaves;
+        while (level.length > 1) {
+            int parentCount = (level.length + radix - 1) / radix;
+            Node[] parents = new Node[parentCount];
+            for (int i = 0; i < parentCount; i++) {
+                parents[i] = new Node(Math.min(radix, level.length - i * radix));
+                for (int j = i * radix; j < Math.min(level.length, (i + 1) * radix); j++) {
+                    level[j].parent = parents[i];
+                }
+            }
+            level = parents;
+        }
+        return leaves;
+    }
+
+    /**
+     * 等待所有参与线程到达屏障。
+     *
+     * @throws InterruptedException   当前线程在等待时被中断，此时屏障被破坏，其他等待线程会收到 BrokenBarrierException
+     * @throws BrokenBarrierException 屏障已经被破坏（有线程被中断，或者 barrierAction 抛出了异常）
+     */
+    public void await() throws InterruptedException, BrokenBarrierException {
+        if (broken) {
+            throw new BrokenBarrierException();
+        }
+        Party me = register();
+        boolean sense = !me.sense;
+        arrive(leaves[me.index / radix], sense);
+        // 本轮结束后翻转线程自己的 sense，下一轮就等待相反的值
+        me.sense = sense;
+    }
+
+    private Party register() {
+        Party me = party.get();
+        if (me == null) {
+            int index = registered.getAndIncrement();
+            if (index >= parties) {
+                throw new IllegalStateException("More than " + parties + " threads are using this barrier");
+            }
+            me = new Party(index);
+            party.set(me);
+        }
+        return me;
+    }
+
+    private void arrive(Node node, boolean sense) throws InterruptedException, BrokenBarrierException {
+        int position = node.count.getAndDecrement();
+        if (position == 1) {
+            // 本节点最后一个到达的线程，代表这一组继续往上一层走
+            if (node.parent != null) {
+                arrive(node.parent, sense);
+            } else {
+                runBarrierAction();
+            }
+            // 先恢复计数，再翻转 sense 放行等待者，保证等待者进入下一轮时看到的是重置后的计数
+            node.count.set(node.children);
+            node.sense = sense;
+            node.wakeWaiters(sense);
+        } else {
+            // position 在 [2, children] 之间，本轮内唯一，用作登记 park 线程的槽位；
+            // 再按 sense 分成两组槽位，相邻两轮的等待者不会共用同一个槽位
+            awaitRelease(node, sense, node.slot(sense, position - 1));
+        }
+    }
+
+    private void runBarrierAction() throws BrokenBarrierException {
+        if (barrierAction == null) {
+            return;
+        }
+        try {
+            barrierAction.run();
+        } catch (RuntimeException | Error e) {
+            breakBarrier();
+            throw e;
+        }
+    }
+
+    private void awaitRelease(Node node, boolean sense, int slot) throws InterruptedException, BrokenBarrierException {
+        // 先自旋：每轮工作量很小时，等待者往往在几百次自旋内就会被放行
+        for (int i = 0; i < SPINS; i++) {
+            if (node.sense == sense) {
+                return;
+            }
+            if (broken) {
+                throw new BrokenBarrierException();
+            }
+            Thread.onSpinWait();
+        }
+        // 自旋失败后登记自己再 park，登记之后必须再检查一次 sense，防止错过释放者的 unpark
+        Thread current = Thread.currentThread();
+        try {
+            while (true) {
+                node.waiters.set(slot, current);
+                if (node.sense == sense) {
+                    return;
+                }
+                if (broken) {
+                    throw new BrokenBarrierException();
+                }
+                if (Thread.interrupted()) {
+                    breakBarrier();
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            node.waiters.compareAndSet(slot, current, null);
+        }
+    }
+
+    private void breakBarrier() {
+        broken = true;
+        for (Node leaf : leaves) {
+            for (Node node = leaf; node != null; node = node.parent) {
+                node.wakeWaiters(true);
+                node.wakeWaiters(false);
+            }
+        }
+    }
+
+    public int getParties() {
+        return parties;
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    private static final class Party {
+        final int index;
+        boolean sense;
+
+        Party(int index) {
+            this.index = index;
+        }
+    }
+
+    private static final class Node {
+        final int children;
+        final AtomicInteger count;
+        final AtomicReferenceArray<Thread> waiters;
+        Node parent;
+        volatile boolean sense;
+
+        Node(int children) {
+            this.children = children;
+            this.count = new AtomicInteger(children);
+            this.waiters = new AtomicReferenceArray<>(children * 2);
+        }
+
+        int slot(boolean sense, int position) {
+            return sense ? children + position : position;
+        }
+
+        void wakeWaiters(boolean sense) {
+            for (int i = slot(sense, 0); i < slot(sense, children); i++) {
+                Thread waiter = waiters.getAndSet(i, null);
+                if (waiter != null) {
+                    LockSupport.unpark(waiter);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.bhuang.cooperation;
+
+import java.util.Arrays;
+import java.util.concurrent.Exchanger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 双缓冲的生产者/消费者交接：生产者填满一整个缓冲区，消费者处理完另一个缓冲区，两者在 {@link Exchanger} 上会合，
+ * 交换手里的缓冲区后各自继续。两个缓冲区在两个线程之间来回交换、一直复用。
+ *
+ * 与 BlockingQueueWithCondition 的 Producer/Consumer 相比：
+ * 1. 同步的粒度从每个元素变成每个缓冲区，batchSize 为 1024 时，加锁和唤醒的次数只有逐个交接的千分之一。
+ * 2. 稳态下不分配内存：缓冲区是预先分配的数组，Exchanger 每个线程复用同一个节点（只有多个线程竞争时才会用到 arena）。
+ * 3. 缓冲区在同一时刻只属于一个线程，填充和读取都不需要同步；exchange 本身建立 happens-before，
+ *    消费者拿到缓冲区时一定能看到生产者写入的全部元素。
+ *
+ * 代价是延迟：元素要等缓冲区满了（或者生产者调用 {@link #flush()}）才会被消费者看到，
+ * 并且生产者在消费者处理完上一个缓冲区之前会阻塞在交换上，相当于一个容量为 2 * batchSize 的有界队列。
+ *
+ * 只支持一个生产者线程和一个消费者线程：put/flush/close 只能由生产者调用，take/drainTo 只能由消费者调用。
+ */
+public class DoubleBuffer<T> {
+
+    /**
+     * 一个缓冲区。消费者从 {@link #take()} 拿到它之后，在下一次 take 之前可以随意读取。
+     */
+    public static final class Batch<T> {
+        private final Object[] items;
+        private int size;
+        // 生产者调用 close() 之后交出的最后一个缓冲区，其中可能还有元素
+        private boolean last;
+
+        Batch(int capacity) {
+            this.items = new Object[capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+            }
+            return (T) items[index];
+        }
+
+        public boolean isLast() {
+            return last;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEach(Consumer<? super T> action) {
+            for (int i = 0; i < size; i++) {
+                action.accept((T) items[i]);
+            }
+        }
+
+        // 交还之前清空引用，避免空闲的缓冲区让已经处理过的元素无法被回收
+        void clear() {
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+        }
+    }
+
+    private final Exchanger<Batch<T>> exchanger = new Exchanger<>();
+    private final int batchSize;
+
+    // 只由生产者线程访问
+    private Batch<T> filling;
+    private boolean closed;
+    private long exchanges;
+
+    // 只由消费者线程访问
+    private Batch<T> draining;
+
+    public DoubleBuffer(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        this.filling = new Batch<>(batchSize);
+        this.draining = new Batch<>(batchSize);
+    }
+
+    /**
+     * 放入一个元素；缓冲区满时与消费者交换，消费者还在处理上一个缓冲区时阻塞。
+     */
+    public void put(T item) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        // 上一次 put 填满之后的交换被中断了，满的缓冲区还在手里：先交换掉再写
+        if (filling.size == batchSize) {
+            swap();
+        }
+        Batch<T> batch = filling;
+        batch.items[batch.size++] = item;
+        if (batch.size == batchSize) {
+            swap();
+        }
+    }
+
+    /**
+     * 把没有填满的缓冲区交给消费者。生产速率低的时候定期调用，否则元素会一直停留在生产者手里。
+     */
+    public void flush() throws InterruptedException {
+        if (filling.size > 0) {
+            swap();
+        }
+    }
+
+    /**
+     * 带超时的 flush：消费者在超时之前没有来交换时抛出 TimeoutException，缓冲区仍然属于生产者，可以稍后重试。
+     */
+    public void flush(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (filling.size > 0) {
+            filling = exchanger.exchange(filling, timeout, unit);
+            exchanges++;
+        }
+    }
+
+    /**
+     * 交出最后一个缓冲区（可能是空的）并把它标记为 last，消费者处理完它就应该退出。
+     * 会阻塞到消费者来交换为止；被中断时没有关闭，可以重新调用。
+     */
+    public void close() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+        filling.last = true;
+        try {
+            swap();
+        } catch (InterruptedException e) {
+            // 缓冲区留在生产者手里，去掉标记，否则之后 put 或 flush 交出它时消费者会提前退出
+            filling.last = false;
+            throw e;
+        }
+        closed = true;
+    }
+
+    private void swap() throws InterruptedException {
+        // exchange 被中断时缓冲区仍然属于生产者，其中的元素不会丢失
+        filling = exchanger.exchange(filling);
+        exchanges++;
+    }
+
+    /**
+     * 交还上一次拿到的缓冲区，换回一个生产者填好的缓冲区；生产者还没有填满时阻塞。
+     * 返回的缓冲区在下一次 take 之前有效，{@link Batch#isLast()} 为 true 之后不能再调用。
+     */
+    public Batch<T> take() throws InterruptedException {
+        if (draining.last) {
+            throw new IllegalStateException("producer closed");
+        }
+        draining.clear();
+        draining = exchanger.exchange(draining);
+        return draining;
+    }
+
+    /**
+     * 取一个缓冲区，把其中的元素依次交给 sink。返回处理的元素个数；生产者已经关闭时返回 -1。
+     */
+    public int drainTo(Consumer<? super T> sink) throws InterruptedException {
+        if (draining.last) {
+            return -1;
+        }
+        Batch<T> batch = take();
+        batch.forEach(sink);
+        return batch.size;
+    }
+
+    /**
+     * 生产者一侧完成的交换次数，只能由生产者线程读取。
+     */
+    public long exchanges() {
+        return exchanges;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+}
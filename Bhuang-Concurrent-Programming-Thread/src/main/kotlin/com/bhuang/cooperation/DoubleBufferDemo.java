@@ -0,0 +1,132 @@
+package com.bhuang.cooperation;
+
+import com.bhuang.BlockingQueueWithCondition;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 一个生产者、一个消费者交接 1000 万个字符串，对比三种方式的吞吐量、每个元素的分配量和同步次数：
+ * 1. BlockingQueueWithCondition：逐个 give/take（BlockingQueueWithCondition.Producer/Consumer 的做法）。
+ * 2. ArrayBlockingQueue：逐个 put/take。
+ * 3. DoubleBuffer：生产者填满 1024 个元素后与消费者交换缓冲区。
+ *
+ * 字符串预先创建好循环使用，测到的分配量只来自交接本身。
+ */
+public class DoubleBufferDemo {
+
+    private static final int ITEMS = 10_000_000;
+    private static final int CAPACITY = 1024;
+    private static final String[] DATA = new String[CAPACITY];
+
+    static {
+        for (int i = 0; i < DATA.length; i++) {
+            DATA[i] = "Data-" + i;
+        }
+    }
+
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long id : bean.getAllThreadIds()) {
+            long bytes = bean.getThreadAllocatedBytes(id);
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    interface Body {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * 启动消费者线程，在当前线程上运行生产者，打印吞吐量、分配量、同步次数和消费者计算的校验和。
+     */
+    static void measure(String name, Body producer, Body consumer, long[] checksum, long[] handoffs)
+            throws InterruptedException {
+        Thread consumerThread = new Thread(() -> {
+            try {
+                consumer.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "consumer");
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        consumerThread.start();
+        producer.run();
+        consumerThread.join();
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.printf("%-28s %6.1f M items/s  %6.1f bytes/item  hand-offs=%-9d checksum=%d%n", name,
+                ITEMS * 1000.0 / nanos, (double) allocated / ITEMS, handoffs[0], checksum[0]);
+    }
+
+    static void conditionQueue() throws InterruptedException {
+        BlockingQueueWithCondition queue = new BlockingQueueWithCondition(CAPACITY, false);
+        long[] checksum = new long[1];
+        long[] handoffs = {ITEMS};
+        measure("BlockingQueueWithCondition", () -> {
+            for (int i = 0; i < ITEMS; i++) {
+                queue.give(DATA[i & (CAPACITY - 1)]);
+            }
+        }, () -> {
+            for (int i = 0; i < ITEMS; i++) {
+                checksum[0] += queue.take().length();
+            }
+        }, checksum, handoffs);
+    }
+
+    static void arrayBlockingQueue() throws InterruptedException {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+        long[] checksum = new long[1];
+        long[] handoffs = {ITEMS};
+        measure("ArrayBlockingQueue", () -> {
+            for (int i = 0; i < ITEMS; i++) {
+                queue.put(DATA[i & (CAPACITY - 1)]);
+            }
+        }, () -> {
+            for (int i = 0; i < ITEMS; i++) {
+                checksum[0] += queue.take().length();
+            }
+        }, checksum, handoffs);
+    }
+
+    static void doubleBuffer() throws InterruptedException {
+        DoubleBuffer<String> buffer = new DoubleBuffer<>(CAPACITY);
+        long[] checksum = new long[1];
+        long[] handoffs = new long[1];
+        measure("DoubleBuffer", () -> {
+            for (int i = 0; i < ITEMS; i++) {
+                buffer.put(DATA[i & (CAPACITY - 1)]);
+            }
+            buffer.close();
+            handoffs[0] = buffer.exchanges();
+        }, () -> {
+            while (true) {
+                DoubleBuffer.Batch<String> batch = buffer.take();
+                long sum = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    sum += batch.get(i).length();
+                }
+                checksum[0] += sum;
+                if (batch.isLast()) {
+                    break;
+                }
+            }
+        }, checksum, handoffs);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // 第一轮用来预热，看第二轮的结果
+        for (int round = 0; round < 2; round++) {
+            System.out.println("round " + round);
+            conditionQueue();
+            arrayBlockingQueue();
+            doubleBuffer();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.bhuang.coroutines
+
+import com.bhuang.BlockingQueueWithCondition
+import com.bhuang.threadTest.PriorityExecutor
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.yield
+import java.lang.management.ManagementFactory
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 1. 1 万个生产者协程和 1 万个消费者协程通过容量为 64 的 SuspendingQueue 交换 20 万个元素，只用 4 个线程；
+ *    对照组是 1000 个生产者线程和 1000 个消费者线程用阻塞的 give/take 交换同样数量的元素。
+ * 2. limitedParallelism(2)：同时运行的协程不超过 2 个。
+ * 3. KeyedDispatcher：同一个账户的更新串行执行，不加锁的余额仍然正确。
+ * 4. PriorityExecutor 上按优先级调度的协程。
+ */
+private const val ITEMS = 200_000
+private const val QUEUE_CAPACITY = 64
+
+private val threads = ManagementFactory.getThreadMXBean()
+
+private fun coroutines(pool: ExecutorDispatcher) = runBlocking {
+    val coroutines = 10_000
+    val perCoroutine = ITEMS / coroutines
+    val queue = SuspendingQueue(BlockingQueueWithCondition(QUEUE_CAPACITY, false))
+    val consumed = AtomicLong()
+    threads.resetPeakThreadCount()
+    val start = System.nanoTime()
+    withContext(pool) {
+        repeat(coroutines) { p ->
+            launch {
+                repeat(perCoroutine) { i -> queue.give("Data-$p-$i") }
+            }
+            launch {
+                repeat(perCoroutine) { consumed.addAndGet(queue.take().length.toLong()) }
+            }
+        }
+    }
+    val millis = (System.nanoTime() - start) / 1_000_000
+    println("%,d coroutines on 4 threads:   %5d ms, peak threads = %4d, consumed chars = %d"
+        .format(coroutines * 2, millis, threads.peakThreadCount, consumed.get()))
+}
+
+private fun platformThreads() {
+    val count = 1_000
+    val perThread = ITEMS / count
+    val queue = BlockingQueueWithCondition(QUEUE_CAPACITY, false)
+    val consumed = AtomicLong()
+    threads.resetPeakThreadCount()
+    val start = System.nanoTime()
+    val all = (0 until count).flatMap { p ->
+        listOf(
+            Thread { repeat(perThread) { i -> queue.give("Data-$p-$i") } },
+            Thread { repeat(perThread) { consumed.addAndGet(queue.take().length.toLong()) } },
+        )
+    }
+    all.forEach { it.start() }
+    all.forEach { it.join() }
+    val millis = (System.nanoTime() - start) / 1_000_000
+    println("%,d platform threads:          %5d ms, peak threads = %4d, consumed chars = %d"
+        .format(count * 2, millis, threads.peakThreadCount, consumed.get()))
+}
+
+@OptIn(ExperimentalCoroutinesApi::class)
+private fun limited(pool: ExecutorDispatcher) = runBlocking {
+    val view = pool.limitedParallelism(2)
+    val running = AtomicInteger()
+    val maxRunning = AtomicInteger()
+    withContext(view) {
+        repeat(1_000) {
+            launch {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max)
+                // 阻塞一小段时间，占着线程，让并发的协程有机会同时运行
+                Thread.sleep(0, 200_000)
+                running.decrementAndGet()
+                yield()
+            }
+        }
+    }
+    println("limitedParallelism(2): 1000 coroutines, max running at once = ${maxRunning.get()}")
+}
+
+private fun keyed(pool: ExecutorDispatcher) = runBlocking {
+    val accounts = 8
+    val keyed = KeyedDispatcher(pool)
+    // 不加锁的余额：同一个账户的协程串行执行，有 happens-before，不会丢失更新
+    val balances = LongArray(accounts)
+    coroutineScope {
+        repeat(100_000) { i ->
+            val account = i % accounts
+            launch(keyed.forKey("account-$account")) {
+                balances[account]++
+            }
+        }
+    }
+    println("KeyedDispatcher: balances = ${balances.joinToString()} (expected ${100_000 / accounts} each)")
+}
+
+private fun priority() = runBlocking {
+    val executor = PriorityExecutor("coroutines", 2)
+    val interactive = executor.asDispatcher(PriorityExecutor.Priority.INTERACTIVE)
+    val batch = executor.asDispatcher(PriorityExecutor.Priority.BATCH)
+    coroutineScope {
+        repeat(100) { launch(batch) { Thread.sleep(1) } }
+        launch(interactive) { println("PriorityExecutor: interactive coroutine ran on ${Thread.currentThread().name}") }
+    }
+    executor.shutdown()
+    executor.awaitTermination(10, TimeUnit.SECONDS)
+    println(executor.report())
+}
+
+fun main() {
+    val executor = Executors.newFixedThreadPool(4)
+    val pool = executor.asDispatcher("pool-4")
+    repeat(2) {
+        coroutines(pool)
+        platformThreads()
+    }
+    limited(pool)
+    keyed(pool)
+    priority()
+    executor.shutdown()
+}
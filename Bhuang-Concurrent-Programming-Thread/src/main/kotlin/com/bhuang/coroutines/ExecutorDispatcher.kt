@@ -0,0 +1,54 @@
+package com.bhuang.coroutines
+
+import com.bhuang.threadTest.PriorityExecutor
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.cancel
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.cancellation.CancellationException
+
+/**
+ * 把项目中的任意 [Executor]（线程池、PriorityExecutor、SerialExecutor）当作协程调度器使用：
+ * 协程每次恢复执行（启动、从挂起点醒来）都作为一个 Runnable 交给 executor。
+ *
+ * 协程挂起时不占用线程，所以几千个协程可以共享一个只有几个线程的线程池；
+ * 只有正在运行的那一段代码需要线程，挂起的协程只是堆上的一个续体（continuation）对象。
+ *
+ * executor 拒绝任务时（已经关闭或者队列满了），取消这个协程，并把这一次恢复交给 Dispatchers.IO 执行，
+ * 让协程能跑完 finally 块正常结束，而不是永远挂起。
+ */
+class ExecutorDispatcher(
+    private val executor: Executor,
+    private val name: String = executor.toString(),
+) : CoroutineDispatcher() {
+
+    override fun dispatch(context: CoroutineContext, block: Runnable) {
+        try {
+            executor.execute(block)
+        } catch (e: RejectedExecutionException) {
+            context.cancel(CancellationException("$name rejected the task", e))
+            Dispatchers.IO.dispatch(context, block)
+        }
+    }
+
+    /**
+     * 同一时刻最多只有 [parallelism] 个协程在这个视图上运行，但用的仍然是底层 executor 的线程；
+     * parallelism 为 1 时就是串行调度器，相当于套在 executor 外面的 SerialExecutor。
+     */
+    @ExperimentalCoroutinesApi
+    override fun limitedParallelism(parallelism: Int): CoroutineDispatcher =
+        LimitedDispatcher(this, parallelism, "$name.limited($parallelism)")
+
+    override fun toString(): String = name
+}
+
+fun Executor.asDispatcher(name: String = toString()): ExecutorDispatcher = ExecutorDispatcher(this, name)
+
+/**
+ * 在 PriorityExecutor 上按指定的优先级调度：交互式的协程用 INTERACTIVE，批处理用 BATCH，共享同一组线程。
+ */
+fun PriorityExecutor.asDispatcher(priority: PriorityExecutor.Priority): ExecutorDispatcher =
+    ExecutorDispatcher({ execute(it, priority) }, "$this.$priority")
@@ -0,0 +1,30 @@
+package com.bhuang.coroutines
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+
+/**
+ * 按 key 串行的调度器：同一个 key（比如账户 ID、会话 ID）的协程一个接一个地运行，不同 key 的协程在父调度器上并行。
+ * 同一个 key 的状态因此只会被一个线程修改，不需要加锁。
+ *
+ * key 按哈希映射到固定数量的串行通道（parent.limitedParallelism(1)），不为每个 key 创建对象，也就不需要清理空闲的 key；
+ * 代价是不同的 key 可能落到同一个通道上，被不必要地串行化。通道数取 2 的幂，应该明显大于父调度器的线程数。
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+class KeyedDispatcher(parent: CoroutineDispatcher, lanes: Int = 64) {
+
+    private val mask: Int
+    private val serialLanes: Array<CoroutineDispatcher>
+
+    init {
+        require(lanes > 0 && lanes and (lanes - 1) == 0) { "lanes must be a power of two: $lanes" }
+        mask = lanes - 1
+        serialLanes = Array(lanes) { parent.limitedParallelism(1) }
+    }
+
+    fun forKey(key: Any): CoroutineDispatcher {
+        val h = key.hashCode()
+        // 与 HashMap 一样把高位混进低位，避免只有高位不同的 key 落到同一个通道
+        return serialLanes[(h xor (h ushr 16)) and mask]
+    }
+}
@@ -0,0 +1,99 @@
+package com.bhuang.coroutines
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.EmptyCoroutineContext
+
+/**
+ * 父调度器上的一个“限制并行度”的视图，思路与 ExecutorDemo.SerialExecutor 相同，只是把“最多一个”推广到“最多 n 个”：
+ *
+ * 1. 提交的任务先放进自己的无锁队列，正在运行的 worker 少于 n 个时，才向父调度器提交一个 worker。
+ * 2. worker 在父调度器的线程上循环取自己队列中的任务执行，所以这个视图的任务最多只占用父调度器的 n 个线程。
+ * 3. 连续执行 [FAIRNESS_BATCH] 个任务后，worker 把自己重新提交给父调度器并退出，
+ *    让共享同一个父调度器的其他任务也有机会运行，而不是一直占着线程。
+ * 4. 队列空了 worker 就退出；退出之后要再检查一次队列：提交者可能在 worker 减计数之前看到“已经满员”而没有提交新的 worker。
+ *
+ * 与 SerialExecutor 不同的是，这里没有 synchronized：入队是 ConcurrentLinkedQueue，worker 计数是一个 CAS。
+ */
+internal class LimitedDispatcher(
+    private val parent: CoroutineDispatcher,
+    private val parallelism: Int,
+    private val name: String,
+) : CoroutineDispatcher() {
+
+    private val queue = ConcurrentLinkedQueue<Runnable>()
+    private val running = AtomicInteger()
+
+    // worker 不保存每次运行的状态，所有正在运行的 worker 共用同一个对象，调度时不分配内存
+    private val worker = Runnable { runWorker() }
+
+    init {
+        require(parallelism > 0) { "parallelism must be positive: $parallelism" }
+    }
+
+    override fun dispatch(context: CoroutineContext, block: Runnable) {
+        queue.add(block)
+        if (tryReserve()) {
+            parent.dispatch(EmptyCoroutineContext, worker)
+        }
+    }
+
+    /**
+     * 在父调度器的基础上再限制一次，取两者中较小的并行度。
+     */
+    @ExperimentalCoroutinesApi
+    override fun limitedParallelism(parallelism: Int): CoroutineDispatcher =
+        if (parallelism >= this.parallelism) this else LimitedDispatcher(this, parallelism, "$name.limited($parallelism)")
+
+    private fun tryReserve(): Boolean {
+        while (true) {
+            val current = running.get()
+            if (current >= parallelism) {
+                return false
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                return true
+            }
+        }
+    }
+
+    private fun runWorker() {
+        var executed = 0
+        while (true) {
+            val task = queue.poll()
+            if (task == null) {
+                running.decrementAndGet()
+                if (queue.isEmpty() || !tryReserve()) {
+                    return
+                }
+                continue
+            }
+            try {
+                task.run()
+            } catch (t: Throwable) {
+                // 协程的恢复任务自己处理异常，这里只是防止其他任务的异常让 worker 退出、计数泄漏
+                val thread = Thread.currentThread()
+                thread.uncaughtExceptionHandler.uncaughtException(thread, t)
+            }
+            if (++executed >= FAIRNESS_BATCH) {
+                // 保留名额，把自己重新排到父调度器的队尾
+                parent.dispatch(EmptyCoroutineContext, worker)
+                return
+            }
+        }
+    }
+
+    /**
+     * 当前排队等待的任务数，用于观察。
+     */
+    fun queued(): Int = queue.size
+
+    override fun toString(): String = name
+
+    private companion object {
+        const val FAIRNESS_BATCH = 16
+    }
+}
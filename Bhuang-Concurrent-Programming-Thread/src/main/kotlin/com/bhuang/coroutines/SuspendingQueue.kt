@@ -0,0 +1,91 @@
+package com.bhuang.coroutines
+
+import com.bhuang.BlockingQueueWithCondition
+import kotlinx.coroutines.CancellableContinuation
+import kotlinx.coroutines.suspendCancellableCoroutine
+import java.util.concurrent.ConcurrentLinkedQueue
+import kotlin.coroutines.cancellation.CancellationException
+import kotlin.coroutines.resume
+
+/**
+ * BlockingQueueWithCondition 的挂起版 give/take：队列满或空时，协程挂起并释放线程，而不是让线程阻塞在 Condition 上。
+ * 几千个生产者和消费者协程可以共享几个线程；同一个队列仍然可以同时被普通线程用阻塞的 give/take 访问。
+ *
+ * 实现方式：
+ * 1. 先用不阻塞的 offer/poll 试一次，成功就直接返回，不挂起。
+ * 2. 失败时把续体登记到等待队列，登记之后再检查一次条件：条件在“试一次”和“登记”之间发生了变化的话，自己唤醒一个等待者，
+ *    否则这次通知就丢了。
+ * 3. 队列放入数据时唤醒一个等待取的协程，取出数据时唤醒一个等待放的协程（通过队列的监听器，普通线程的 give/take 也会触发）。
+ *    被唤醒的协程回到第 1 步重试，没抢到就再挂起，所以多余的唤醒是无害的。
+ * 4. 协程在等待中被取消时，它可能已经被选中唤醒，这次唤醒不能浪费，转交给下一个等待者。
+ * 5. 一次通知只唤醒一个等待者，但一次 drain 会腾出很多空位。所以成功之后如果还有空位（或者还有数据）并且还有等待者，
+ *    接着唤醒下一个，唤醒沿着等待者依次传下去，不会有协程在条件已经满足时一直挂着。
+ */
+class SuspendingQueue(val queue: BlockingQueueWithCondition) {
+
+    private val takers = ConcurrentLinkedQueue<CancellableContinuation<Unit>>()
+    private val givers = ConcurrentLinkedQueue<CancellableContinuation<Unit>>()
+
+    init {
+        queue.addListener { wakeOne(takers) }
+        queue.addSpaceListener { wakeOne(givers) }
+    }
+
+    suspend fun give(data: String) {
+        while (!queue.offer(data)) {
+            await(givers) { queue.size() < queue.capacity() }
+        }
+        if (givers.isNotEmpty() && queue.size() < queue.capacity()) {
+            wakeOne(givers)
+        }
+    }
+
+    suspend fun take(): String {
+        while (true) {
+            val data = queue.poll()
+            if (data != null) {
+                if (takers.isNotEmpty() && queue.size() > 0) {
+                    wakeOne(takers)
+                }
+                return data
+            }
+            await(takers) { queue.size() > 0 }
+        }
+    }
+
+    private suspend inline fun await(
+        waiters: ConcurrentLinkedQueue<CancellableContinuation<Unit>>,
+        crossinline ready: () -> Boolean,
+    ) {
+        try {
+            suspendCancellableCoroutine<Unit> { cont ->
+                waiters.add(cont)
+                cont.invokeOnCancellation { waiters.remove(cont) }
+                if (ready()) {
+                    wakeOne(waiters)
+                }
+            }
+        } catch (e: CancellationException) {
+            wakeOne(waiters)
+            throw e
+        }
+    }
+
+    private fun wakeOne(waiters: ConcurrentLinkedQueue<CancellableContinuation<Unit>>) {
+        while (true) {
+            val cont = waiters.poll() ?: return
+            // 已经取消的续体 resume 会被忽略，跳过它找下一个
+            if (cont.isActive) {
+                cont.resume(Unit)
+                return
+            }
+        }
+    }
+
+    /**
+     * 挂起等待中的协程数，用于观察。
+     */
+    fun suspendedTakers(): Int = takers.size
+
+    fun suspendedGivers(): Int = givers.size
+}
@@ -0,0 +1,86 @@
+package com.bhuang.deadline;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ThreadPoolExecutor 的工作队列：平时先进先出，积压超过 lifoThreshold 个任务时改为后进先出。
+ *
+ * 过载时先进先出意味着每个请求都要排完整个队列，排队时间一旦超过调用方的超时，所有请求都会失败，吞吐量再高也没有用。
+ * 后进先出先执行刚到的请求，它们离截止时间最远；被压在队首的旧请求反正已经来不及了，
+ * 每次出队时顺便从队首清理最多 {@link #PURGE_BATCH} 个已经过期的 DeadlineExecutor 任务，让它们的 future 尽快以异常结束。
+ * 积压消退到阈值以下后恢复先进先出，轻载时的顺序和公平性不受影响。
+ *
+ * 只覆盖了工作线程使用的 take() 和 poll(timeout)，offer 与普通的 LinkedBlockingDeque 相同。
+ */
+public class AdaptiveLifoQueue extends LinkedBlockingDeque<Runnable> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int PURGE_BATCH = 8;
+
+    private final int lifoThreshold;
+    private final LongAdder lifoTakes = new LongAdder();
+    private final LongAdder purged = new LongAdder();
+
+    public AdaptiveLifoQueue(int capacity, int lifoThreshold) {
+        super(capacity);
+        if (lifoThreshold < 0) {
+            throw new IllegalArgumentException("lifoThreshold must not be negative: " + lifoThreshold);
+        }
+        this.lifoThreshold = lifoThreshold;
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        Runnable task = pollLastIfOverloaded();
+        return task != null ? task : takeFirst();
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Runnable task = pollLastIfOverloaded();
+        return task != null ? task : pollFirst(timeout, unit);
+    }
+
+    private Runnable pollLastIfOverloaded() {
+        if (size() <= lifoThreshold) {
+            return null;
+        }
+        purgeStaleHead();
+        Runnable task = pollLast();
+        if (task != null) {
+            lifoTakes.increment();
+        }
+        return task;
+    }
+
+    private void purgeStaleHead() {
+        for (int i = 0; i < PURGE_BATCH; i++) {
+            Runnable head = peekFirst();
+            if (!(head instanceof DeadlineExecutor.DeadlineTask<?> task) || !task.isStale()) {
+                return;
+            }
+            // 其他工作线程可能同时取走了队首，只有真的由这里移除的任务才结束它
+            if (removeFirstOccurrence(head)) {
+                purged.increment();
+                task.expire();
+            }
+        }
+    }
+
+    /**
+     * 后进先出方式取出的任务数。
+     */
+    public long lifoTakes() {
+        return lifoTakes.sum();
+    }
+
+    /**
+     * 从队首清理掉的过期任务数。
+     */
+    public long purged() {
+        return purged.sum();
+    }
+}
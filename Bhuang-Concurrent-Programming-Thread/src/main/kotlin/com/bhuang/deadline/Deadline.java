@@ -0,0 +1,120 @@
+package com.bhuang.deadline;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 一个绝对的截止时间（System.nanoTime() 的值），而不是“还剩多少时间”：
+ * 任务在队列里等待、在线程之间传递的过程中，剩余时间自然在减少，不需要每一跳重新计算。
+ *
+ * 当前线程的截止时间保存在线程局部变量中：{@link #run(Runnable)} / {@link #call(Callable)} 在执行期间把它设为当前截止时间，
+ * DeadlineExecutor 在提交时读取 {@link #current()}，执行任务时再把它设回去。
+ * 所以一个请求入口设置一次截止时间，之后在线程池之间层层提交的任务都带着同一个截止时间，不需要每一层都传参数。
+ */
+public final class Deadline implements Comparable<Deadline> {
+
+    /**
+     * 没有截止时间。
+     */
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE, true);
+
+    private static final ThreadLocal<Deadline> CURRENT = ThreadLocal.withInitial(() -> NONE);
+
+    private final long deadlineNanos;
+    private final boolean infinite;
+
+    private Deadline(long deadlineNanos, boolean infinite) {
+        this.deadlineNanos = deadlineNanos;
+        this.infinite = infinite;
+    }
+
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout), false);
+    }
+
+    /**
+     * 当前线程的截止时间，没有设置时返回 {@link #NONE}。
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    public boolean isExpired() {
+        return !infinite && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 剩余时间，已经过期时返回 0 或负数。没有截止时间时返回 Long.MAX_VALUE。
+     */
+    public long remaining(TimeUnit unit) {
+        if (infinite) {
+            return Long.MAX_VALUE;
+        }
+        return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public void throwIfExpired() {
+        if (isExpired()) {
+            throw new DeadlineExceededException(this);
+        }
+    }
+
+    /**
+     * 两个截止时间中较早的一个：下游调用自己的超时不能超过上游剩余的时间。
+     */
+    public Deadline min(Deadline other) {
+        return compareTo(other) <= 0 ? this : other;
+    }
+
+    /**
+     * 以这个截止时间作为当前截止时间执行 task，结束后恢复原来的值。
+     */
+    public void run(Runnable task) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            task.run();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public <T> T supply(Supplier<T> task) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    public <T> T call(Callable<T> task) throws Exception {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.call();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    @Override
+    public int compareTo(Deadline other) {
+        if (infinite || other.infinite) {
+            return Boolean.compare(infinite, other.infinite);
+        }
+        // nanoTime 可能溢出，比较差值而不是直接比较大小
+        return Long.signum(deadlineNanos - other.deadlineNanos);
+    }
+
+    @Override
+    public String toString() {
+        if (infinite) {
+            return "Deadline.NONE";
+        }
+        long remaining = remaining(TimeUnit.MICROSECONDS);
+        return remaining > 0 ? "Deadline(" + remaining + "us left)" : "Deadline(expired " + -remaining + "us ago)";
+    }
+}
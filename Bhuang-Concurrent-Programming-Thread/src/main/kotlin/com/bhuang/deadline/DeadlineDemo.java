@@ -0,0 +1,121 @@
+package com.bhuang.deadline;
+
+import com.bhuang.profiler.Log2Histogram;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 4 个工作线程，每个请求执行 2ms，容量是每秒 2000 个；请求以每秒 3000 个的速率持续到来 3 秒（1.5 倍过载），
+ * 调用方只等 100ms。对比三种线程池在过载时的有效吞吐量（goodput：在截止时间之内完成的请求数）：
+ *
+ * 1. Executors.newFixedThreadPool：先进先出，所有任务都会执行，包括调用方早已放弃的。
+ * 2. DeadlineExecutor + 先进先出：出队时丢弃已经过期的任务。
+ * 3. DeadlineExecutor + AdaptiveLifoQueue：积压超过 16 个时后进先出，并从队首清理过期任务。
+ *
+ * 最后演示 DeadlineStages：第一个阶段超时之后，后面的阶段不会执行。
+ */
+public class DeadlineDemo {
+
+    private static final int THREADS = 4;
+    private static final long SERVICE_MICROS = 2_000;
+    private static final long DEADLINE_MILLIS = 100;
+    private static final int ARRIVALS_PER_SECOND = 3_000;
+    private static final long DURATION_SECONDS = 3;
+
+    interface Submitter {
+        CompletableFuture<Integer> submit(Deadline deadline);
+    }
+
+    /**
+     * 用 park 模拟执行时间，理由见 PriorityExecutorDemo.work。
+     */
+    static Integer work() {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(SERVICE_MICROS));
+        return 1;
+    }
+
+    static void run(String name, Submitter submitter, Runnable shutdown) throws InterruptedException {
+        LongAdder inTime = new LongAdder();
+        LongAdder late = new LongAdder();
+        LongAdder failed = new LongAdder();
+        Log2Histogram latency = new Log2Histogram();
+        long interval = TimeUnit.SECONDS.toNanos(1) / ARRIVALS_PER_SECOND;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        long next = start;
+        int submitted = 0;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[(int) (ARRIVALS_PER_SECOND * DURATION_SECONDS) + 1];
+        // 开环：按计划的到达时间提交，不因为线程池变慢而少提交（避免 coordinated omission）
+        while (next < end && submitted < futures.length) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            long arrival = next;
+            next += interval;
+            Deadline deadline = Deadline.after(DEADLINE_MILLIS - TimeUnit.NANOSECONDS.toMillis(now - arrival),
+                    TimeUnit.MILLISECONDS);
+            futures[submitted++] = submitter.submit(deadline).whenComplete((value, error) -> {
+                long elapsed = System.nanoTime() - arrival;
+                if (error != null) {
+                    failed.increment();
+                } else if (elapsed <= TimeUnit.MILLISECONDS.toNanos(DEADLINE_MILLIS)) {
+                    inTime.increment();
+                    latency.record(elapsed);
+                } else {
+                    late.increment();
+                }
+            });
+        }
+        for (int i = 0; i < submitted; i++) {
+            futures[i].exceptionally(e -> null).join();
+        }
+        shutdown.run();
+        System.out.printf("%-32s goodput=%5.0f/s in-time=%-5d late=%-5d shed=%-5d p50=%5dus p99=%6dus%n", name,
+                inTime.sum() / (double) DURATION_SECONDS, inTime.sum(), late.sum(), failed.sum(),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(99)));
+    }
+
+    static void stages() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Deadline deadline = Deadline.after(50, TimeUnit.MILLISECONDS);
+        AtomicBoolean rendered = new AtomicBoolean();
+        CompletableFuture<String> response = CompletableFuture.supplyAsync(DeadlineStages.supply(deadline, () -> {
+            // 查询比截止时间还慢
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(80));
+            return "rows";
+        }), pool).thenApply(DeadlineStages.apply(deadline, rows -> {
+            rendered.set(true);
+            return "<html>" + rows + "</html>";
+        }));
+        String result = response.handle((value, error) -> value != null ? value : error.getCause().toString()).join();
+        System.out.println("DeadlineStages: " + result + ", render stage ran = " + rendered.get());
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ExecutorService plain = Executors.newFixedThreadPool(THREADS);
+        run("fixed pool (FIFO, no deadline)",
+                deadline -> CompletableFuture.supplyAsync(DeadlineDemo::work, plain), plain::shutdown);
+
+        DeadlineExecutor fifo = new DeadlineExecutor("fifo", Executors.newFixedThreadPool(THREADS));
+        run("DeadlineExecutor (FIFO)", deadline -> fifo.submit(DeadlineDemo::work, deadline), fifo::shutdown);
+        System.out.println("  " + fifo.report());
+
+        DeadlineExecutor lifo = DeadlineExecutor.fixed("adaptive-lifo", THREADS, 100_000, 16);
+        run("DeadlineExecutor (adaptive LIFO)", deadline -> lifo.submit(DeadlineDemo::work, deadline), lifo::shutdown);
+        AdaptiveLifoQueue queue = (AdaptiveLifoQueue) ((ThreadPoolExecutor) lifo.delegate()).getQueue();
+        System.out.println("  " + lifo.report() + " lifoTakes=" + queue.lifoTakes() + " purged=" + queue.purged());
+
+        stages();
+    }
+}
@@ -0,0 +1,21 @@
+package com.bhuang.deadline;
+
+/**
+ * 截止时间已过，任务没有执行（或者在阶段开始之前被丢弃）。调用方此时已经放弃等待，执行它只会浪费容量。
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Deadline deadline;
+
+    public DeadlineExceededException(Deadline deadline) {
+        // 不需要调用栈：过载时每秒可能抛出成千上万个，填充调用栈的开销正好落在最缺容量的时候
+        super(deadline.toString(), null, false, false);
+        this.deadline = deadline;
+    }
+
+    public Deadline deadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,219 @@
+package com.bhuang.deadline;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 给任意 Executor（ExecutorDemo.SerialExecutor、Executors.newFixedThreadPool、PriorityExecutor）加上截止时间：
+ *
+ * 1. 提交时记下任务的截止时间（默认是提交线程的 {@link Deadline#current()}），已经过期的任务直接丢弃，不进入队列。
+ * 2. 任务被工作线程取出、真正开始执行之前再检查一次：过期了就不执行，future 以 {@link DeadlineExceededException} 结束并计数；
+ *    调用方已经放弃（future 已经被取消或者被 orTimeout 结束）的任务同样跳过。
+ * 3. 执行期间截止时间是工作线程的当前截止时间，任务里再提交的任务、构造的 CompletableFuture 阶段都会继承它。
+ *
+ * 队列积压时，排在前面的任务往往在轮到它们之前调用方就已经超时了。普通线程池仍然会一个个执行它们，
+ * 容量最紧张的时候反而全部花在了没有人要的结果上；这里把它们在出队时丢掉，线程只执行还来得及的任务。
+ *
+ * 配合 {@link AdaptiveLifoQueue}（{@link #fixed(String, int, int, int)}）还可以在积压时后进先出：
+ * 新到的请求离截止时间最远，先执行它们成功的概率最大。
+ */
+public class DeadlineExecutor implements Executor {
+
+    private final String name;
+    private final Executor delegate;
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder expiredAtSubmit = new LongAdder();
+    private final LongAdder expiredInQueue = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public DeadlineExecutor(String name, Executor delegate) {
+        this.name = name;
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+    }
+
+    /**
+     * 固定大小的线程池，使用有界的 {@link AdaptiveLifoQueue}：队列长度超过 lifoThreshold 时改为后进先出。
+     * lifoThreshold 为 Integer.MAX_VALUE 时始终先进先出。
+     */
+    public static DeadlineExecutor fixed(String name, int threads, int capacity, int lifoThreshold) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new AdaptiveLifoQueue(capacity, lifoThreshold), runnable -> {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        return new DeadlineExecutor(name, pool);
+    }
+
+    /**
+     * 使用当前线程的截止时间；过期的任务被丢弃，没有任何通知，只计数。
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, Deadline.current());
+    }
+
+    public void execute(Runnable command, Deadline deadline) {
+        Objects.requireNonNull(command, "command");
+        DeadlineTask<Void> task = new DeadlineTask<>(() -> {
+            command.run();
+            return null;
+        }, deadline, null, this);
+        if (!admit(task)) {
+            return;
+        }
+        try {
+            delegate.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> callable) {
+        return submit(callable, Deadline.current());
+    }
+
+    /**
+     * 提交一个带截止时间的任务。过期、被拒绝时 future 以异常结束，不会抛出异常。
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> callable, Deadline deadline) {
+        Objects.requireNonNull(callable, "callable");
+        CompletableFuture<T> future = new CompletableFuture<>();
+        DeadlineTask<T> task = new DeadlineTask<>(callable, deadline, future, this);
+        if (admit(task)) {
+            try {
+                delegate.execute(task);
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
+    }
+
+    private boolean admit(DeadlineTask<?> task) {
+        if (task.deadline.isExpired()) {
+            expiredAtSubmit.increment();
+            task.fail();
+            return false;
+        }
+        return true;
+    }
+
+    public void shutdown() {
+        if (delegate instanceof ExecutorService service) {
+            service.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return !(delegate instanceof ExecutorService service) || service.awaitTermination(timeout, unit);
+    }
+
+    public Executor delegate() {
+        return delegate;
+    }
+
+    public long executed() {
+        return executed.sum();
+    }
+
+    /**
+     * 提交时或出队时已经过期而被丢弃的任务数。
+     */
+    public long expired() {
+        return expiredAtSubmit.sum() + expiredInQueue.sum();
+    }
+
+    public long abandoned() {
+        return abandoned.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    public String report() {
+        return String.format("%s: executed=%d expired(submit)=%d expired(queue)=%d abandoned=%d rejected=%d", name,
+                executed.sum(), expiredAtSubmit.sum(), expiredInQueue.sum(), abandoned.sum(), rejected.sum());
+    }
+
+    /**
+     * 提交给底层 executor 的任务。AdaptiveLifoQueue 在后进先出时用 {@link #isStale()} / {@link #expire()} 清理队首的过期任务。
+     */
+    static final class DeadlineTask<T> implements Runnable {
+        private final Callable<T> callable;
+        final Deadline deadline;
+        // execute(Runnable) 提交的任务没有 future
+        private final CompletableFuture<T> future;
+        private final DeadlineExecutor owner;
+
+        DeadlineTask(Callable<T> callable, Deadline deadline, CompletableFuture<T> future, DeadlineExecutor owner) {
+            this.callable = callable;
+            this.deadline = deadline;
+            this.future = future;
+            this.owner = owner;
+        }
+
+        /**
+         * 截止时间已过，或者调用方已经不再等待结果。
+         */
+        boolean isStale() {
+            return deadline.isExpired() || future != null && future.isDone();
+        }
+
+        /**
+         * 不执行，直接结束：过期的以 DeadlineExceededException 结束 future，已经被调用方结束的只计数。
+         */
+        void expire() {
+            if (future != null && future.isDone()) {
+                owner.abandoned.increment();
+            } else {
+                owner.expiredInQueue.increment();
+                fail();
+            }
+        }
+
+        void fail() {
+            if (future != null) {
+                future.completeExceptionally(new DeadlineExceededException(deadline));
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isStale()) {
+                expire();
+                return;
+            }
+            try {
+                T result = deadline.call(callable);
+                if (future != null) {
+                    future.complete(result);
+                }
+            } catch (Throwable t) {
+                if (future == null) {
+                    // 与普通线程池一样，execute 提交的任务抛出的异常交给线程的 UncaughtExceptionHandler
+                    sneakyThrow(t);
+                }
+                future.completeExceptionally(t);
+            } finally {
+                owner.executed.increment();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <E extends Throwable> void sneakyThrow(Throwable t) throws E {
+            throw (E) t;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bhuang.deadline;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 在 CompletableFuture 的每个阶段开始之前检查截止时间：
+ *
+ * <pre>
+ * Deadline deadline = Deadline.after(200, TimeUnit.MILLISECONDS);
+ * CompletableFuture.supplyAsync(DeadlineStages.supply(deadline, this::query), pool)
+ *         .thenApply(DeadlineStages.apply(deadline, this::render))
+ *         .thenAccept(DeadlineStages.accept(deadline, this::send));
+ * </pre>
+ *
+ * 阶段开始时已经过期就抛出 {@link DeadlineExceededException}，后面的阶段跟着以异常结束，一个都不会执行；
+ * 没有过期时以这个截止时间作为当前截止时间执行，阶段里再提交给 DeadlineExecutor 的任务会继承它。
+ * 不带 deadline 参数的版本在包装时读取 {@link Deadline#current()}，适合在请求的处理线程上构造整条流水线。
+ *
+ * 与 HashedWheelTimer.orTimeout 互补：orTimeout 到时间就结束调用方拿到的 future，但已经开始的阶段和后续阶段仍然会执行；
+ * 这里让后续阶段不再执行，把容量留给还来得及的请求。
+ */
+public final class DeadlineStages {
+
+    private DeadlineStages() {
+    }
+
+    public static <T> Supplier<T> supply(Supplier<T> supplier) {
+        return supply(Deadline.current(), supplier);
+    }
+
+    public static <T> Supplier<T> supply(Deadline deadline, Supplier<T> supplier) {
+        return () -> {
+            deadline.throwIfExpired();
+            return deadline.supply(supplier);
+        };
+    }
+
+    public static <T, R> Function<T, R> apply(Function<T, R> function) {
+        return apply(Deadline.current(), function);
+    }
+
+    public static <T, R> Function<T, R> apply(Deadline deadline, Function<T, R> function) {
+        return value -> {
+            deadline.throwIfExpired();
+            return deadline.supply(() -> function.apply(value));
+        };
+    }
+
+    /**
+     * thenCompose 的版本：过期时不调用 function，也就不会发起下一次异步调用。
+     */
+    public static <T, R> Function<T, CompletionStage<R>> compose(Deadline deadline,
+                                                                 Function<T, ? extends CompletionStage<R>> function) {
+        return value -> {
+            deadline.throwIfExpired();
+            return deadline.supply(() -> function.apply(value));
+        };
+    }
+
+    public static <T> Consumer<T> accept(Consumer<T> consumer) {
+        return accept(Deadline.current(), consumer);
+    }
+
+    public static <T> Consumer<T> accept(Deadline deadline, Consumer<T> consumer) {
+        return value -> {
+            deadline.throwIfExpired();
+            deadline.run(() -> consumer.accept(value));
+        };
+    }
+
+    public static Runnable run(Runnable runnable) {
+        return run(Deadline.current(), runnable);
+    }
+
+    public static Runnable run(Deadline deadline, Runnable runnable) {
+        return () -> {
+            deadline.throwIfExpired();
+            deadline.run(runnable);
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package com.bhuang.disruptor;
+
+/**
+ * SequenceBarrier 被 alert（处理器停止）时，正在等待的处理器收到这个异常。
+ * 它只用于控制流程，所以是单例并且不收集调用栈。
+ */
+public final class AlertException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    static final AlertException INSTANCE = new AlertException();
+
+    private AlertException() {
+        super("alerted", null, false, false);
+    }
+}
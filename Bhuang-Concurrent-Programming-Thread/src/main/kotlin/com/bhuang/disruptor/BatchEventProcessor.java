@@ -0,0 +1,130 @@
+package com.bhuang.disruptor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在自己的线程上运行一个 EventHandler：等待屏障给出可用的最大序号，把 [next, available] 一批处理完，
+ * 再推进自己的 Sequence 一次。
+ *
+ * 处理器跟得上时每批只有一个事件；落后时一批会包含所有积压的事件，endOfBatch 只在最后一个事件上为 true，
+ * 处理器可以借此把一整批的 I/O 合并成一次，越落后批次越大，追赶得也越快。
+ */
+public final class BatchEventProcessor<E> implements Runnable {
+
+    private final String name;
+    private final RingBuffer<E> ringBuffer;
+    private final SequenceBarrier barrier;
+    private final EventHandler<E> handler;
+    private final Sequence sequence = new Sequence();
+    // IDLE -> RUNNING -> IDLE；线程启动之前收到的 halt 把 IDLE 改成 HALTED，run 看到之后直接退出，不会被覆盖
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    // 统计只由处理器线程写，每批写一次；volatile 让其他线程随时可以读到
+    private volatile long batches;
+    private volatile long events;
+    private volatile long maxBatch;
+    private volatile long failures;
+
+    private static final int IDLE = 0;
+    private static final int RUNNING = 1;
+    private static final int HALTED = 2;
+
+    public BatchEventProcessor(String name, RingBuffer<E> ringBuffer, SequenceBarrier barrier, EventHandler<E> handler) {
+        this.name = name;
+        this.ringBuffer = ringBuffer;
+        this.barrier = barrier;
+        this.handler = handler;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return 这个处理器的进度，下游处理器和生产者依赖它
+     */
+    public Sequence sequence() {
+        return sequence;
+    }
+
+    @Override
+    public void run() {
+        if (state.get() == RUNNING) {
+            throw new IllegalStateException(name + " is already running");
+        }
+        // 先清除 alert 再进入 RUNNING：在这之前到达的 halt 已经把状态改成了 HALTED，下面的 CAS 会失败；
+        // 之后到达的 halt 设置的 alert 不会再被清除
+        barrier.clearAlert();
+        if (!state.compareAndSet(IDLE, RUNNING)) {
+            state.set(IDLE);
+            return;
+        }
+        try {
+            process();
+        } finally {
+            state.set(IDLE);
+        }
+    }
+
+    private void process() {
+        long next = sequence.get() + 1;
+        while (true) {
+            try {
+                long available = barrier.waitFor(next);
+                long batch = available - next + 1;
+                while (next <= available) {
+                    try {
+                        handler.onEvent(ringBuffer.get(next), next, next == available);
+                    } catch (Throwable e) {
+                        // 一个事件失败不应该让整条流水线停下：记录之后继续处理后面的事件。
+                        // Error 也要接住：线程因此退出的话 Sequence 不再前进，生产者会在 next() 上永远等下去
+                        failures++;
+                        System.err.println(name + " failed on sequence " + next + ": " + e);
+                    }
+                    next++;
+                }
+                sequence.set(available);
+                batches++;
+                events += batch;
+                if (batch > maxBatch) {
+                    maxBatch = batch;
+                }
+            } catch (AlertException e) {
+                if (state.get() != RUNNING) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * 让处理器在当前批次结束之后退出。线程还没有开始运行时调用，线程开始后会直接退出。
+     */
+    public void halt() {
+        state.set(HALTED);
+        barrier.alert();
+    }
+
+    public long batches() {
+        return batches;
+    }
+
+    public long events() {
+        return events;
+    }
+
+    public long maxBatch() {
+        return maxBatch;
+    }
+
+    public long failures() {
+        return failures;
+    }
+
+    public double averageBatchSize() {
+        long n = batches;
+        return n == 0 ? 0 : (double) events / n;
+    }
+}
@@ -0,0 +1,138 @@
+package com.bhuang.disruptor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 描述处理器之间依赖关系的入口：
+ *
+ * <pre>
+ * Disruptor&lt;Order&gt; disruptor = new Disruptor&lt;&gt;("orders", Order::new, 1024, WaitStrategy.yielding());
+ * disruptor.handleEventsWith(journal, replicate)   // 两个处理器并行，各自看到每一个事件
+ *          .then(business);                        // business 只处理两者都处理完的事件
+ * RingBuffer&lt;Order&gt; ring = disruptor.start();
+ * </pre>
+ *
+ * 每个处理器一个线程。生产者等待的是依赖图的末端处理器（没有被任何处理器依赖的那些），
+ * 末端处理器又通过屏障等待上游，所以不会有事件在被所有处理器处理完之前被覆盖。
+ */
+public final class Disruptor<E> {
+
+    private final String name;
+    private final RingBuffer<E> ringBuffer;
+    private final List<BatchEventProcessor<E>> processors = new ArrayList<>();
+    // 还没有被任何处理器依赖的进度，生产者要等待它们
+    private final Set<Sequence> endOfChain = new LinkedHashSet<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private boolean started;
+
+    public Disruptor(String name, Supplier<E> factory, int bufferSize, WaitStrategy waitStrategy) {
+        this.name = name;
+        this.ringBuffer = new RingBuffer<>(factory, bufferSize, waitStrategy);
+    }
+
+    /**
+     * 这些处理器只等待生产者，彼此并行。
+     */
+    @SafeVarargs
+    public final HandlerGroup handleEventsWith(EventHandler<E>... handlers) {
+        return createProcessors(new Sequence[0], handlers);
+    }
+
+    @SafeVarargs
+    private HandlerGroup createProcessors(Sequence[] dependents, EventHandler<E>... handlers) {
+        if (started) {
+            throw new IllegalStateException("handlers must be added before start()");
+        }
+        SequenceBarrier barrier = ringBuffer.newBarrier(dependents);
+        Sequence[] sequences = new Sequence[handlers.length];
+        for (int i = 0; i < handlers.length; i++) {
+            BatchEventProcessor<E> processor = new BatchEventProcessor<>(name + "-" + processors.size(), ringBuffer,
+                    barrier, handlers[i]);
+            processors.add(processor);
+            sequences[i] = processor.sequence();
+            endOfChain.add(processor.sequence());
+        }
+        for (Sequence dependent : dependents) {
+            endOfChain.remove(dependent);
+        }
+        return new HandlerGroup(sequences);
+    }
+
+    /**
+     * 一组处理器，用 then 声明依赖它们的下一组。
+     */
+    public final class HandlerGroup {
+        private final Sequence[] sequences;
+
+        private HandlerGroup(Sequence[] sequences) {
+            this.sequences = sequences;
+        }
+
+        @SafeVarargs
+        public final HandlerGroup then(EventHandler<E>... handlers) {
+            return createProcessors(sequences, handlers);
+        }
+
+        /**
+         * 合并两组，下一组要等待两组都处理完，例如菱形依赖：A -> (B, C) -> D。
+         */
+        public HandlerGroup and(HandlerGroup other) {
+            Sequence[] merged = new Sequence[sequences.length + other.sequences.length];
+            System.arraycopy(sequences, 0, merged, 0, sequences.length);
+            System.arraycopy(other.sequences, 0, merged, sequences.length, other.sequences.length);
+            return new HandlerGroup(merged);
+        }
+    }
+
+    public RingBuffer<E> start() {
+        if (started) {
+            throw new IllegalStateException("already started");
+        }
+        started = true;
+        ringBuffer.setGatingSequences(endOfChain.toArray(new Sequence[0]));
+        for (BatchEventProcessor<E> processor : processors) {
+            Thread thread = new Thread(processor, processor.name());
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        return ringBuffer;
+    }
+
+    /**
+     * 等待所有处理器处理完已经发布的事件，然后停止它们。调用之前生产者要先停止发布。
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws TimeoutException, InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long published = ringBuffer.cursor();
+        for (BatchEventProcessor<E> processor : processors) {
+            while (processor.sequence().get() < published) {
+                if (System.nanoTime() > deadline) {
+                    throw new TimeoutException(processor.name() + " is at " + processor.sequence().get()
+                            + ", published " + published);
+                }
+                Thread.sleep(1);
+            }
+        }
+        for (BatchEventProcessor<E> processor : processors) {
+            processor.halt();
+        }
+        for (Thread thread : threads) {
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+    }
+
+    public List<BatchEventProcessor<E>> processors() {
+        return processors;
+    }
+
+    public RingBuffer<E> ringBuffer() {
+        return ringBuffer;
+    }
+}
@@ -0,0 +1,169 @@
+package com.bhuang.disruptor;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 订单事件依次经过 journal（写日志）、replicate（复制到备机）、business（业务逻辑），每个处理器一个线程。
+ *
+ * 1. Disruptor：journal 与 replicate 并行，business 依赖两者；对比用 ArrayBlockingQueue 串成的三级流水线
+ *    （每个事件一个对象，每一级一次加锁的 put/take）的吞吐量和分配量。
+ * 2. journal 每批刷盘一次（模拟 50us 的 fsync）：处理器落后时批次变大，刷盘次数远少于事件数。
+ */
+public class DisruptorDemo {
+
+    private static final int EVENTS = 5_000_000;
+
+    static final class Order {
+        long id;
+        long amount;
+        // journal 与 replicate 写不同的字段，business 读取它们，屏障保证它读到的是这个事件的值
+        long journaledId = -1;
+        long replicatedId = -1;
+    }
+
+    static final class Journal implements EventHandler<Order> {
+        final long fsyncMicros;
+        long flushes;
+
+        Journal(long fsyncMicros) {
+            this.fsyncMicros = fsyncMicros;
+        }
+
+        @Override
+        public void onEvent(Order event, long sequence, boolean endOfBatch) {
+            event.journaledId = event.id;
+            if (endOfBatch) {
+                // 一批只刷盘一次
+                flushes++;
+                if (fsyncMicros > 0) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(fsyncMicros));
+                }
+            }
+        }
+    }
+
+    static final class Business implements EventHandler<Order> {
+        long total;
+        long violations;
+
+        @Override
+        public void onEvent(Order event, long sequence, boolean endOfBatch) {
+            if (event.journaledId != event.id || event.replicatedId != event.id) {
+                violations++;
+            }
+            total += event.amount;
+        }
+    }
+
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long id : bean.getAllThreadIds()) {
+            long bytes = bean.getThreadAllocatedBytes(id);
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    static void disruptor(int events, long fsyncMicros) throws Exception {
+        Disruptor<Order> disruptor = new Disruptor<>("orders", Order::new, 4096, WaitStrategy.yielding());
+        Journal journal = new Journal(fsyncMicros);
+        Business business = new Business();
+        disruptor.handleEventsWith(journal, (event, sequence, endOfBatch) -> event.replicatedId = event.id)
+                .then(business);
+        RingBuffer<Order> ring = disruptor.start();
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (long i = 0; i < events; i++) {
+            long sequence = ring.next();
+            Order order = ring.get(sequence);
+            order.id = i;
+            order.amount = i & 0xff;
+            ring.publish(sequence);
+        }
+        disruptor.shutdown(60, TimeUnit.SECONDS);
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.printf("Disruptor%s: %5.1f M events/s, %5.1f bytes allocated/event, violations=%d%n",
+                fsyncMicros > 0 ? " (journal fsync " + fsyncMicros + "us per batch)" : "",
+                events * 1000.0 / nanos, (double) allocated / events, business.violations);
+        for (BatchEventProcessor<Order> processor : disruptor.processors()) {
+            System.out.printf("  %-10s events=%d batches=%d avg batch=%.1f max batch=%d%n", processor.name(),
+                    processor.events(), processor.batches(), processor.averageBatchSize(), processor.maxBatch());
+        }
+        System.out.printf("  journal flushes=%d for %d events%n", journal.flushes, events);
+    }
+
+    static void queuePipeline(int events) throws InterruptedException {
+        BlockingQueue<Order> toReplicate = new ArrayBlockingQueue<>(4096);
+        BlockingQueue<Order> toBusiness = new ArrayBlockingQueue<>(4096);
+        BlockingQueue<Order> journalQueue = new ArrayBlockingQueue<>(4096);
+        Business business = new Business();
+        Thread journal = new Thread(() -> {
+            try {
+                for (int i = 0; i < events; i++) {
+                    Order order = journalQueue.take();
+                    order.journaledId = order.id;
+                    toReplicate.put(order);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread replicate = new Thread(() -> {
+            try {
+                for (int i = 0; i < events; i++) {
+                    Order order = toReplicate.take();
+                    order.replicatedId = order.id;
+                    toBusiness.put(order);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread businessThread = new Thread(() -> {
+            try {
+                for (int i = 0; i < events; i++) {
+                    business.onEvent(toBusiness.take(), i, false);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        journal.start();
+        replicate.start();
+        businessThread.start();
+        for (long i = 0; i < events; i++) {
+            // 队列传递的是引用，每个事件都要一个新对象
+            Order order = new Order();
+            order.id = i;
+            order.amount = i & 0xff;
+            journalQueue.put(order);
+        }
+        businessThread.join();
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        journal.join();
+        replicate.join();
+        System.out.printf("ArrayBlockingQueue x3: %5.1f M events/s, %5.1f bytes allocated/event, violations=%d%n",
+                events * 1000.0 / nanos, (double) allocated / events, business.violations);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 0; round < 2; round++) {
+            queuePipeline(EVENTS);
+            disruptor(EVENTS, 0);
+        }
+        disruptor(200_000, 50);
+    }
+}
@@ -0,0 +1,10 @@
+package com.bhuang.disruptor;
+
+/**
+ * 处理一个事件。endOfBatch 为 true 表示这是本批可处理的最后一个事件，
+ * 处理器可以在这时做批量的工作，例如一次刷盘、一次网络发送。
+ */
+@FunctionalInterface
+public interface EventHandler<E> {
+    void onEvent(E event, long sequence, boolean endOfBatch) throws Exception;
+}
@@ -0,0 +1,9 @@
+package com.bhuang.disruptor;
+
+/**
+ * 把参数写进预先分配的事件槽位。用不捕获变量的 lambda 或方法引用时，发布事件不会分配对象。
+ */
+@FunctionalInterface
+public interface EventTranslator<E, A> {
+    void translateTo(E event, long sequence, A arg);
+}
@@ -0,0 +1,119 @@
+package com.bhuang.disruptor;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 预先分配的事件槽位环，单生产者。
+ *
+ * 创建时用 factory 填满所有槽位，之后只修改槽位的字段，不再分配事件对象；槽位一直被环引用，
+ * 会很快晋升到老年代，不给年轻代 GC 增加负担。
+ *
+ * 发布分两步：next() 申请序号（必要时等待最慢的末端处理器让出槽位），写入 get(sequence)，
+ * 然后 publish(sequence) 推进游标。整个过程没有锁，也没有 CAS：只有一个生产者线程写 nextValue 和游标。
+ * 多个线程发布时需要自己串行化，或者给每个生产者一个 RingBuffer。
+ */
+public final class RingBuffer<E> {
+
+    private final Object[] entries;
+    private final int mask;
+    private final Sequence cursor = new Sequence();
+    private final WaitStrategy waitStrategy;
+    private volatile Sequence[] gatingSequences = new Sequence[0];
+    // 以下两个字段只由生产者线程访问
+    private long nextValue = Sequence.INITIAL_VALUE;
+    private long cachedGatingSequence = Sequence.INITIAL_VALUE;
+
+    /**
+     * @param bufferSize 槽位数，必须是 2 的幂（用 sequence & mask 代替取模）
+     */
+    public RingBuffer(Supplier<E> factory, int bufferSize, WaitStrategy waitStrategy) {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of two: " + bufferSize);
+        }
+        this.entries = new Object[bufferSize];
+        this.mask = bufferSize - 1;
+        this.waitStrategy = waitStrategy;
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = factory.get();
+        }
+    }
+
+    public int bufferSize() {
+        return entries.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) (sequence & mask)];
+    }
+
+    public long next() {
+        return next(1);
+    }
+
+    /**
+     * 一次申请 n 个连续的序号，返回最大的那个 hi；写完 [hi - n + 1, hi] 之后 publish(hi) 一次发布整批。
+     */
+    public long next(int n) {
+        if (n < 1 || n > entries.length) {
+            throw new IllegalArgumentException("n must be in [1, " + entries.length + "]: " + n);
+        }
+        long next = nextValue + n;
+        long wrapPoint = next - entries.length;
+        // 只有可能追上最慢的处理器时才读它们的进度，大多数时候用缓存的值
+        if (wrapPoint > cachedGatingSequence) {
+            long minSequence;
+            while (wrapPoint > (minSequence = Sequence.minimum(gatingSequences, nextValue))) {
+                // 环满了：生产者比最慢的处理器快了一整圈
+                LockSupport.parkNanos(1);
+            }
+            cachedGatingSequence = minSequence;
+        }
+        nextValue = next;
+        return next;
+    }
+
+    public void publish(long sequence) {
+        cursor.set(sequence);
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    public <A> void publishEvent(EventTranslator<E, A> translator, A arg) {
+        long sequence = next();
+        try {
+            translator.translateTo(get(sequence), sequence, arg);
+        } finally {
+            // translator 抛出异常时也要发布，否则后面的处理器会永远停在这个序号上
+            publish(sequence);
+        }
+    }
+
+    /**
+     * @return 已经发布的最大序号
+     */
+    public long cursor() {
+        return cursor.get();
+    }
+
+    /**
+     * @return 剩余可以申请的槽位数，只能在生产者线程上调用
+     */
+    public long remainingCapacity() {
+        return entries.length - (nextValue - Sequence.minimum(gatingSequences, nextValue));
+    }
+
+    /**
+     * 创建一个等待 dependents 的屏障；没有 dependents 时只等待生产者。
+     */
+    public SequenceBarrier newBarrier(Sequence... dependents) {
+        return new SequenceBarrier(waitStrategy, cursor, dependents);
+    }
+
+    /**
+     * 设置生产者要等待的末端处理器的进度，必须在开始发布之前调用。
+     */
+    public void setGatingSequences(Sequence... sequences) {
+        gatingSequences = sequences.clone();
+    }
+}
@@ -0,0 +1,73 @@
+package com.bhuang.disruptor;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+class LhsPadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class Value extends LhsPadding {
+    protected volatile long value;
+}
+
+class RhsPadding extends Value {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * 一个单调递增的序号，前后各填充 56 字节，保证独占一条缓存行。
+ *
+ * 生产者的游标和每个处理器的进度都是 Sequence，分别只由一个线程写、被其他线程频繁读；
+ * 如果两个 Sequence 落在同一条缓存行上，一个线程每次前进都会让另一个线程的缓存行失效（伪共享）。
+ * JVM 不会重排父类和子类的字段，所以用继承而不是同一个类里的字段来填充。
+ */
+public final class Sequence extends RhsPadding {
+
+    public static final long INITIAL_VALUE = -1L;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Value.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public Sequence() {
+        this(INITIAL_VALUE);
+    }
+
+    public Sequence(long initialValue) {
+        VALUE.setRelease(this, initialValue);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    /**
+     * release 写：之前对事件槽位的写入对读到这个值的线程可见。单写者时不需要 volatile 写的完整屏障。
+     */
+    public void set(long value) {
+        VALUE.setRelease(this, value);
+    }
+
+    public boolean compareAndSet(long expected, long value) {
+        return VALUE.compareAndSet(this, expected, value);
+    }
+
+    static long minimum(Sequence[] sequences, long minimum) {
+        for (Sequence sequence : sequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
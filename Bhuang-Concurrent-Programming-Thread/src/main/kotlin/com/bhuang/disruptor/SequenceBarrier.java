@@ -0,0 +1,42 @@
+package com.bhuang.disruptor;
+
+/**
+ * 处理器通过屏障等待：既要等生产者发布（游标），也要等它依赖的处理器处理完（dependents）。
+ * 没有依赖时只看游标；有依赖时取依赖中最小的进度，它不会超过游标。
+ */
+public final class SequenceBarrier {
+
+    private final WaitStrategy waitStrategy;
+    private final Sequence cursor;
+    private final Sequence[] dependents;
+    private volatile boolean alerted;
+
+    SequenceBarrier(WaitStrategy waitStrategy, Sequence cursor, Sequence[] dependents) {
+        this.waitStrategy = waitStrategy;
+        this.cursor = cursor;
+        this.dependents = dependents.clone();
+    }
+
+    /**
+     * @return 可以处理到的最大序号，可能大于 sequence：落后的处理器一次拿到一整批
+     */
+    public long waitFor(long sequence) throws AlertException, InterruptedException {
+        checkAlert();
+        return waitStrategy.waitFor(sequence, cursor, dependents, this);
+    }
+
+    public void alert() {
+        alerted = true;
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    public void clearAlert() {
+        alerted = false;
+    }
+
+    public void checkAlert() throws AlertException {
+        if (alerted) {
+            throw AlertException.INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.bhuang.disruptor;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 处理器等待某个序号可用的方式，在延迟和 CPU 占用之间取舍。
+ */
+public interface WaitStrategy {
+
+    /**
+     * @return 可用的最大序号（不小于 sequence），处理器可以一次处理到这里
+     */
+    long waitFor(long sequence, Sequence cursor, Sequence[] dependents, SequenceBarrier barrier)
+            throws AlertException, InterruptedException;
+
+    /**
+     * 生产者发布之后调用，唤醒阻塞的处理器。
+     */
+    void signalAllWhenBlocking();
+
+    /**
+     * 一直自旋：延迟最低，但每个处理器独占一个核。只适合处理器线程数少于核数、并且绑核的场景。
+     */
+    static WaitStrategy busySpin() {
+        return new BusySpin();
+    }
+
+    /**
+     * 先自旋 100 次再 Thread.yield()：延迟接近 busySpin，核不够时仍然能让出 CPU。
+     */
+    static WaitStrategy yielding() {
+        return new Yielding();
+    }
+
+    /**
+     * 等待生产者时在 Condition 上阻塞，不占 CPU。发布时只有确实有处理器在阻塞才去拿锁，
+     * 处理器跟得上时发布路径上没有锁。
+     */
+    static WaitStrategy blocking() {
+        return new LiteBlocking();
+    }
+
+    private static long available(Sequence cursor, Sequence[] dependents) {
+        return dependents.length == 0 ? cursor.get() : Sequence.minimum(dependents, Long.MAX_VALUE);
+    }
+
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public long waitFor(long sequence, Sequence cursor, Sequence[] dependents, SequenceBarrier barrier)
+                throws AlertException {
+            long available;
+            while ((available = available(cursor, dependents)) < sequence) {
+                barrier.checkAlert();
+                Thread.onSpinWait();
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, Sequence[] dependents, SequenceBarrier barrier)
+                throws AlertException {
+            int counter = SPIN_TRIES;
+            long available;
+            while ((available = available(cursor, dependents)) < sequence) {
+                barrier.checkAlert();
+                if (counter > 0) {
+                    counter--;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+        }
+    }
+
+    final class LiteBlocking implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+        private final AtomicBoolean signalNeeded = new AtomicBoolean();
+
+        @Override
+        public long waitFor(long sequence, Sequence cursor, Sequence[] dependents, SequenceBarrier barrier)
+                throws AlertException, InterruptedException {
+            if (cursor.get() < sequence) {
+                lock.lock();
+                try {
+                    while (cursor.get() < sequence) {
+                        // 先声明需要唤醒再检查游标：发布者先写游标再读这个标志，两者之间的发布不会被错过
+                        signalNeeded.set(true);
+                        if (cursor.get() >= sequence) {
+                            break;
+                        }
+                        barrier.checkAlert();
+                        // 有上限的等待只是保险，正常情况下由 signalAllWhenBlocking 唤醒
+                        published.await(1, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            // 生产者已经到了，前置的处理器通常也快了，它们不会发信号，这里让出 CPU 等待
+            long available;
+            while ((available = available(cursor, dependents)) < sequence) {
+                barrier.checkAlert();
+                Thread.yield();
+            }
+            return available;
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+            // 游标是 release 写，后面的读可能被提前到它之前；没有这个屏障，处理器可能刚设置了标志、读到旧的游标，
+            // 而发布者读到的是旧的标志，两边都以为对方会处理，处理器要等到 1ms 超时才醒来
+            VarHandle.fullFence();
+            if (signalNeeded.get() && signalNeeded.getAndSet(false)) {
+                lock.lock();
+                try {
+                    published.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.bhuang.flow;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 把收到的每个元素作为一个任务交给 executor 执行的 {@link Flow.Subscriber}，同时在途（已请求、还没执行完）的元素不超过 prefetch 个。
+ *
+ * 1. onSubscribe 时先请求 prefetch 个元素。
+ * 2. 每执行完一个任务记一次数，攒够 limit（prefetch 的 3/4）个再一次性 request(limit)。逐个 request(1) 会让每个元素都多一次跨线程的通知，
+ *    等全部执行完再请求又会让 executor 在补货期间空闲，按 3/4 补充是两者之间的折中。
+ * 3. executor 的队列因此最多只有 prefetch 个任务，不会因为上游太快而无限增长；上游的背压由 request 的数量决定，不需要阻塞任何线程。
+ *
+ * 任务抛出的异常只计数（{@link #failures()}），不影响后续元素；executor 拒绝任务时取消订阅，{@link #completion()} 以异常结束。
+ */
+public class ExecutorSubscriber<T> implements Flow.Subscriber<T> {
+
+    private final Executor executor;
+    private final Consumer<? super T> handler;
+    private final int prefetch;
+    private final int limit;
+
+    private volatile Flow.Subscription subscription;
+    // 执行完、还没有补充请求的任务数
+    private final AtomicInteger consumed = new AtomicInteger();
+    // 已经交给 executor、还没有执行完的任务数
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile boolean done;
+
+    public ExecutorSubscriber(Executor executor, int prefetch, Consumer<? super T> handler) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+        }
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.handler = Objects.requireNonNull(handler, "handler");
+        this.prefetch = prefetch;
+        this.limit = Math.max(1, prefetch - (prefetch >> 2));
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            // 规范要求同一个订阅者只能订阅一次
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(T item) {
+        int running = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(running, Math::max);
+        try {
+            executor.execute(() -> run(item));
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            subscription.cancel();
+            completion.completeExceptionally(e);
+        }
+    }
+
+    private void run(T item) {
+        try {
+            handler.accept(item);
+        } catch (Throwable t) {
+            failures.increment();
+        } finally {
+            processed.increment();
+            // 先减在途数再补充请求，否则新请求的元素可能在这个任务还算作在途时到达，在途数短暂超过 prefetch
+            int remaining = inFlight.decrementAndGet();
+            replenish();
+            if (remaining == 0 && done) {
+                completion.complete(null);
+            }
+        }
+    }
+
+    /**
+     * 执行完的任务攒够 limit 个时补充请求。多个工作线程并发执行时计数可能一次越过 limit，所以用 CAS 逐次扣减，不会漏掉需求。
+     */
+    private void replenish() {
+        int current = consumed.incrementAndGet();
+        while (current >= limit) {
+            if (consumed.compareAndSet(current, current - limit)) {
+                subscription.request(limit);
+                current -= limit;
+            } else {
+                current = consumed.get();
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        done = true;
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        // onNext 与 onComplete 是串行的，这里之前的 onNext 都已经把 inFlight 加过了
+        done = true;
+        if (inFlight.get() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    /**
+     * 上游完成且所有任务执行完毕时完成；上游出错或 executor 拒绝任务时以异常完成。
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    public void cancel() {
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    public long processed() {
+        return processed.sum();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+
+    /**
+     * 观察到的最大在途任务数，不会超过 prefetch。
+     */
+    public int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public int prefetch() {
+        return prefetch;
+    }
+}
@@ -0,0 +1,140 @@
+package com.bhuang.flow;
+
+import com.bhuang.BlockingQueueWithCondition;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 两个生产者往 BlockingQueueWithCondition 里 give，4 个工作线程处理（每个元素 50us），对比两种接法下线程池队列的最大长度：
+ *
+ * 1. 桥接线程：一个线程循环 take()，把元素 submit 给线程池。桥接线程取得比工作线程处理得快，积压全部转移到线程池的无界队列里，
+ *    BlockingQueueWithCondition 的容量限制形同虚设。
+ * 2. QueuePublisher -> ExecutorSubscriber(prefetch = 16)：只有工作线程处理完才会请求新的元素，
+ *    线程池队列最多 16 个任务，积压留在有界的 BlockingQueueWithCondition 里，生产者在 give 上被阻塞。
+ *
+ * 最后用 FuturePublisher 把 CompletableFuture 接到同一种订阅者上。
+ */
+public class FlowDemo {
+
+    private static final int PER_PRODUCER = 20_000;
+    private static final int PRODUCERS = 2;
+    private static final int WORKERS = 4;
+
+    static Thread[] startProducers(BlockingQueueWithCondition queue) {
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            int id = p;
+            producers[p] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < PER_PRODUCER; i++) {
+                        queue.give("Data-" + id + "-" + i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "producer-" + p);
+            producers[p].start();
+        }
+        return producers;
+    }
+
+    static ThreadPoolExecutor workers() {
+        return new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * 模拟 50us 的处理，顺便记录线程池队列的最大长度。
+     */
+    static void handle(ThreadPoolExecutor pool, AtomicInteger maxQueued) {
+        maxQueued.accumulateAndGet(pool.getQueue().size(), Math::max);
+        LockSupport.parkNanos(50_000);
+    }
+
+    static void bridgeThread() throws InterruptedException {
+        BlockingQueueWithCondition queue = new BlockingQueueWithCondition(64, false);
+        ThreadPoolExecutor pool = workers();
+        AtomicInteger maxQueued = new AtomicInteger();
+        long start = System.nanoTime();
+        Thread[] producers = startProducers(queue);
+        Thread bridge = new Thread(() -> {
+            try {
+                for (int i = 0; i < PER_PRODUCER * PRODUCERS; i++) {
+                    queue.take();
+                    pool.execute(() -> handle(pool, maxQueued));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "bridge");
+        bridge.start();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        bridge.join();
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        System.out.printf("bridge thread + submit:            %5d ms, max pool queue = %5d, completed = %d%n",
+                (System.nanoTime() - start) / 1_000_000, maxQueued.get(), pool.getCompletedTaskCount());
+    }
+
+    static void flow() throws Exception {
+        BlockingQueueWithCondition queue = new BlockingQueueWithCondition(64, false);
+        ThreadPoolExecutor pool = workers();
+        ExecutorService signals = Executors.newSingleThreadExecutor();
+        AtomicInteger maxQueued = new AtomicInteger();
+        QueuePublisher publisher = new QueuePublisher(queue, signals);
+        ExecutorSubscriber<String> subscriber = new ExecutorSubscriber<>(pool, 16, item -> handle(pool, maxQueued));
+        long start = System.nanoTime();
+        publisher.subscribe(subscriber);
+        Thread[] producers = startProducers(queue);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        publisher.complete();
+        subscriber.completion().get(1, TimeUnit.MINUTES);
+        System.out.printf("QueuePublisher -> ExecutorSubscriber: %5d ms, max pool queue = %5d, completed = %d, max in flight = %d%n",
+                (System.nanoTime() - start) / 1_000_000, maxQueued.get(), subscriber.processed(),
+                subscriber.maxInFlight());
+        pool.shutdown();
+        signals.shutdown();
+    }
+
+    static void futures() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CompletableFuture<String> price = CompletableFuture.supplyAsync(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            return "price=42";
+        }, pool);
+        CompletableFuture<String> stock = CompletableFuture.supplyAsync(() -> {
+            throw new IllegalStateException("stock service unavailable");
+        }, pool);
+
+        ExecutorSubscriber<String> ok = new ExecutorSubscriber<>(pool, 1, value -> System.out.println("  received " + value));
+        new FuturePublisher<>(price).subscribe(ok);
+        ExecutorSubscriber<String> failed = new ExecutorSubscriber<>(pool, 1, value -> System.out.println("  received " + value));
+        new FuturePublisher<>(stock).subscribe(failed);
+        try {
+            ok.completion().get();
+            System.out.println("  price completed");
+            failed.completion().get();
+        } catch (ExecutionException e) {
+            System.out.println("  stock failed: " + e.getCause().getMessage());
+        }
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws Exception {
+        bridgeThread();
+        flow();
+        System.out.println("FuturePublisher:");
+        futures();
+    }
+}
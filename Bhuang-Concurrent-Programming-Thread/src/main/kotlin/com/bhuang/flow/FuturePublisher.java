@@ -0,0 +1,90 @@
+package com.bhuang.flow;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 把一个 CompletableFuture 包装成最多发出一个元素的 {@link Flow.Publisher}：
+ * future 完成并且订阅者至少请求了一个元素时发出 onNext + onComplete；future 异常完成时发出 onError（不需要请求）。
+ * 结果为 null 时只发出 onComplete，因为 Flow 不允许 onNext(null)。
+ *
+ * 不占用线程：信号在完成 future 的线程上，或者在调用 request 的线程上发出，取决于两者谁后发生。
+ */
+public class FuturePublisher<T> implements Flow.Publisher<T> {
+
+    private final CompletableFuture<? extends T> future;
+
+    public FuturePublisher(CompletableFuture<? extends T> future) {
+        this.future = Objects.requireNonNull(future, "future");
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        FutureSubscription subscription = new FutureSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        future.whenComplete((value, error) -> subscription.tryEmit());
+    }
+
+    private final class FutureSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private volatile boolean requested;
+        // 只发出一次终止信号：future 完成和 request 可能同时发生
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        FutureSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (terminated.compareAndSet(false, true)) {
+                    subscriber.onError(new IllegalArgumentException("request must be positive: " + n));
+                }
+                return;
+            }
+            requested = true;
+            tryEmit();
+        }
+
+        @Override
+        public void cancel() {
+            terminated.set(true);
+        }
+
+        void tryEmit() {
+            if (!future.isDone()) {
+                return;
+            }
+            if (future.isCompletedExceptionally()) {
+                if (terminated.compareAndSet(false, true)) {
+                    subscriber.onError(cause());
+                }
+                return;
+            }
+            if (requested && terminated.compareAndSet(false, true)) {
+                T value = future.join();
+                if (value != null) {
+                    subscriber.onNext(value);
+                }
+                subscriber.onComplete();
+            }
+        }
+
+        private Throwable cause() {
+            try {
+                future.join();
+                return new IllegalStateException("future did not fail");
+            } catch (CompletionException e) {
+                return e.getCause() != null ? e.getCause() : e;
+            } catch (RuntimeException e) {
+                // CancellationException
+                return e;
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.bhuang.flow;
+
+import com.bhuang.BlockingQueueWithCondition;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把 BlockingQueueWithCondition 包装成 {@link Flow.Publisher}：订阅者通过 request(n) 表示还能处理多少个元素，
+ * 发布者只在有需求时从队列中取数据，没有需求时数据留在队列里，生产者的 give 在队列满时照常阻塞，
+ * 背压就从订阅者一直传到生产者，中间不需要一个阻塞在 take() 上的线程。
+ *
+ * 实现方式：
+ * 1. 队列每放入一次数据都会调用监听器，request(n) 也会触发，两者都只是请求一次排空（drain）。
+ * 2. 排空在 executor 上执行，用 wip 计数保证同一个订阅同时只有一个排空循环，所有信号（onSubscribe、onNext、
+ *    onComplete）都在这个循环里串行发出；循环运行期间到达的请求只把 wip 加一，由正在运行的循环再检查一遍。
+ * 3. 每次最多取“剩余需求”个元素，用的是不阻塞的 poll()，队列空了就退出循环，等下一次放入数据时再被唤醒。
+ *
+ * 多个订阅者共享同一个队列时是竞争消费：每个元素只交给其中一个订阅者。
+ * 调用 {@link #complete()} 之后，订阅者取完队列中剩余的数据就会收到 onComplete。
+ */
+public class QueuePublisher implements Flow.Publisher<String> {
+
+    private final BlockingQueueWithCondition queue;
+    private final Executor executor;
+    private final List<QueueSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean completed;
+
+    public QueuePublisher(BlockingQueueWithCondition queue) {
+        this(queue, ForkJoinPool.commonPool());
+    }
+
+    public QueuePublisher(BlockingQueueWithCondition queue, Executor executor) {
+        this.queue = Objects.requireNonNull(queue, "queue");
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        QueueSubscription subscription = new QueueSubscription(subscriber);
+        subscriptions.add(subscription);
+        queue.addListener(subscription.listener);
+        // onSubscribe 也在排空循环中发出，保证它与之后的 onNext 不会并发
+        subscription.drain();
+    }
+
+    /**
+     * 不再有新数据：订阅者处理完队列中剩余的数据后收到 onComplete。之后再放入队列的数据不保证会被发布。
+     */
+    public void complete() {
+        completed = true;
+        // 队列可能已经空了，不会再有放入数据的通知，所以主动让每个订阅检查一次完成条件
+        for (QueueSubscription subscription : subscriptions) {
+            subscription.drain();
+        }
+    }
+
+    private final class QueueSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super String> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        final Runnable listener = this::drain;
+        private boolean subscribed;
+        private volatile boolean cancelled;
+        // request(n <= 0) 违反规范，要在排空循环中以 onError 通知
+        private volatile Throwable invalidRequest;
+
+        QueueSubscription(Flow.Subscriber<? super String> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+            } else {
+                // 需求累加到 Long.MAX_VALUE 为止，之后视为不限量
+                requested.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            terminate();
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                if (!emit()) {
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 按剩余需求发出数据，返回 false 表示订阅已经结束。
+         */
+        private boolean emit() {
+            long demand = requested.get();
+            long emitted = 0;
+            while (true) {
+                if (cancelled) {
+                    return false;
+                }
+                Throwable error = invalidRequest;
+                if (error != null) {
+                    terminate();
+                    subscriber.onError(error);
+                    return false;
+                }
+                // 先读完成标志再 poll：poll 为空且之前已经完成，才说明队列确实不会再有数据
+                boolean done = completed;
+                if (emitted == demand) {
+                    if (done && queue.size() == 0) {
+                        terminate();
+                        subscriber.onComplete();
+                        return false;
+                    }
+                    break;
+                }
+                String item = queue.poll();
+                if (item == null) {
+                    if (done) {
+                        terminate();
+                        subscriber.onComplete();
+                        return false;
+                    }
+                    break;
+                }
+                try {
+                    subscriber.onNext(item);
+                } catch (Throwable t) {
+                    // 规范不允许 onNext 抛出异常，抛出时视为订阅者取消了订阅
+                    cancel();
+                    return false;
+                }
+                emitted++;
+            }
+            if (emitted > 0 && demand != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+            return true;
+        }
+
+        private void terminate() {
+            cancelled = true;
+            queue.removeListener(listener);
+            subscriptions.remove(this);
+        }
+    }
+}
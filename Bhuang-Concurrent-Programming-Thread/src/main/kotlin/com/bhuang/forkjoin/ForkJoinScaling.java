@@ -0,0 +1,129 @@
+package com.bhuang.forkjoin;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongSupplier;
+
+/**
+ * 6400 万个 int / 3200 万个 double 上的归约，并行度从 1 到核数（再加上超过核数的两档作对照），每项取 5 次中最快的一次。
+ * 同时给出顺序循环和装箱的 Stream&lt;Integer&gt;（即 CalculateTask 的做法）的耗时。
+ *
+ * 运行：java -Xmx2g -cp target/classes com.bhuang.forkjoin.ForkJoinScaling
+ */
+public class ForkJoinScaling {
+
+    private static final int INTS = 64 * 1024 * 1024;
+    private static final int DOUBLES = 32 * 1024 * 1024;
+    private static final int ROUNDS = 5;
+
+    static long best(LongSupplier body) {
+        long best = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            checksum += body.getAsLong();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // 使用结果，避免 JIT 把计算当作死代码消除
+        if (checksum == 42) {
+            System.out.println();
+        }
+        return best;
+    }
+
+    /**
+     * 打印耗时和相对 baseline 的加速比。
+     */
+    static void row(String name, long nanos, long baseline) {
+        System.out.printf("  %-34s %7.1f ms  %5.2fx%n", name, nanos / 1e6, (double) baseline / nanos);
+    }
+
+    public static void main(String[] args) {
+        SplittableRandom random = new SplittableRandom(42);
+        int[] ints = new int[INTS];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = random.nextInt(1_000_000);
+        }
+        double[] doubles = new double[DOUBLES];
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = random.nextDouble();
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("cores = " + cores);
+
+        // 顺序循环与装箱的对照，加速比相对于顺序循环
+        long sequentialSum = best(() -> {
+            long sum = 0;
+            for (int value : ints) {
+                sum += value;
+            }
+            return sum;
+        });
+        System.out.println("int[] sum, " + INTS + " elements");
+        row("sequential loop", sequentialSum, sequentialSum);
+        // 装箱：每个元素一个 Integer（只取前 1/8，否则堆放不下），按比例折算
+        int boxedCount = INTS / 8;
+        long boxed = best(() -> Arrays.stream(ints, 0, boxedCount).boxed()
+                .reduce(0L, (acc, value) -> acc + value, Long::sum)) * 8;
+        row("Stream<Integer> (boxed, scaled)", boxed, sequentialSum);
+
+        String[] names = {"sum(int[])", "max(int[])", "reduce(int[], xor)", "histogram(int[], 64 bins)",
+                "sum(double[]) (32M elements)"};
+        // 每项的加速比相对于同一项在并行度 1 时的耗时
+        long[] single = new long[names.length];
+        int[] levels = cores == 1 ? new int[]{1, 2, 4} : parallelismLevels(cores);
+        for (int parallelism : levels) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            ParallelReduce reduce = new ParallelReduce(pool);
+            LongSupplier[] bodies = {
+                    () -> reduce.sum(ints),
+                    () -> reduce.max(ints),
+                    () -> reduce.reduce(ints, 0, (a, b) -> a ^ b),
+                    () -> reduce.histogram(ints, 0, 1_000_000, 64)[0],
+                    () -> (long) reduce.sum(doubles)
+            };
+            String suffix = parallelism > cores ? " (oversubscribed)" : "";
+            System.out.println("parallelism " + parallelism + suffix + ", leaf = " + reduce.leafSize(INTS));
+            for (int i = 0; i < names.length; i++) {
+                long nanos = best(bodies[i]);
+                if (parallelism == 1) {
+                    single[i] = nanos;
+                }
+                row(names[i], nanos, single[i]);
+            }
+            pool.shutdown();
+        }
+
+        // 正确性：与顺序计算比较
+        ParallelReduce reduce = new ParallelReduce();
+        long expected = 0;
+        int max = Integer.MIN_VALUE;
+        for (int value : ints) {
+            expected += value;
+            max = Math.max(max, value);
+        }
+        long[] histogram = reduce.histogram(ints, 0, 1_000_000, 64);
+        System.out.printf("check: sum %s, max %s, histogram total %s%n", reduce.sum(ints) == expected,
+                reduce.max(ints) == max, Arrays.stream(histogram).sum() == INTS);
+    }
+
+    static int[] parallelismLevels(int cores) {
+        int count = 0;
+        for (int p = 1; p <= cores; p *= 2) {
+            count++;
+        }
+        boolean addCores = Integer.bitCount(cores) != 1;
+        int[] levels = new int[count + (addCores ? 1 : 0) + 1];
+        int i = 0;
+        for (int p = 1; p <= cores; p *= 2) {
+            levels[i++] = p;
+        }
+        if (addCores) {
+            levels[i++] = cores;
+        }
+        levels[i] = cores * 2;
+        return levels;
+    }
+}
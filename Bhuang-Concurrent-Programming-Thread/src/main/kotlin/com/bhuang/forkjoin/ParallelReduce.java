@@ -0,0 +1,465 @@
+package com.bhuang.forkjoin;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * int[] / long[] / double[] 上的并行归约：求和、最小值、最大值、直方图、自定义的可结合运算。
+ *
+ * CallableAndRunnableDemo.CalculateTask 用两个 Integer 相加：每次运算都要拆箱、装箱。这里整个计算过程没有装箱：
+ * 1. 任务继承 RecursiveAction 而不是 RecursiveTask&lt;Long&gt;：结果放在任务的基本类型字段中，
+ *    join() 之后直接读字段，不经过 Long 对象；
+ * 2. 求和、最小值、最大值在叶子任务中是专门的循环（JIT 可以展开和向量化），只有自定义运算才调用函数式接口，
+ *    而且用的是 IntBinaryOperator 等基本类型特化的接口。
+ *
+ * 自适应的拆分：
+ * 1. 叶子大小 = max(MIN_LEAF, 长度 / (并行度 * LEAVES_PER_WORKER))：数组越大叶子越大，
+ *    每个工作线程大约分到 LEAVES_PER_WORKER 个叶子，既能在工作线程之间窃取平衡负载，又不会产生大量小任务；
+ * 2. 当前工作线程的队列中已经积压了超过 SURPLUS_LIMIT 个没有被窃取的任务时停止拆分、直接计算：
+ *    其他线程都在忙，再拆分只会增加开销（Doug Lea 的 getSurplusQueuedTaskCount 启发式）。
+ *
+ * 可以传入自己的 ForkJoinPool（例如限制并行度，或者与 commonPool 中的其他任务隔离），默认使用 commonPool。
+ */
+public final class ParallelReduce {
+
+    static final int MIN_LEAF = 1 << 13;
+    static final int LEAVES_PER_WORKER = 8;
+    static final int SURPLUS_LIMIT = 3;
+
+    enum Op { SUM, MIN, MAX, CUSTOM }
+
+    private final ForkJoinPool pool;
+
+    public ParallelReduce() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelReduce(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ForkJoinPool pool() {
+        return pool;
+    }
+
+    int leafSize(int length) {
+        return Math.max(MIN_LEAF, length / (pool.getParallelism() * LEAVES_PER_WORKER));
+    }
+
+    static boolean shouldSplit(int size, int leaf) {
+        return size > leaf && (size > 4 * leaf || ForkJoinTask.getSurplusQueuedTaskCount() <= SURPLUS_LIMIT);
+    }
+
+    // ---- int[] ----
+
+    /**
+     * @return 所有元素的和，用 long 累加，不会溢出
+     */
+    public long sum(int[] array) {
+        IntTask task = new IntTask(array, 0, array.length, leafSize(array.length), Op.SUM, 0, null);
+        pool.invoke(task);
+        return task.longResult;
+    }
+
+    public int min(int[] array) {
+        return reduce(array, Op.MIN, Integer.MAX_VALUE, null);
+    }
+
+    public int max(int[] array) {
+        return reduce(array, Op.MAX, Integer.MIN_VALUE, null);
+    }
+
+    /**
+     * @param op 必须满足结合律，identity 是它的单位元（例如按位或的 0）
+     */
+    public int reduce(int[] array, int identity, IntBinaryOperator op) {
+        return reduce(array, Op.CUSTOM, identity, op);
+    }
+
+    private int reduce(int[] array, Op op, int identity, IntBinaryOperator custom) {
+        IntTask task = new IntTask(array, 0, array.length, leafSize(array.length), op, identity, custom);
+        pool.invoke(task);
+        return task.intResult;
+    }
+
+    // ---- long[] ----
+
+    public long sum(long[] array) {
+        return reduce(array, Op.SUM, 0, null);
+    }
+
+    public long min(long[] array) {
+        return reduce(array, Op.MIN, Long.MAX_VALUE, null);
+    }
+
+    public long max(long[] array) {
+        return reduce(array, Op.MAX, Long.MIN_VALUE, null);
+    }
+
+    public long reduce(long[] array, long identity, LongBinaryOperator op) {
+        return reduce(array, Op.CUSTOM, identity, op);
+    }
+
+    private long reduce(long[] array, Op op, long identity, LongBinaryOperator custom) {
+        LongTask task = new LongTask(array, 0, array.length, leafSize(array.length), op, identity, custom);
+        pool.invoke(task);
+        return task.result;
+    }
+
+    // ---- double[] ----
+
+    /**
+     * 浮点加法不满足结合律：拆分方式随并行度变化，最后几位可能与顺序求和不同。
+     */
+    public double sum(double[] array) {
+        return reduce(array, Op.SUM, 0, null);
+    }
+
+    public double min(double[] array) {
+        return reduce(array, Op.MIN, Double.POSITIVE_INFINITY, null);
+    }
+
+    public double max(double[] array) {
+        return reduce(array, Op.MAX, Double.NEGATIVE_INFINITY, null);
+    }
+
+    public double reduce(double[] array, double identity, DoubleBinaryOperator op) {
+        return reduce(array, Op.CUSTOM, identity, op);
+    }
+
+    private double reduce(double[] array, Op op, double identity, DoubleBinaryOperator custom) {
+        DoubleTask task = new DoubleTask(array, 0, array.length, leafSize(array.length), op, identity, custom);
+        pool.invoke(task);
+        return task.result;
+    }
+
+    // ---- 直方图 ----
+
+    /**
+     * 把 [min, max) 等分成 bins 个区间计数，超出范围的元素计入第一个或最后一个区间。
+     * 每个叶子任务用自己的计数数组，合并时逐项相加，计数过程中没有共享写入。
+     */
+    public long[] histogram(int[] array, int min, int max, int bins) {
+        checkHistogram(min < max, bins);
+        HistogramTask task = new HistogramTask(array, null, 0, array.length, leafSize(array.length),
+                min, (double) bins / ((long) max - min), bins);
+        pool.invoke(task);
+        return task.counts;
+    }
+
+    public long[] histogram(double[] array, double min, double max, int bins) {
+        checkHistogram(min < max, bins);
+        HistogramTask task = new HistogramTask(null, array, 0, array.length, leafSize(array.length),
+                min, bins / (max - min), bins);
+        pool.invoke(task);
+        return task.counts;
+    }
+
+    private static void checkHistogram(boolean validRange, int bins) {
+        if (!validRange || bins <= 0) {
+            throw new IllegalArgumentException("histogram requires min < max and bins > 0");
+        }
+    }
+
+    static final class IntTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int[] array;
+        final int from;
+        final int to;
+        final int leaf;
+        final Op op;
+        final int identity;
+        final IntBinaryOperator custom;
+        long longResult;
+        int intResult;
+
+        IntTask(int[] array, int from, int to, int leaf, Op op, int identity, IntBinaryOperator custom) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.op = op;
+            this.identity = identity;
+            this.custom = custom;
+        }
+
+        @Override
+        protected void compute() {
+            if (!shouldSplit(to - from, leaf)) {
+                computeLeaf();
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            IntTask left = new IntTask(array, from, mid, leaf, op, identity, custom);
+            IntTask right = new IntTask(array, mid, to, leaf, op, identity, custom);
+            // 左半边交给其他线程窃取，右半边在当前线程上计算
+            left.fork();
+            right.compute();
+            left.join();
+            switch (op) {
+                case SUM:
+                    longResult = left.longResult + right.longResult;
+                    break;
+                case MIN:
+                    intResult = Math.min(left.intResult, right.intResult);
+                    break;
+                case MAX:
+                    intResult = Math.max(left.intResult, right.intResult);
+                    break;
+                default:
+                    intResult = custom.applyAsInt(left.intResult, right.intResult);
+            }
+        }
+
+        private void computeLeaf() {
+            int[] a = array;
+            switch (op) {
+                case SUM: {
+                    long sum = 0;
+                    for (int i = from; i < to; i++) {
+                        sum += a[i];
+                    }
+                    longResult = sum;
+                    break;
+                }
+                case MIN: {
+                    int min = identity;
+                    for (int i = from; i < to; i++) {
+                        min = Math.min(min, a[i]);
+                    }
+                    intResult = min;
+                    break;
+                }
+                case MAX: {
+                    int max = identity;
+                    for (int i = from; i < to; i++) {
+                        max = Math.max(max, a[i]);
+                    }
+                    intResult = max;
+                    break;
+                }
+                default: {
+                    int result = identity;
+                    for (int i = from; i < to; i++) {
+                        result = custom.applyAsInt(result, a[i]);
+                    }
+                    intResult = result;
+                }
+            }
+        }
+    }
+
+    static final class LongTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final long[] array;
+        final int from;
+        final int to;
+        final int leaf;
+        final Op op;
+        final long identity;
+        final LongBinaryOperator custom;
+        long result;
+
+        LongTask(long[] array, int from, int to, int leaf, Op op, long identity, LongBinaryOperator custom) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.op = op;
+            this.identity = identity;
+            this.custom = custom;
+        }
+
+        @Override
+        protected void compute() {
+            if (!shouldSplit(to - from, leaf)) {
+                result = computeLeaf();
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            LongTask left = new LongTask(array, from, mid, leaf, op, identity, custom);
+            LongTask right = new LongTask(array, mid, to, leaf, op, identity, custom);
+            left.fork();
+            right.compute();
+            left.join();
+            result = combine(left.result, right.result);
+        }
+
+        private long combine(long x, long y) {
+            switch (op) {
+                case SUM:
+                    return x + y;
+                case MIN:
+                    return Math.min(x, y);
+                case MAX:
+                    return Math.max(x, y);
+                default:
+                    return custom.applyAsLong(x, y);
+            }
+        }
+
+        private long computeLeaf() {
+            long[] a = array;
+            long result = identity;
+            switch (op) {
+                case SUM:
+                    for (int i = from; i < to; i++) {
+                        result += a[i];
+                    }
+                    return result;
+                case MIN:
+                    for (int i = from; i < to; i++) {
+                        result = Math.min(result, a[i]);
+                    }
+                    return result;
+                case MAX:
+                    for (int i = from; i < to; i++) {
+                        result = Math.max(result, a[i]);
+                    }
+                    return result;
+                default:
+                    for (int i = from; i < to; i++) {
+                        result = custom.applyAsLong(result, a[i]);
+                    }
+                    return result;
+            }
+        }
+    }
+
+    static final class DoubleTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final double[] array;
+        final int from;
+        final int to;
+        final int leaf;
+        final Op op;
+        final double identity;
+        final DoubleBinaryOperator custom;
+        double result;
+
+        DoubleTask(double[] array, int from, int to, int leaf, Op op, double identity, DoubleBinaryOperator custom) {
+            this.array = array;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.op = op;
+            this.identity = identity;
+            this.custom = custom;
+        }
+
+        @Override
+        protected void compute() {
+            if (!shouldSplit(to - from, leaf)) {
+                result = computeLeaf();
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            DoubleTask left = new DoubleTask(array, from, mid, leaf, op, identity, custom);
+            DoubleTask right = new DoubleTask(array, mid, to, leaf, op, identity, custom);
+            left.fork();
+            right.compute();
+            left.join();
+            result = combine(left.result, right.result);
+        }
+
+        private double combine(double x, double y) {
+            switch (op) {
+                case SUM:
+                    return x + y;
+                case MIN:
+                    return Math.min(x, y);
+                case MAX:
+                    return Math.max(x, y);
+                default:
+                    return custom.applyAsDouble(x, y);
+            }
+        }
+
+        private double computeLeaf() {
+            double[] a = array;
+            double result = identity;
+            switch (op) {
+                case SUM:
+                    for (int i = from; i < to; i++) {
+                        result += a[i];
+                    }
+                    return result;
+                case MIN:
+                    for (int i = from; i < to; i++) {
+                        result = Math.min(result, a[i]);
+                    }
+                    return result;
+                case MAX:
+                    for (int i = from; i < to; i++) {
+                        result = Math.max(result, a[i]);
+                    }
+                    return result;
+                default:
+                    for (int i = from; i < to; i++) {
+                        result = custom.applyAsDouble(result, a[i]);
+                    }
+                    return result;
+            }
+        }
+    }
+
+    static final class HistogramTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int[] ints;
+        final double[] doubles;
+        final int from;
+        final int to;
+        final int leaf;
+        final double min;
+        final double scale;
+        final int bins;
+        long[] counts;
+
+        HistogramTask(int[] ints, double[] doubles, int from, int to, int leaf, double min, double scale, int bins) {
+            this.ints = ints;
+            this.doubles = doubles;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+            this.min = min;
+            this.scale = scale;
+            this.bins = bins;
+        }
+
+        @Override
+        protected void compute() {
+            if (!shouldSplit(to - from, leaf)) {
+                counts = new long[bins];
+                int last = bins - 1;
+                if (ints != null) {
+                    for (int i = from; i < to; i++) {
+                        counts[Math.max(0, Math.min(last, (int) ((ints[i] - min) * scale)))]++;
+                    }
+                } else {
+                    for (int i = from; i < to; i++) {
+                        counts[Math.max(0, Math.min(last, (int) ((doubles[i] - min) * scale)))]++;
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            HistogramTask left = new HistogramTask(ints, doubles, from, mid, leaf, min, scale, bins);
+            HistogramTask right = new HistogramTask(ints, doubles, mid, to, leaf, min, scale, bins);
+            left.fork();
+            right.compute();
+            left.join();
+            counts = right.counts;
+            for (int i = 0; i < bins; i++) {
+                counts[i] += left.counts[i];
+            }
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.bhuang.future;
 
+import com.bhuang.jfr.JfrExecutors;
+import com.bhuang.jfr.JfrStages;
+import com.bhuang.threadpool.BoundedExecutor;
+import com.bhuang.threadpool.SaturationPolicies;
+import com.bhuang.timer.HashedWheelTimer;
+
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /**
@@ -190,20 +196,23 @@ public class CompletableFutureDemo {
 
     // 在执行异步任务的时候， 你也可以不使用默认的线程池，而是使用自定义的线程池
     // supplyAsync 方法还有一个重载的方法可以传一个自定义的线程池
+    // JfrExecutors 记录任务在线程池中的排队和执行时间，JfrStages 记录每个阶段在哪个线程上执行了多久，
+    // 开启 JFR 记录时，一次请求的延迟花在了哪里可以在同一个记录文件中看到
     static void testCompletableFutureCustomExecutor() {
-        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        ExecutorService executorService = JfrExecutors.wrap("completableFutureDemo",
+                BoundedExecutor.fixed("completableFutureDemo", 3, 100, SaturationPolicies.block(1, TimeUnit.SECONDS)));
         try {
-            CompletableFuture.supplyAsync(() -> {
+            JfrStages.track("customExecutor", CompletableFuture.supplyAsync(JfrStages.supply("supply", () -> {
                 System.out.println("CompletableFuture.supplyAsync: " + Thread.currentThread().getName() + " Running");
                 return 10;
-            }, executorService).thenApply(result -> {
+            }), executorService).thenApply(JfrStages.apply("thenApply", result -> {
                 System.out.println("Result: " + Thread.currentThread().getName() + " " +result);
                 return result * 10;
-            }).thenAccept(result -> {
+            })).thenAccept(JfrStages.accept("thenAccept", result -> {
                 System.out.println("Result: " + Thread.currentThread().getName() + " "  +result);
-            }).thenRun(() -> {
+            })).thenRun(JfrStages.run("thenRun", () -> {
                 System.out.println("Operation completed " + Thread.currentThread().getName());
-            });
+            })));
         } finally {
             executorService.shutdown();
         }
@@ -223,6 +232,21 @@ public class CompletableFutureDemo {
             System.out.println("Result: " + result);
         });
     }
+    // SupplierTask 要 5 秒才能完成，由时间轮在 1 秒后让 future 以 TimeoutException 结束，不需要再占用一个线程 sleep。
+    // 时间轮调度和取消都是 O(1)，任务按时完成时定时会被取消并在下一个 tick 释放，适合每个请求都设置超时的场景
+    static void testCompletableFutureTimeout() {
+        // 等结果打印出来之后再关闭定时器，否则超时还没到期工作线程就退出了
+        try (HashedWheelTimer timer = new HashedWheelTimer("completable-future-timeout")) {
+            timer.orTimeout(CompletableFuture.supplyAsync(new SupplierTask(1)), 1, TimeUnit.SECONDS)
+                    .exceptionally(ex -> {
+                        System.out.println(Thread.currentThread().getName() + " 超时: " + ex);
+                        return -1;
+                    })
+                    .thenAccept(result -> System.out.println("结果： " + result))
+                    .join();
+        }
+    }
+
     public static void main(String[] args) throws InterruptedException {
        // testCompletableFuture();
 
@@ -237,6 +261,8 @@ public class CompletableFutureDemo {
 
         // testCompletableFutureComposeAsync();
 
+        // testCompletableFutureTimeout();
+
         // 主线程这里阻塞住， 防止主线程结束，导致CompletableFuture的线程池被关闭
         Thread.sleep(10000);
     }
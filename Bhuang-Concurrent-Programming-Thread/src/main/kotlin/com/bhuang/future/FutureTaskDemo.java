@@ -1,12 +1,15 @@
 package com.bhuang.future;
 
+import com.bhuang.jfr.JfrExecutors;
+import com.bhuang.threadpool.BoundedExecutor;
+import com.bhuang.threadpool.SaturationPolicies;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 public class FutureTaskDemo {
 
@@ -24,7 +27,9 @@ public class FutureTaskDemo {
         // 然后把这个对象当作一个 Runnable 对象，放到线程池中或另起线程去执行，
         // 最后还可以通过 FutureTask 获取任务执行的结果。
         FutureTask<Integer> futureTask = new FutureTask<>(new CallableTask());
-        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        // JfrExecutors.wrap 不改变执行方式，只是在开启 JFR 记录时为每个任务记录排队时间和执行时间
+        ExecutorService executorService = JfrExecutors.wrap("futureTaskDemo",
+                BoundedExecutor.fixed("futureTaskDemo", 3, 100, SaturationPolicies.block(1, TimeUnit.SECONDS)));
 
         // new Thread(futureTask).start();
 
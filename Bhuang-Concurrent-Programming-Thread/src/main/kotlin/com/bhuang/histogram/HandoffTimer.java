@@ -0,0 +1,72 @@
+package com.bhuang.histogram;
+
+import java.util.Arrays;
+
+/**
+ * 有界队列中每个元素从放入到取出的时间，记到一个 {@link LatencyRecorder} 里。
+ *
+ * 不包装元素、每个元素也不分配对象：队列是先进先出的，元素的放入时间保存在一个和队列容量一样大的 long 环形数组里，
+ * 放入时写在队尾，取出时从队首读，和元素在队列里的位置一一对应。
+ *
+ * 不是线程安全的，只在持有队列的锁时调用：
+ *
+ * <pre>
+ * buffer.add(data);
+ * if (handoff != null) {
+ *     handoff.enqueued();
+ * }
+ * ...
+ * data = buffer.remove();
+ * if (handoff != null) {
+ *     handoff.dequeued();
+ * }
+ * </pre>
+ */
+public final class HandoffTimer {
+
+    // 开启计时之前已经在队列里的元素，不知道放入时间，取出时不记录
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final LatencyRecorder recorder;
+    private final long[] enqueuedAt;
+    private int head;
+    private int tail;
+
+    /**
+     * @param queued 开启计时时队列里已有的元素个数
+     */
+    public HandoffTimer(int capacity, int queued, LatencyRecorder recorder) {
+        if (capacity <= 0 || queued < 0 || queued > capacity) {
+            throw new IllegalArgumentException("capacity=" + capacity + ", queued=" + queued);
+        }
+        this.recorder = recorder;
+        this.enqueuedAt = new long[capacity];
+        Arrays.fill(enqueuedAt, 0, queued, UNKNOWN);
+        this.tail = queued == capacity ? 0 : queued;
+    }
+
+    public void enqueued() {
+        enqueuedAt[tail] = System.nanoTime();
+        tail = tail + 1 == enqueuedAt.length ? 0 : tail + 1;
+    }
+
+    public void dequeued() {
+        long at = enqueuedAt[head];
+        head = head + 1 == enqueuedAt.length ? 0 : head + 1;
+        if (at != UNKNOWN) {
+            recorder.recordSince(at);
+        }
+    }
+
+    /**
+     * 队列被清空（drain）时调用。
+     */
+    public void cleared() {
+        head = 0;
+        tail = 0;
+    }
+
+    public LatencyRecorder recorder() {
+        return recorder;
+    }
+}
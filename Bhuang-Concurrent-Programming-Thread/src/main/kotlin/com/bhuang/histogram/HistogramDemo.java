@@ -0,0 +1,137 @@
+package com.bhuang.histogram;
+
+import com.bhuang.BlockingQueueWithCondition;
+import com.bhuang.profiler.Log2Histogram;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 1. 精度：对数分布的 100 万个值，和排序后的精确百分位比较。
+ * 2. BlockingQueueWithCondition 的 give → take 延迟：消费者偶尔停顿 5ms，每 500ms 报告一次区间直方图。
+ * 3. 线程池提交 → 完成的延迟：平均值和 p99.9 差了多少。
+ * 4. 记录开销：LatencyRecorder 和 profiler.Log2Histogram（共享的原子计数）每次记录的耗时。
+ */
+public class HistogramDemo {
+
+    static void accuracy() {
+        int n = 1_000_000;
+        long[] values = new long[n];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < n; i++) {
+            // 1us 到 1s 之间对数均匀分布
+            values[i] = (long) Math.pow(10, 3 + ThreadLocalRandom.current().nextDouble() * 6);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{50, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(n * p / 100) - 1];
+            long reported = histogram.percentile(p);
+            System.out.printf("p%-5s exact=%10dns histogram=%10dns error=%.3f%%%n", p, exact, reported,
+                    (reported - exact) * 100.0 / exact);
+        }
+        System.out.println();
+    }
+
+    static void queueHandoff() throws InterruptedException {
+        BlockingQueueWithCondition queue = new BlockingQueueWithCondition(100, false);
+        LatencyRecorder handoff = new LatencyRecorder();
+        queue.recordHandoffLatency(handoff);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 2; i++) {
+            new Thread(() -> {
+                try {
+                    while (System.nanoTime() < end) {
+                        queue.give("x");
+                        LockSupport.parkNanos(20_000);
+                    }
+                    queue.give("stop");
+                } catch (InterruptedException ignored) {
+                }
+                done.countDown();
+            }, "producer-" + i).start();
+            new Thread(() -> {
+                try {
+                    while (!queue.take().equals("stop")) {
+                        // 每 1000 个元素停顿一次 5ms，比如一次 GC 或者一次慢的下游调用
+                        if (ThreadLocalRandom.current().nextInt(1000) == 0) {
+                            LockSupport.parkNanos(5_000_000);
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                }
+                done.countDown();
+            }, "consumer-" + i).start();
+        }
+        while (!done.await(500, TimeUnit.MILLISECONDS)) {
+            LatencyHistogram interval = handoff.intervalSnapshot();
+            System.out.printf("handoff interval  %s mean=%.0fus%n", interval, interval.mean() / 1000);
+        }
+        LatencyHistogram total = handoff.snapshot();
+        System.out.printf("handoff total     %s mean=%.0fus%n%n", total, total.mean() / 1000);
+    }
+
+    static void executorLatency() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        LatencyRecorder latency = new LatencyRecorder();
+        Executor timed = LatencyExecutors.wrap(pool, latency);
+        int tasks = 20_000;
+        CountDownLatch done = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            // 大多数任务 50us，1% 的任务 2ms
+            long work = ThreadLocalRandom.current().nextInt(100) == 0 ? 2_000_000 : 50_000;
+            timed.execute(() -> {
+                LockSupport.parkNanos(work);
+                done.countDown();
+            });
+            LockSupport.parkNanos(30_000);
+        }
+        done.await();
+        pool.shutdown();
+        LatencyHistogram total = latency.snapshot();
+        System.out.printf("executor          %s mean=%.0fus%n%n", total, total.mean() / 1000);
+    }
+
+    static long nanosPerRecord(Runnable recordLoop, int records) {
+        long start = System.nanoTime();
+        recordLoop.run();
+        return (System.nanoTime() - start) / records;
+    }
+
+    static void recordingCost() throws InterruptedException {
+        int records = 10_000_000;
+        LatencyRecorder recorder = new LatencyRecorder();
+        Log2Histogram shared = new Log2Histogram();
+        for (int round = 0; round < 2; round++) {
+            // 第一轮预热
+            long perThread = nanosPerRecord(() -> {
+                for (int i = 0; i < records; i++) {
+                    recorder.record(i & 0xFFFFF);
+                }
+            }, records);
+            long atomic = nanosPerRecord(() -> {
+                for (int i = 0; i < records; i++) {
+                    shared.record(i & 0xFFFFF);
+                }
+            }, records);
+            if (round == 1) {
+                System.out.printf("record cost       LatencyRecorder=%dns Log2Histogram=%dns%n", perThread, atomic);
+            }
+        }
+        System.out.println("recorded          " + recorder.snapshot().count() + " values");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        accuracy();
+        queueHandoff();
+        executorLatency();
+        recordingCost();
+    }
+}
@@ -0,0 +1,34 @@
+package com.bhuang.histogram;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 为执行器记录每个任务从提交到执行完的时间（排队 + 执行），可以包装任意 Executor
+ * （ThreadPoolExecutor、SerialExecutor、PriorityExecutor、Bulkhead……）。
+ *
+ * <pre>
+ * LatencyRecorder latency = new LatencyRecorder();
+ * Executor pool = LatencyExecutors.wrap(Executors.newFixedThreadPool(4), latency);
+ * CompletableFuture.supplyAsync(this::query, pool);
+ * </pre>
+ *
+ * 任务抛出异常时同样记录，被拒绝的任务不记录。
+ */
+public final class LatencyExecutors {
+
+    private LatencyExecutors() {
+    }
+
+    public static Executor wrap(Executor executor, LatencyRecorder recorder) {
+        return command -> {
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    recorder.recordSince(submitted);
+                }
+            });
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package com.bhuang.histogram;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对数-线性分桶的纳秒直方图，内存固定（约 38KB），可以合并。
+ *
+ * 小于 128ns 的值每个值一个桶；之后每个 2 的幂区间 [2^e, 2^(e+1)) 再均分成 128 个桶，
+ * 所以任何值的相对误差都不超过 1/128（0.8%），而 profiler.Log2Histogram 的误差是 2 倍。
+ * 最大可记录 2^44 - 1 纳秒（约 4.9 小时），更大的值记在最后一个桶里。
+ *
+ * 这个类不是线程安全的：多线程记录用 {@link LatencyRecorder}，它的快照就是一个 LatencyHistogram。
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BITS = 7;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final long HIGHEST = (1L << 44) - 1;
+    static final int BUCKETS = index(HIGHEST) + 1;
+
+    final long[] counts = new long[BUCKETS];
+    long count;
+    long sum;
+    long max;
+
+    /**
+     * 值所在的桶：低于 128 时就是值本身；否则 e 是最高位，桶号 = (e - 7) * 128 + 最高的 8 位。
+     * 相邻两个区间的桶号是连续的：127 → 127，128 → 128，255 → 255，256 → 256。
+     */
+    static int index(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        long value = Math.min(nanos, HIGHEST);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * 桶里最大的值，百分位返回它，所以报告的延迟只会偏大、不会偏小。
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        long mantissa = index - ((long) shift << SUB_BITS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        counts[index(nanos)]++;
+        count++;
+        sum += Math.max(nanos, 0);
+        max = Math.max(max, nanos);
+    }
+
+    /**
+     * 合并另一个直方图，比如各线程的直方图、各个实例的快照。
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile 0 到 100 之间
+     * @return 该百分位所在桶的上界（不超过最大值）
+     */
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * @return 形如 "count=1000 p50=12us p99=85us p99.9=310us max=1022us" 的一行
+     */
+    public String summary(TimeUnit unit) {
+        String suffix = unit == TimeUnit.NANOSECONDS ? "ns" : unit == TimeUnit.MICROSECONDS ? "us"
+                : unit == TimeUnit.MILLISECONDS ? "ms" : unit.name().toLowerCase();
+        return String.format("count=%d p50=%d%s p99=%d%s p99.9=%d%s max=%d%s", count,
+                unit.convert(percentile(50), TimeUnit.NANOSECONDS), suffix,
+                unit.convert(percentile(99), TimeUnit.NANOSECONDS), suffix,
+                unit.convert(percentile(99.9), TimeUnit.NANOSECONDS), suffix,
+                unit.convert(max, TimeUnit.NANOSECONDS), suffix);
+    }
+
+    @Override
+    public String toString() {
+        return summary(TimeUnit.MICROSECONDS);
+    }
+}
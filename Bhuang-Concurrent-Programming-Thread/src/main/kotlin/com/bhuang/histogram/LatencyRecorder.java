@@ -0,0 +1,139 @@
+package com.bhuang.histogram;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 多线程记录延迟：每个线程写自己的分片，读的时候合并。
+ *
+ * <pre>
+ * LatencyRecorder handoff = new LatencyRecorder();
+ * queue.recordHandoffLatency(handoff);                          // give → take 的延迟
+ * ...
+ * System.out.println(handoff.intervalSnapshot());                // 上次报告以来的 p50/p99/p99.9/max
+ * </pre>
+ *
+ * 记录没有锁、没有 CAS、没有分配：分片只有它的线程写，计数用 release 写，读的一方只会晚一点看到。
+ * 区间报告不需要和记录的线程协调：分片的计数只增不减，{@link #intervalSnapshot()} 返回这次和上次累计快照的差。
+ * 区间的最大值由差值中最高的非空桶得到，误差和百分位一样不超过 0.8%。
+ *
+ * 已经结束的线程的分片在读的时候合并到一个退休的直方图里，内存不会随线程数一直增长。
+ */
+public final class LatencyRecorder {
+
+    private final CopyOnWriteArrayList<Shard> shards = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(() -> {
+        Shard created = new Shard(Thread.currentThread());
+        shards.add(created);
+        return created;
+    });
+
+    // 以下两个直方图只在 synchronized 方法中访问
+    private final LatencyHistogram retired = new LatencyHistogram();
+    private LatencyHistogram lastCumulative = new LatencyHistogram();
+
+    public void record(long nanos) {
+        shard.get().record(nanos);
+    }
+
+    /**
+     * 记录从 startNanos（System.nanoTime()）到现在的时间。
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 创建以来的累计快照。
+     */
+    public synchronized LatencyHistogram snapshot() {
+        LatencyHistogram merged = retired.copy();
+        Iterator<Shard> it = shards.iterator();
+        while (it.hasNext()) {
+            Shard s = it.next();
+            // 先判断线程是否结束再读：读到的是它最后的计数，之后不会再有写入
+            boolean dead = !s.thread.isAlive();
+            LatencyHistogram read = s.read();
+            merged.add(read);
+            if (dead) {
+                retired.add(read);
+                shards.remove(s);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 上次调用以来的增量快照（读后清零的语义），第一次调用返回创建以来的全部记录。
+     */
+    public synchronized LatencyHistogram intervalSnapshot() {
+        LatencyHistogram cumulative = snapshot();
+        LatencyHistogram interval = new LatencyHistogram();
+        int highest = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long delta = cumulative.counts[i] - lastCumulative.counts[i];
+            interval.counts[i] = delta;
+            if (delta > 0) {
+                highest = i;
+            }
+        }
+        interval.count = cumulative.count - lastCumulative.count;
+        interval.sum = cumulative.sum - lastCumulative.sum;
+        interval.max = highest < 0 ? 0 : Math.min(LatencyHistogram.upperBound(highest), cumulative.max);
+        lastCumulative = cumulative;
+        return interval;
+    }
+
+    private static final class Shard {
+
+        private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+        private static final VarHandle SUM;
+        private static final VarHandle MAX;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                SUM = lookup.findVarHandle(Shard.class, "sum", long.class);
+                MAX = lookup.findVarHandle(Shard.class, "max", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final Thread thread;
+        private final long[] counts = new long[LatencyHistogram.BUCKETS];
+        private long sum;
+        private long max;
+
+        Shard(Thread thread) {
+            this.thread = thread;
+        }
+
+        // 只有分片的线程调用：读自己写的值不需要屏障，写用 release，读的一方看到的计数不会撕裂
+        void record(long nanos) {
+            int index = LatencyHistogram.index(nanos);
+            COUNTS.setRelease(counts, index, counts[index] + 1);
+            SUM.setRelease(this, sum + Math.max(nanos, 0));
+            if (nanos > max) {
+                MAX.setRelease(this, nanos);
+            }
+        }
+
+        LatencyHistogram read() {
+            LatencyHistogram h = new LatencyHistogram();
+            long count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                long c = (long) COUNTS.getAcquire(counts, i);
+                h.counts[i] = c;
+                count += c;
+            }
+            // 总数由桶求和，和桶总是一致的；sum 和 max 可能比桶晚一两次记录
+            h.count = count;
+            h.sum = (long) SUM.getAcquire(this);
+            h.max = (long) MAX.getAcquire(this);
+            return h;
+        }
+    }
+}
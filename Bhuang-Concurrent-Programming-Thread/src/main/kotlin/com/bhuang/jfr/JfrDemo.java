@@ -0,0 +1,148 @@
+package com.bhuang.jfr;
+
+import com.bhuang.BlockingQueueWithCondition;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在程序内开启一次 JFR 记录，运行线程池、队列和 CompletableFuture 的负载，然后读取记录文件并汇总自定义事件。
+ *
+ * 命令行方式：java -XX:StartFlightRecording=filename=app.jfr,settings=profile ...，
+ * 然后 jfr print --events com.bhuang.TaskQueued,com.bhuang.TaskExecution app.jfr。
+ */
+public class JfrDemo {
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void workload() throws Exception {
+        // 2 个线程执行 6 个 20ms 的任务：后提交的任务要排队
+        ExecutorService pool = JfrExecutors.wrap("demo-pool", Executors.newFixedThreadPool(2));
+        for (int i = 0; i < 6; i++) {
+            pool.submit(() -> sleep(20));
+        }
+
+        // 生产者比消费者快，队列很快就满了，生产者阻塞
+        BlockingQueueWithCondition queue = new BlockingQueueWithCondition(2, false);
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 5; i++) {
+                    sleep(10);
+                    queue.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < 5; i++) {
+            queue.give("item-" + i);
+        }
+        consumer.join();
+
+        // 一个请求：查询 30ms，渲染 5ms
+        JfrStages.track("request", CompletableFuture
+                .supplyAsync(JfrStages.supply("query", () -> {
+                    sleep(30);
+                    return 42;
+                }), pool)
+                .thenApply(JfrStages.apply("render", value -> {
+                    sleep(5);
+                    return "value=" + value;
+                })))
+                .get();
+
+        pool.shutdown();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 没有开启记录时，包装之后的执行器与直接执行的差别。
+     */
+    static void disabledOverhead() {
+        Executor direct = Runnable::run;
+        Executor wrapped = JfrExecutors.wrap("direct", direct);
+        // 用原子计数器作为任务，避免 JIT 把整个循环优化掉
+        AtomicLong counter = new AtomicLong();
+        Runnable task = counter::incrementAndGet;
+        int iterations = 10_000_000;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                direct.execute(task);
+            }
+            long directNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                wrapped.execute(task);
+            }
+            long wrappedNanos = System.nanoTime() - start;
+            System.out.printf("no recording: direct %.1f ns/task, wrapped %.1f ns/task%n",
+                    (double) directNanos / iterations, (double) wrappedNanos / iterations);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        disabledOverhead();
+
+        Path file = Files.createTempFile("bhuang", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.bhuang.TaskQueued");
+            recording.enable("com.bhuang.TaskExecution");
+            recording.enable("com.bhuang.QueueStall");
+            recording.enable("com.bhuang.Stage");
+            recording.start();
+            workload();
+            recording.stop();
+            recording.dump(file);
+        }
+        summarize(file);
+        Files.deleteIfExists(file);
+    }
+
+    static void summarize(Path file) throws IOException {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            String type = event.getEventType().getName();
+            if (!type.startsWith("com.bhuang.")) {
+                continue;
+            }
+            counts.merge(type, 1, Integer::sum);
+            String thread = event.getThread() == null ? "-" : event.getThread().getJavaName();
+            long millis = event.getDuration().toMillis();
+            switch (type) {
+                case "com.bhuang.TaskQueued":
+                case "com.bhuang.TaskExecution":
+                    System.out.printf("%-24s %-12s task#%-3d %4d ms  on %s%n", type, event.getString("executor"),
+                            event.getLong("taskId"), millis, thread);
+                    break;
+                case "com.bhuang.QueueStall":
+                    System.out.printf("%-24s %-12s %-5s    %4d ms  on %s%n", type, event.getString("queue"),
+                            event.getString("condition"), millis, thread);
+                    break;
+                default:
+                    System.out.printf("%-24s %-12s %-8s %4d ms  on %s (%s)%n", type, event.getString("stage"),
+                            event.getString("phase"), millis, thread, event.getString("outcome"));
+            }
+        }
+        System.out.println(counts);
+    }
+}
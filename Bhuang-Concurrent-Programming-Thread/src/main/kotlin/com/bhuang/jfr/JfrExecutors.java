@@ -0,0 +1,24 @@
+package com.bhuang.jfr;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 为执行器加上 JFR 事件：每个任务产生一个 TaskQueued 事件（提交到开始执行）和一个 TaskExecution 事件（执行时间），
+ * 两个事件通过 taskId 关联，超过阈值（默认 1 ms）才会写入记录。
+ *
+ * 没有开启记录、或者这两个事件都被关闭时，任务原样交给被包装的执行器。
+ */
+public final class JfrExecutors {
+
+    private JfrExecutors() {
+    }
+
+    public static Executor wrap(String name, Executor executor) {
+        return command -> executor.execute(TracedTask.wrap(name, command));
+    }
+
+    public static ExecutorService wrap(String name, ExecutorService executor) {
+        return new TracingExecutorService(name, executor);
+    }
+}
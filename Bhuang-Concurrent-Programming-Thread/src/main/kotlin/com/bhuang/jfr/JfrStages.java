@@ -0,0 +1,126 @@
+package com.bhuang.jfr;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 为 CompletableFuture 的阶段加上 JFR 事件：
+ *
+ * <pre>
+ * JfrStages.track("loadUser", CompletableFuture.supplyAsync(JfrStages.supply("query", this::query), pool))
+ *          .thenApply(JfrStages.apply("render", this::render));
+ * </pre>
+ *
+ * supply/apply/accept/run 包装阶段中的函数，记录它在哪个线程上执行了多久；track 记录一个 future 从现在到完成经过的时间和结果。
+ */
+public final class JfrStages {
+
+    private JfrStages() {
+    }
+
+    public static <T> Supplier<T> supply(String stage, Supplier<T> supplier) {
+        return () -> {
+            StageEvent event = begin(stage);
+            boolean failed = true;
+            try {
+                T result = supplier.get();
+                failed = false;
+                return result;
+            } finally {
+                end(event, failed ? "failed" : "completed");
+            }
+        };
+    }
+
+    public static <T, R> Function<T, R> apply(String stage, Function<T, R> function) {
+        return value -> {
+            StageEvent event = begin(stage);
+            boolean failed = true;
+            try {
+                R result = function.apply(value);
+                failed = false;
+                return result;
+            } finally {
+                end(event, failed ? "failed" : "completed");
+            }
+        };
+    }
+
+    public static <T> Consumer<T> accept(String stage, Consumer<T> consumer) {
+        return value -> {
+            StageEvent event = begin(stage);
+            boolean failed = true;
+            try {
+                consumer.accept(value);
+                failed = false;
+            } finally {
+                end(event, failed ? "failed" : "completed");
+            }
+        };
+    }
+
+    public static Runnable run(String stage, Runnable runnable) {
+        return () -> {
+            StageEvent event = begin(stage);
+            boolean failed = true;
+            try {
+                runnable.run();
+                failed = false;
+            } finally {
+                end(event, failed ? "failed" : "completed");
+            }
+        };
+    }
+
+    /**
+     * 记录 future 从现在到完成经过的时间，事件在完成 future 的线程上提交。
+     *
+     * @return 原来的 future，方便继续链式调用
+     */
+    public static <T> CompletableFuture<T> track(String stage, CompletableFuture<T> future) {
+        StageEvent event = new StageEvent();
+        if (!event.isEnabled()) {
+            return future;
+        }
+        event.stage = stage;
+        event.phase = StageEvent.PENDING;
+        event.begin();
+        future.whenComplete((value, error) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.outcome = error == null ? "completed" : isCancellation(error) ? "cancelled" : "failed";
+                event.commit();
+            }
+        });
+        return future;
+    }
+
+    private static StageEvent begin(String stage) {
+        StageEvent event = new StageEvent();
+        if (event.isEnabled()) {
+            event.stage = stage;
+            event.phase = StageEvent.EXECUTE;
+            event.begin();
+        }
+        return event;
+    }
+
+    private static void end(StageEvent event, String outcome) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    private static boolean isCancellation(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof CancellationException;
+    }
+}
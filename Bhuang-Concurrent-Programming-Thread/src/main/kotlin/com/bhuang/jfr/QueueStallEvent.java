@@ -0,0 +1,67 @@
+package com.bhuang.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * 生产者因为队列满、或者消费者因为队列空而阻塞的时间。保留调用栈，可以看到是哪段代码在等待。
+ *
+ * 只在确实要阻塞时才创建事件，不阻塞的 give/take 没有任何额外开销：
+ *
+ * <pre>
+ * QueueStallEvent stall = null;
+ * while (buffer.size() == capacity) {
+ *     if (stall == null) {
+ *         stall = QueueStallEvent.begin("BlockingQueue", QueueStallEvent.FULL, capacity);
+ *     }
+ *     notFull.await();
+ * }
+ * QueueStallEvent.end(stall);
+ * </pre>
+ */
+@Name("com.bhuang.QueueStall")
+@Label("Queue Stall")
+@Category({"Bhuang", "Queue"})
+@Description("A producer blocked on a full queue or a consumer blocked on an empty queue")
+@Threshold("1 ms")
+public class QueueStallEvent extends jdk.jfr.Event {
+
+    public static final String FULL = "full";
+    public static final String EMPTY = "empty";
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Condition")
+    @Description("full: producer waiting, empty: consumer waiting")
+    String condition;
+
+    @Label("Capacity")
+    int capacity;
+
+    public static QueueStallEvent begin(String queue, String condition, int capacity) {
+        QueueStallEvent event = new QueueStallEvent();
+        if (event.isEnabled()) {
+            event.queue = queue;
+            event.condition = condition;
+            event.capacity = capacity;
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * 结束等待；event 为 null 表示没有发生等待。在 finally 中调用，被中断或取消的等待也会被记录。
+     */
+    public static void end(QueueStallEvent event) {
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.bhuang.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * CompletableFuture 阶段的状态变化：
+ * phase = execute：阶段中的函数从开始执行到执行结束，事件线程就是执行它的线程；
+ * phase = pending：一个 future 从被跟踪到完成（正常、异常或取消）。
+ */
+@Name("com.bhuang.Stage")
+@Label("CompletableFuture Stage")
+@Category({"Bhuang", "CompletableFuture"})
+@Description("Execution or completion of a CompletableFuture stage")
+@Threshold("1 ms")
+@StackTrace(false)
+class StageEvent extends jdk.jfr.Event {
+
+    static final String EXECUTE = "execute";
+    static final String PENDING = "pending";
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Outcome")
+    @Description("completed, failed or cancelled")
+    String outcome;
+}
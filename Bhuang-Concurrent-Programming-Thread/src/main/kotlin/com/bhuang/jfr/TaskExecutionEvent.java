@@ -0,0 +1,33 @@
+package com.bhuang.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 任务的执行时间：从工作线程开始执行到执行结束。
+ */
+@Name("com.bhuang.TaskExecution")
+@Label("Task Execution")
+@Category({"Bhuang", "Executor"})
+@Description("Execution of a task on an instrumented executor")
+@Threshold("1 ms")
+@StackTrace(false)
+class TaskExecutionEvent extends jdk.jfr.Event {
+
+    @Label("Executor")
+    String executor;
+
+    @Label("Task")
+    String task;
+
+    @Label("Task Id")
+    @Description("Correlates the queued and execution events of the same task")
+    long taskId;
+
+    @Label("Failed")
+    boolean failed;
+}
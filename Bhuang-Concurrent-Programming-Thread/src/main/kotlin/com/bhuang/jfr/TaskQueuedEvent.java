@@ -0,0 +1,34 @@
+package com.bhuang.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * 任务从提交到开始执行的排队时间：事件的开始时间就是提交时间，结束时间就是开始执行的时间。
+ * 事件在提交线程上 begin()，在工作线程上 end() 并提交。
+ */
+@Name("com.bhuang.TaskQueued")
+@Label("Task Queued")
+@Category({"Bhuang", "Executor"})
+@Description("Time a task spent between submission and the start of its execution")
+@Threshold("1 ms")
+@StackTrace(false)
+class TaskQueuedEvent extends jdk.jfr.Event {
+
+    @Label("Executor")
+    String executor;
+
+    @Label("Task")
+    String task;
+
+    @Label("Task Id")
+    @Description("Correlates the queued and execution events of the same task")
+    long taskId;
+
+    @Label("Submitter")
+    Thread submitter;
+}
@@ -0,0 +1,83 @@
+package com.bhuang.jfr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在提交时记录排队事件的开始，在执行时结束排队事件并记录执行事件。
+ */
+final class TracedTask implements Runnable {
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private final String executor;
+    private final Runnable task;
+    private final TaskQueuedEvent queued;
+
+    private TracedTask(String executor, Runnable task, TaskQueuedEvent queued) {
+        this.executor = executor;
+        this.task = task;
+        this.queued = queued;
+    }
+
+    /**
+     * @return 两种事件都没有开启时直接返回原任务，没有任何包装和计时
+     */
+    static Runnable wrap(String executor, Runnable task) {
+        TaskQueuedEvent queued = new TaskQueuedEvent();
+        if (!queued.isEnabled() && !new TaskExecutionEvent().isEnabled()) {
+            return task;
+        }
+        queued.executor = executor;
+        queued.task = label(task);
+        queued.taskId = IDS.incrementAndGet();
+        queued.submitter = Thread.currentThread();
+        queued.begin();
+        return new TracedTask(executor, task, queued);
+    }
+
+    /**
+     * submit 提交的任务都是 FutureTask，用类名标记时看不出是哪个任务；TracingExecutorService 创建的 LabelledTask 带着被包装的任务的类名。
+     */
+    private static String label(Runnable task) {
+        if (task instanceof TracingExecutorService.LabelledTask) {
+            return ((TracingExecutorService.LabelledTask<?>) task).label;
+        }
+        return task.getClass().getName();
+    }
+
+    /**
+     * @return 被包装的原任务，shutdownNow 时交还给调用方
+     */
+    static Runnable unwrap(Runnable task) {
+        return task instanceof TracedTask ? ((TracedTask) task).task : task;
+    }
+
+    @Override
+    public void run() {
+        queued.end();
+        if (queued.shouldCommit()) {
+            queued.commit();
+        }
+        TaskExecutionEvent execution = new TaskExecutionEvent();
+        execution.begin();
+        boolean failed = true;
+        try {
+            task.run();
+            failed = false;
+        } finally {
+            execution.end();
+            if (execution.shouldCommit()) {
+                execution.executor = executor;
+                execution.task = queued.task;
+                execution.taskId = queued.taskId;
+                execution.failed = failed;
+                execution.commit();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return task.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package com.bhuang.jfr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AbstractExecutorService 的 submit/invokeAll 最终都会调用 execute，在这里统一包装即可。
+ */
+final class TracingExecutorService extends AbstractExecutorService {
+
+    private final String name;
+    private final ExecutorService delegate;
+
+    TracingExecutorService(String name, ExecutorService delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(TracedTask.wrap(name, command));
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * 返回调用方提交的任务，而不是排队时包装它们的 TracedTask。
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = delegate.shutdownNow();
+        List<Runnable> unwrapped = new ArrayList<>(pending.size());
+        for (Runnable task : pending) {
+            unwrapped.add(TracedTask.unwrap(task));
+        }
+        return unwrapped;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new LabelledTask<>(runnable, value, runnable.getClass().getName());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new LabelledTask<>(callable, callable.getClass().getName());
+    }
+
+    @Override
+    public String toString() {
+        return "TracingExecutorService[" + name + ", " + delegate + "]";
+    }
+
+    /**
+     * 记住被包装的 Runnable/Callable 的类名，事件里的 task 字段用它而不是 FutureTask。
+     */
+    static final class LabelledTask<T> extends FutureTask<T> {
+        final String label;
+
+        LabelledTask(Callable<T> callable, String label) {
+            super(callable);
+            this.label = label;
+        }
+
+        LabelledTask(Runnable runnable, T value, String label) {
+            super(runnable, value);
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.bhuang.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 1. 生产者/消费者通过 MappedJournal 交接数据，消费到一半时“重启”（关闭并重新打开 journal），
+ *    消费者从上次 commit 的位置继续，序号连续，没有丢失；消费过的段被删除。
+ * 2. 积压 1GB 数据时堆的占用：数据在页缓存中而不在堆中。
+ */
+public class JournalDemo {
+
+    private static final int RECORD_SIZE = 64;
+
+    static void handOffAcrossRestart(Path directory) throws Exception {
+        int total = 200_000;
+        try (MappedJournal journal = new MappedJournal(directory, 1024 * 1024)) {
+            Tailer tailer = journal.tailer("consumer");
+            Thread producer = new Thread(() -> {
+                for (long seq = 0; seq < total; seq++) {
+                    long value = seq;
+                    // 直接把字段写进映射内存，不经过 byte[]
+                    journal.append(RECORD_SIZE, target -> target.putLong(value).putLong(value * 31));
+                }
+            }, "producer");
+            producer.start();
+
+            long expected = 0;
+            while (expected < total / 2) {
+                ByteBuffer record = tailer.take();
+                long seq = record.getLong();
+                if (seq != expected || record.getLong() != seq * 31) {
+                    throw new IllegalStateException("expected " + expected + " but read " + seq);
+                }
+                expected++;
+                if (expected % 1000 == 0) {
+                    tailer.commit();
+                }
+            }
+            // 最后一批没有 commit 就“崩溃”了：这 500 条会在重启之后再读一次
+            for (int i = 0; i < 500; i++) {
+                tailer.take();
+            }
+            producer.join();
+            System.out.printf("before restart: consumed %d records, committed %d, lag %d bytes, %d segments%n",
+                    expected + 500, expected, tailer.lag(), journal.segmentCount());
+            // 不调用 tailer.close()（它会 commit），模拟进程在 commit 之前退出
+        }
+
+        try (MappedJournal journal = new MappedJournal(directory, 1024 * 1024)) {
+            Tailer tailer = journal.tailer("consumer");
+            long first = -1;
+            long last = -1;
+            long count = 0;
+            ByteBuffer record;
+            while ((record = tailer.poll()) != null) {
+                long seq = record.getLong();
+                if (first < 0) {
+                    first = seq;
+                } else if (seq != last + 1) {
+                    throw new IllegalStateException("gap after " + last + ": " + seq);
+                }
+                last = seq;
+                count++;
+            }
+            tailer.commit();
+            // 再写一个段，触发切换和删除
+            byte[] filler = new byte[RECORD_SIZE];
+            for (int i = 0; i < 1024 * 1024 / RECORD_SIZE; i++) {
+                journal.append(filler);
+            }
+            System.out.printf("after restart:  resumed at seq %d (re-read %d uncommitted), read %d records up to seq %d, "
+                            + "%d segments left after consumed ones were deleted%n",
+                    first, total / 2 + 500 - first, count, last, journal.segmentCount());
+            tailer.close();
+        }
+    }
+
+    static void backlogOffHeap(Path directory) throws Exception {
+        long before = usedHeap();
+        long records = 8_000_000;
+        int size = 128;
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        try (MappedJournal journal = new MappedJournal(directory)) {
+            long start = System.nanoTime();
+            for (long i = 0; i < records; i++) {
+                payload.clear();
+                payload.putLong(0, i);
+                journal.append(payload);
+            }
+            long elapsed = System.nanoTime() - start;
+            long after = usedHeap();
+            System.out.printf("backlog: %d records (%d MB) appended at %d ns/record, %d segments, heap grew by %d MB%n",
+                    records, journal.writePosition() / (1024 * 1024), elapsed / records, journal.segmentCount(),
+                    (after - before) / (1024 * 1024));
+
+            Tailer tailer = journal.tailer("reader");
+            start = System.nanoTime();
+            long sum = 0;
+            ByteBuffer record;
+            while ((record = tailer.poll()) != null) {
+                sum += record.getLong(0);
+            }
+            elapsed = System.nanoTime() - start;
+            System.out.printf("tail:    %d ns/record (checksum %d)%n", elapsed / records, sum);
+        }
+    }
+
+    static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        try {
+            handOffAcrossRestart(directory.resolve("hand-off"));
+            backlogOffHeap(directory.resolve("backlog"));
+        } finally {
+            delete(directory);
+        }
+        System.out.println("max heap: " + Runtime.getRuntime().maxMemory() / (1024 * 1024) + " MB");
+    }
+}
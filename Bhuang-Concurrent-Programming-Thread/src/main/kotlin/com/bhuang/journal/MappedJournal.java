@@ -0,0 +1,298 @@
+package com.bhuang.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于内存映射段文件的持久化队列。
+ *
+ * BlockingQueue / BlockingQueueWithCondition 中缓冲的数据在 JVM 退出时全部丢失，积压量也受堆大小限制。
+ * MappedJournal 把记录追加到目录下的段文件中：
+ * 1. 生产者 append：数据直接写入映射内存，没有系统调用，也不产生堆上的中间对象；
+ * 2. 消费者通过 Tailer 读取，读到的 ByteBuffer 直接指向映射内存，读取位置持久化在 name.offset 文件中；
+ * 3. 段写满之后切换到新段，所有 Tailer 都已提交越过的旧段被删除。
+ *
+ * 积压的数据在页缓存中而不在堆中，可以超过堆大小，也没有 GC 压力；JVM 崩溃之后数据仍然在页缓存里，
+ * 重新打开时从最后一个段恢复写入位置。要在操作系统崩溃之后也不丢数据，需要调用 flush()。
+ *
+ * 同一个目录只能被一个进程中的一个 MappedJournal 打开；append 可以被多个线程并发调用。
+ */
+public final class MappedJournal implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String OFFSET_SUFFIX = ".offset";
+
+    /**
+     * 直接向映射内存写入一条记录，target 的容量就是 append 时声明的长度。
+     */
+    @FunctionalInterface
+    public interface RecordWriter {
+        void write(ByteBuffer target);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, Tailer> tailers = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    // 以下字段只在持有锁时修改；writePosition 也会被 Tailer 在锁外读取
+    private Segment active;
+    // 切换之后还没有刷到磁盘的旧段，由 flush 一起刷
+    private final List<Segment> unflushed = new ArrayList<>();
+    private int activePosition;
+    private volatile long writePosition;
+    private boolean closed;
+
+    public MappedJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MappedJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < 64 || segmentSize % 4 != 0) {
+            throw new IllegalArgumentException("segment size must be a multiple of 4 and at least 64 bytes");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        recover();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.segment")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            if (Files.size(file) != segmentSize) {
+                throw new IllegalStateException(file + " was written with a different segment size");
+            }
+            long base = Long.parseLong(file.getFileName().toString().replace(".segment", ""));
+            segments.put(base, Segment.map(file, base, segmentSize));
+        }
+        if (segments.isEmpty()) {
+            active = newSegment(0);
+            activePosition = 0;
+        } else {
+            // 沿着长度字段走到第一个没有写入的位置；长度字段总是在数据之后写入，所以不会停在半条记录上
+            active = segments.lastEntry().getValue();
+            int position = 0;
+            while (true) {
+                int length = active.lengthAt(position);
+                if (length == 0) {
+                    break;
+                }
+                if (length == Segment.END_OF_SEGMENT) {
+                    // 上次在写下结束标记之后、创建下一个段之前退出
+                    active = newSegment(active.base + segmentSize);
+                    position = 0;
+                    break;
+                }
+                position += Segment.align(Segment.HEADER + length);
+            }
+            activePosition = position;
+        }
+        writePosition = active.base + activePosition;
+    }
+
+    private Segment newSegment(long base) throws IOException {
+        Segment segment = Segment.map(directory.resolve(Segment.fileName(base)), base, segmentSize);
+        segments.put(base, segment);
+        return segment;
+    }
+
+    /**
+     * @return 单条记录的最大长度：段的大小减去长度字段和结束标记
+     */
+    public int maxRecordSize() {
+        return segmentSize - 2 * Segment.HEADER;
+    }
+
+    public long append(byte[] record) {
+        return append(record.length, target -> target.put(record));
+    }
+
+    /**
+     * 与 FileChannel.write 一样消耗 record 中剩余的字节。
+     */
+    public long append(ByteBuffer record) {
+        return append(record.remaining(), target -> target.put(record));
+    }
+
+    /**
+     * 追加一条 length 字节的记录。writer 直接写入映射内存（例如把对象字段逐个 put 进去），省去序列化到 byte[] 再复制的一步。
+     *
+     * @return 记录的位置，可以传给 Tailer.seek
+     */
+    public long append(int length, RecordWriter writer) {
+        if (length <= 0 || length > maxRecordSize()) {
+            throw new IllegalArgumentException("record length must be in (0, " + maxRecordSize() + "]: " + length);
+        }
+        int total = Segment.align(Segment.HEADER + length);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("journal is closed");
+            }
+            // 始终给结束标记留出 4 个字节
+            if (activePosition + total > segmentSize - Segment.HEADER) {
+                roll();
+            }
+            int position = activePosition;
+            writer.write(active.writable(position, length));
+            active.publish(position, length);
+            long offset = active.base + position;
+            activePosition += total;
+            writePosition = active.base + activePosition;
+            appended.signalAll();
+            return offset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void roll() {
+        active.publish(activePosition, Segment.END_OF_SEGMENT);
+        // 不在这里刷盘：一个段有几十 MB，持有锁刷盘会让所有 append 停下来；记下来等 flush 时再刷
+        unflushed.add(active);
+        try {
+            active = newSegment(active.base + segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        activePosition = 0;
+        deleteConsumedSegments();
+    }
+
+    /**
+     * 删除所有 Tailer（包括之前运行时创建、这次还没有打开的）都已提交越过的段。没有任何 Tailer 时不删除。
+     */
+    private void deleteConsumedSegments() {
+        long min = Long.MAX_VALUE;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + OFFSET_SUFFIX)) {
+            for (Path file : stream) {
+                min = Math.min(min, ByteBuffer.wrap(Files.readAllBytes(file)).getLong());
+            }
+        } catch (IOException e) {
+            // 删除旧段只是回收磁盘空间，失败了下次切换时再试
+            return;
+        }
+        if (min == Long.MAX_VALUE) {
+            return;
+        }
+        for (Map.Entry<Long, Segment> entry : segments.headMap(active.base).entrySet()) {
+            if (entry.getKey() + segmentSize > min) {
+                break;
+            }
+            segments.remove(entry.getKey());
+            try {
+                // Linux 上删除已经映射的文件没有问题，映射在 MappedByteBuffer 被回收时释放
+                Files.deleteIfExists(entry.getValue().path);
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 打开（或创建）一个有名字的读取者。同名的 Tailer 从上次 commit 的位置继续读。
+     */
+    public Tailer tailer(String name) throws IOException {
+        if (name.isEmpty() || name.contains("/") || name.contains("\\")) {
+            throw new IllegalArgumentException("invalid tailer name: " + name);
+        }
+        Tailer tailer = new Tailer(this, name, directory.resolve(name + OFFSET_SUFFIX));
+        if (tailers.putIfAbsent(name, tailer) != null) {
+            throw new IllegalStateException("tailer " + name + " is already open");
+        }
+        return tailer;
+    }
+
+    /**
+     * 把已经写入的数据刷到磁盘，包括上次 flush 之后已经切换掉的段。
+     * 不调用时，数据在 JVM 崩溃之后仍然保留（在页缓存中），但操作系统崩溃会丢失。
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            forceAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void forceAll() {
+        for (Segment segment : unflushed) {
+            segment.force();
+        }
+        unflushed.clear();
+        active.force();
+    }
+
+    public long writePosition() {
+        return writePosition;
+    }
+
+    /**
+     * @return 当前在磁盘上的段数量
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            forceAll();
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---- 供 Tailer 使用 ----
+
+    int segmentSize() {
+        return segmentSize;
+    }
+
+    long firstPosition() {
+        return segments.firstKey();
+    }
+
+    Segment segment(long base) {
+        return segments.get(base);
+    }
+
+    ReentrantLock lock() {
+        return lock;
+    }
+
+    Condition appended() {
+        return appended;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void release(Tailer tailer) {
+        tailers.remove(tailer.name(), tailer);
+    }
+}
@@ -0,0 +1,84 @@
+package com.bhuang.journal;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 一个固定大小、整体映射到内存的段文件。
+ *
+ * 记录格式：[int 长度][数据]，按 4 字节对齐。长度 0 表示后面还没有写入（新映射的文件全是 0），
+ * END_OF_SEGMENT 表示写入者已经切换到下一个段。
+ *
+ * 写入者先复制数据，再用 setRelease 写长度；读取者用 getAcquire 读到非 0 的长度时，数据一定已经完整可见，
+ * 不需要额外的锁，也不会读到写了一半的记录。
+ */
+final class Segment {
+
+    static final int HEADER = 4;
+    static final int END_OF_SEGMENT = -1;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    final long base;
+    final Path path;
+    private final MappedByteBuffer buffer;
+
+    private Segment(long base, Path path, MappedByteBuffer buffer) {
+        this.base = base;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    static Segment map(Path path, long base, int size) throws IOException {
+        // 映射在通道关闭之后仍然有效；映射超出文件长度时文件被扩展（稀疏文件，不会立即占用磁盘）
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return new Segment(base, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    int size() {
+        return buffer.capacity();
+    }
+
+    int lengthAt(int position) {
+        return (int) INT.getAcquire(buffer, position);
+    }
+
+    void publish(int position, int length) {
+        INT.setRelease(buffer, position, length);
+    }
+
+    /**
+     * @return 直接指向映射内存的可写视图，调用方在 publish 之前填充数据
+     */
+    ByteBuffer writable(int position, int length) {
+        return buffer.slice(position + HEADER, length);
+    }
+
+    /**
+     * @return 直接指向映射内存的只读视图，不复制数据
+     */
+    ByteBuffer record(int position, int length) {
+        return buffer.slice(position + HEADER, length).asReadOnlyBuffer();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    static String fileName(long base) {
+        return String.format("%020d.segment", base);
+    }
+}
@@ -0,0 +1,148 @@
+package com.bhuang.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MappedJournal 的一个读取者。
+ *
+ * poll / take 返回的 ByteBuffer 直接指向映射内存，只读且不复制；记录所在的段在 commit 越过它之前不会被删除，
+ * 所以在 commit 之前可以放心使用。
+ *
+ * 读取位置在内存中前进，commit() 才把它写入 name.offset：处理完一批记录再 commit，
+ * 进程在两者之间退出时，重启后从上次 commit 的位置重新读，即至少一次（at-least-once）。
+ *
+ * Tailer 不是线程安全的，每个消费线程使用自己的 Tailer。
+ */
+public final class Tailer implements AutoCloseable {
+
+    private final MappedJournal journal;
+    private final String name;
+    // 8 字节的偏移量文件同样是映射的：commit 只是一次内存写入，JVM 崩溃不会丢失
+    private final MappedByteBuffer offsetFile;
+    private long position;
+    private Segment segment;
+
+    Tailer(MappedJournal journal, String name, Path offsetPath) throws IOException {
+        this.journal = journal;
+        this.name = name;
+        try (FileChannel channel = FileChannel.open(offsetPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            this.offsetFile = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+        // 新建的偏移量文件全是 0；之前的段已经被删除时从现存的第一个段开始
+        this.position = Math.max(offsetFile.getLong(0), journal.firstPosition());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return 下一条要读取的记录的位置
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * @return 还没有读取的字节数（包括记录头和对齐）
+     */
+    public long lag() {
+        return journal.writePosition() - position;
+    }
+
+    /**
+     * @return 下一条记录，没有新记录时返回 null
+     */
+    public ByteBuffer poll() {
+        int segmentSize = journal.segmentSize();
+        while (true) {
+            long base = position - position % segmentSize;
+            if (segment == null || segment.base != base) {
+                segment = journal.segment(base);
+                if (segment == null) {
+                    // 写入者写下了结束标记，但还没有创建下一个段
+                    return null;
+                }
+            }
+            int local = (int) (position - base);
+            int length = segment.lengthAt(local);
+            if (length == 0) {
+                return null;
+            }
+            if (length == Segment.END_OF_SEGMENT) {
+                position = base + segmentSize;
+                continue;
+            }
+            position += Segment.align(Segment.HEADER + length);
+            return segment.record(local, length);
+        }
+    }
+
+    /**
+     * 阻塞直到有新记录。
+     *
+     * @throws IllegalStateException journal 已经关闭并且没有剩余的记录
+     */
+    public ByteBuffer take() throws InterruptedException {
+        ByteBuffer record = take(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        if (record == null) {
+            throw new IllegalStateException("journal is closed");
+        }
+        return record;
+    }
+
+    /**
+     * @return 下一条记录；超时或者 journal 已经关闭并且没有剩余的记录时返回 null
+     */
+    public ByteBuffer take(long timeout, TimeUnit unit) throws InterruptedException {
+        ByteBuffer record = poll();
+        if (record != null) {
+            return record;
+        }
+        long nanos = unit.toNanos(timeout);
+        journal.lock().lockInterruptibly();
+        try {
+            // append 在同一把锁内发布记录并 signalAll，持有锁检查之后再等待不会错过通知
+            while ((record = poll()) == null) {
+                if (journal.isClosed() || nanos <= 0) {
+                    return null;
+                }
+                nanos = journal.appended().awaitNanos(nanos);
+            }
+            return record;
+        } finally {
+            journal.lock().unlock();
+        }
+    }
+
+    /**
+     * 持久化当前的读取位置，之前读到的记录不会再被这个 Tailer 读到，所在的段可以被删除。
+     */
+    public void commit() {
+        offsetFile.putLong(0, position);
+    }
+
+    /**
+     * 把读取位置移到 append 返回的某个位置，下一次 commit 之前不会持久化。
+     */
+    public void seek(long position) {
+        if (position < journal.firstPosition() || position > journal.writePosition()) {
+            throw new IllegalArgumentException("position out of range: " + position);
+        }
+        this.position = position;
+    }
+
+    @Override
+    public void close() {
+        commit();
+        offsetFile.force();
+        journal.release(this);
+    }
+}
@@ -0,0 +1,194 @@
+package com.bhuang.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制器：用法和 Semaphore 类似（获取许可 -> 访问受保护的资源 -> 释放许可），
+ * 但许可的数量不是写死的（SemaphoreDemo 中的 {@code new Semaphore(2)}），而是由 {@link LimitAlgorithm}
+ * 根据每次请求的往返时延不断调整：下游变慢时收缩，下游有余量时扩张，让下游始终工作在“延迟悬崖”之前。
+ *
+ * 超过上限的请求有两种处理方式：
+ * 1. {@link #tryAcquire()}：立即失败，调用方可以快速拒绝（fail fast）。
+ * 2. {@link #acquire(long, TimeUnit)}：在有界的等待队列中排队，超过截止时间仍拿不到许可则失败；
+ *    等待队列满了也会立即失败，避免排队本身把延迟拖垮。
+ *
+ * <pre>
+ * Permit permit = limiter.acquire(10, TimeUnit.MILLISECONDS);
+ * if (permit == null) {
+ *     // 被拒绝
+ * }
+ * try {
+ *     callDownstream();
+ *     permit.release();
+ * } catch (TimeoutException e) {
+ *     permit.releaseDropped();
+ * }
+ * </pre>
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final LimitAlgorithm algorithm;
+    private final int maxQueued;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+    // 只在持有 lock 时修改，释放路径上无锁读取，用来判断是否需要唤醒排队的线程
+    private volatile int waiting;
+
+    public AdaptiveConcurrencyLimiter(LimitAlgorithm algorithm, int maxQueued) {
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("maxQueued must not be negative: " + maxQueued);
+        }
+        this.algorithm = algorithm;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * 不等待地尝试获取许可。
+     *
+     * @return 获取成功返回 Permit，当前并发已经达到上限时返回 null
+     */
+    public Permit tryAcquire() {
+        Permit permit = acquireIfBelowLimit();
+        if (permit == null) {
+            rejected.increment();
+        }
+        return permit;
+    }
+
+    /**
+     * 获取许可，超过上限时最多排队等待 timeout。
+     *
+     * @return 获取成功返回 Permit；等待队列已满或者超时返回 null
+     */
+    public Permit acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        Permit permit = acquireIfBelowLimit();
+        if (permit != null) {
+            return permit;
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            if (waiting >= maxQueued) {
+                rejected.increment();
+                return null;
+            }
+            waiting++;
+            try {
+                // 和 BlockingQueueWithCondition 一样，在 while 中检查条件，被唤醒后重新判断
+                while ((permit = acquireIfBelowLimit()) == null) {
+                    if (nanos <= 0) {
+                        rejected.increment();
+                        return null;
+                    }
+                    nanos = permitAvailable.awaitNanos(nanos);
+                }
+                return permit;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit acquireIfBelowLimit() {
+        int limit = algorithm.getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(current + 1);
+            }
+        }
+    }
+
+    private void release(Permit permit, boolean sample, boolean dropped) {
+        inFlight.decrementAndGet();
+        // 释放空出一个许可；上限在这次样本之后提高了的话，又多出了 grown 个许可，要多唤醒这么多个排队的线程，
+        // 否则它们要等到和这次扩容无关的下一次释放
+        int grown = 0;
+        if (sample) {
+            int before = algorithm.getLimit();
+            algorithm.onSample(System.nanoTime() - permit.startNanos, permit.inFlight, dropped);
+            grown = Math.max(0, algorithm.getLimit() - before);
+        }
+        // 先减少 inFlight 再读 waiting；排队的线程先增加 waiting 再检查 inFlight，两边至少有一方能看到对方的修改
+        if (waiting > 0) {
+            lock.lock();
+            try {
+                for (int i = Math.min(waiting, grown + 1); i > 0; i--) {
+                    permitAvailable.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public int getLimit() {
+        return algorithm.getLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 一次成功获取的许可，必须且只能通过下面三个方法之一释放一次。
+     */
+    public final class Permit {
+        private final long startNanos = System.nanoTime();
+        private final int inFlight;
+        private boolean released;
+
+        private Permit(int inFlight) {
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * 请求成功完成，RTT 作为正常样本参与上限计算。
+         */
+        public void release() {
+            release(true, false);
+        }
+
+        /**
+         * 请求因为下游过载而失败（超时、被拒绝），上限会快速下降。
+         */
+        public void releaseDropped() {
+            release(true, true);
+        }
+
+        /**
+         * 请求因为和下游容量无关的原因失败（比如参数错误），不作为样本。
+         */
+        public void releaseIgnored() {
+            release(false, false);
+        }
+
+        private void release(boolean sample, boolean dropped) {
+            if (released) {
+                throw new IllegalStateException("Permit already released");
+            }
+            released = true;
+            AdaptiveConcurrencyLimiter.this.release(this, sample, dropped);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.bhuang.limit;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模拟一个容量有限的下游（同时只能处理 8 个请求，多出来的请求在下游排队），
+ * 32 个客户端线程不停地发请求，对比 AIMD 和梯度两种算法下，上限收敛到多少、吞吐和延迟如何。
+ *
+ * 作为对照，SemaphoreDemo 那样写死许可数量时：写小了浪费下游的容量，写大了请求都在下游排队、超时。
+ */
+public class AdaptiveLimiterDemo {
+
+    private static final long DOWNSTREAM_TIMEOUT_MILLIS = 30;
+
+    // 下游资源：内部只有 8 个“工位”，每个请求处理 5ms，排队的时间都会算进延迟里
+    static class Downstream {
+        private final Semaphore workers = new Semaphore(8, true);
+
+        boolean call() throws InterruptedException {
+            long start = System.nanoTime();
+            workers.acquire();
+            try {
+                Thread.sleep(5);
+            } finally {
+                workers.release();
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) <= DOWNSTREAM_TIMEOUT_MILLIS;
+        }
+    }
+
+    static class Client implements Runnable {
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final Downstream downstream;
+        private final LongAdder succeeded;
+        private final LongAdder latencyMillis;
+        private final long endNanos;
+
+        Client(AdaptiveConcurrencyLimiter limiter, Downstream downstream,
+               LongAdder succeeded, LongAdder latencyMillis, long endNanos) {
+            this.limiter = limiter;
+            this.downstream = downstream;
+            this.succeeded = succeeded;
+            this.latencyMillis = latencyMillis;
+            this.endNanos = endNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (System.nanoTime() < endNanos) {
+                    long start = System.nanoTime();
+                    AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(10, TimeUnit.MILLISECONDS);
+                    if (permit == null) {
+                        // 被限流器拒绝，模拟调用方的退避
+                        Thread.sleep(1);
+                        continue;
+                    }
+                    if (downstream.call()) {
+                        permit.release();
+                        succeeded.increment();
+                        latencyMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    } else {
+                        permit.releaseDropped();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static void run(String name, LimitAlgorithm algorithm) throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(algorithm, 16);
+        Downstream downstream = new Downstream();
+        LongAdder succeeded = new LongAdder();
+        LongAdder latencyMillis = new LongAdder();
+        long seconds = 3;
+        long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        Thread[] clients = new Thread[32];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = new Thread(new Client(limiter, downstream, succeeded, latencyMillis, endNanos));
+            clients[i].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        long ok = succeeded.sum();
+        System.out.printf("%-10s limit=%3d  goodput=%6d req/s  avg latency=%5.1f ms  rejected=%d%n",
+                name, limiter.getLimit(), ok / seconds, ok == 0 ? 0.0 : (double) latencyMillis.sum() / ok,
+                limiter.getRejected());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // 固定上限，相当于 new Semaphore(32)：所有请求都压到下游排队
+        run("fixed-32", new AimdLimit(32, 32, 32, 0.9, 1, TimeUnit.DAYS));
+        run("aimd", new AimdLimit(4, 1, 64, 0.9, DOWNSTREAM_TIMEOUT_MILLIS / 2, TimeUnit.MILLISECONDS));
+        run("gradient", new GradientLimit(4, 1, 64));
+    }
+}
@@ -0,0 +1,64 @@
+package com.bhuang.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AIMD（Additive Increase Multiplicative Decrease，加性增、乘性减）算法，和 TCP 拥塞控制的思路一样：
+ * 1. 请求正常完成并且并发真的用到了上限附近时，上限每次增加 1/limit，大约每一个“窗口”的请求增加 1。
+ * 2. 请求超时（RTT 超过 timeout）或者被下游丢弃时，上限乘以 backoffRatio（比如 0.9）快速回退。
+ *
+ * 上限以 double 的形式保存在一个 AtomicLong 里，通过 CAS 更新，释放路径上不需要加锁。
+ */
+public class AimdLimit implements LimitAlgorithm {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+    private final AtomicLong limitBits;
+
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long timeout, TimeUnit unit) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("require 0 < minLimit <= initialLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be in (0, 1): " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.limitBits = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+        while (true) {
+            long bits = limitBits.get();
+            double limit = Double.longBitsToDouble(bits);
+            double next;
+            if (dropped || rttNanos > timeoutNanos) {
+                next = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight * 2 >= limit) {
+                // 只有并发真的接近上限时才增加，否则说明瓶颈不在这里（应用本身没有那么多请求）
+                next = Math.min(maxLimit, limit + 1.0 / limit);
+            } else {
+                return;
+            }
+            if (next == limit || limitBits.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AimdLimit{limit=" + getLimit() + "}";
+    }
+}
@@ -0,0 +1,102 @@
+package com.bhuang.limit;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 梯度（gradient）算法：比较无负载时的 RTT（noLoadRtt）和最近的 RTT，判断下游是否开始排队。
+ *
+ * gradient = clamp(tolerance * noLoadRtt / shortRtt, 0.5, 1.0)
+ * newLimit = limit * gradient + queueSize
+ *
+ * 1. 最近的 RTT 没有超过 noLoadRtt 的 tolerance 倍时 gradient 为 1，上限每次增加 queueSize（sqrt(limit)），向上探测。
+ * 2. 最近的 RTT 明显变慢时 gradient 小于 1，上限按比例收缩，把下游拉回“延迟悬崖”之前。
+ * 3. 结果再做一次平滑（smoothing），避免上限随单个样本剧烈抖动。
+ *
+ * noLoadRtt 取观测到的最小 RTT，每 probeInterval 个样本重新测量一次，这样下游本身变慢（比如换了机房）之后基线也能跟上。
+ * 重新测量时先把上限降到 queueSize，让下游的排队排空，否则测到的“最小 RTT”其实是过载时的 RTT。
+ * 不用长期的移动平均作为基线，是因为持续过载时长期平均会慢慢追上过载时的 RTT，梯度永远是 1，上限会一路涨到最大值。
+ *
+ * 多个变量需要一起更新，所以用锁保护；但释放路径上只使用 tryLock，拿不到锁就丢弃这个样本，不会阻塞请求线程。
+ */
+public class GradientLimit implements LimitAlgorithm {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final int probeInterval;
+    private final int shortWindow;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private long noLoadRtt;
+    private double shortRtt;
+    private long samples;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 1.5, 0.2, 1000, 10);
+    }
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit,
+                         double tolerance, double smoothing, int probeInterval, int shortWindow) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("require 0 < minLimit <= initialLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.probeInterval = probeInterval;
+        this.shortWindow = shortWindow;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (++samples % probeInterval == 0) {
+                // 定期丢弃旧的基线，并把上限降下来，从接下来接近无负载的样本中重新取最小值
+                noLoadRtt = 0;
+                shortRtt = 0;
+                estimatedLimit = Math.max(minLimit, Math.sqrt(estimatedLimit));
+                limit = (int) estimatedLimit;
+                return;
+            }
+            if (noLoadRtt == 0 || rttNanos < noLoadRtt) {
+                noLoadRtt = rttNanos;
+            }
+            // 最近 RTT 的指数移动平均
+            shortRtt = shortRtt == 0 ? rttNanos : shortRtt + (rttNanos - shortRtt) / shortWindow;
+
+            double next;
+            if (dropped) {
+                next = estimatedLimit * 0.5;
+            } else {
+                double gradient = Math.max(0.5, Math.min(1.0, tolerance * noLoadRtt / shortRtt));
+                // 应用本身的请求不够多时观测不到下游的真实容量，只允许收缩，不再向上探测
+                double queueSize = inFlight < estimatedLimit / 2 ? 0 : Math.sqrt(estimatedLimit);
+                next = estimatedLimit * gradient + queueSize;
+            }
+            next = estimatedLimit * (1 - smoothing) + next * smoothing;
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, next));
+            limit = (int) estimatedLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GradientLimit{limit=" + limit + "}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.bhuang.limit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 key（比如调用方、用户 ID、租户）分别限流：每个 key 一个 {@link TokenBucketRateLimiter}，保存在 ConcurrentHashMap 中。
+ *
+ * 调用方数量可能非常多，所以需要定期调用 {@link #evictIdle()} 清理空闲的桶：
+ * 只有“已经装满并且空闲了 idleTimeout”的桶才会被清理，清理之后再来的请求会得到一个新的满桶，和没有清理时的行为一致。
+ *
+ * 清理和获取令牌之间不加锁：如果某个线程在桶被清理的瞬间还拿着旧桶的引用，它消耗的是旧桶里的令牌，
+ * 这个 key 最多额外多放行一个 burst 的请求，对限流来说可以接受，换来的是获取令牌的路径上没有任何锁。
+ */
+public class KeyedRateLimiter<K> {
+
+    private final ConcurrentHashMap<K, TokenBucketRateLimiter> buckets = new ConcurrentHashMap<>();
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long idleNanos;
+
+    public KeyedRateLimiter(double permitsPerSecond, int burst, long idleTimeout, TimeUnit unit) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.idleNanos = unit.toNanos(idleTimeout);
+    }
+
+    public boolean tryAcquire(K key) {
+        return bucket(key).tryAcquire(1);
+    }
+
+    public boolean tryAcquire(K key, int permits) {
+        return bucket(key).tryAcquire(permits);
+    }
+
+    public boolean tryAcquire(K key, int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        return bucket(key).tryAcquire(permits, timeout, unit);
+    }
+
+    private TokenBucketRateLimiter bucket(K key) {
+        // 先 get 再 computeIfAbsent：已有 key 的常见路径上不会去锁 ConcurrentHashMap 的桶
+        TokenBucketRateLimiter bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucketRateLimiter(permitsPerSecond, burst));
+        }
+        return bucket;
+    }
+
+    /**
+     * 清理空闲的桶，建议由一个定时任务周期性调用。
+     *
+     * @return 本次清理掉的桶的数量
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Map.Entry<K, TokenBucketRateLimiter> entry : buckets.entrySet()) {
+            if (entry.getValue().isIdle(now, idleNanos) && buckets.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,22 @@
+package com.bhuang.limit;
+
+/**
+ * 并发上限的调整算法：根据每次请求观测到的往返时延（RTT），计算新的并发上限。
+ *
+ * onSample() 在每次请求结束释放许可时被调用，实现类需要是线程安全的，并且要足够便宜，
+ * 因为它位于每个请求的释放路径上。
+ */
+public interface LimitAlgorithm {
+
+    /**
+     * @return 当前允许的最大并发数
+     */
+    int getLimit();
+
+    /**
+     * @param rttNanos 本次请求从获取许可到释放许可的耗时
+     * @param inFlight 本次请求开始时正在执行的请求数（包含它自己）
+     * @param dropped  请求是否因为下游过载而失败（超时、被拒绝等），过载信号会让上限快速下降
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped);
+}
@@ -0,0 +1,71 @@
+package com.bhuang.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 令牌桶限流的几个场景：突发（burst）、带超时的等待、多线程下的平均速率，以及按调用方限流和空闲清理。
+ */
+public class RateLimiterDemo {
+
+    static void testBurst() {
+        // 每秒 10 个令牌，桶容量为 5：空闲之后可以立即连续通过 5 个请求，之后按 100ms 一个的速度放行
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 5);
+        int passed = 0;
+        for (int i = 0; i < 10; i++) {
+            if (limiter.tryAcquire()) {
+                passed++;
+            }
+        }
+        System.out.println("burst passed: " + passed + " / 10");
+    }
+
+    static void testTimedAcquire() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            // 每次都会 park 到下一个令牌生成的时刻，而不是固定 sleep 一段时间
+            limiter.tryAcquire(1, 1, TimeUnit.SECONDS);
+            System.out.println("acquired at " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+
+    static void testConcurrentRate() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1_000, 10);
+        AtomicInteger passed = new AtomicInteger();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    if (limiter.tryAcquire()) {
+                        passed.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 预期接近 1000 + 10（初始的一个 burst）
+        System.out.println("8 threads passed in 1s: " + passed.get());
+    }
+
+    static void testKeyed() throws InterruptedException {
+        KeyedRateLimiter<String> limiter = new KeyedRateLimiter<>(5, 2, 500, TimeUnit.MILLISECONDS);
+        for (String user : new String[]{"alice", "bob", "alice", "alice", "bob", "carol"}) {
+            System.out.println(user + " -> " + limiter.tryAcquire(user));
+        }
+        System.out.println("buckets: " + limiter.size());
+        Thread.sleep(1_000);
+        System.out.println("evicted: " + limiter.evictIdle() + ", buckets: " + limiter.size());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        testBurst();
+        testTimedAcquire();
+        testConcurrentRate();
+        testKeyed();
+    }
+}
@@ -0,0 +1,137 @@
+package com.bhuang.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁的令牌桶限流器：限制每秒的操作次数（SemaphoreDemo 限制的是同时进行的操作数，两者互补）。
+ *
+ * 整个令牌桶的状态只有一个 AtomicLong：桶“重新装满”的时间点 fullAt（System.nanoTime() 时间轴上的纳秒值）。
+ * 每个令牌的生成间隔是 interval，桶的容量是 burst，那么任意时刻可用的令牌数为
+ * {@code min(burst, burst - (fullAt - now) / interval)}。
+ *
+ * 获取 n 个令牌就是把 fullAt 往后推 n * interval：
+ * {@code newFullAt = max(fullAt, now) + n * interval}，只要 {@code newFullAt - now <= burst * interval} 就允许，
+ * 用一次 CAS 提交。没有单独的“补充令牌”线程，也不需要加锁（这就是 GCRA 算法的思路）。
+ *
+ * 带超时的 acquire 在 CAS 成功时就已经预定了令牌，然后用 {@link LockSupport#parkNanos} 精确地等待所需的时间；等待中被中断时退还令牌。
+ */
+public class TokenBucketRateLimiter {
+
+    private final long intervalNanos;
+    private final int burst;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param permitsPerSecond 平均每秒发放的令牌数
+     * @param burst            桶的容量，即空闲之后一次最多可以连续获取的令牌数
+     */
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || permitsPerSecond > TimeUnit.SECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("permitsPerSecond must be in (0, 1e9]: " + permitsPerSecond);
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive: " + burst);
+        }
+        this.intervalNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burst = burst;
+        try {
+            // cost() 不超过 burstNanos，这里不溢出，之后的乘法也不会溢出
+            this.burstNanos = Math.multiplyExact(intervalNanos, (long) burst);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("burst / permitsPerSecond is too large: " + burst + " / " + permitsPerSecond);
+        }
+        // 初始时桶是满的
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 不等待地尝试获取 permits 个令牌。
+     */
+    public boolean tryAcquire(int permits) {
+        long cost = cost(permits);
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + cost;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 获取 permits 个令牌，如果在 timeout 内可以拿到，就预定这些令牌并 park 到令牌生成的那一刻。
+     *
+     * @return 获取成功返回 true；在 timeout 内无法获取时立即返回 false，不会白白等待
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        long cost = cost(permits);
+        long timeoutNanos = unit.toNanos(timeout);
+        long now;
+        long wait;
+        while (true) {
+            now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + cost;
+            wait = next - now - burstNanos;
+            if (wait > timeoutNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                break;
+            }
+        }
+        // 令牌已经预定好了，只需要等到它们“生成”的时刻；park 可能被提前唤醒，所以按截止时间循环
+        long deadline = now + wait;
+        while (wait > 0) {
+            LockSupport.parkNanos(this, wait);
+            if (Thread.interrupted()) {
+                // 放弃等待就要退还预定的令牌，否则每个被中断的调用方都会永久地占掉一部分速率。
+                // 之后的预定已经按各自的时刻在等待，不受影响；退还的额度留给之后的调用方，退得比现在还早也会被 max(fullAt, now) 截断
+                fullAt.addAndGet(-cost);
+                throw new InterruptedException();
+            }
+            wait = deadline - System.nanoTime();
+        }
+        return true;
+    }
+
+    private long cost(int permits) {
+        if (permits <= 0 || permits > burst) {
+            throw new IllegalArgumentException("permits must be in [1, " + burst + "]: " + permits);
+        }
+        return intervalNanos * permits;
+    }
+
+    /**
+     * @return 当前桶里可用的令牌数（只是一个瞬时的估计值）
+     */
+    public int availablePermits() {
+        long deficit = fullAt.get() - System.nanoTime();
+        if (deficit <= 0) {
+            return burst;
+        }
+        return (int) Math.max(0, (burstNanos - deficit) / intervalNanos);
+    }
+
+    /**
+     * @return 桶已经装满并且至少空闲了 idleNanos，此时丢弃它和重新创建一个新桶是等价的
+     */
+    boolean isIdle(long now, long idleNanos) {
+        return now - fullAt.get() >= idleNanos;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+}
@@ -0,0 +1,83 @@
+package com.bhuang.loadgen;
+
+import com.bhuang.BlockingQueueWithCondition;
+import com.bhuang.histogram.LatencyHistogram;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 1. 协调遗漏：单线程执行器每个任务 100us，第 0.5 秒时有一个任务卡住 200ms。
+ *    闭环（发起一个、等它完成、再发起下一个）和开环（每秒 2000 个）测到的延迟。
+ * 2. 三条吞吐量-延迟曲线：BlockingQueueWithCondition + 2 个消费者（每个元素 200us），
+ *    4 线程的线程池（每个任务 1ms），两段 CompletableFuture 流水线（各 500us，各 2 个线程）。
+ */
+public class LoadGenDemo {
+
+    static void work(long micros) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    static void coordinatedOmission() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        long[] stallAt = new long[1];
+        Runnable task = () -> {
+            // 第 0.5 秒之后的第一个任务卡住 200ms，比如一次 GC 停顿
+            if (stallAt[0] != 0 && System.nanoTime() - stallAt[0] >= 0) {
+                stallAt[0] = 0;
+                work(200_000);
+            } else {
+                work(100);
+            }
+        };
+
+        LatencyHistogram closed = new LatencyHistogram();
+        stallAt[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (System.nanoTime() < end) {
+            long start = System.nanoTime();
+            CompletableFuture.runAsync(task, pool).join();
+            closed.record(System.nanoTime() - start);
+        }
+        System.out.printf("closed loop  %s (%d ops)%n", closed, closed.count());
+
+        stallAt[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        LoadResult open = new LoadGenerator(Targets.executor(pool, task), 1, TimeUnit.SECONDS).run(2000);
+        System.out.printf("open loop    %s (%d ops)%n%n", open.latency(), open.completed());
+        pool.shutdown();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        coordinatedOmission();
+
+        BlockingQueueWithCondition queue = new BlockingQueueWithCondition(1000, false);
+        try (QueueTarget target = new QueueTarget(queue::give, queue::take, 2, data -> work(200))) {
+            System.out.println(new LoadGenerator("BlockingQueueWithCondition, 2 consumers x 200us", target,
+                    1, TimeUnit.SECONDS).sweep(1000, 16000, 5));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        System.out.println(new LoadGenerator("fixed pool, 4 threads x 1ms", Targets.executor(pool, () -> work(1000)),
+                1, TimeUnit.SECONDS).sweep(500, 8000, 5));
+        pool.shutdownNow();
+
+        ExecutorService query = Executors.newFixedThreadPool(2);
+        ExecutorService render = Executors.newFixedThreadPool(2);
+        Target pipeline = Targets.pipeline(() -> CompletableFuture
+                .supplyAsync(() -> {
+                    work(500);
+                    return "row";
+                }, query)
+                .thenApplyAsync(row -> {
+                    work(500);
+                    return row.length();
+                }, render));
+        System.out.println(new LoadGenerator("CompletableFuture pipeline, 2 x 500us + 2 x 500us", pipeline,
+                1, TimeUnit.SECONDS).sweep(500, 8000, 5));
+        query.shutdownNow();
+        render.shutdownNow();
+    }
+}
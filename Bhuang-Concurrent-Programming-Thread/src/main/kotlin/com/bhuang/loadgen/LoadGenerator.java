@@ -0,0 +1,148 @@
+package com.bhuang.loadgen;
+
+import com.bhuang.histogram.LatencyHistogram;
+import com.bhuang.histogram.LatencyRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开环负载生成器：按固定的计划速率发起操作，延迟从计划开始时间算起，不受协调遗漏（coordinated omission）影响。
+ *
+ * BlockingQueue.Producer 连续 give 10 次、Main.Producer 在循环里 put，都是闭环：被测对象一慢，生产者就停下来等，
+ * 停下来的这段时间里本该发起的操作根本没有发起，也就没有被测量，测到的延迟比真实的好得多。
+ * 这里第 i 个操作的计划开始时间是 start + i / rate，不管前面的操作有没有完成；
+ * 生成器自己被阻塞而晚发起的操作，延迟同样从计划开始时间算起。
+ *
+ * <pre>
+ * LoadGenerator generator = new LoadGenerator(Targets.executor(pool, this::handle), 1, TimeUnit.SECONDS);
+ * LoadResult point = generator.run(5000);             // 每秒 5000 个操作，持续 1 秒
+ * SweepResult curve = generator.sweep(1000, 16000, 5); // 1000 到 16000 之间按等比取 5 个速率
+ * System.out.print(curve);
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private final String name;
+    private final Target target;
+    private final long duration;
+    private long drainTimeout;
+
+    /**
+     * @param duration 每个速率的测量时间
+     */
+    public LoadGenerator(String name, Target target, long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration must be positive: " + duration);
+        }
+        this.name = name;
+        this.target = target;
+        this.duration = unit.toNanos(duration);
+        this.drainTimeout = this.duration;
+    }
+
+    public LoadGenerator(Target target, long duration, TimeUnit unit) {
+        this("load", target, duration, unit);
+    }
+
+    /**
+     * 测量窗口结束后最多等多久让积压的操作完成，默认等于测量时间。超时后还没完成的操作计入 incomplete，
+     * 它们之后完成时不会计入下一个速率的结果。
+     */
+    public LoadGenerator drainTimeout(long timeout, TimeUnit unit) {
+        this.drainTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * 以每秒 rate 个操作的速率持续 duration。
+     */
+    public LoadResult run(double rate) throws InterruptedException {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        }
+        LatencyRecorder latency = new LatencyRecorder();
+        LongAdder completed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long start = System.nanoTime();
+        long end = start + duration;
+        Target.Completion completion = new Target.Completion() {
+            @Override
+            public void done(long intendedStart) {
+                // 上一个速率剩下的操作不计入这一轮
+                if (intendedStart - start >= 0) {
+                    latency.recordSince(intendedStart);
+                    completed.increment();
+                }
+            }
+
+            @Override
+            public void failed(long intendedStart) {
+                if (intendedStart - start >= 0) {
+                    failed.increment();
+                }
+            }
+        };
+
+        double period = TimeUnit.SECONDS.toNanos(1) / rate;
+        long issued = 0;
+        long maxLag = 0;
+        while (true) {
+            long intended = start + (long) (issued * period);
+            if (intended - end >= 0) {
+                break;
+            }
+            long now;
+            while (intended - (now = System.nanoTime()) > 0) {
+                LockSupport.parkNanos(intended - now);
+            }
+            // 落后于计划时不等待，立即发起，直到追上计划
+            maxLag = Math.max(maxLag, now - intended);
+            try {
+                target.issue(intended, completion);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                completion.failed(intended);
+            }
+            issued++;
+        }
+        long windowEnd = System.nanoTime();
+        double achieved = completed.sum() * (double) TimeUnit.SECONDS.toNanos(1) / (windowEnd - start);
+
+        long drainDeadline = windowEnd + drainTimeout;
+        while (completed.sum() + failed.sum() < issued && System.nanoTime() - drainDeadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        LatencyHistogram histogram = latency.snapshot();
+        long incomplete = Math.max(0, issued - completed.sum() - failed.sum());
+        return new LoadResult(rate, achieved, issued, completed.sum(), failed.sum(), incomplete, histogram, maxLag);
+    }
+
+    /**
+     * 从 fromRate 到 toRate 按等比取 steps 个速率依次测量，得到吞吐量-延迟曲线。
+     * 开始之前先以 fromRate 预热一轮，不计入结果：第一轮里有类加载、JIT 编译和线程创建，会让最低速率的延迟偏高。
+     * 某个速率下实际完成的速率不到计划的一半时，说明已经远远超过饱和点，不再测量更高的速率。
+     */
+    public SweepResult sweep(double fromRate, double toRate, int steps) throws InterruptedException {
+        if (steps < 1 || fromRate <= 0 || toRate < fromRate) {
+            throw new IllegalArgumentException("fromRate=" + fromRate + ", toRate=" + toRate + ", steps=" + steps);
+        }
+        double factor = steps == 1 ? 1 : Math.pow(toRate / fromRate, 1.0 / (steps - 1));
+        run(fromRate);
+        List<LoadResult> points = new ArrayList<>();
+        double rate = fromRate;
+        for (int i = 0; i < steps; i++) {
+            LoadResult point = run(rate);
+            points.add(point);
+            if (point.achievedRate() < rate / 2) {
+                break;
+            }
+            rate *= factor;
+        }
+        return new SweepResult(name, points);
+    }
+}
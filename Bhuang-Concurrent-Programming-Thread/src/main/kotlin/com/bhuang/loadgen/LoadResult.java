@@ -0,0 +1,99 @@
+package com.bhuang.loadgen;
+
+import com.bhuang.histogram.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个目标速率下的测量结果，是吞吐量-延迟曲线上的一个点。
+ */
+public final class LoadResult {
+
+    private final double targetRate;
+    private final double achievedRate;
+    private final long issued;
+    private final long completed;
+    private final long failed;
+    private final long incomplete;
+    private final LatencyHistogram latency;
+    private final long maxLag;
+
+    LoadResult(double targetRate, double achievedRate, long issued, long completed, long failed, long incomplete,
+               LatencyHistogram latency, long maxLag) {
+        this.targetRate = targetRate;
+        this.achievedRate = achievedRate;
+        this.issued = issued;
+        this.completed = completed;
+        this.failed = failed;
+        this.incomplete = incomplete;
+        this.latency = latency;
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * 计划的速率（每秒操作数）。
+     */
+    public double targetRate() {
+        return targetRate;
+    }
+
+    /**
+     * 测量窗口内每秒实际完成的操作数，窗口结束后排空积压时完成的操作不算在内。
+     */
+    public double achievedRate() {
+        return achievedRate;
+    }
+
+    public long issued() {
+        return issued;
+    }
+
+    public long completed() {
+        return completed;
+    }
+
+    public long failed() {
+        return failed;
+    }
+
+    /**
+     * 排空超时之后仍然没有完成的操作数。
+     */
+    public long incomplete() {
+        return incomplete;
+    }
+
+    /**
+     * 从计划开始时间到完成的延迟（纳秒），包括负载生成器因为被阻塞而晚发起的时间。
+     */
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    /**
+     * 负载生成器落后计划最多的时间（纳秒）。持续增长说明发起操作本身被阻塞了，比如队列满了。
+     */
+    public long maxLag() {
+        return maxLag;
+    }
+
+    /**
+     * 实际完成的速率达到了计划的 95%，并且没有失败和没有完成的操作。
+     */
+    public boolean sustained() {
+        return achievedRate >= targetRate * 0.95 && failed == 0 && incomplete == 0;
+    }
+
+    static String header() {
+        return String.format("%8s %9s %9s %9s %9s %9s %9s %8s %10s", "target/s", "achieved/s", "p50(us)", "p99(us)",
+                "p99.9(us)", "max(us)", "lag(us)", "failed", "incomplete");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%8.0f %10.0f %9d %9d %9d %9d %9d %8d %10d", targetRate, achievedRate,
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(50)), TimeUnit.NANOSECONDS.toMicros(latency.percentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(latency.percentile(99.9)), TimeUnit.NANOSECONDS.toMicros(latency.max()),
+                TimeUnit.NANOSECONDS.toMicros(maxLag), failed, incomplete);
+    }
+}
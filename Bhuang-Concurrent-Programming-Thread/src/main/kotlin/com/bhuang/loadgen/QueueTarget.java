@@ -0,0 +1,91 @@
+package com.bhuang.loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 压测一个阻塞队列：负载生成器 put，consumers 个消费者线程 take 之后执行 work，执行完算完成，work 抛出异常算失败。
+ *
+ * 队列的类型不限，只要有 put/take：
+ *
+ * <pre>
+ * BlockingQueueWithCondition queue = new BlockingQueueWithCondition(1000, false);
+ * try (QueueTarget target = new QueueTarget(queue::give, queue::take, 2, data -> process(data))) {
+ *     new LoadGenerator(target, 1, TimeUnit.SECONDS).sweep(1000, 16000, 5);
+ * }
+ * </pre>
+ *
+ * 元素就是计划开始时间的字符串，消费者从元素中解析出来再交给 completion，不需要额外的映射表。
+ */
+public final class QueueTarget implements Target, AutoCloseable {
+
+    @FunctionalInterface
+    public interface Put {
+        void put(String data) throws InterruptedException;
+    }
+
+    @FunctionalInterface
+    public interface Take {
+        String take() throws InterruptedException;
+    }
+
+    private final Put put;
+    private final List<Thread> consumers = new ArrayList<>();
+    // 当前这一轮的 completion；上一轮剩下的元素会交给新一轮的 completion，由它按开始时间忽略
+    private volatile Completion completion;
+
+    public QueueTarget(Put put, Take take, int consumers, Consumer<String> work) {
+        this.put = put;
+        for (int i = 0; i < consumers; i++) {
+            Thread consumer = new Thread(() -> consume(take, work), "loadgen-consumer-" + i);
+            consumer.setDaemon(true);
+            this.consumers.add(consumer);
+            consumer.start();
+        }
+    }
+
+    private void consume(Take take, Consumer<String> work) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                String data = take.take();
+                boolean ok;
+                try {
+                    work.accept(data);
+                    ok = true;
+                } catch (RuntimeException e) {
+                    // 一个元素失败算这次操作失败，消费者继续工作，否则剩下的消费者越来越少、压测结果失真
+                    ok = false;
+                }
+                Completion current = completion;
+                if (current != null) {
+                    if (ok) {
+                        current.done(Long.parseLong(data));
+                    } else {
+                        current.failed(Long.parseLong(data));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void issue(long intendedStart, Completion completion) throws InterruptedException {
+        if (this.completion != completion) {
+            this.completion = completion;
+        }
+        put.put(Long.toString(intendedStart));
+    }
+
+    /**
+     * 中断所有消费者线程。
+     */
+    @Override
+    public void close() {
+        for (Thread consumer : consumers) {
+            consumer.interrupt();
+        }
+    }
+}
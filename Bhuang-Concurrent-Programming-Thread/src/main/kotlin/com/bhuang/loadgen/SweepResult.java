@@ -0,0 +1,61 @@
+package com.bhuang.loadgen;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次速率扫描的结果：吞吐量-延迟曲线，以及曲线的拐点。
+ */
+public final class SweepResult {
+
+    /** 拐点处的 p99 不超过曲线上最低 p99 的倍数 */
+    static final int KNEE_FACTOR = 4;
+
+    private final String name;
+    private final List<LoadResult> points;
+
+    SweepResult(String name, List<LoadResult> points) {
+        this.name = name;
+        this.points = Collections.unmodifiableList(points);
+    }
+
+    public List<LoadResult> points() {
+        return points;
+    }
+
+    /**
+     * 饱和之前的最后一个点：仍然跟得上计划（{@link LoadResult#sustained()}）、p99 不超过曲线上最低 p99 的 4 倍的点中速率最高的一个。
+     * 再往上延迟不再随速率平缓增长，而是随积压一起增长。
+     * 中间某个点偶然的抖动（一次 GC、一次调度延迟）不会让更高速率的健康点被忽略。
+     *
+     * @return 没有这样的点时返回 null
+     */
+    public LoadResult knee() {
+        long baseline = Long.MAX_VALUE;
+        for (LoadResult point : points) {
+            baseline = Math.min(baseline, Math.max(1, point.latency().percentile(99)));
+        }
+        LoadResult knee = null;
+        for (LoadResult point : points) {
+            if (point.sustained() && point.latency().percentile(99) <= baseline * KNEE_FACTOR) {
+                knee = point;
+            }
+        }
+        return knee;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name).append(System.lineSeparator());
+        sb.append(LoadResult.header()).append(System.lineSeparator());
+        LoadResult knee = knee();
+        for (LoadResult point : points) {
+            sb.append(point);
+            if (point == knee) {
+                sb.append("  <- knee");
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
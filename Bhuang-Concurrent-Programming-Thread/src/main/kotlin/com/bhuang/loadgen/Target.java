@@ -0,0 +1,25 @@
+package com.bhuang.loadgen;
+
+/**
+ * 被压测的对象：一个队列、一个执行器，或者一条 CompletableFuture 流水线。
+ *
+ * 发起操作和操作完成是分开的：issue 只负责发起，不等待完成；操作完成时（可以在任何线程上）调用 completion。
+ * 这样负载生成器不会因为一个慢操作而停止发起后面的操作，这就是开环。
+ */
+@FunctionalInterface
+public interface Target {
+
+    /**
+     * 发起一次操作。issue 本身阻塞（比如 give 时队列满了）也没关系，延迟从计划开始时间算起，阻塞的时间同样会被计入。
+     *
+     * @param intendedStart 按计划这次操作应该开始的时间（System.nanoTime()），完成时原样传回
+     */
+    void issue(long intendedStart, Completion completion) throws Exception;
+
+    interface Completion {
+
+        void done(long intendedStart);
+
+        void failed(long intendedStart);
+    }
+}
@@ -0,0 +1,53 @@
+package com.bhuang.loadgen;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 常用的压测对象。队列见 {@link QueueTarget}。
+ */
+public final class Targets {
+
+    private Targets() {
+    }
+
+    /**
+     * 每次操作向 executor 提交一个 work，work 执行完算完成，被拒绝或者抛出异常算失败。
+     */
+    public static Target executor(Executor executor, Runnable work) {
+        return (intendedStart, completion) -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        work.run();
+                    } catch (RuntimeException e) {
+                        completion.failed(intendedStart);
+                        return;
+                    } catch (Error e) {
+                        // 同样算失败，否则这次操作永远不会完成；Error 继续抛给执行器的线程
+                        completion.failed(intendedStart);
+                        throw e;
+                    }
+                    completion.done(intendedStart);
+                });
+            } catch (RejectedExecutionException e) {
+                completion.failed(intendedStart);
+            }
+        };
+    }
+
+    /**
+     * 每次操作调用 pipeline 创建一条新的流水线，流水线正常结束算完成，异常结束算失败。
+     */
+    public static Target pipeline(Supplier<? extends CompletionStage<?>> pipeline) {
+        return (intendedStart, completion) -> pipeline.get().whenComplete((result, failure) -> {
+            if (failure == null) {
+                completion.done(intendedStart);
+            } else {
+                completion.failed(intendedStart);
+            }
+        });
+    }
+}
@@ -0,0 +1,150 @@
+package com.bhuang.locksupport;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 对比 synchronized、ReentrantLock 和 McsLock 在很短的临界区上的表现。
+ *
+ * 临界区就是 BlockingQueue / BlockingQueueWithCondition 中 give/take 的逻辑（去掉了打印）：
+ * 有界缓冲区满了等待 notFull，空了等待 notEmpty，放入/取出之后唤醒对方。
+ * 这样同时也验证了 McsLock 的 Condition 实现：最后会检查所有元素的校验和。
+ */
+public class LockBenchmark {
+
+    private static final int CAPACITY = 64;
+    private static final int ITEMS_PER_PRODUCER = 200_000;
+
+    interface Buffer {
+        void give(long value) throws InterruptedException;
+
+        long take() throws InterruptedException;
+    }
+
+    // 和 BlockingQueue 一样使用 synchronized + wait/notifyAll
+    static class MonitorBuffer implements Buffer {
+        private final ArrayDeque<Long> buffer = new ArrayDeque<>();
+
+        @Override
+        public synchronized void give(long value) throws InterruptedException {
+            while (buffer.size() == CAPACITY) {
+                wait();
+            }
+            buffer.add(value);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized long take() throws InterruptedException {
+            while (buffer.isEmpty()) {
+                wait();
+            }
+            long value = buffer.remove();
+            notifyAll();
+            return value;
+        }
+    }
+
+    // 和 BlockingQueueWithCondition 一样使用 Lock + 两个 Condition，Lock 的实现可以替换
+    static class ConditionBuffer implements Buffer {
+        private final ArrayDeque<Long> buffer = new ArrayDeque<>();
+        private final Lock lock;
+        private final Condition notFull;
+        private final Condition notEmpty;
+
+        ConditionBuffer(Lock lock) {
+            this.lock = lock;
+            this.notFull = lock.newCondition();
+            this.notEmpty = lock.newCondition();
+        }
+
+        @Override
+        public void give(long value) throws InterruptedException {
+            lock.lock();
+            try {
+                while (buffer.size() == CAPACITY) {
+                    notFull.await();
+                }
+                buffer.add(value);
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public long take() throws InterruptedException {
+            lock.lock();
+            try {
+                while (buffer.isEmpty()) {
+                    notEmpty.await();
+                }
+                long value = buffer.remove();
+                notFull.signal();
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    static long run(Buffer buffer, int pairs) throws InterruptedException {
+        AtomicLong checksum = new AtomicLong();
+        Thread[] threads = new Thread[pairs * 2];
+        for (int i = 0; i < pairs; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int n = 1; n <= ITEMS_PER_PRODUCER; n++) {
+                        buffer.give(n);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[pairs + i] = new Thread(() -> {
+                try {
+                    long sum = 0;
+                    for (int n = 1; n <= ITEMS_PER_PRODUCER; n++) {
+                        sum += buffer.take();
+                    }
+                    checksum.addAndGet(sum);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        long expected = (long) pairs * ITEMS_PER_PRODUCER * (ITEMS_PER_PRODUCER + 1) / 2;
+        if (checksum.get() != expected) {
+            throw new IllegalStateException("checksum mismatch: " + checksum.get() + " != " + expected);
+        }
+        // 每一次 give 或 take 的平均耗时
+        return elapsed / ((long) pairs * ITEMS_PER_PRODUCER * 2);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // 预热
+        run(new MonitorBuffer(), 2);
+        run(new ConditionBuffer(new ReentrantLock()), 2);
+        run(new ConditionBuffer(new McsLock()), 2);
+
+        System.out.println("CPU cores: " + Runtime.getRuntime().availableProcessors());
+        System.out.printf("%6s %16s %16s %16s%n", "pairs", "synchronized", "ReentrantLock", "McsLock");
+        for (int pairs : new int[]{1, 2, 4, 8, 16}) {
+            long monitor = run(new MonitorBuffer(), pairs);
+            long reentrant = run(new ConditionBuffer(new ReentrantLock()), pairs);
+            long mcs = run(new ConditionBuffer(new McsLock()), pairs);
+            System.out.printf("%6d %13d ns %13d ns %13d ns%n", pairs, monitor, reentrant, mcs);
+        }
+    }
+}
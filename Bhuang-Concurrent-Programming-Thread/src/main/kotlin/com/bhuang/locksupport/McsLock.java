@@ -0,0 +1,369 @@
+package com.bhuang.locksupport;
+
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 直接基于 LockSupport 实现的 MCS 队列锁（可重入，FIFO）。
+ *
+ * 工作原理：
+ * 1. 每个等待锁的线程创建一个自己的节点，通过一次 getAndSet 把自己挂到队尾，再把前驱节点的 next 指向自己。
+ * 2. 等待者只检查“自己节点”上的 status（本地自旋），不会像 synchronized 的自旋那样所有线程都去读同一个锁字。
+ * 3. 先自旋一段时间，自旋次数是自适应的：自旋期间拿到锁就多给一点自旋预算，最终还是要 park 就减少预算。
+ *    自旋失败后用 LockSupport.park() 挂起（见 LockSupportDemo 中的许可证机制）。
+ * 4. 释放锁时把锁直接交给队列中的下一个节点（FIFO hand-off），只有当它已经 park 时才需要 unpark。
+ *
+ * 等待者可以因为中断或超时放弃等待：它把自己节点的状态从 WAITING CAS 成 CANCELLED，
+ * 释放锁的线程会跳过这些已取消的节点，把锁交给后面第一个还在等待的节点。
+ */
+public class McsLock implements Lock {
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int CANCELLED = 2;
+
+    private static final int MIN_SPINS = 1 << 4;
+    private static final int MAX_SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1 << 12 : 0;
+
+    private final AtomicReference<Node> tail = new AtomicReference<>();
+
+    // 以下字段只由持有锁的线程读写
+    private Thread owner;
+    private Node ownerNode;
+    private int holds;
+
+    // 自适应的自旋预算，多个线程并发修改也无所谓，它只是一个启发值
+    private int spins = MAX_SPINS;
+
+    static final class Node {
+        private static final AtomicIntegerFieldUpdater<Node> STATUS =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "status");
+
+        final Thread thread;
+        volatile int status;
+        volatile Node next;
+        volatile boolean parked;
+
+        Node(Thread thread, int status) {
+            this.thread = thread;
+            this.status = status;
+        }
+
+        boolean compareAndSetStatus(int expect, int update) {
+            return STATUS.compareAndSet(this, expect, update);
+        }
+    }
+
+    @Override
+    public void lock() {
+        if (reenter()) {
+            return;
+        }
+        acquire(false, false, 0L);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (reenter()) {
+            return;
+        }
+        if (!acquire(true, false, 0L)) {
+            // 抛出 InterruptedException 时按惯例清除中断标记
+            Thread.interrupted();
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (reenter()) {
+            return true;
+        }
+        // 只有队列为空时才能直接拿到锁，不插队
+        Node node = new Node(Thread.currentThread(), GRANTED);
+        if (tail.compareAndSet(null, node)) {
+            setOwner(node);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (reenter()) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        boolean acquired = acquire(true, true, deadline);
+        if (!acquired && Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return acquired;
+    }
+
+    private boolean reenter() {
+        if (owner == Thread.currentThread()) {
+            holds++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 拿到锁返回 true；因为中断或超时放弃等待返回 false（此时中断标记保持被设置的状态）
+     */
+    private boolean acquire(boolean interruptible, boolean timed, long deadline) {
+        Thread current = Thread.currentThread();
+        Node node = new Node(current, WAITING);
+        Node predecessor = tail.getAndSet(node);
+        if (predecessor == null) {
+            // 队列为空，直接拿到锁
+            node.status = GRANTED;
+            setOwner(node);
+            return true;
+        }
+        predecessor.next = node;
+
+        // 第一阶段：在自己的节点上自旋
+        int budget = spins;
+        for (int i = 0; i < budget; i++) {
+            if (node.status == GRANTED) {
+                spins = Math.min(MAX_SPINS, budget * 2);
+                setOwner(node);
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        spins = Math.min(MAX_SPINS, Math.max(MIN_SPINS, budget / 2));
+
+        // 第二阶段：park。先声明自己要 park，再检查一次状态；释放者先修改状态再检查 parked，二者不会互相错过
+        node.parked = true;
+        boolean interrupted = false;
+        while (node.status == WAITING) {
+            if (timed) {
+                long nanos = deadline - System.nanoTime();
+                if (nanos <= 0) {
+                    if (cancel(node)) {
+                        return false;
+                    }
+                    break;
+                }
+                LockSupport.parkNanos(this, nanos);
+            } else {
+                LockSupport.park(this);
+            }
+            if (Thread.interrupted()) {
+                if (interruptible) {
+                    if (cancel(node)) {
+                        current.interrupt();
+                        return false;
+                    }
+                    // 取消的同时锁恰好交给了我们，那就正常拿到锁
+                    current.interrupt();
+                    break;
+                }
+                interrupted = true;
+            }
+        }
+        setOwner(node);
+        if (interrupted) {
+            // lock() 不响应中断，但是要把中断标记还给调用方
+            current.interrupt();
+        }
+        return true;
+    }
+
+    private boolean cancel(Node node) {
+        return node.compareAndSetStatus(WAITING, CANCELLED);
+    }
+
+    private void setOwner(Node node) {
+        owner = node.thread;
+        ownerNode = node;
+        holds = 1;
+    }
+
+    @Override
+    public void unlock() {
+        if (owner != Thread.currentThread()) {
+            throw new IllegalMonitorStateException();
+        }
+        if (--holds > 0) {
+            return;
+        }
+        Node node = ownerNode;
+        owner = null;
+        ownerNode = null;
+        handOff(node);
+    }
+
+    /**
+     * 把锁交给 node 后面第一个还在等待的节点；后面没有节点就把队列清空。
+     */
+    private void handOff(Node node) {
+        Node current = node;
+        while (true) {
+            Node successor = current.next;
+            if (successor == null) {
+                if (tail.compareAndSet(current, null)) {
+                    return;
+                }
+                // 有新节点已经挂到了队尾，但还没来得及设置 next，让出 CPU 稍等一下
+                while ((successor = current.next) == null) {
+                    Thread.yield();
+                }
+            }
+            if (successor.compareAndSetStatus(WAITING, GRANTED)) {
+                if (successor.parked) {
+                    LockSupport.unpark(successor.thread);
+                }
+                return;
+            }
+            // successor 已经取消了等待，继续往后找
+            current = successor;
+        }
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return owner == Thread.currentThread();
+    }
+
+    public boolean isLocked() {
+        return tail.get() != null;
+    }
+
+    @Override
+    public Condition newCondition() {
+        return new ConditionObject();
+    }
+
+    /**
+     * 条件队列：await/signal 都必须在持有锁的情况下调用，所以条件队列本身由这把锁保护，用普通的 ArrayDeque 就够了。
+     */
+    private final class ConditionObject implements Condition {
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+        private final class Waiter {
+            final Thread thread = Thread.currentThread();
+            volatile boolean signalled;
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            if (awaitNanos(false, 0L, true) < 0) {
+                throw new InterruptedException();
+            }
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            awaitNanos(false, 0L, false);
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            long deadline = System.nanoTime() + nanosTimeout;
+            if (awaitNanos(true, deadline, true) < 0) {
+                throw new InterruptedException();
+            }
+            return deadline - System.nanoTime();
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+            return awaitNanos(unit.toNanos(time)) > 0;
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            return await(deadline.getTime() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return 被 signal 唤醒返回 1，超时返回 0，被中断返回 -1
+         */
+        private int awaitNanos(boolean timed, long deadline, boolean interruptible) {
+            if (!isHeldByCurrentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            if (interruptible && Thread.interrupted()) {
+                return -1;
+            }
+            Waiter waiter = new Waiter();
+            waiters.add(waiter);
+            // 完全释放锁（包括重入的次数），被唤醒后再按原来的次数重新获取
+            int savedHolds = holds;
+            holds = 1;
+            unlock();
+
+            boolean interrupted = false;
+            while (!waiter.signalled) {
+                if (timed) {
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    if (interruptible) {
+                        break;
+                    }
+                }
+            }
+
+            lock();
+            holds = savedHolds;
+            if (!waiter.signalled) {
+                // 超时或中断：已经重新持有锁，可以安全地把自己从条件队列中移除
+                waiters.remove(waiter);
+            }
+            if (interrupted && interruptible && !waiter.signalled) {
+                return -1;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return waiter.signalled ? 1 : 0;
+        }
+
+        @Override
+        public void signal() {
+            if (!isHeldByCurrentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            Waiter waiter = waiters.poll();
+            if (waiter != null) {
+                waiter.signalled = true;
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            if (!isHeldByCurrentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            Waiter waiter;
+            while ((waiter = waiters.poll()) != null) {
+                waiter.signalled = true;
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.bhuang.offheap;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 多生产者、单消费者的堆外环形缓冲区，存放变长的字节记录。
+ *
+ * BlockingQueue / BlockingQueueWithCondition 存放的是 String 对象：每条消息都要在年轻代分配，
+ * 每次把引用写进数组还有卡表标记（card marking）的开销。这里把消息复制到一块 direct ByteBuffer 中，
+ * 传输过程中不创建任何对象：
+ *
+ * <pre>
+ * 生产者：int index = ring.tryClaim(length);      // 预留空间，返回数据在 buffer() 中的位置，空间不够返回 -1
+ *        ring.buffer().putLong(index, ...);      // 直接写入
+ *        ring.commit(index);                     // 发布，消费者可以看到
+ * 消费者：ring.read((view) -> view.getLong(0), 64); // view 是复用的享元，直接读堆外内存
+ * </pre>
+ *
+ * 记录格式：[int 状态][int 长度][数据]，按 8 字节对齐。状态 0 表示还没有提交，消费者读到 0 就停下；
+ * 提交时用 setRelease 写状态，消费者用 getAcquire 读，读到 COMMITTED 时数据一定已经完整可见。
+ * 剩余空间放不下一条记录时，先写一条 PADDING 记录占满到末尾，记录从 0 开始，数据不会跨越末尾。
+ */
+public final class OffHeapRingBuffer {
+
+    static final int HEADER = 8;
+    static final int ALIGNMENT = 8;
+    private static final int STATUS_OFFSET = 0;
+    private static final int LENGTH_OFFSET = 4;
+    private static final int EMPTY = 0;
+    private static final int COMMITTED = 1;
+    private static final int PADDING = 2;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(OffHeapRingBuffer.class, "head", long.class);
+            TAIL = lookup.findVarHandle(OffHeapRingBuffer.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final RecordView view;
+    // 生产者用 CAS 推进 tail；head 只由消费者推进。两者都是单调递增的字节数，取模之后才是位置
+    private volatile long tail;
+    private volatile long head;
+    // 生产者缓存的 head，只有空间看起来不够时才重新读取，减少对消费者所在缓存行的访问
+    private volatile long headCache;
+
+    /**
+     * @param capacity 字节数，必须是 2 的幂
+     */
+    public OffHeapRingBuffer(int capacity) {
+        if (capacity < 2 * HEADER || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two and at least " + 2 * HEADER);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        this.view = new RecordView(buffer);
+    }
+
+    /**
+     * @return 生产者写入数据用的缓冲区，只能写 tryClaim 返回的 [index, index + length)
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return 单条记录的最大长度
+     */
+    public int maxRecordLength() {
+        return capacity / 2 - HEADER;
+    }
+
+    /**
+     * 预留 length 字节。成功之后必须调用 commit 或 abort，否则消费者会停在这条记录上。
+     *
+     * @return 数据在 buffer() 中的起始位置；空间不够时返回 -1
+     */
+    public int tryClaim(int length) {
+        if (length < 0 || length > maxRecordLength()) {
+            throw new IllegalArgumentException("length must be in [0, " + maxRecordLength() + "]: " + length);
+        }
+        int required = align(HEADER + length);
+        long currentTail;
+        long newTail;
+        int index;
+        int padding;
+        do {
+            currentTail = tail;
+            index = (int) (currentTail & mask);
+            int toEnd = capacity - index;
+            padding = required > toEnd ? toEnd : 0;
+            newTail = currentTail + padding + required;
+            if (newTail - headCache > capacity) {
+                long currentHead = head;
+                headCache = currentHead;
+                if (newTail - currentHead > capacity) {
+                    return -1;
+                }
+            }
+        } while (!TAIL.compareAndSet(this, currentTail, newTail));
+
+        if (padding > 0) {
+            buffer.putInt(index + LENGTH_OFFSET, padding - HEADER);
+            INT.setRelease(buffer, index + STATUS_OFFSET, PADDING);
+            index = 0;
+        }
+        buffer.putInt(index + LENGTH_OFFSET, length);
+        return index + HEADER;
+    }
+
+    public void commit(int index) {
+        INT.setRelease(buffer, index - HEADER + STATUS_OFFSET, COMMITTED);
+    }
+
+    /**
+     * 放弃预留的空间，消费者会跳过它。
+     */
+    public void abort(int index) {
+        INT.setRelease(buffer, index - HEADER + STATUS_OFFSET, PADDING);
+    }
+
+    /**
+     * 复制 src 中剩余的字节。
+     *
+     * @return 空间不够时返回 false
+     */
+    public boolean offer(ByteBuffer src) {
+        int index = tryClaim(src.remaining());
+        if (index < 0) {
+            return false;
+        }
+        buffer.put(index, src, src.position(), src.remaining());
+        src.position(src.limit());
+        commit(index);
+        return true;
+    }
+
+    /**
+     * 按 ASCII 逐个字符写入，不经过 String.getBytes 产生的临时数组。
+     */
+    public boolean offerAscii(CharSequence text) {
+        int length = text.length();
+        int index = tryClaim(length);
+        if (index < 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            buffer.put(index + i, (byte) text.charAt(i));
+        }
+        commit(index);
+        return true;
+    }
+
+    /**
+     * 只能由一个消费者线程调用。handler 返回之后 view 指向的内存会被清零并交还给生产者，不能保存 view。
+     *
+     * @return 读取的记录数
+     */
+    public int read(RecordHandler handler, int limit) {
+        long currentHead = head;
+        int index = (int) (currentHead & mask);
+        // 只在本批记录结束时推进一次 head，然后一起清零
+        int consumed = 0;
+        int count = 0;
+        try {
+            while (count < limit && consumed < capacity) {
+                int position = index + consumed;
+                if (position == capacity) {
+                    break;
+                }
+                int status = (int) INT.getAcquire(buffer, position + STATUS_OFFSET);
+                if (status == EMPTY) {
+                    break;
+                }
+                int length = buffer.getInt(position + LENGTH_OFFSET);
+                consumed += align(HEADER + length);
+                if (status == COMMITTED) {
+                    count++;
+                    handler.onRecord(view.wrap(position + HEADER, length));
+                }
+            }
+        } finally {
+            if (consumed > 0) {
+                zero(index, consumed);
+                HEAD.setRelease(this, currentHead + consumed);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 已经预留（不一定已经提交）但还没有被消费的字节数
+     */
+    public long size() {
+        return tail - head;
+    }
+
+    private void zero(int index, int length) {
+        // 下一圈的记录可能从这段区域中任何 8 字节对齐的位置开始，残留的数据会被误读成状态，所以整段清零
+        int end = index + length;
+        for (int i = index; i < end; i += ZEROS.length) {
+            buffer.put(i, ZEROS, 0, Math.min(ZEROS.length, end - i));
+        }
+    }
+
+    static int align(int length) {
+        return (length + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
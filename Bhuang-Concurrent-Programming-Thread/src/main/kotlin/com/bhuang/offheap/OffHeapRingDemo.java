@@ -0,0 +1,211 @@
+package com.bhuang.offheap;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 2 个生产者、1 个消费者传递 1000 万条消息，对比堆上的 ArrayBlockingQueue&lt;String&gt;
+ * （和 BlockingQueue / BlockingQueueWithCondition 一样存放字符串）与 OffHeapRingBuffer：
+ * 吞吐量、每条消息在三个线程上分配的字节数、GC 次数。
+ */
+public class OffHeapRingDemo {
+
+    private static final int PRODUCERS = 2;
+    private static final int MESSAGES_PER_PRODUCER = 5_000_000;
+
+    static final class Result {
+        long nanos;
+        long allocatedBytes;
+        long gcCount;
+    }
+
+    static void backOff() {
+        // 单核机器上自旋没有意义，让出 CPU 给对方
+        Thread.yield();
+    }
+
+    static long allocatedBytes(List<Thread> threads) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread thread : threads) {
+            total += bean.getThreadAllocatedBytes(thread.getId());
+        }
+        return total;
+    }
+
+    static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * 线程结束之后就查不到它分配的字节数，所以让每个线程在结束前自己累加。
+     */
+    static Result run(Runnable[] producers, Runnable consumer) throws InterruptedException {
+        Result result = new Result();
+        long gcBefore = gcCount();
+        List<Thread> threads = new ArrayList<>();
+        Object lock = new Object();
+        for (Runnable producer : producers) {
+            threads.add(new Thread(() -> {
+                long before = allocatedBytes(List.of(Thread.currentThread()));
+                producer.run();
+                long allocated = allocatedBytes(List.of(Thread.currentThread())) - before;
+                synchronized (lock) {
+                    result.allocatedBytes += allocated;
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            long before = allocatedBytes(List.of(Thread.currentThread()));
+            consumer.run();
+            long allocated = allocatedBytes(List.of(Thread.currentThread())) - before;
+            synchronized (lock) {
+                result.allocatedBytes += allocated;
+            }
+        }));
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        result.nanos = System.nanoTime() - start;
+        result.gcCount = gcCount() - gcBefore;
+        return result;
+    }
+
+    static Result heapQueue() throws InterruptedException {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(16 * 1024);
+        Runnable[] producers = new Runnable[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            int id = p;
+            producers[p] = () -> {
+                try {
+                    for (int i = 0; i < MESSAGES_PER_PRODUCER; i++) {
+                        queue.put("order-" + id + "-" + i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+        }
+        long[] checksum = new long[1];
+        Runnable consumer = () -> {
+            try {
+                for (long i = 0; i < (long) PRODUCERS * MESSAGES_PER_PRODUCER; i++) {
+                    checksum[0] += queue.take().length();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        return run(producers, consumer);
+    }
+
+    static Result offHeapRing() throws InterruptedException {
+        OffHeapRingBuffer ring = new OffHeapRingBuffer(1024 * 1024);
+        Runnable[] producers = new Runnable[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            int id = p;
+            producers[p] = () -> {
+                ByteBuffer buffer = ring.buffer();
+                for (int i = 0; i < MESSAGES_PER_PRODUCER; i++) {
+                    int index;
+                    while ((index = ring.tryClaim(16)) < 0) {
+                        backOff();
+                    }
+                    buffer.putLong(index, id);
+                    buffer.putLong(index + 8, i);
+                    ring.commit(index);
+                }
+            };
+        }
+        long[] nextSeq = new long[PRODUCERS];
+        RecordHandler handler = view -> {
+            int producer = (int) view.getLong(0);
+            long seq = view.getLong(8);
+            // 同一个生产者的消息按顺序到达
+            if (seq != nextSeq[producer]) {
+                throw new IllegalStateException("producer " + producer + " expected " + nextSeq[producer] + " got " + seq);
+            }
+            nextSeq[producer]++;
+        };
+        Runnable consumer = () -> {
+            long remaining = (long) PRODUCERS * MESSAGES_PER_PRODUCER;
+            while (remaining > 0) {
+                int read = ring.read(handler, 256);
+                if (read == 0) {
+                    backOff();
+                }
+                remaining -= read;
+            }
+        };
+        return run(producers, consumer);
+    }
+
+    /**
+     * 4KB 的小缓冲区、长度不等的 ASCII 消息：频繁绕回，检查 PADDING 记录和清零是否正确。
+     */
+    static void variableLength() throws InterruptedException {
+        OffHeapRingBuffer ring = new OffHeapRingBuffer(4096);
+        int count = 200_000;
+        StringBuilder expected = new StringBuilder();
+        StringBuilder actual = new StringBuilder();
+        Thread producer = new Thread(() -> {
+            StringBuilder message = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                message.setLength(0);
+                message.append("msg-").append(i).append('-');
+                for (int j = 0; j < i % 300; j++) {
+                    message.append('x');
+                }
+                while (!ring.offerAscii(message)) {
+                    backOff();
+                }
+            }
+        });
+        producer.start();
+        int[] received = new int[1];
+        RecordHandler handler = view -> {
+            int i = received[0]++;
+            expected.setLength(0);
+            expected.append("msg-").append(i).append('-');
+            for (int j = 0; j < i % 300; j++) {
+                expected.append('x');
+            }
+            actual.setLength(0);
+            if (!view.appendAscii(actual).toString().contentEquals(expected)) {
+                throw new IllegalStateException("message " + i + " corrupted: " + actual);
+            }
+        };
+        while (received[0] < count) {
+            if (ring.read(handler, 64) == 0) {
+                backOff();
+            }
+        }
+        producer.join();
+        System.out.println("variable length: " + count + " ASCII messages through a 4KB ring, all intact");
+    }
+
+    static void print(String name, Result result) {
+        long messages = (long) PRODUCERS * MESSAGES_PER_PRODUCER;
+        System.out.printf("%-26s %6.1f M msg/s, %6.1f bytes allocated/msg, %4d GCs%n", name,
+                messages * 1000.0 / result.nanos, (double) result.allocatedBytes / messages, result.gcCount);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        variableLength();
+        for (int round = 0; round < 2; round++) {
+            print("ArrayBlockingQueue<String>", heapQueue());
+            print("OffHeapRingBuffer", offHeapRing());
+        }
+    }
+}
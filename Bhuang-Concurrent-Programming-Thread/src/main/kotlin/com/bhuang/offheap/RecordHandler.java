@@ -0,0 +1,9 @@
+package com.bhuang.offheap;
+
+/**
+ * 消费者处理一条记录。view 只在这次调用中有效。
+ */
+@FunctionalInterface
+public interface RecordHandler {
+    void onRecord(RecordView view);
+}
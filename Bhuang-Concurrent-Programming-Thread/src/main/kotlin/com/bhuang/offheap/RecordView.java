@@ -0,0 +1,64 @@
+package com.bhuang.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 指向环形缓冲区中一条记录的享元（flyweight）：消费者读取每条记录时复用同一个对象，只改变它指向的位置，
+ * 所有读取都直接访问堆外内存，偏移量相对于记录数据的起点。
+ */
+public final class RecordView {
+
+    private final ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    RecordView(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    RecordView wrap(int offset, int length) {
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte getByte(int index) {
+        return buffer.get(offset + checkIndex(index, 1));
+    }
+
+    public int getInt(int index) {
+        return buffer.getInt(offset + checkIndex(index, Integer.BYTES));
+    }
+
+    public long getLong(int index) {
+        return buffer.getLong(offset + checkIndex(index, Long.BYTES));
+    }
+
+    /**
+     * 把整条记录复制到 dst，dst 的长度不能小于 length()。
+     */
+    public void getBytes(byte[] dst) {
+        buffer.get(offset, dst, 0, length);
+    }
+
+    /**
+     * 把 ASCII 记录追加到 sb，调用方可以复用同一个 StringBuilder。
+     */
+    public StringBuilder appendAscii(StringBuilder sb) {
+        for (int i = 0; i < length; i++) {
+            sb.append((char) buffer.get(offset + i));
+        }
+        return sb;
+    }
+
+    private int checkIndex(int index, int size) {
+        if (index < 0 || index + size > length) {
+            throw new IndexOutOfBoundsException("index " + index + " out of record of length " + length);
+        }
+        return index;
+    }
+}
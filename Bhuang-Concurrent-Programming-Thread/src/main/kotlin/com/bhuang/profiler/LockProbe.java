@@ -0,0 +1,143 @@
+package com.bhuang.profiler;
+
+/**
+ * 一把互斥锁的探针：记录等待时间和持有时间。synchronized 没有办法被包装，只能在加锁的代码两边调用探针：
+ *
+ * <pre>
+ * long start = probe.beforeAcquire();
+ * synchronized (this) {
+ *     probe.acquired(start);
+ *     try {
+ *         while (...) {
+ *             probe.await(this);   // 代替 wait()，等待期间不计入持有时间
+ *         }
+ *         ...
+ *     } finally {
+ *         probe.releasing();
+ *     }
+ * }
+ * </pre>
+ *
+ * 关闭时 beforeAcquire() 是一次 volatile 读，acquired()/releasing() 各是一次普通字段的读取，开销可以忽略。
+ *
+ * 一个探针对应一把锁的一个实例：depth 和 acquiredAt 只由持有锁的线程读写，锁本身保证了它们的可见性。
+ * 在加锁期间切换开关时，这一次的持有时间可能不准确。
+ */
+public final class LockProbe {
+
+    // synchronized 无法 tryLock，等待超过这个时间就认为发生了竞争；无竞争的 monitorenter 只需要几十纳秒
+    private static final long CONTENDED_THRESHOLD_NANOS = 1_000;
+
+    private final LockStats stats;
+    // 以下字段只由持有锁的线程访问
+    private long acquiredAt;
+    private int depth;
+    // 持有锁的线程：只在持有锁时写入，其他线程读到的不会是自己，用来在 unlock 之前判断调用者是否持有锁
+    private Thread owner;
+
+    LockProbe(LockStats stats) {
+        this.stats = stats;
+    }
+
+    public LockStats stats() {
+        return stats;
+    }
+
+    /**
+     * @return 开始等待的时间；关闭时返回 0，之后的 acquired() 直接返回
+     */
+    public long beforeAcquire() {
+        return LockProfiler.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    public void acquired(long start) {
+        if (start == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - start <= CONTENDED_THRESHOLD_NANOS) {
+            record(now - start, false, null, now);
+            return;
+        }
+        // synchronized 拿到锁之后才知道发生了竞争，调用位置只能在持有锁时取；持有时间从取完之后算起，不把遍历调用栈算进去
+        String site = LockStats.callSite();
+        record(now - start, true, site, System.nanoTime());
+    }
+
+    /**
+     * 显式锁在阻塞之前已经取得了调用位置。site 不为 null、或者等待超过阈值，都算发生了竞争。
+     *
+     * @param site 阻塞之前取得的调用位置，没有预计到竞争时为 null
+     */
+    void acquired(long start, long now, String site) {
+        record(now - start, site != null || now - start > CONTENDED_THRESHOLD_NANOS, site, now);
+    }
+
+    private void record(long waitNanos, boolean contended, String site, long holdStart) {
+        stats.recordAcquire(waitNanos, contended, site);
+        // 重入时只统计最外层的持有时间
+        if (depth++ == 0) {
+            acquiredAt = holdStart;
+            owner = Thread.currentThread();
+        }
+    }
+
+    /**
+     * @return 当前线程是否通过这个探针记录过加锁、还没有释放；关闭统计时加的锁返回 false
+     */
+    boolean isHeldByCurrentThread() {
+        return owner == Thread.currentThread();
+    }
+
+    public void releasing() {
+        if (depth == 0) {
+            return;
+        }
+        if (--depth == 0) {
+            owner = null;
+            stats.recordHold(System.nanoTime() - acquiredAt);
+        }
+    }
+
+    /**
+     * 代替 {@code monitor.wait()}：wait() 会释放监视器锁，等待的时间不属于持有时间。
+     */
+    public void await(Object monitor) throws InterruptedException {
+        int held = pauseHold();
+        try {
+            monitor.wait();
+        } finally {
+            resumeHold(held);
+        }
+    }
+
+    /**
+     * 锁在 wait()/await() 中被释放之前调用，结束当前这一段持有时间。
+     *
+     * @return 需要传给 resumeHold() 的重入深度
+     */
+    int pauseHold() {
+        // 不持有锁的线程调用 wait()/await() 会抛出 IllegalMonitorStateException，不能先动持有者的状态
+        if (owner != Thread.currentThread()) {
+            return 0;
+        }
+        int held = depth;
+        if (held != 0) {
+            stats.recordHold(System.nanoTime() - acquiredAt);
+            depth = 0;
+            owner = null;
+        }
+        return held;
+    }
+
+    /**
+     * 从 wait()/await() 返回、重新持有锁之后调用，开始新的一段持有时间。
+     */
+    void resumeHold(int held) {
+        if (held != 0) {
+            depth = held;
+            acquiredAt = System.nanoTime();
+            owner = Thread.currentThread();
+        }
+    }
+}
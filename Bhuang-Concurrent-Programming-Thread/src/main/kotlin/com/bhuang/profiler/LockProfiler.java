@@ -0,0 +1,84 @@
+package com.bhuang.profiler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 锁竞争分析器的入口：运行时开关和按名字注册的统计。
+ *
+ * <pre>
+ * private final Lock lock = LockProfiler.profile("BlockingQueueWithCondition.lock", new ReentrantLock());
+ * private final LockProbe monitor = LockProfiler.probe("BlockingQueue.monitor");   // 用于 synchronized
+ *
+ * LockProfiler.setEnabled(true);
+ * ...
+ * System.out.println(LockProfiler.report());
+ * </pre>
+ *
+ * 同名的锁共享一份统计，例如所有 BlockingQueueWithCondition 实例的锁。
+ * 启动参数 {@code -Dlock.profiler=true} 会在启动时打开分析器，并在 JVM 退出时打印报告。
+ */
+public final class LockProfiler {
+
+    private static final ConcurrentHashMap<String, LockStats> STATS = new ConcurrentHashMap<>();
+
+    private static volatile boolean enabled;
+
+    static {
+        if (Boolean.getBoolean("lock.profiler")) {
+            enabled = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(report()), "lock-profiler-report"));
+        }
+    }
+
+    private LockProfiler() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * @return 包装之后的锁；newCondition() 返回的 Condition 在 await 期间不计入持有时间
+     */
+    public static Lock profile(String name, Lock lock) {
+        return new ProfiledLock(lock, stats(name));
+    }
+
+    /**
+     * @return 用于 synchronized 代码块的探针，每个被保护的对象使用一个单独的探针
+     */
+    public static LockProbe probe(String name) {
+        return new LockProbe(stats(name));
+    }
+
+    public static LockStats stats(String name) {
+        return STATS.computeIfAbsent(name, LockStats::new);
+    }
+
+    public static void reset() {
+        STATS.values().forEach(LockStats::reset);
+    }
+
+    /**
+     * @return 所有锁的统计，按总等待时间（近似为平均值乘次数）降序，竞争最严重的锁在前
+     */
+    public static String report() {
+        List<LockStats> all = new ArrayList<>(STATS.values());
+        all.sort(Comparator.comparingDouble((LockStats s) -> s.waitTimes().mean() * s.acquisitions()).reversed());
+        StringBuilder sb = new StringBuilder("=== lock contention report ===").append(System.lineSeparator());
+        for (LockStats stats : all) {
+            if (stats.acquisitions() > 0) {
+                sb.append(stats);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.bhuang.profiler;
+
+import com.bhuang.BlockingQueueWithCondition;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 1. 对比直接使用 ReentrantLock、包装之后关闭分析器、包装之后打开分析器三种情况下每次加锁/解锁的耗时。
+ * 2. 打开分析器运行 BlockingQueueWithCondition 的生产者/消费者，打印竞争报告。
+ *
+ * BlockingQueue 和 SerialExecutor 的探针可以用 {@code -Dlock.profiler=true} 运行它们的 main 方法查看，退出时会打印报告。
+ */
+public class LockProfilerDemo {
+
+    private static final int THREADS = 4;
+    private static final int ITERATIONS = 2_000_000;
+
+    private static long counter;
+
+    static long nanosPerOp(Lock lock) throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    lock.lock();
+                    try {
+                        counter++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return (System.nanoTime() - start) / ((long) THREADS * ITERATIONS);
+    }
+
+    static void queueWorkload() throws InterruptedException {
+        BlockingQueueWithCondition queue = new BlockingQueueWithCondition(4, false);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < 2; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        queue.give("Data-" + i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[t + 2] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        queue.take();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Lock raw = new ReentrantLock();
+        Lock profiled = LockProfiler.profile("demo.counter", new ReentrantLock());
+
+        // 预热
+        nanosPerOp(raw);
+        nanosPerOp(profiled);
+
+        LockProfiler.setEnabled(false);
+        long rawNanos = nanosPerOp(raw);
+        long offNanos = nanosPerOp(profiled);
+        LockProfiler.reset();
+        LockProfiler.setEnabled(true);
+        long onNanos = nanosPerOp(profiled);
+        System.out.printf("ReentrantLock: %d ns/op, profiled (off): %d ns/op, profiled (on): %d ns/op%n",
+                rawNanos, offNanos, onNanos);
+
+        queueWorkload();
+        LockProfiler.setEnabled(false);
+        System.out.print(LockProfiler.report());
+    }
+}
@@ -0,0 +1,143 @@
+package com.bhuang.profiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一把锁（或者同名的一组锁）的统计：获取次数、发生竞争的次数、等待时间和持有时间的直方图、竞争最多的调用位置。
+ */
+public final class LockStats {
+
+    // 调用位置的数量上限，超过之后归入 OTHER，避免统计本身无限增长
+    private static final int MAX_CALL_SITES = 256;
+    private static final String OTHER = "<other>";
+
+    private final String name;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final Log2Histogram waitTimes = new Log2Histogram();
+    private final Log2Histogram holdTimes = new Log2Histogram();
+    private final ConcurrentHashMap<String, LongAdder> callSites = new ConcurrentHashMap<>();
+
+    LockStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param site 发生竞争的调用位置，由调用方在阻塞之前用 {@link #callSite()} 取得；取不到时为 null，归入 OTHER
+     */
+    void recordAcquire(long waitNanos, boolean wasContended, String site) {
+        acquisitions.increment();
+        waitTimes.record(waitNanos);
+        if (wasContended) {
+            contended.increment();
+            if (site == null) {
+                site = OTHER;
+            }
+            LongAdder counter = callSites.get(site);
+            if (counter == null) {
+                if (callSites.size() >= MAX_CALL_SITES) {
+                    site = OTHER;
+                }
+                counter = callSites.computeIfAbsent(site, k -> new LongAdder());
+            }
+            counter.increment();
+        }
+    }
+
+    void recordHold(long holdNanos) {
+        holdTimes.record(holdNanos);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long acquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long contended() {
+        return contended.sum();
+    }
+
+    public Log2Histogram waitTimes() {
+        return waitTimes;
+    }
+
+    public Log2Histogram holdTimes() {
+        return holdTimes;
+    }
+
+    /**
+     * @return 竞争次数最多的 limit 个调用位置，按次数降序
+     */
+    public List<Map.Entry<String, Long>> topCallSites(int limit) {
+        List<Map.Entry<String, Long>> sites = new ArrayList<>();
+        callSites.forEach((site, count) -> sites.add(Map.entry(site, count.sum())));
+        sites.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return sites.size() > limit ? sites.subList(0, limit) : sites;
+    }
+
+    void reset() {
+        acquisitions.reset();
+        contended.reset();
+        waitTimes.reset();
+        holdTimes.reset();
+        callSites.clear();
+    }
+
+    @Override
+    public String toString() {
+        long total = acquisitions();
+        long contendedCount = contended();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s: acquisitions=%d, contended=%d (%.1f%%)%n", name, total, contendedCount,
+                total == 0 ? 0.0 : contendedCount * 100.0 / total));
+        sb.append(String.format("  wait  p50=%s p99=%s max=%s%n",
+                format(waitTimes.percentile(50)), format(waitTimes.percentile(99)), format(waitTimes.max())));
+        sb.append(String.format("  hold  p50=%s p99=%s max=%s%n",
+                format(holdTimes.percentile(50)), format(holdTimes.percentile(99)), format(holdTimes.max())));
+        List<Map.Entry<String, Long>> top = topCallSites(5);
+        if (!top.isEmpty()) {
+            sb.append("  top contending call sites:").append(System.lineSeparator());
+            for (Map.Entry<String, Long> site : top) {
+                sb.append(String.format("    %10d  %s%n", site.getValue(), site.getKey()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String format(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 10_000_000) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+    }
+
+    private static boolean isProfilerFrame(String className) {
+        // startsWith 同时覆盖内部类，例如 ProfiledLock$ProfiledCondition
+        return className.startsWith(ProfiledLock.class.getName())
+                || className.startsWith(LockProbe.class.getName())
+                || className.equals(LockStats.class.getName());
+    }
+
+    /**
+     * 第一个不属于分析器和 JDK 的栈帧。遍历调用栈要几微秒，应该在阻塞之前调用：
+     * 持有锁时调用会把这段时间算进持有时间，排队的线程也要跟着多等。
+     */
+    static String callSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> !isProfilerFrame(f.getClassName()) && !f.getClassName().startsWith("java."))
+                .findFirst()
+                .map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber())
+                .orElse(OTHER));
+    }
+}
@@ -0,0 +1,222 @@
+package com.bhuang.readmostly;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 用 StampedLock 乐观读实现的读多写少 map：读操作在绝大多数情况下不加锁、不写共享内存，写操作是 O(1) 的原地修改。
+ *
+ * 读操作：
+ * 1. {@code tryOptimisticRead()} 拿到一个戳（stamp），这只是一次 volatile 读，不修改锁的状态。
+ * 2. 在数组上做查找，查找过程中可能读到写线程改了一半的数据。
+ * 3. {@code validate(stamp)} 检查期间是否有写操作，没有的话结果就是正确的；否则重试，连续失败几次之后退化为读锁。
+ *
+ * 乐观读要求“读到改了一半的数据也不能出错”，所以这里没有用 HashMap（并发扩容时读取可能出错），
+ * 而是用一个开放寻址的数组：key 和 value 交替存放，探测次数不超过数组长度，扩容时换一个新数组、旧数组不再修改。
+ *
+ * 写操作由 {@link WriteBatcher} 合并，一批修改只获取一次写锁，也只让并发的乐观读失效一次。
+ *
+ * 乐观读会在 validate 之前调用表里 key 的 equals，读到的可能是刚放进来、字段还不可见的 key 对象，
+ * 所以 key 必须能被安全发布（比如 String、Integer 这类 final 字段的不可变对象）。
+ * 乐观读期间 equals 抛出 RuntimeException 时，如果期间有写操作就当作一次校验失败重试，不抛给调用方。
+ * key 和 value 都不能为 null。
+ */
+public class OptimisticReadMap<K, V> {
+
+    private static final Object TOMBSTONE = new Object();
+    private static final int OPTIMISTIC_RETRIES = 3;
+
+    private final StampedLock lock = new StampedLock();
+
+    // table[2 * i] 是 key，table[2 * i + 1] 是 value；以下字段只在持有写锁时修改
+    private Object[] table = new Object[2 * 16];
+    private int size;
+    private int used;
+
+    private final WriteBatcher<OptimisticReadMap<K, V>> writer = new WriteBatcher<>() {
+        private long stamp;
+
+        @Override
+        protected OptimisticReadMap<K, V> beginBatch() {
+            stamp = lock.writeLock();
+            return OptimisticReadMap.this;
+        }
+
+        @Override
+        protected void endBatch(OptimisticReadMap<K, V> target) {
+            lock.unlockWrite(stamp);
+        }
+    };
+
+    public V get(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        for (int i = 0; i < OPTIMISTIC_RETRIES; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) {
+                // 正在写，稍后重试
+                Thread.onSpinWait();
+                continue;
+            }
+            V value;
+            try {
+                value = find(table, key);
+            } catch (RuntimeException e) {
+                // 读到了写了一半的数据，只要期间有写操作就和校验失败一样重试；没有写操作说明是 equals 自己的异常
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+                continue;
+            }
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        // 写操作很频繁时退化为读锁，保证读线程不会一直重试
+        long stamp = lock.readLock();
+        try {
+            return find(table, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int result = size;
+        if (lock.validate(stamp)) {
+            return result;
+        }
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 不接受 null 作为 value，这样 get() 返回 null 就表示 key 不存在。
+     */
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        return writer.write(map -> map.putLocked(key, value));
+    }
+
+    public V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return writer.write(map -> map.removeLocked(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V find(Object[] table, Object key) {
+        int capacity = table.length >> 1;
+        int index = hash(key) & (capacity - 1);
+        // 最多探测 capacity 次，即使读到的是写了一半的数据也一定会结束
+        for (int probe = 0; probe < capacity; probe++) {
+            Object k = table[index << 1];
+            if (k == null) {
+                return null;
+            }
+            if (k != TOMBSTONE && k.equals(key)) {
+                return (V) table[(index << 1) + 1];
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V putLocked(K key, V value) {
+        // 负载因子不超过 1/2（包括墓碑），保证探测序列很短
+        if ((used + 1) * 2 > table.length >> 1) {
+            resize();
+        }
+        int capacity = table.length >> 1;
+        int index = hash(key) & (capacity - 1);
+        int tombstone = -1;
+        while (true) {
+            Object k = table[index << 1];
+            if (k == null) {
+                break;
+            }
+            if (k == TOMBSTONE) {
+                if (tombstone < 0) {
+                    tombstone = index;
+                }
+            } else if (k.equals(key)) {
+                V previous = (V) table[(index << 1) + 1];
+                table[(index << 1) + 1] = value;
+                return previous;
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+        if (tombstone >= 0) {
+            index = tombstone;
+        } else {
+            used++;
+        }
+        // 先写 value 再写 key：读线程即使没有在 validate 时失败，也不会看到 key 对应的 value 为空
+        table[(index << 1) + 1] = value;
+        table[index << 1] = key;
+        size++;
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V removeLocked(K key) {
+        Object[] tab = table;
+        int capacity = tab.length >> 1;
+        int index = hash(key) & (capacity - 1);
+        for (int probe = 0; probe < capacity; probe++) {
+            Object k = tab[index << 1];
+            if (k == null) {
+                return null;
+            }
+            if (k != TOMBSTONE && k.equals(key)) {
+                V previous = (V) tab[(index << 1) + 1];
+                tab[index << 1] = TOMBSTONE;
+                tab[(index << 1) + 1] = null;
+                size--;
+                return previous;
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+        return null;
+    }
+
+    private void resize() {
+        Object[] old = table;
+        int capacity = old.length >> 1;
+        // 墓碑很多时只需要原地重建，不需要扩容
+        int newCapacity = (size + 1) * 4 > capacity ? capacity * 2 : capacity;
+        Object[] fresh = new Object[newCapacity << 1];
+        for (int i = 0; i < capacity; i++) {
+            Object k = old[i << 1];
+            if (k != null && k != TOMBSTONE) {
+                int index = hash(k) & (newCapacity - 1);
+                while (fresh[index << 1] != null) {
+                    index = (index + 1) & (newCapacity - 1);
+                }
+                fresh[index << 1] = k;
+                fresh[(index << 1) + 1] = old[(i << 1) + 1];
+            }
+        }
+        // 旧数组之后不再修改，正在旧数组上做乐观读的线程会在 validate 时发现写操作并重试
+        table = fresh;
+        used = size;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
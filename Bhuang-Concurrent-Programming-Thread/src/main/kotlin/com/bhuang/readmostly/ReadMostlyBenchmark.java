@@ -0,0 +1,120 @@
+package com.bhuang.readmostly;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 在 95/5 和 99/1 两种读写比例下，对比 synchronized map、ConcurrentHashMap、OptimisticReadMap 和 ReadMostlyMap 的吞吐量。
+ *
+ * 数据集是 1000 个 key 的“配置”；key 越多，ReadMostlyMap 每次写入复制整个 map 的代价越大。
+ */
+public class ReadMostlyBenchmark {
+
+    private static final int KEYS = 1_000;
+    private static final int OPS_PER_THREAD = 1_000_000;
+
+    interface Store {
+        Integer get(Integer key);
+
+        void put(Integer key, Integer value);
+    }
+
+    static Store synchronizedMap() {
+        Map<Integer, Integer> map = Collections.synchronizedMap(new HashMap<>());
+        return store(map::get, map::put);
+    }
+
+    static Store concurrentHashMap() {
+        Map<Integer, Integer> map = new ConcurrentHashMap<>();
+        return store(map::get, map::put);
+    }
+
+    static Store optimisticReadMap() {
+        OptimisticReadMap<Integer, Integer> map = new OptimisticReadMap<>();
+        return store(map::get, map::put);
+    }
+
+    static Store readMostlyMap() {
+        ReadMostlyMap<Integer, Integer> map = new ReadMostlyMap<>();
+        return store(map::get, map::put);
+    }
+
+    static Store store(Function<Integer, Integer> getter, BiFunction<Integer, Integer, Integer> putter) {
+        return new Store() {
+            @Override
+            public Integer get(Integer key) {
+                return getter.apply(key);
+            }
+
+            @Override
+            public void put(Integer key, Integer value) {
+                putter.apply(key, value);
+            }
+        };
+    }
+
+    /**
+     * @return 每毫秒完成的操作数
+     */
+    static long run(Store store, int threads, int writePercent) throws InterruptedException {
+        for (int i = 0; i < KEYS; i++) {
+            store.put(i, i);
+        }
+        Thread[] workers = new Thread[threads];
+        long[] sinks = new long[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long sink = 0;
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    // Integer 缓存只覆盖 -128..127，这里的装箱在各个实现中都一样，不影响对比
+                    Integer key = random.nextInt(KEYS);
+                    if (random.nextInt(100) < writePercent) {
+                        store.put(key, i);
+                    } else {
+                        Integer value = store.get(key);
+                        sink += value == null ? 0 : value;
+                    }
+                }
+                sinks[index] = sink;
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        return (long) threads * OPS_PER_THREAD / elapsedMillis;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // 预热
+        run(synchronizedMap(), 2, 5);
+        run(concurrentHashMap(), 2, 5);
+        run(optimisticReadMap(), 2, 5);
+        run(readMostlyMap(), 2, 5);
+
+        System.out.println("CPU cores: " + Runtime.getRuntime().availableProcessors() + ", keys: " + KEYS);
+        for (int writePercent : new int[]{5, 1}) {
+            System.out.printf("read/write = %d/%d (ops/ms)%n", 100 - writePercent, writePercent);
+            System.out.printf("%8s %14s %18s %18s %14s%n",
+                    "threads", "synchronized", "ConcurrentHashMap", "OptimisticReadMap", "ReadMostlyMap");
+            for (int threads : new int[]{1, 2, 4, 8}) {
+                System.out.printf("%8d %14d %18d %18d %14d%n", threads,
+                        run(synchronizedMap(), threads, writePercent),
+                        run(concurrentHashMap(), threads, writePercent),
+                        run(optimisticReadMap(), threads, writePercent),
+                        run(readMostlyMap(), threads, writePercent));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bhuang.readmostly;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 读多写少的共享数据（配置、路由表、字典等）：读操作不加锁、不写任何共享内存，写操作批量合并。
+ *
+ * ThreadLocalDemo.Task3 用 synchronized 把所有线程串行化，即使只是读取也要排队。这里的做法是写时复制（copy-on-write）：
+ * 1. 当前数据是一个不可变的 HashMap 快照，保存在 volatile 字段里。读操作只是一次 volatile 读 + 一次 HashMap 查找，
+ *    不会阻塞，也不会像读写锁那样修改锁的状态（那会让所有读线程争抢同一个缓存行）。
+ * 2. 同时到来的多个写操作由 {@link WriteBatcher} 合并成一个批次，只复制一次 map、发布一次新快照。
+ * 3. {@link #snapshot()} 返回的快照是一致的，可以放心地遍历。
+ *
+ * 每次发布都要复制整个 map，所以它适合数据量不大、写入很少（比如 99/1）的场景；
+ * 写入比例更高时使用基于 StampedLock 乐观读的 {@link OptimisticReadMap}。
+ */
+public class ReadMostlyMap<K, V> {
+
+    private volatile Map<K, V> snapshot = Collections.emptyMap();
+
+    private final WriteBatcher<Map<K, V>> writer = new WriteBatcher<>() {
+        @Override
+        protected Map<K, V> beginBatch() {
+            return new HashMap<>(snapshot);
+        }
+
+        @Override
+        protected void endBatch(Map<K, V> copy) {
+            snapshot = Collections.unmodifiableMap(copy);
+        }
+    };
+
+    public V get(K key) {
+        return snapshot.get(key);
+    }
+
+    public V getOrDefault(K key, V defaultValue) {
+        return snapshot.getOrDefault(key, defaultValue);
+    }
+
+    public boolean containsKey(K key) {
+        return snapshot.containsKey(key);
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * @return 当前的不可变快照，多次读取同一个快照可以得到一致的视图
+     */
+    public Map<K, V> snapshot() {
+        return snapshot;
+    }
+
+    public V put(K key, V value) {
+        return writer.write(map -> map.put(key, value));
+    }
+
+    public V remove(K key) {
+        return writer.write(map -> map.remove(key));
+    }
+
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        writer.write(map -> {
+            map.putAll(entries);
+            return null;
+        });
+    }
+
+    /**
+     * 对 map 做任意的批量修改，这些修改会原子地一起发布。
+     * mutator 抛出的异常会在调用线程中重新抛出，但它在抛出异常之前已经做的修改仍然会被发布。
+     */
+    public void update(Consumer<Map<K, V>> mutator) {
+        writer.write(map -> {
+            mutator.accept(map);
+            return null;
+        });
+    }
+}
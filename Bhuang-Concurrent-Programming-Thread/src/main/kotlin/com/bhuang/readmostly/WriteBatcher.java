@@ -0,0 +1,112 @@
+package com.bhuang.readmostly;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 批量合并写操作（flat combining）：写线程先把修改放进待处理队列，再去竞争合并锁；
+ * 拿到合并锁的线程把队列里所有线程的修改放在同一个批次里完成，每个批次只付一次“开始/结束”的代价
+ * （复制快照，或者获取/释放写锁）。
+ *
+ * 写操作返回时，它的修改一定已经完成：要么是自己完成的，要么是某个合并者在释放合并锁之前完成的。
+ * 修改抛出的异常由发起它的线程抛出；endBatch 抛出异常时，这一批所有修改的发起者都收到这个异常。
+ *
+ * @param <T> 一个批次里所有修改共同作用的对象
+ */
+abstract class WriteBatcher<T> {
+
+    private final ConcurrentLinkedQueue<Mutation<T, ?>> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock combinerLock = new ReentrantLock();
+    // 当前批次取出的修改，只在持有合并锁时访问，批次结束后清空复用
+    private final List<Mutation<T, ?>> batch = new ArrayList<>();
+
+    /**
+     * 开始一个批次，返回这一批修改要作用的对象。
+     */
+    protected abstract T beginBatch();
+
+    /**
+     * 结束一个批次，让这一批修改对读线程可见。
+     */
+    protected abstract void endBatch(T target);
+
+    final <R> R write(Function<T, R> action) {
+        Mutation<T, R> mutation = new Mutation<>(action);
+        pending.add(mutation);
+        combinerLock.lock();
+        try {
+            if (!mutation.done) {
+                combine(mutation);
+            }
+        } finally {
+            combinerLock.unlock();
+        }
+        Throwable failure = mutation.failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return mutation.result;
+    }
+
+    private void combine(Mutation<T, ?> own) {
+        T target;
+        try {
+            target = beginBatch();
+        } catch (RuntimeException | Error e) {
+            // 一个修改都还没有取出；自己的修改留在队列里的话，之后会被别的合并者执行，而这里已经报告了失败
+            pending.remove(own);
+            throw e;
+        }
+        try {
+            Mutation<T, ?> next;
+            while ((next = pending.poll()) != null) {
+                batch.add(next);
+                next.apply(target);
+            }
+            endBatch(target);
+        } catch (RuntimeException | Error e) {
+            // endBatch 失败：这一批修改都没有对读线程生效，每个发起者都要收到这个异常，而不是返回成功或者永远没有结果
+            for (Mutation<T, ?> m : batch) {
+                m.fail(e);
+            }
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private static final class Mutation<T, R> {
+        private final Function<T, R> action;
+        // 由合并者在持有合并锁时写入，发起者在拿到合并锁之后读取
+        private R result;
+        private Throwable failure;
+        private boolean done;
+
+        Mutation(Function<T, R> action) {
+            this.action = action;
+        }
+
+        void apply(T target) {
+            try {
+                result = action.apply(target);
+            } catch (RuntimeException | Error e) {
+                // 异常属于发起这个修改的线程，不能让它打断合并者处理其他线程的修改。
+                // Error 也一样交给发起者在自己的线程上重新抛出（和 FutureTask 相同），合并者继续完成这一批
+                failure = e;
+            } finally {
+                done = true;
+            }
+        }
+
+        void fail(Throwable e) {
+            result = null;
+            failure = e;
+            done = true;
+        }
+    }
+}
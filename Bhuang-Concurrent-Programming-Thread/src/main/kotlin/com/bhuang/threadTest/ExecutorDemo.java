@@ -1,5 +1,9 @@
 package com.bhuang.threadTest;
 
+import com.bhuang.jfr.JfrExecutors;
+import com.bhuang.profiler.LockProbe;
+import com.bhuang.profiler.LockProfiler;
+
 import java.util.ArrayDeque;
 import java.util.Queue;
 import java.util.concurrent.Executor;
@@ -41,6 +45,9 @@ public class ExecutorDemo {
         // 这个值的初始化是从任务队列中取出一个任务，然后给active 赋值。
         Runnable active;
 
+        // execute 和 scheduleNext 都要获取 this 的监视器锁，开启 LockProfiler 时用探针统计这把锁的竞争
+        final LockProbe monitor = LockProfiler.probe("SerialExecutor.monitor");
+
         SerialExecutor(Executor executor) {
             this.executor = executor;
         }
@@ -66,17 +73,39 @@ public class ExecutorDemo {
             }
         }
 
-        public synchronized void execute(Runnable r) {
-            // 将提交的任务 r 包装成一个新的 Runnable 并添加到 tasks 队列中。
-            // 这个包装的 Runnable 在 run 方法结束后会调用 scheduleNext()，确保下一个任务被执行。
-            tasks.add(new TaskWrapper(r, this));
-            // 如果当前没有任务在执行（即 active 为 null），则调用 scheduleNext() 去启动下一个任务
-            if (active == null) {
-                scheduleNext();
+        public void execute(Runnable r) {
+            long start = monitor.beforeAcquire();
+            synchronized (this) {
+                monitor.acquired(start);
+                try {
+                    // 将提交的任务 r 包装成一个新的 Runnable 并添加到 tasks 队列中。
+                    // 这个包装的 Runnable 在 run 方法结束后会调用 scheduleNext()，确保下一个任务被执行。
+                    tasks.add(new TaskWrapper(r, this));
+                    // 如果当前没有任务在执行（即 active 为 null），则调用 scheduleNext() 去启动下一个任务
+                    // 已经持有监视器，调用不经过探针的版本，避免同一次获取被统计两次
+                    if (active == null) {
+                        scheduleNextLocked();
+                    }
+                } finally {
+                    monitor.releasing();
+                }
+            }
+        }
+
+        protected void scheduleNext() {
+            long start = monitor.beforeAcquire();
+            synchronized (this) {
+                monitor.acquired(start);
+                try {
+                    scheduleNextLocked();
+                } finally {
+                    monitor.releasing();
+                }
             }
         }
 
-        protected synchronized void scheduleNext() {
+        // 调用方必须已经持有 this 的监视器
+        private void scheduleNextLocked() {
             // 从任务队列中取出一个任务，提交给 executor 执行。
             if ((active = tasks.poll()) != null) {
                 executor.execute(active);
@@ -101,7 +130,8 @@ public class ExecutorDemo {
         Executor threadPerTaskExecutor =  new ThreadPerTaskExecutor();
 //        threadPerTaskExecutor.execute(new Task());
 
-        Executor serialExecutor = new SerialExecutor(threadPerTaskExecutor);
+        // 包装之后，开启 JFR 记录时可以看到任务在 SerialExecutor 中排队和执行的时间
+        Executor serialExecutor = JfrExecutors.wrap("serial", new SerialExecutor(threadPerTaskExecutor));
         serialExecutor.execute(new Task());
     }
 }
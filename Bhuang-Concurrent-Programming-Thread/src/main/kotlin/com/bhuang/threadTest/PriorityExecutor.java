@@ -0,0 +1,291 @@
+package com.bhuang.threadTest;
+
+import com.bhuang.profiler.Log2Histogram;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按服务等级调度的固定大小线程池。
+ *
+ * ExecutorDemo 中的执行器和 Executors.newFixedThreadPool 都是先进先出：一批批量任务提交之后，
+ * 之后到来的交互式请求要排在整批任务后面。PriorityExecutor 为每个等级维护一个队列：
+ * 1. 平滑加权轮询（smooth weighted round-robin）：每次调度时，每个非空队列的 current 加上自己的权重，
+ *    选 current 最大的队列，再把它的 current 减去所有非空队列的权重之和。权重 8:4:1 时，三个队列都有任务的情况下，
+ *    每 13 个任务中交互式占 8 个、批量占 1 个，并且均匀交错，不会连续调度同一个队列。
+ * 2. 老化（aging）：队首任务每多等待 agingNanos，这个队列的有效权重就增加一倍自身权重，但不超过最高等级的权重。
+ *    长时间等待的批量任务最多和交互式任务平分线程，不会饿死，也不会反过来挤占交互式任务。
+ * 3. 每个等级分别统计排队时间（提交到开始执行）。
+ *
+ * 调度是工作保持（work-conserving）的：高等级的队列为空时，低等级的任务会立即执行，线程不会空闲。
+ */
+public class PriorityExecutor implements Executor {
+
+    public enum Priority {
+        INTERACTIVE(8), NORMAL(4), BATCH(1);
+
+        private final int defaultWeight;
+
+        Priority(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+    private final ArrayDeque<Entry>[] queues;
+    private final int[] weights;
+    private final int maxWeight;
+    // 平滑加权轮询的累计值，只在持有锁时访问
+    private final long[] current;
+    private final long agingNanos;
+    private final ClassStats[] stats;
+    private final Thread[] workers;
+    private int queued;
+    private int liveWorkers;
+    private boolean shutdown;
+
+    /**
+     * 使用默认权重 8:4:1，队首任务每等待 1 秒有效权重增加一倍。
+     */
+    public PriorityExecutor(String name, int threads) {
+        this(name, threads, 1, TimeUnit.SECONDS, Priority.INTERACTIVE.defaultWeight,
+                Priority.NORMAL.defaultWeight, Priority.BATCH.defaultWeight);
+    }
+
+    /**
+     * @param aging   队首任务每等待这么长时间，有效权重增加一倍自身权重；0 表示不老化
+     * @param weights 按 INTERACTIVE、NORMAL、BATCH 的顺序给出的权重
+     */
+    public PriorityExecutor(String name, int threads, long aging, TimeUnit unit, int... weights) {
+        if (threads <= 0 || weights.length != PRIORITIES.length) {
+            throw new IllegalArgumentException("threads must be positive and one weight per priority is required");
+        }
+        int max = 0;
+        for (int weight : weights) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weights must be positive");
+            }
+            max = Math.max(max, weight);
+        }
+        this.weights = weights.clone();
+        this.maxWeight = max;
+        this.agingNanos = unit.toNanos(aging);
+        this.current = new long[PRIORITIES.length];
+        // Java 不能创建泛型数组，只能创建原始类型的数组再转换；数组只在这个类里用，每个元素都是 ArrayDeque<Entry>
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayDeque<Entry>[] queues = new ArrayDeque[PRIORITIES.length];
+        this.queues = queues;
+        this.stats = new ClassStats[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues[i] = new ArrayDeque<>();
+            stats[i] = new ClassStats();
+        }
+        this.workers = new Thread[threads];
+        this.liveWorkers = threads;
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::runWorker, name + "-" + i);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * 以 NORMAL 等级执行。
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, Priority.NORMAL);
+    }
+
+    public void execute(Runnable command, Priority priority) {
+        if (command == null || priority == null) {
+            throw new NullPointerException();
+        }
+        Entry entry = new Entry(command, priority, System.nanoTime());
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("executor is shut down");
+            }
+            queues[priority.ordinal()].add(entry);
+            queued++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        stats[priority.ordinal()].submitted.increment();
+    }
+
+    /**
+     * 不再接受新任务，已经提交的任务会继续执行。
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (liveWorkers > 0) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queuedTasks(Priority priority) {
+        lock.lock();
+        try {
+            return queues[priority.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 该等级任务的排队时间分布（纳秒，从提交到开始执行）
+     */
+    public Log2Histogram queueLatency(Priority priority) {
+        return stats[priority.ordinal()].queueLatency;
+    }
+
+    /**
+     * @return 各等级的提交数、完成数、因老化而提高了权重的调度次数和排队时间
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Priority priority : PRIORITIES) {
+            ClassStats s = stats[priority.ordinal()];
+            sb.append(String.format("%-12s submitted=%-7d completed=%-7d aged=%-6d queue p50=%6dus p99=%6dus max=%6dus%n",
+                    priority, s.submitted.sum(), s.completed.sum(), s.aged.sum(),
+                    TimeUnit.NANOSECONDS.toMicros(s.queueLatency.percentile(50)),
+                    TimeUnit.NANOSECONDS.toMicros(s.queueLatency.percentile(99)),
+                    TimeUnit.NANOSECONDS.toMicros(s.queueLatency.max())));
+        }
+        return sb.toString();
+    }
+
+    private void runWorker() {
+        try {
+            while (true) {
+                Entry entry;
+                long now;
+                lock.lock();
+                try {
+                    while (queued == 0 && !shutdown) {
+                        notEmpty.await();
+                    }
+                    if (queued == 0) {
+                        return;
+                    }
+                    now = System.nanoTime();
+                    entry = poll(now);
+                    queued--;
+                } finally {
+                    lock.unlock();
+                }
+                ClassStats s = stats[entry.priority.ordinal()];
+                s.queueLatency.record(now - entry.enqueuedAt);
+                try {
+                    entry.task.run();
+                } catch (RuntimeException e) {
+                    // 一个任务失败不影响工作线程继续执行其他任务；Error（OutOfMemoryError、StackOverflowError……）不在这里吞掉，
+                    // 让这个工作线程结束，交给线程的 UncaughtExceptionHandler
+                    e.printStackTrace();
+                } finally {
+                    s.completed.increment();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.lock();
+            try {
+                if (--liveWorkers == 0) {
+                    terminated.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 平滑加权轮询 + 老化，调用时持有锁并且至少有一个队列非空。
+     */
+    private Entry poll(long now) {
+        long total = 0;
+        int best = -1;
+        boolean bestAged = false;
+        for (int i = 0; i < queues.length; i++) {
+            Entry head = queues[i].peek();
+            if (head == null) {
+                continue;
+            }
+            long weight = weights[i];
+            boolean aged = false;
+            if (agingNanos > 0) {
+                long periods = (now - head.enqueuedAt) / agingNanos;
+                if (periods > 0) {
+                    weight = Math.min(maxWeight, weight * (1 + Math.min(periods, maxWeight)));
+                    aged = weight > weights[i];
+                }
+            }
+            current[i] += weight;
+            total += weight;
+            if (best < 0 || current[i] > current[best]) {
+                best = i;
+                bestAged = aged;
+            }
+        }
+        current[best] -= total;
+        // 队列变空之后清零，避免一个长期为空的队列积累的值在它重新有任务时造成连续调度
+        Entry entry = queues[best].poll();
+        if (queues[best].isEmpty()) {
+            current[best] = 0;
+        }
+        if (bestAged) {
+            stats[best].aged.increment();
+        }
+        return entry;
+    }
+
+    private static final class Entry {
+        final Runnable task;
+        final Priority priority;
+        final long enqueuedAt;
+
+        Entry(Runnable task, Priority priority, long enqueuedAt) {
+            this.task = task;
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private static final class ClassStats {
+        final LongAdder submitted = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder aged = new LongAdder();
+        final Log2Histogram queueLatency = new Log2Histogram();
+    }
+}
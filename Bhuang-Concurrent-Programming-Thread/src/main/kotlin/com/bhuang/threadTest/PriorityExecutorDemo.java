@@ -0,0 +1,99 @@
+package com.bhuang.threadTest;
+
+import com.bhuang.profiler.Log2Histogram;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 交互式请求每 2ms 到来一个（执行 200us），运行 1 秒之后突然提交 3000 个批量任务（每个执行 1ms），
+ * 对比先进先出的固定线程池和 PriorityExecutor 中交互式请求的排队时间。
+ *
+ * 先进先出时，批量任务之后到来的交互式请求要等整批任务执行完，p99 随批量任务的数量线性增长；
+ * PriorityExecutor 中交互式请求最多等待正在执行的任务和一个被轮询选中的批量任务。
+ */
+public class PriorityExecutorDemo {
+
+    private static final int THREADS = 2;
+    private static final int FLOOD = 3000;
+
+    interface Submitter {
+        void submit(Runnable task, PriorityExecutor.Priority priority);
+    }
+
+    /**
+     * 模拟任务的执行时间。用 park 而不是空转：空转会和提交请求的线程争抢 CPU，
+     * 请求按时提交不了，测到的排队时间反而偏小（coordinated omission）。
+     */
+    static void work(long micros) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    /**
+     * @return 交互式请求的排队时间分布
+     */
+    static Log2Histogram run(Submitter submitter) {
+        Log2Histogram interactive = new Log2Histogram();
+        long start = System.nanoTime();
+        boolean flooded = false;
+        // 持续 3 秒：批量任务总共需要 3000 * 1ms / 2 个线程 = 1.5 秒
+        while (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3)) {
+            if (!flooded && System.nanoTime() - start > TimeUnit.SECONDS.toNanos(1)) {
+                for (int i = 0; i < FLOOD; i++) {
+                    submitter.submit(() -> work(1000), PriorityExecutor.Priority.BATCH);
+                }
+                flooded = true;
+            }
+            long submitted = System.nanoTime();
+            submitter.submit(() -> {
+                interactive.record(System.nanoTime() - submitted);
+                work(200);
+            }, PriorityExecutor.Priority.INTERACTIVE);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+        }
+        return interactive;
+    }
+
+    static void print(String name, Log2Histogram histogram) {
+        System.out.printf("%-18s interactive queue latency p50=%6dus p99=%6dus max=%6dus (n=%d)%n", name,
+                TimeUnit.NANOSECONDS.toMicros(histogram.percentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(histogram.percentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(histogram.max()), histogram.count());
+    }
+
+    /**
+     * 单线程、交互式任务一直排满：不老化时批量任务按 1/9 的份额执行，交互式任务积压越多，批量任务等得越久；
+     * 老化之后批量任务的有效权重逐步升到与交互式相同，排队时间有上界。
+     */
+    static void saturated(long agingMillis) throws InterruptedException {
+        PriorityExecutor executor = new PriorityExecutor("saturated", 1, agingMillis, TimeUnit.MILLISECONDS, 8, 4, 1);
+        for (int i = 0; i < 2000; i++) {
+            executor.execute(() -> work(500), PriorityExecutor.Priority.INTERACTIVE);
+            if (i % 20 == 0) {
+                executor.execute(() -> work(500), PriorityExecutor.Priority.BATCH);
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        System.out.println("saturated, aging every " + agingMillis + "ms" + (agingMillis == 0 ? " (disabled)" : "") + ":");
+        System.out.print(executor.report());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ExecutorService fifo = Executors.newFixedThreadPool(THREADS);
+        print("FIFO", run((task, priority) -> fifo.execute(task)));
+        fifo.shutdown();
+        fifo.awaitTermination(10, TimeUnit.SECONDS);
+
+        PriorityExecutor priority = new PriorityExecutor("priority", THREADS);
+        print("PriorityExecutor", run(priority::execute));
+        priority.shutdown();
+        priority.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.print(priority.report());
+
+        saturated(0);
+        saturated(100);
+    }
+}
@@ -1,9 +1,12 @@
 package com.bhuang.threadlocal;
 
+import com.bhuang.threadpool.BoundedExecutor;
+import com.bhuang.threadpool.SaturationPolicies;
+
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 场景1，ThreadLocal 用作保存每个线程独享的对象，为每个线程都创建一个副本，这样每个线程都可以修改自己所拥有的副本,
@@ -120,11 +123,16 @@ public class ThreadLocalDemo {
         }
     }
 
+    // 有界队列：一次提交 1000 个任务时，队列满了提交方就等一等，而不是把任务全部堆在无界的 LinkedBlockingQueue 里
+    static ExecutorService newThreadPool() {
+        return BoundedExecutor.fixed("threadLocalDemo", 16, 100, SaturationPolicies.block(10, TimeUnit.SECONDS));
+    }
+
     static void testNoUseThreadLocal() {
         // 程序的运行结果是正确的，打印出 最大的时间 16:40 = 16 * 60 + 40 = 1000s
         // 但是这样做是没有必要的，因为这么多对象 (SimpleDateFormat)的创建是有开销的，
         // 并且在使用完之后的销毁同样是有开销的，而且这么多对象同时存在在内存中也是一种内存的浪费。
-        ExecutorService threadPool = Executors.newFixedThreadPool(16);
+        ExecutorService threadPool = newThreadPool();
         try {
             for (int i = 1; i <= 1000; i++) {
                 threadPool.submit(new Task(i));
@@ -137,7 +145,7 @@ public class ThreadLocalDemo {
     // 试一下创建一个对象：SimpleDateFormat
     // 测试这个运行结果就出现了线程不安全的问题：比如打印的数字有重复的问题
     static void testNoUseThreadLocalOneObject() {
-        ExecutorService threadPool = Executors.newFixedThreadPool(16);
+        ExecutorService threadPool = newThreadPool();
         try {
             for (int i = 1; i <= 100; i++) {
                 threadPool.submit(new Task2(i));
@@ -149,7 +157,7 @@ public class ThreadLocalDemo {
 
     // 在dateFormat 的时候加上锁，使只有一个线程去使用
     static void testNoUseThreadLocalOneObjectWithSync() {
-        ExecutorService threadPool = Executors.newFixedThreadPool(16);
+        ExecutorService threadPool = newThreadPool();
         try {
             for (int i = 1; i <= 100; i++) {
                 threadPool.submit(new Task3(i));
@@ -160,7 +168,7 @@ public class ThreadLocalDemo {
     }
 
     static void testThreadLocal() {
-        ExecutorService threadPool = Executors.newFixedThreadPool(16);
+        ExecutorService threadPool = newThreadPool();
         try {
             for (int i = 1; i <= 100; i++) {
                 threadPool.submit(new Task4(i));
@@ -0,0 +1,86 @@
+package com.bhuang.threadpool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定线程数、有界队列的线程池，队列满了之后交给一个 {@link SaturationPolicy}。
+ *
+ * Executors.newFixedThreadPool 用的是无界的 LinkedBlockingQueue：提交得比执行得快时，任务在队列里越积越多，
+ * 直到频繁 GC、最后 OutOfMemoryError。有界队列把内存限制在 queueCapacity 个任务以内，过载变成了提交方能感受到的背压：
+ * 被阻塞、在自己的线程上执行、被拒绝或者被丢弃，并且每一种都被计数。
+ *
+ * <pre>
+ * ExecutorService pool = BoundedExecutor.fixed("orders", 4, 1000, SaturationPolicies.block(100, TimeUnit.MILLISECONDS));
+ * </pre>
+ */
+public class BoundedExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+    private final int queueCapacity;
+    private final SaturationPolicy policy;
+
+    public BoundedExecutor(String name, int threads, int queueCapacity, SaturationPolicy policy) {
+        super(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory(name), policy);
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.policy = policy;
+    }
+
+    public static BoundedExecutor fixed(String name, int threads, int queueCapacity, SaturationPolicy policy) {
+        return new BoundedExecutor(name, threads, queueCapacity, policy);
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> new Thread(runnable, name + "-" + index.incrementAndGet());
+    }
+
+    @Override
+    protected void afterExecute(Runnable task, Throwable failure) {
+        super.afterExecute(task, failure);
+        policy.afterExecute(this);
+    }
+
+    /**
+     * 除了队列里的任务，还返回饱和策略自己保存的任务（比如备用存储里的）。
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        // 先让策略停止往队列里搬，再取队列里的任务，搬了一半的任务不会留在队列里
+        List<Runnable> stored = policy.drainPending();
+        List<Runnable> pending = new ArrayList<>(super.shutdownNow());
+        pending.addAll(stored);
+        return pending;
+    }
+
+    /**
+     * 终止时队列或者策略里如果还有任务（和 shutdown、shutdownNow 竞争时才搬回队列的），不会再有线程执行它们：
+     * 按拒绝计数，并取消其中的 Future。
+     */
+    @Override
+    protected void terminated() {
+        super.terminated();
+        List<Runnable> left = new ArrayList<>();
+        getQueue().drainTo(left);
+        left.addAll(policy.drainPending());
+        for (Runnable task : left) {
+            policy.discard(task);
+        }
+    }
+
+    public SaturationPolicy policy() {
+        return policy;
+    }
+
+    public String report() {
+        return String.format("%-12s threads=%d queue=%d/%d completed=%-7d %s", name, getPoolSize(), getQueue().size(),
+                queueCapacity, getCompletedTaskCount(), policy.report());
+    }
+}
@@ -0,0 +1,59 @@
+package com.bhuang.threadpool;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 队列满了之后溢出的任务放在这里，线程池的队列有空位时再搬回去。
+ *
+ * 备用存储同样必须有界，否则只是把无界队列换了个地方。内存里的实现就是第二个有界队列，比如把主队列设得很小以降低排队延迟，
+ * 突发流量时再用备用存储吸收；能序列化的命令也可以实现成写到磁盘上（比如 journal 包）的存储。
+ */
+public interface OverflowStore {
+
+    /**
+     * @return 存储也满了时返回 false
+     */
+    boolean offer(Runnable task);
+
+    /**
+     * @return 没有任务时返回 null
+     */
+    Runnable poll();
+
+    /**
+     * 取回一个还没有被搬走的任务，用于提交期间线程池被关闭的情况。
+     *
+     * @return 任务已经被搬走时返回 false
+     */
+    boolean remove(Runnable task);
+
+    int size();
+
+    /**
+     * 内存里的先进先出存储，最多保存 capacity 个任务。
+     */
+    static OverflowStore bounded(int capacity) {
+        ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(capacity);
+        return new OverflowStore() {
+            @Override
+            public boolean offer(Runnable task) {
+                return queue.offer(task);
+            }
+
+            @Override
+            public Runnable poll() {
+                return queue.poll();
+            }
+
+            @Override
+            public boolean remove(Runnable task) {
+                return queue.remove(task);
+            }
+
+            @Override
+            public int size() {
+                return queue.size();
+            }
+        };
+    }
+}
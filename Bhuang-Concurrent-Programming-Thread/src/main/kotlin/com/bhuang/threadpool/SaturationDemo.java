@@ -0,0 +1,71 @@
+package com.bhuang.threadpool;
+
+import com.bhuang.loadgen.LoadGenerator;
+import com.bhuang.loadgen.LoadResult;
+import com.bhuang.loadgen.Targets;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * 2 个线程、每个任务 1ms，容量大约每秒 1800 个；用开环负载生成器以每秒 4000 个的速率提交 2 秒。
+ *
+ * 对比 Executors.newFixedThreadPool 的无界队列，和容量 200 的有界队列加上各种饱和策略：
+ * 排队任务数的峰值、提交方落后计划多少（背压）、延迟，以及每种策略的计数。
+ */
+public class SaturationDemo {
+
+    static void work() {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    static void run(String name, ExecutorService pool, IntSupplier queued, String report) throws InterruptedException {
+        AtomicInteger peak = new AtomicInteger();
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak.accumulateAndGet(queued.getAsInt(), Math::max);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+        LoadResult result = new LoadGenerator(Targets.executor(pool, SaturationDemo::work), 2, TimeUnit.SECONDS)
+                .drainTimeout(500, TimeUnit.MILLISECONDS).run(4000);
+        sampler.interrupt();
+        System.out.printf("%-12s peak-queued=%-5d achieved=%4.0f/s lag=%6dms p99=%6dms incomplete=%-5d failed=%d%n",
+                name, peak.get(), result.achievedRate(), TimeUnit.NANOSECONDS.toMillis(result.maxLag()),
+                TimeUnit.NANOSECONDS.toMillis(result.latency().percentile(99)), result.incomplete(), result.failed());
+        if (pool instanceof BoundedExecutor) {
+            System.out.println("             " + ((BoundedExecutor) pool).policy().report());
+        } else if (report != null) {
+            System.out.println("             " + report);
+        }
+        pool.shutdownNow();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    static void bounded(SaturationPolicy policy, IntSupplier extra) throws InterruptedException {
+        BoundedExecutor pool = BoundedExecutor.fixed(policy.name(), 2, 200, policy);
+        run(policy.name(), pool, () -> pool.getQueue().size() + extra.getAsInt(), null);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ThreadPoolExecutor unbounded = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        run("unbounded", unbounded, () -> unbounded.getQueue().size(), "LinkedBlockingQueue, nothing is ever rejected");
+
+        bounded(SaturationPolicies.block(50, TimeUnit.MILLISECONDS), () -> 0);
+        bounded(SaturationPolicies.callerRuns(1), () -> 0);
+        AtomicInteger droppedOldest = new AtomicInteger();
+        bounded(SaturationPolicies.dropOldest(task -> droppedOldest.incrementAndGet()), () -> 0);
+        AtomicInteger droppedNewest = new AtomicInteger();
+        bounded(SaturationPolicies.dropNewest(task -> droppedNewest.incrementAndGet()), () -> 0);
+        System.out.printf("             onDrop callbacks: oldest=%d newest=%d%n", droppedOldest.get(), droppedNewest.get());
+        SaturationPolicies.Spill spill = SaturationPolicies.spill(OverflowStore.bounded(1000));
+        bounded(spill, spill::stored);
+    }
+}
@@ -0,0 +1,276 @@
+package com.bhuang.threadpool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 队列满了之后的几种做法：
+ *
+ * <pre>
+ * SaturationPolicies.block(100, TimeUnit.MILLISECONDS)      // 提交方最多等 100ms，等不到空位就拒绝
+ * SaturationPolicies.callerRuns(2)                           // 在提交方线程上执行，嵌套不超过 2 层
+ * SaturationPolicies.dropOldest(task -> log.warn(...))       // 丢掉队首最旧的任务，给新任务腾位置
+ * SaturationPolicies.dropNewest(task -> log.warn(...))       // 丢掉新提交的任务
+ * SaturationPolicies.spill(OverflowStore.bounded(10_000))    // 放到备用存储，队列有空位时再搬回去
+ * </pre>
+ *
+ * 被丢弃的任务如果是 Future（submit 提交的），会先被取消，等它结果的线程不会永远等下去；JDK 的 DiscardPolicy 不会这样做。
+ */
+public final class SaturationPolicies {
+
+    private SaturationPolicies() {
+    }
+
+    public static Block block(long timeout, TimeUnit unit) {
+        return new Block(timeout, unit);
+    }
+
+    public static CallerRuns callerRuns(int maxDepth) {
+        return new CallerRuns(maxDepth);
+    }
+
+    public static Drop dropOldest(Consumer<Runnable> onDrop) {
+        return new Drop("drop-oldest", true, onDrop);
+    }
+
+    public static Drop dropNewest(Consumer<Runnable> onDrop) {
+        return new Drop("drop-newest", false, onDrop);
+    }
+
+    public static Spill spill(OverflowStore store) {
+        return new Spill(store);
+    }
+
+    /**
+     * 阻塞提交方，直到队列有空位，最多等待 timeout；超时或者等待时被中断则拒绝。
+     * 这是最直接的背压：生产得比消费快时，生产者被迫慢下来，内存里最多只有队列容量个任务。
+     */
+    public static final class Block extends SaturationPolicy {
+
+        private final long timeoutNanos;
+        private final LongAdder blocked = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+
+        Block(long timeout, TimeUnit unit) {
+            super("block");
+            this.timeoutNanos = unit.toNanos(timeout);
+        }
+
+        @Override
+        protected void onSaturated(Runnable task, ThreadPoolExecutor executor) {
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            long start = System.nanoTime();
+            boolean accepted;
+            try {
+                accepted = queue.offer(task, timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject("interrupted while waiting for queue space");
+            } finally {
+                blocked.increment();
+                blockedNanos.add(System.nanoTime() - start);
+            }
+            if (!accepted) {
+                timedOut.increment();
+                throw reject("no queue space within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+            }
+            // 等待期间线程池被关闭：任务已经进了队列，但可能不会再有线程执行它
+            if (executor.isShutdown() && queue.remove(task)) {
+                throw reject("executor has been shut down");
+            }
+        }
+
+        public long timedOut() {
+            return timedOut.sum();
+        }
+
+        public long blockedNanos() {
+            return blockedNanos.sum();
+        }
+
+        @Override
+        protected String details() {
+            long n = blocked.sum();
+            return String.format("blocked=%d avg-wait=%dus timed-out=%d", n,
+                    n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(blockedNanos.sum() / n), timedOut.sum());
+        }
+    }
+
+    /**
+     * 在提交方线程上直接执行任务：提交方在执行期间不能再提交，自然慢了下来。
+     *
+     * 工作线程里提交的任务也会在工作线程上执行，执行的任务里再提交又会嵌套一层，
+     * 所以限制每个线程上嵌套执行的层数，超过 maxDepth 时拒绝，避免调用栈无限加深。
+     */
+    public static final class CallerRuns extends SaturationPolicy {
+
+        private final int maxDepth;
+        private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+        private final LongAdder ranInCaller = new LongAdder();
+        private final LongAdder tooDeep = new LongAdder();
+
+        CallerRuns(int maxDepth) {
+            super("caller-runs");
+            if (maxDepth < 1) {
+                throw new IllegalArgumentException("maxDepth must be positive: " + maxDepth);
+            }
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        protected void onSaturated(Runnable task, ThreadPoolExecutor executor) {
+            int[] current = depth.get();
+            if (current[0] >= maxDepth) {
+                tooDeep.increment();
+                throw reject("caller-runs depth " + maxDepth + " exceeded");
+            }
+            current[0]++;
+            ranInCaller.increment();
+            try {
+                task.run();
+            } finally {
+                current[0]--;
+            }
+        }
+
+        public long ranInCaller() {
+            return ranInCaller.sum();
+        }
+
+        @Override
+        protected String details() {
+            return String.format("ran-in-caller=%d too-deep=%d", ranInCaller.sum(), tooDeep.sum());
+        }
+    }
+
+    /**
+     * 丢弃一个任务：oldest 为 true 时丢掉队首等得最久的任务，再把新任务放进队列（适合只有最新数据有意义的场景，比如行情、状态刷新）；
+     * 否则丢掉新提交的任务。被丢弃的任务交给 onDrop，在提交方线程上调用。
+     */
+    public static final class Drop extends SaturationPolicy {
+
+        private final boolean oldest;
+        private final Consumer<Runnable> onDrop;
+
+        Drop(String name, boolean oldest, Consumer<Runnable> onDrop) {
+            super(name);
+            this.oldest = oldest;
+            this.onDrop = onDrop;
+        }
+
+        @Override
+        protected void onSaturated(Runnable task, ThreadPoolExecutor executor) {
+            if (!oldest) {
+                drop(task);
+                return;
+            }
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            while (!queue.offer(task)) {
+                Runnable head = queue.poll();
+                if (head != null) {
+                    drop(head);
+                }
+                if (executor.isShutdown()) {
+                    throw reject("executor has been shut down");
+                }
+            }
+        }
+
+        private void drop(Runnable task) {
+            discard(task);
+            onDrop.accept(task);
+        }
+
+        @Override
+        protected String details() {
+            return "dropped=" + rejected();
+        }
+    }
+
+    /**
+     * 放到备用存储里，线程池每执行完一个任务，就把备用存储里的任务按先后顺序搬回有空位的队列。备用存储也满了则拒绝。
+     *
+     * shutdown 之后继续搬，备用存储里的任务和队列里的一样会被执行完；shutdownNow 时连同队列里的任务一起返回。
+     */
+    public static final class Spill extends SaturationPolicy {
+
+        private final OverflowStore store;
+        private final LongAdder spilled = new LongAdder();
+        private final LongAdder refilled = new LongAdder();
+        // shutdownNow 之后不再往队列里搬
+        private volatile boolean stopped;
+
+        Spill(OverflowStore store) {
+            super("spill");
+            this.store = store;
+        }
+
+        @Override
+        protected void onSaturated(Runnable task, ThreadPoolExecutor executor) {
+            if (!store.offer(task)) {
+                throw reject("overflow store is full (" + store.size() + ")");
+            }
+            spilled.increment();
+            // 放进备用存储之前，工作线程可能已经把队列清空、不会再有 afterExecute 来搬它了，这里再搬一次
+            refill(executor);
+            // 期间线程池被关闭：工作线程可能已经退出，任务留在备用存储或队列里不会再有人执行，能取回就拒绝
+            if (executor.isShutdown() && (store.remove(task) || executor.getQueue().remove(task))) {
+                throw reject("executor has been shut down");
+            }
+        }
+
+        @Override
+        void afterExecute(ThreadPoolExecutor executor) {
+            refill(executor);
+        }
+
+        private void refill(ThreadPoolExecutor executor) {
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            while (queue.remainingCapacity() > 0 && !stopped) {
+                Runnable task = store.poll();
+                if (task == null) {
+                    return;
+                }
+                if (!queue.offer(task)) {
+                    // 和提交方抢空位输了，放回备用存储的末尾，顺序会乱一点；备用存储也刚好满了就丢弃它。
+                    // 不能在当前线程上执行：这里可能是提交方，也可能是工作线程的 afterExecute，任务抛出的异常会从那里漏出去
+                    if (!store.offer(task)) {
+                        discard(task);
+                    }
+                    return;
+                }
+                refilled.increment();
+            }
+        }
+
+        @Override
+        List<Runnable> drainPending() {
+            stopped = true;
+            List<Runnable> pending = new ArrayList<>();
+            Runnable task;
+            while ((task = store.poll()) != null) {
+                pending.add(task);
+            }
+            return pending;
+        }
+
+        public long spilled() {
+            return spilled.sum();
+        }
+
+        public int stored() {
+            return store.size();
+        }
+
+        @Override
+        protected String details() {
+            return String.format("spilled=%d refilled=%d stored=%d", spilled.sum(), refilled.sum(), store.size());
+        }
+    }
+}
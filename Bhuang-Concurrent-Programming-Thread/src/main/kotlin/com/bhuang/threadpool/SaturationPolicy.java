@@ -0,0 +1,105 @@
+package com.bhuang.threadpool;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界队列满了之后怎么办。具体的策略见 {@link SaturationPolicies}。
+ *
+ * 就是 ThreadPoolExecutor 的 RejectedExecutionHandler，可以直接交给任何 ThreadPoolExecutor；
+ * 溢出到备用存储的策略还需要在任务完成后把备用存储里的任务搬回队列，要配合 {@link BoundedExecutor} 使用。
+ *
+ * 每个策略统计两个数：队列满的次数（saturated），以及最终没有执行、以 RejectedExecutionException 拒绝或者被丢弃的任务数（rejected）。
+ * 各个策略另外统计自己的结果，比如阻塞了多久、在调用方线程上执行了多少个。
+ */
+public abstract class SaturationPolicy implements RejectedExecutionHandler {
+
+    private final String name;
+    private final LongAdder saturated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    protected SaturationPolicy(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public final void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw reject("executor has been shut down");
+        }
+        saturated.increment();
+        onSaturated(task, executor);
+    }
+
+    /**
+     * 队列满了、线程数也到了上限时调用，在提交任务的线程上执行。
+     */
+    protected abstract void onSaturated(Runnable task, ThreadPoolExecutor executor);
+
+    /**
+     * 计入 rejected，返回要抛出的异常。
+     */
+    protected final RejectedExecutionException reject(String reason) {
+        rejected.increment();
+        return new RejectedExecutionException(name + ": " + reason);
+    }
+
+    /**
+     * 任务被丢弃时计入 rejected。
+     */
+    protected final void dropped() {
+        rejected.increment();
+    }
+
+    /**
+     * 丢弃一个不会再执行的任务：计入 rejected，是 Future 的话取消它，等结果的线程不会永远等下去。
+     */
+    final void discard(Runnable task) {
+        dropped();
+        if (task instanceof Future<?>) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    /**
+     * 一个任务执行完之后在工作线程上调用，这时队列可能有了空位。
+     */
+    void afterExecute(ThreadPoolExecutor executor) {
+    }
+
+    /**
+     * shutdownNow 或者线程池终止时取出策略自己保存的、还没有执行的任务，之后不应该再把任务放回队列。
+     */
+    List<Runnable> drainPending() {
+        return List.of();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long saturated() {
+        return saturated.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 各个策略自己的统计，追加在 report 后面。
+     */
+    protected String details() {
+        return "";
+    }
+
+    public String report() {
+        String details = details();
+        return String.format("%-20s saturated=%-7d rejected=%-7d%s", name, saturated.sum(), rejected.sum(),
+                details.isEmpty() ? "" : " " + details);
+    }
+}
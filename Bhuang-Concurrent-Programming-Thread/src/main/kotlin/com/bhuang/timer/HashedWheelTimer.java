@@ -0,0 +1,399 @@
+package com.bhuang.timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮定时器，适合大量、精度要求不高、大多数会被取消的超时（请求超时、空闲检测等）。
+ *
+ * ScheduledThreadPoolExecutor 用二叉堆保存任务，调度和取消都是 O(log n)，被取消的任务默认还留在堆里直到到期。
+ * 时间轮把时间分成固定长度的 tick，轮子有 ticksPerWheel 个桶（双向链表）：
+ * 1. newTimeout() 只是把超时放进一个无锁队列，O(1)。
+ * 2. 工作线程每个 tick 把队列中的超时放进 (deadline / tick) % ticksPerWheel 号桶，
+ *    超过一圈的超时记录还要转几圈（remainingRounds），所以任意长的延迟也是 O(1) 插入。
+ * 3. cancel() 只是一次 CAS 并放进取消队列，工作线程在下一个 tick 把它从桶中摘除，O(1)，内存立即释放。
+ * 4. 每个 tick 只处理当前桶：到期的超时交给 taskExecutor 执行，其余的 remainingRounds 减一。
+ *
+ * 精度是一个 tick：超时会在 deadline 之后的第一个 tick 边界被触发。
+ * 每个 tick 要遍历当前桶中的所有超时（包括还要再转几圈的），延迟跨度远大于一圈时应该增大 ticksPerWheel。
+ *
+ * 到期的任务默认在工作线程上执行，任务必须很短（比如完成一个 future）；耗时的任务应该传入线程池作为 taskExecutor，
+ * 否则会推迟后面所有超时的触发。
+ */
+public class HashedWheelTimer implements AutoCloseable {
+
+    // 每个 tick 最多从队列中转移的超时数量，避免大量调度时工作线程一直在转移而不处理到期的超时
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+    // parkNanos 在 Linux 上的精度大约是几十微秒，更短的 tick 没有意义
+    private static final long MIN_TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+    private final long maxPendingTimeouts;
+
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean stopped;
+    private volatile List<Timeout> unprocessed;
+
+    // 只由工作线程访问
+    private long tick;
+
+    /**
+     * tick 为 10ms、一圈 512 个桶（约 5 秒一圈），到期任务在工作线程上执行。
+     */
+    public HashedWheelTimer(String name) {
+        this(name, 10, TimeUnit.MILLISECONDS, 512, Runnable::run, 0);
+    }
+
+    /**
+     * @param ticksPerWheel      桶的数量，向上取整为 2 的幂
+     * @param taskExecutor       执行到期任务的执行器
+     * @param maxPendingTimeouts 未到期超时的数量上限，0 表示不限制
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel,
+                            Executor taskExecutor, long maxPendingTimeouts) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("invalid tickDuration or ticksPerWheel");
+        }
+        this.tickNanos = Math.max(unit.toNanos(tickDuration), MIN_TICK_NANOS);
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.taskExecutor = taskExecutor;
+        this.maxPendingTimeouts = maxPendingTimeouts;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::runWorker, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 在 delay 之后执行 task，O(1)。
+     *
+     * @throws RejectedExecutionException 定时器已经停止，或者未到期的超时超过了上限
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        if (stopped) {
+            throw new RejectedExecutionException("timer is stopped");
+        }
+        long count = pending.incrementAndGet();
+        if (maxPendingTimeouts > 0 && count > maxPendingTimeouts) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("pending timeouts (" + count + ") exceed " + maxPendingTimeouts);
+        }
+        long delayNanos = Math.max(0, unit.toNanos(delay));
+        long deadline = System.nanoTime() - startTime + delayNanos;
+        // 溢出保护：非常长的延迟
+        if (delayNanos > 0 && deadline < 0) {
+            deadline = Long.MAX_VALUE;
+        }
+        Timeout timeout = new Timeout(this, task, deadline);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 与 {@link CompletableFuture#orTimeout} 相同，但由时间轮计时：future 在 delay 之内没有完成则以 TimeoutException 结束。
+     * future 先完成时取消定时，被取消的定时在下一个 tick 就被释放。
+     *
+     * 超时在 taskExecutor 上完成 future，future 的依赖阶段也在那里执行，依赖阶段耗时较长时应该使用 thenXxxAsync。
+     */
+    public <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future, long delay, TimeUnit unit) {
+        if (!future.isDone()) {
+            Timeout timeout = newTimeout(() -> future.completeExceptionally(
+                    new TimeoutException("timed out after " + unit.toMillis(delay) + " ms")), delay, unit);
+            future.whenComplete((value, error) -> timeout.cancel());
+        }
+        return future;
+    }
+
+    /**
+     * 与 {@link CompletableFuture#completeOnTimeout} 相同，但由时间轮计时。
+     */
+    public <T> CompletableFuture<T> completeOnTimeout(CompletableFuture<T> future, T value, long delay, TimeUnit unit) {
+        if (!future.isDone()) {
+            Timeout timeout = newTimeout(() -> future.complete(value), delay, unit);
+            future.whenComplete((v, error) -> timeout.cancel());
+        }
+        return future;
+    }
+
+    /**
+     * @return 已经调度、还没有到期也没有被取消的超时数量
+     */
+    public long pendingTimeouts() {
+        return pending.get();
+    }
+
+    /**
+     * 停止定时器，等待工作线程退出。
+     *
+     * @return 没有到期也没有被取消的超时，它们不会再被执行
+     */
+    public List<Timeout> stop() throws InterruptedException {
+        if (Thread.currentThread() == worker) {
+            throw new IllegalStateException("stop() cannot be called from a timer task");
+        }
+        stopped = true;
+        LockSupport.unpark(worker);
+        worker.join();
+        return unprocessed;
+    }
+
+    /**
+     * 与 stop() 相同，但不返回未执行的超时。等待工作线程退出时被中断的话，恢复中断标志后返回，工作线程仍然会自己退出。
+     */
+    @Override
+    public void close() {
+        try {
+            stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWorker() {
+        while (!stopped) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            processCancelled();
+            transferScheduled();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+        List<Timeout> remaining = new ArrayList<>();
+        for (Bucket bucket : wheel) {
+            bucket.drainTo(remaining);
+        }
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state == Timeout.INIT) {
+                remaining.add(timeout);
+            }
+        }
+        processCancelled();
+        unprocessed = Collections.unmodifiableList(remaining);
+    }
+
+    /**
+     * @return 当前 tick 结束时相对于 startTime 的时间；定时器停止时返回 -1
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleep = deadline - current;
+            if (sleep <= 0) {
+                return current;
+            }
+            LockSupport.parkNanos(this, sleep);
+            if (stopped) {
+                return -1;
+            }
+        }
+    }
+
+    private void transferScheduled() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state != Timeout.INIT) {
+                // 进入桶之前就被取消了
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // 已经过期的超时放进当前桶，本 tick 就会触发
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void processCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void expire(Timeout timeout) {
+        if (!Timeout.STATE.compareAndSet(timeout, Timeout.INIT, Timeout.EXPIRED)) {
+            return;
+        }
+        pending.decrementAndGet();
+        try {
+            taskExecutor.execute(timeout.task);
+        } catch (Throwable t) {
+            // 一个任务失败（或被拒绝）不能让工作线程退出，否则所有超时都不会再触发
+            System.err.println("timer task failed: " + t);
+        }
+    }
+
+    /**
+     * 一次调度的句柄。
+     */
+    public static final class Timeout {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        // 相对于 timer.startTime 的纳秒数
+        private final long deadline;
+        private volatile int state;
+
+        // 以下字段只由工作线程访问
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public Runnable task() {
+            return task;
+        }
+
+        /**
+         * 取消超时，O(1)。已经到期或已经取消时返回 false。
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+                return false;
+            }
+            timer.pending.decrementAndGet();
+            // 由工作线程从桶中摘除，桶不需要加锁
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        @Override
+        public String toString() {
+            long remaining = deadline - (System.nanoTime() - timer.startTime);
+            return "Timeout{" + (state == INIT ? "remaining=" + TimeUnit.NANOSECONDS.toMillis(remaining) + "ms"
+                    : state == CANCELLED ? "cancelled" : "expired") + ", task=" + task + "}";
+        }
+    }
+
+    /**
+     * 一个桶：超时组成的双向链表，只由工作线程访问。
+     */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline) {
+                        expire(timeout);
+                    } else {
+                        // 不应该发生：放进桶时的计算保证了 remainingRounds 为 0 时 deadline 在当前 tick 之内
+                        throw new IllegalStateException("timeout deadline " + timeout.deadline + " > " + deadline);
+                    }
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void expire(Timeout timeout) {
+            HashedWheelTimer.this.expire(timeout);
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void drainTo(List<Timeout> remaining) {
+            Timeout timeout;
+            while ((timeout = head) != null) {
+                remove(timeout);
+                if (timeout.state == Timeout.INIT) {
+                    remaining.add(timeout);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.bhuang.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 1. 调度 100 万个 30 秒的超时并取消其中 99%（典型的请求超时：绝大多数请求按时完成），
+ *    对比时间轮与 ScheduledThreadPoolExecutor 的耗时和剩余的堆内存。
+ * 2. 1000 个 100ms 超时的触发延迟（时间轮的精度是一个 tick）。
+ * 3. 用时间轮实现 CompletableFuture 超时。
+ */
+public class TimerBenchmark {
+
+    private static final int TIMEOUTS = 1_000_000;
+
+    interface Scheduler {
+        Runnable schedule(Runnable task, long delay, TimeUnit unit);
+
+        void shutdown() throws InterruptedException;
+    }
+
+    static Scheduler wheel() {
+        HashedWheelTimer timer = new HashedWheelTimer("wheel-timer");
+        return new Scheduler() {
+            @Override
+            public Runnable schedule(Runnable task, long delay, TimeUnit unit) {
+                HashedWheelTimer.Timeout timeout = timer.newTimeout(task, delay, unit);
+                return timeout::cancel;
+            }
+
+            @Override
+            public void shutdown() throws InterruptedException {
+                timer.stop();
+            }
+        };
+    }
+
+    static Scheduler scheduledExecutor(boolean removeOnCancel) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(removeOnCancel);
+        return new Scheduler() {
+            @Override
+            public Runnable schedule(Runnable task, long delay, TimeUnit unit) {
+                ScheduledFuture<?> future = executor.schedule(task, delay, unit);
+                return () -> future.cancel(false);
+            }
+
+            @Override
+            public void shutdown() {
+                executor.shutdownNow();
+            }
+        };
+    }
+
+    static void scheduleAndCancel(String name, Scheduler scheduler) throws InterruptedException {
+        Runnable noop = () -> {
+        };
+        long before = usedHeap();
+        long start = System.nanoTime();
+        List<Runnable> cancels = new ArrayList<>(TIMEOUTS);
+        for (int i = 0; i < TIMEOUTS; i++) {
+            cancels.add(scheduler.schedule(noop, 30, TimeUnit.SECONDS));
+        }
+        long scheduled = System.nanoTime();
+        for (int i = 0; i < TIMEOUTS; i++) {
+            if (i % 100 != 0) {
+                cancels.get(i).run();
+            }
+        }
+        long end = System.nanoTime();
+        cancels = null;
+        // 时间轮在下一个 tick 才把被取消的超时从桶中摘除
+        Thread.sleep(100);
+        long retained = usedHeap() - before;
+        System.out.printf("%-34s schedule %4d ns/op, cancel %4d ns/op, retained heap %4d MB%n", name,
+                (scheduled - start) / TIMEOUTS, (end - scheduled) / (TIMEOUTS - TIMEOUTS / 100),
+                retained / (1024 * 1024));
+        scheduler.shutdown();
+    }
+
+    static void accuracy(String name, Scheduler scheduler) throws InterruptedException {
+        int count = 1000;
+        CountDownLatch done = new CountDownLatch(count);
+        AtomicLong totalLateness = new AtomicLong();
+        AtomicLong maxLateness = new AtomicLong();
+        for (int i = 0; i < count; i++) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            scheduler.schedule(() -> {
+                long late = System.nanoTime() - deadline;
+                totalLateness.addAndGet(late);
+                maxLateness.accumulateAndGet(late, Math::max);
+                done.countDown();
+            }, 100, TimeUnit.MILLISECONDS);
+        }
+        done.await();
+        System.out.printf("%-34s lateness avg %5d us, max %5d us%n", name,
+                TimeUnit.NANOSECONDS.toMicros(totalLateness.get() / count),
+                TimeUnit.NANOSECONDS.toMicros(maxLateness.get()));
+        scheduler.shutdown();
+    }
+
+    static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static void completableFutureTimeout() throws InterruptedException {
+        try (HashedWheelTimer timer = new HashedWheelTimer("cf-timer")) {
+            CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            });
+            try {
+                timer.orTimeout(slow, 200, TimeUnit.MILLISECONDS).get();
+            } catch (ExecutionException e) {
+                System.out.println("orTimeout: " + (e.getCause() instanceof TimeoutException) + " " + e.getCause().getMessage());
+            }
+            CompletableFuture<String> fallback = timer.completeOnTimeout(new CompletableFuture<>(), "default", 50, TimeUnit.MILLISECONDS);
+            System.out.println("completeOnTimeout: " + fallback.join());
+            CompletableFuture<String> fast = timer.orTimeout(CompletableFuture.completedFuture("fast"), 200, TimeUnit.MILLISECONDS);
+            System.out.println("already completed: " + fast.join() + ", pending timeouts: " + timer.pendingTimeouts());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // 预热
+        scheduleAndCancel("warm-up", wheel());
+        scheduleAndCancel("warm-up", scheduledExecutor(true));
+
+        scheduleAndCancel("HashedWheelTimer", wheel());
+        scheduleAndCancel("STPE (removeOnCancel=false)", scheduledExecutor(false));
+        scheduleAndCancel("STPE (removeOnCancel=true)", scheduledExecutor(true));
+
+        accuracy("HashedWheelTimer (10ms tick)", wheel());
+        accuracy("ScheduledThreadPoolExecutor", scheduledExecutor(false));
+
+        completableFutureTimeout();
+    }
+}
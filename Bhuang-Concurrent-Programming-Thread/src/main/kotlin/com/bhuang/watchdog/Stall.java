@@ -0,0 +1,92 @@
+package com.bhuang.watchdog;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ThreadInfo;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 看门狗发现的一次停滞：是什么、在哪个执行器或队列上、持续了多久，以及相关线程当时的调用栈。
+ */
+public final class Stall {
+
+    public enum Kind {
+        /** 一个任务执行超过了阈值 */
+        TASK,
+        /** 一个线程在队列上等待超过了阈值 */
+        WAIT,
+        /** 执行器有任务在排队，完成数却超过阈值没有变化 */
+        NO_PROGRESS
+    }
+
+    private final Kind kind;
+    private final String name;
+    private final long nanos;
+    private final String detail;
+    private final List<ThreadInfo> threads;
+    private final boolean interrupted;
+
+    Stall(Kind kind, String name, long nanos, String detail, List<ThreadInfo> threads, boolean interrupted) {
+        this.kind = kind;
+        this.name = name;
+        this.nanos = nanos;
+        this.detail = detail;
+        this.threads = threads;
+        this.interrupted = interrupted;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * 执行器的名字，或者等待的描述（比如 "BlockingQueue.take (empty)"）。
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * 任务已经执行、线程已经等待，或者执行器没有前进的时间。
+     */
+    public long duration(TimeUnit unit) {
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 相关线程在发现停滞时的状态和完整调用栈；没有线程在执行这个执行器的任务时为空。
+     */
+    public List<ThreadInfo> threads() {
+        return threads;
+    }
+
+    /**
+     * 看门狗是否会中断相关线程：回调返回之后中断。
+     */
+    public boolean interrupted() {
+        return interrupted;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[watchdog] %s %s for %dms%s%s%n", kind, name, TimeUnit.NANOSECONDS.toMillis(nanos),
+                detail.isEmpty() ? "" : " (" + detail + ")", interrupted ? ", interrupted" : ""));
+        for (ThreadInfo info : threads) {
+            // ThreadInfo.toString() 只输出前 8 帧，这里输出完整的调用栈
+            sb.append(String.format("  \"%s\" %s", info.getThreadName(), info.getThreadState()));
+            LockInfo lock = info.getLockInfo();
+            if (lock != null) {
+                sb.append(" on ").append(lock);
+                if (info.getLockOwnerName() != null) {
+                    sb.append(" owned by \"").append(info.getLockOwnerName()).append('"');
+                }
+            }
+            sb.append(System.lineSeparator());
+            for (StackTraceElement frame : info.getStackTrace()) {
+                sb.append("      at ").append(frame).append(System.lineSeparator());
+            }
+        }
+        return sb.toString();
+    }
+}
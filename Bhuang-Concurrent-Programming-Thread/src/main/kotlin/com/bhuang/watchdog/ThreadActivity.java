@@ -0,0 +1,172 @@
+package com.bhuang.watchdog;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个线程一个槽位，记录这个线程正在执行哪个执行器的任务、正在哪个队列上等待、分别从什么时候开始。
+ * 被监视的线程只写自己的槽位，{@link Watchdog} 定期读所有槽位，判断有没有执行太久的任务、等待太久的线程。
+ *
+ * 队列只在真正阻塞时调用，和 QueueStallEvent 放在一起：
+ *
+ * <pre>
+ * if (stall == null) {
+ *     stall = QueueStallEvent.begin("BlockingQueue", QueueStallEvent.FULL, capacity);
+ *     ThreadActivity.beginWait("BlockingQueue.give (full)");
+ * }
+ * ...
+ * finally {
+ *     if (stall != null) {
+ *         ThreadActivity.endWait();
+ *     }
+ * }
+ * </pre>
+ *
+ * 开销：第一次使用时注册槽位，之后每次开始/结束只是对自己槽位的两次 release 写，没有锁、没有分配、没有共享写。
+ * 读的一方（看门狗）晚几个采样周期才看到也没关系。
+ */
+public final class ThreadActivity {
+
+    /** 槽位空闲，没有任务或等待 */
+    static final long IDLE = Long.MIN_VALUE;
+
+    /** 每注册这么多个槽位清理一次已经结束的线程的槽位 */
+    private static final int SWEEP_INTERVAL = 64;
+
+    private static final ConcurrentLinkedQueue<Slot> SLOTS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger REGISTERED = new AtomicInteger();
+
+    private static final ThreadLocal<Slot> CURRENT = ThreadLocal.withInitial(() -> {
+        // 槽位引用着线程，不清理的话没有启动看门狗时（没有人调用 slots()），不断创建又结束的线程会一直留在这里。
+        // 注册时顺便清理，分摊到每次注册；最多留下 SWEEP_INTERVAL 个已经结束的线程
+        if (REGISTERED.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            SLOTS.removeIf(slot -> !slot.thread.isAlive());
+        }
+        Slot slot = new Slot(Thread.currentThread());
+        SLOTS.add(slot);
+        return slot;
+    });
+
+    private ThreadActivity() {
+    }
+
+    /**
+     * 当前线程开始等待。what 描述在等什么，比如 "BlockingQueue.take (empty)"。
+     */
+    public static void beginWait(String what) {
+        CURRENT.get().beginWait(what);
+    }
+
+    public static void endWait() {
+        CURRENT.get().endWait();
+    }
+
+    static Slot current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 遍历所有存活线程的槽位，顺便移除已经结束的线程的槽位。
+     */
+    static Iterable<Slot> slots() {
+        return () -> {
+            Iterator<Slot> it = SLOTS.iterator();
+            return new Iterator<>() {
+                private Slot next = advance();
+
+                private Slot advance() {
+                    while (it.hasNext()) {
+                        Slot slot = it.next();
+                        if (slot.thread.isAlive()) {
+                            return slot;
+                        }
+                        it.remove();
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Slot next() {
+                    Slot slot = next;
+                    next = advance();
+                    return slot;
+                }
+            };
+        };
+    }
+
+    static final class Slot {
+
+        private static final VarHandle TASK_SINCE;
+        private static final VarHandle WAIT_SINCE;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                TASK_SINCE = lookup.findVarHandle(Slot.class, "taskSince", long.class);
+                WAIT_SINCE = lookup.findVarHandle(Slot.class, "waitSince", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final Thread thread;
+        // 名字是普通字段：先写名字、再 release 写时间，看门狗 acquire 读时间之后再读名字，读到的名字至少和这个时间一样新。
+        // 时间也不声明为 volatile：volatile 写会带一次完整的内存屏障，这里每个任务要写两次，所以只通过 VarHandle 做 release 写、acquire 读。
+        // 初始值在构造时写入，槽位经由并发集合发布给看门狗，不需要额外的屏障
+        private String task;
+        private long taskSince = IDLE;
+        private String wait;
+        private long waitSince = IDLE;
+
+        Slot(Thread thread) {
+            this.thread = thread;
+        }
+
+        void beginTask(String executor) {
+            task = executor;
+            TASK_SINCE.setRelease(this, System.nanoTime());
+        }
+
+        /**
+         * 任务结束时恢复外层任务：执行器可能直接在调用线程上执行（比如 Runnable::run），任务可以嵌套。
+         */
+        void endTask(String outerTask, long outerSince) {
+            task = outerTask;
+            TASK_SINCE.setRelease(this, outerSince);
+        }
+
+        void beginWait(String what) {
+            wait = what;
+            WAIT_SINCE.setRelease(this, System.nanoTime());
+        }
+
+        void endWait() {
+            WAIT_SINCE.setRelease(this, IDLE);
+        }
+
+        String task() {
+            return task;
+        }
+
+        long taskSince() {
+            return (long) TASK_SINCE.getAcquire(this);
+        }
+
+        String waitingOn() {
+            return wait;
+        }
+
+        long waitSince() {
+            return (long) WAIT_SINCE.getAcquire(this);
+        }
+    }
+}
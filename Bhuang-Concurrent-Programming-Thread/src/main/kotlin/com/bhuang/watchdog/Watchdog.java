@@ -0,0 +1,261 @@
+package com.bhuang.watchdog;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * 看门狗：一个后台线程定期采样被监视的执行器和所有线程的 {@link ThreadActivity} 槽位，发现三种停滞：
+ *
+ * 1. 任务执行超过 taskThreshold（比如 InterruptedDemo.StopDuringSleep 的 sleep(1000000)）；
+ * 2. 线程在队列上等待超过 waitThreshold（比如没有生产者时 BlockingQueue 的消费者）；
+ * 3. 执行器有任务在排队，完成数却超过 progressThreshold 没有变化（所有线程都卡住了）。
+ *
+ * 发现停滞时把相关线程的完整调用栈交给 onStall（默认打印到标准错误），开启 interruptStuck 时还会中断这些线程。
+ * 同一次停滞只报告一次，任务结束、等待结束或者执行器重新前进之后才会再次报告。
+ *
+ * <pre>
+ * Watchdog watchdog = new Watchdog("app", 5, TimeUnit.SECONDS).interruptStuck(true).start();
+ * Executor orders = watchdog.watch("orders", Executors.newFixedThreadPool(4));
+ * </pre>
+ *
+ * 被监视的线程只在任务开始/结束、阻塞开始/结束时写自己的槽位；遍历槽位、获取调用栈的开销都在看门狗线程上，
+ * 而且只在采样时发生（采样间隔是最小阈值的 1/4，不小于 10ms）。
+ */
+public final class Watchdog implements AutoCloseable {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String name;
+    private volatile long taskThreshold;
+    private volatile long waitThreshold;
+    private volatile long progressThreshold;
+    private volatile boolean interruptStuck;
+    private volatile Consumer<Stall> onStall = stall -> System.err.print(stall);
+
+    private final CopyOnWriteArrayList<Watched> watched = new CopyOnWriteArrayList<>();
+    // 以下两个表只由看门狗线程访问：正在停滞、已经报告过的槽位，值是报告时的开始时间
+    private final Map<ThreadActivity.Slot, Long> reportedTasks = new HashMap<>();
+    private final Map<ThreadActivity.Slot, Long> reportedWaits = new HashMap<>();
+
+    private final AtomicLongArray stalls = new AtomicLongArray(Stall.Kind.values().length);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param threshold 三种停滞的默认阈值，可以分别用 taskThreshold/waitThreshold/progressThreshold 修改
+     */
+    public Watchdog(String name, long threshold, TimeUnit unit) {
+        this.name = name;
+        this.taskThreshold = positive(threshold, unit);
+        this.waitThreshold = taskThreshold;
+        this.progressThreshold = taskThreshold;
+        this.thread = new Thread(this::loop, "watchdog-" + name);
+        this.thread.setDaemon(true);
+    }
+
+    private static long positive(long threshold, TimeUnit unit) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        }
+        return unit.toNanos(threshold);
+    }
+
+    public Watchdog taskThreshold(long threshold, TimeUnit unit) {
+        this.taskThreshold = positive(threshold, unit);
+        return this;
+    }
+
+    public Watchdog waitThreshold(long threshold, TimeUnit unit) {
+        this.waitThreshold = positive(threshold, unit);
+        return this;
+    }
+
+    public Watchdog progressThreshold(long threshold, TimeUnit unit) {
+        this.progressThreshold = positive(threshold, unit);
+        return this;
+    }
+
+    /**
+     * 发现停滞时是否中断相关线程。只有响应中断的代码（sleep、await、take……）会因此结束，忙循环不会。
+     */
+    public Watchdog interruptStuck(boolean interrupt) {
+        this.interruptStuck = interrupt;
+        return this;
+    }
+
+    /**
+     * 发现停滞时的回调，在看门狗线程上执行，不应该阻塞。
+     */
+    public Watchdog onStall(Consumer<Stall> onStall) {
+        this.onStall = Objects.requireNonNull(onStall);
+        return this;
+    }
+
+    public Watchdog start() {
+        thread.start();
+        return this;
+    }
+
+    /**
+     * 包装 executor：监视它的任务执行时间和是否在前进。
+     */
+    public WatchedExecutor watch(String executor, Executor delegate) {
+        WatchedExecutor watchedExecutor = new WatchedExecutor(executor, delegate);
+        watched.add(new Watched(executor, watchedExecutor::queued, watchedExecutor::completed));
+        return watchedExecutor;
+    }
+
+    /**
+     * 只监视一个已有的线程池是否在前进，不包装它。用的是线程池自己的计数，没有额外开销，
+     * 但不知道哪些线程在执行它的任务，发现停滞时没有调用栈，也不会中断。
+     */
+    public void watch(String executor, ThreadPoolExecutor pool) {
+        watched.add(new Watched(executor, () -> pool.getQueue().size(), pool::getCompletedTaskCount));
+    }
+
+    public long stalls(Stall.Kind kind) {
+        return stalls.get(kind.ordinal());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    private void loop() {
+        while (running) {
+            long interval = Math.max(TimeUnit.MILLISECONDS.toNanos(10),
+                    Math.min(taskThreshold, Math.min(waitThreshold, progressThreshold)) / 4);
+            LockSupport.parkNanos(this, interval);
+            if (!running) {
+                return;
+            }
+            try {
+                check(System.nanoTime());
+            } catch (RuntimeException e) {
+                // 看门狗自己不能因为一次采样或者回调出错就停下来
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void check(long now) {
+        // 正在执行任务的线程和任务的开始时间，执行器不再前进时从中找出它的工作线程
+        Map<ThreadActivity.Slot, Long> busy = new LinkedHashMap<>();
+        for (ThreadActivity.Slot slot : ThreadActivity.slots()) {
+            long taskSince = slot.taskSince();
+            if (exceeded(slot, taskSince, now, taskThreshold, reportedTasks)) {
+                stalled(Stall.Kind.TASK, slot.task(), now - taskSince, "", Map.of(slot, taskSince));
+            }
+            long waitSince = slot.waitSince();
+            if (exceeded(slot, waitSince, now, waitThreshold, reportedWaits)) {
+                stalled(Stall.Kind.WAIT, slot.waitingOn(), now - waitSince, "", Map.of(slot, waitSince));
+            }
+            if (taskSince != ThreadActivity.IDLE) {
+                busy.put(slot, taskSince);
+            }
+        }
+        reportedTasks.keySet().removeIf(slot -> !slot.thread.isAlive());
+        reportedWaits.keySet().removeIf(slot -> !slot.thread.isAlive());
+
+        for (Watched w : watched) {
+            long completed = w.completed.getAsLong();
+            long queued = w.queued.getAsLong();
+            if (completed != w.lastCompleted || queued <= 0) {
+                w.lastCompleted = completed;
+                w.lastProgress = now;
+                w.reported = false;
+            } else if (!w.reported && now - w.lastProgress > progressThreshold) {
+                w.reported = true;
+                Map<ThreadActivity.Slot, Long> workers = new LinkedHashMap<>();
+                busy.forEach((slot, since) -> {
+                    if (w.name.equals(slot.task())) {
+                        workers.put(slot, since);
+                    }
+                });
+                stalled(Stall.Kind.NO_PROGRESS, w.name, now - w.lastProgress,
+                        "queued=" + queued + ", completed=" + completed, workers);
+            }
+        }
+    }
+
+    /**
+     * since 开始的任务或等待超过了阈值，并且还没有报告过。
+     */
+    private static boolean exceeded(ThreadActivity.Slot slot, long since, long now, long threshold,
+                                    Map<ThreadActivity.Slot, Long> reported) {
+        if (since == ThreadActivity.IDLE || now - since <= threshold) {
+            reported.remove(slot);
+            return false;
+        }
+        Long previous = reported.put(slot, since);
+        return previous == null || previous != since;
+    }
+
+    /**
+     * @param slots 停滞的线程的槽位，值是采样时读到的任务或等待的开始时间
+     */
+    private void stalled(Stall.Kind kind, String what, long nanos, String detail,
+                         Map<ThreadActivity.Slot, Long> slots) {
+        stalls.incrementAndGet(kind.ordinal());
+        // 先取调用栈再中断，调用栈才是停滞时的样子
+        List<ThreadInfo> infos = new ArrayList<>(slots.size());
+        for (ThreadActivity.Slot slot : slots.keySet()) {
+            ThreadInfo info = THREADS.getThreadInfo(slot.thread.getId(), Integer.MAX_VALUE);
+            if (info != null) {
+                infos.add(info);
+            }
+        }
+        boolean interrupt = interruptStuck && !slots.isEmpty();
+        try {
+            onStall.accept(new Stall(kind, what, nanos, detail, infos, interrupt));
+        } finally {
+            // 报告之后再中断：回调抛出异常也不影响中断。
+            // 采样之后线程可能已经结束了那个任务或等待、开始了下一个，只有开始时间没变（还是同一个任务或等待）才中断
+            if (interrupt) {
+                slots.forEach((slot, since) -> {
+                    long current = kind == Stall.Kind.WAIT ? slot.waitSince() : slot.taskSince();
+                    if (current == since) {
+                        slot.thread.interrupt();
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    private static final class Watched {
+        final String name;
+        final LongSupplier queued;
+        final LongSupplier completed;
+        // 以下字段只由看门狗线程访问
+        long lastCompleted = -1;
+        long lastProgress;
+        boolean reported;
+
+        Watched(String name, LongSupplier queued, LongSupplier completed) {
+            this.name = name;
+            this.queued = queued;
+            this.completed = completed;
+        }
+    }
+}
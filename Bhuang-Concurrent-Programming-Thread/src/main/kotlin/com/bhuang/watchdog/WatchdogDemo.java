@@ -0,0 +1,128 @@
+package com.bhuang.watchdog;
+
+import com.bhuang.BlockingQueueWithCondition;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 1. 卡住的任务：和 InterruptedDemo.StopDuringSleep 一样 sleep(1000000)，200ms 后被发现并中断。
+ * 2. 等待太久的线程：没有生产者，消费者永远阻塞在 BlockingQueueWithCondition.take() 上。
+ * 3. 不再前进的线程池：2 个线程都在等一个永远不会到来的信号，后面排队的 5 个任务一个都执行不了。
+ * 4. 开销：直接执行（Runnable::run）的空任务，包装前后每个任务的耗时。
+ */
+public class WatchdogDemo {
+
+    // InterruptedDemo.StopDuringSleep 的任务：一觉睡 1000 秒，被中断时设置中断标志后退出
+    static void sleepForever() {
+        try {
+            Thread.sleep(1000000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void stuckTask() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try (Watchdog watchdog = new Watchdog("demo", 200, TimeUnit.MILLISECONDS)
+                .interruptStuck(true).onStall(System.out::print).start()) {
+            Executor worker = watchdog.watch("worker", pool);
+            CountDownLatch done = new CountDownLatch(1);
+            long start = System.nanoTime();
+            worker.execute(() -> {
+                sleepForever();
+                done.countDown();
+            });
+            done.await();
+            System.out.printf("stuck task ended after %dms%n%n",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        pool.shutdown();
+    }
+
+    static void stuckConsumer() throws InterruptedException {
+        BlockingQueueWithCondition queue = new BlockingQueueWithCondition(10, false);
+        try (Watchdog watchdog = new Watchdog("demo", 200, TimeUnit.MILLISECONDS)
+                .interruptStuck(true).onStall(System.out::print).start()) {
+            long start = System.nanoTime();
+            Thread consumer = new Thread(() -> {
+                try {
+                    queue.take();
+                } catch (InterruptedException e) {
+                    System.out.println("consumer interrupted");
+                }
+            }, "consumer");
+            consumer.start();
+            consumer.join();
+            System.out.printf("blocked consumer ended after %dms, wait stalls=%d%n%n",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), watchdog.stalls(Stall.Kind.WAIT));
+        }
+    }
+
+    static void noProgress() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        // 单个任务的阈值很长，先触发的是“线程池不再前进”
+        try (Watchdog watchdog = new Watchdog("demo", 10, TimeUnit.SECONDS)
+                .progressThreshold(200, TimeUnit.MILLISECONDS)
+                .interruptStuck(true).onStall(System.out::print).start()) {
+            WatchedExecutor workers = watchdog.watch("workers", pool);
+            CountDownLatch never = new CountDownLatch(1);
+            AtomicInteger ran = new AtomicInteger();
+            long start = System.nanoTime();
+            for (int i = 0; i < 2; i++) {
+                workers.execute(() -> {
+                    try {
+                        never.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            CountDownLatch queued = new CountDownLatch(5);
+            for (int i = 0; i < 5; i++) {
+                workers.execute(() -> {
+                    ran.incrementAndGet();
+                    queued.countDown();
+                });
+            }
+            queued.await();
+            System.out.printf("queued tasks ran=%d after %dms, no-progress stalls=%d%n%n", ran.get(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), watchdog.stalls(Stall.Kind.NO_PROGRESS));
+        }
+        pool.shutdown();
+    }
+
+    static long nanosPerTask(Executor executor, int tasks) {
+        int[] counter = new int[1];
+        Runnable task = () -> counter[0]++;
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(task);
+        }
+        return (System.nanoTime() - start) / tasks;
+    }
+
+    static void overhead() {
+        try (Watchdog watchdog = new Watchdog("demo", 1, TimeUnit.SECONDS).start()) {
+            Executor direct = Runnable::run;
+            Executor watched = watchdog.watch("direct", direct);
+            int tasks = 10_000_000;
+            // 先各跑一轮预热
+            nanosPerTask(direct, tasks);
+            nanosPerTask(watched, tasks);
+            System.out.printf("direct %dns/task, watched %dns/task%n", nanosPerTask(direct, tasks),
+                    nanosPerTask(watched, tasks));
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        stuckTask();
+        stuckConsumer();
+        noProgress();
+        overhead();
+    }
+}
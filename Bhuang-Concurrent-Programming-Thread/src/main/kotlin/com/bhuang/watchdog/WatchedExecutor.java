@@ -0,0 +1,68 @@
+package com.bhuang.watchdog;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 被看门狗监视的执行器，由 {@link Watchdog#watch(String, Executor)} 创建，可以包装任意 Executor
+ * （ThreadPoolExecutor、SerialExecutor、PriorityExecutor、Bulkhead……）。
+ *
+ * 任务开始时在工作线程的槽位里记下执行器的名字和开始时间，结束时清除，看门狗据此发现执行太久的任务；
+ * 提交、开始、完成三个计数用来判断执行器是否还在前进：有任务在排队，完成数却很久没有变化。
+ */
+public final class WatchedExecutor implements Executor {
+
+    private final String name;
+    private final Executor delegate;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    WatchedExecutor(String name, Executor delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submitted.increment();
+        try {
+            delegate.execute(() -> {
+                started.increment();
+                ThreadActivity.Slot slot = ThreadActivity.current();
+                String outerTask = slot.task();
+                long outerSince = slot.taskSince();
+                slot.beginTask(name);
+                try {
+                    task.run();
+                } finally {
+                    slot.endTask(outerTask, outerSince);
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            submitted.decrement();
+            throw e;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Executor delegate() {
+        return delegate;
+    }
+
+    /**
+     * 已经提交、还没开始执行的任务数。
+     */
+    public long queued() {
+        return submitted.sum() - started.sum();
+    }
+
+    public long completed() {
+        return completed.sum();
+    }
+}
@@ -0,0 +1,145 @@
+package com.bhuang
+
+import com.bhuang.stress.Linearizability
+import com.bhuang.stress.Stress
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicIntegerArray
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+import kotlin.test.fail
+
+/**
+ * BlockingQueue 与 BlockingQueueWithCondition 在竞争下的正确性：不丢失、不重复、FIFO、线性一致、没有丢失唤醒。
+ */
+class QueueStressTest {
+
+    private interface StringQueue {
+        fun give(data: String)
+        fun take(): String
+    }
+
+    private fun queue(type: String, capacity: Int): StringQueue = when (type) {
+        "BlockingQueue" -> BlockingQueue(capacity, false).let { q ->
+            object : StringQueue {
+                override fun give(data: String) = q.give(data)
+                override fun take(): String = q.take()
+            }
+        }
+        "BlockingQueueWithCondition" -> BlockingQueueWithCondition(capacity, false).let { q ->
+            object : StringQueue {
+                override fun give(data: String) = q.give(data)
+                override fun take(): String = q.take()
+            }
+        }
+        else -> throw IllegalArgumentException(type)
+    }
+
+    /**
+     * 每个元素恰好被取出一次；同一个消费者看到的同一个生产者的元素是递增的（FIFO 的必要条件）。
+     */
+    @ParameterizedTest
+    @ValueSource(strings = ["BlockingQueue", "BlockingQueueWithCondition"])
+    fun `no lost or duplicated elements and per-producer order is preserved`(type: String) {
+        val producers = 4
+        val consumers = 4
+        val perProducer = 20_000 * Stress.scale
+        val capacity = 1 + Stress.random(0).nextInt(8)
+        val queue = queue(type, capacity)
+        val seen = AtomicIntegerArray(producers * perProducer)
+
+        val nanos = Stress.run("$type-mpmc", producers + consumers, 60, TimeUnit.SECONDS) { index ->
+            val random = Stress.random(index + 1)
+            if (index < producers) {
+                for (seq in 0 until perProducer) {
+                    queue.give("$index:$seq")
+                    Stress.jitter(random)
+                }
+            } else {
+                val last = IntArray(producers) { -1 }
+                repeat(producers * perProducer / consumers) {
+                    val item = queue.take()
+                    val producer = item.substringBefore(':').toInt()
+                    val seq = item.substringAfter(':').toInt()
+                    if (seq <= last[producer]) {
+                        throw AssertionError("FIFO violation: took $item after $producer:${last[producer]}")
+                    }
+                    last[producer] = seq
+                    seen.incrementAndGet(producer * perProducer + seq)
+                    Stress.jitter(random)
+                }
+            }
+        }
+        for (i in 0 until seen.length()) {
+            if (seen[i] != 1) {
+                fail("${i / perProducer}:${i % perProducer} was taken ${seen[i]} times (capacity=$capacity, seed=${Stress.seed})")
+            }
+        }
+        Stress.report("$type capacity=$capacity ${producers}P/${consumers}C", 2L * producers * perProducer, nanos)
+    }
+
+    /**
+     * 容量为 1、很多生产者和消费者：几乎每次操作都要等待和唤醒，唤醒丢失会让线程永远等下去，由 Stress.run 的超时发现。
+     */
+    @ParameterizedTest
+    @ValueSource(strings = ["BlockingQueue", "BlockingQueueWithCondition"])
+    fun `no lost wakeups with capacity one`(type: String) {
+        val threads = 16
+        val perThread = 5_000 * Stress.scale
+        val queue = queue(type, 1)
+        val nanos = Stress.run("$type-handoff", threads, 60, TimeUnit.SECONDS) { index ->
+            if (index % 2 == 0) {
+                repeat(perThread) { queue.give("$index:$it") }
+            } else {
+                repeat(perThread) { queue.take() }
+            }
+        }
+        Stress.report("$type capacity=1 8P/8C", threads.toLong() * perThread, nanos)
+    }
+
+    /**
+     * 大量随机的小历史，每一个都必须能在有界 FIFO 模型上找到合法的线性化顺序。
+     */
+    @ParameterizedTest
+    @ValueSource(strings = ["BlockingQueue", "BlockingQueueWithCondition"])
+    fun `random small histories are linearizable`(type: String) {
+        val random = Stress.random(100)
+        repeat(300 * Stress.scale) { round ->
+            val capacity = 1 + random.nextInt(2)
+            val producers = 1 + random.nextInt(3)
+            val consumers = 1 + random.nextInt(3)
+            // 只让生产者 give、消费者 take，并且总数相等，保证每个历史都能结束
+            val gives = IntArray(producers) { 1 + random.nextInt(4) }
+            val total = gives.sum()
+            val takes = IntArray(consumers) { total / consumers + if (it < total % consumers) 1 else 0 }
+            val queue = queue(type, capacity)
+            val history = ConcurrentLinkedQueue<Linearizability.Op>()
+
+            Stress.run("$type-history-$round", producers + consumers, 10, TimeUnit.SECONDS) { index ->
+                val jitter = Stress.random(round * 16 + index)
+                if (index < producers) {
+                    repeat(gives[index]) { i ->
+                        val value = "$index:$i"
+                        val invoke = System.nanoTime()
+                        queue.give(value)
+                        history.add(Linearizability.Op(index, Linearizability.Kind.GIVE, value, invoke, System.nanoTime()))
+                        Stress.jitter(jitter)
+                    }
+                } else {
+                    repeat(takes[index - producers]) {
+                        val invoke = System.nanoTime()
+                        val value = queue.take()
+                        history.add(Linearizability.Op(index, Linearizability.Kind.TAKE, value, invoke, System.nanoTime()))
+                        Stress.jitter(jitter)
+                    }
+                }
+            }
+            assertEquals(2 * total, history.size)
+            assertTrue(Linearizability.checkBoundedFifo(history.toList(), capacity),
+                    "history is not linearizable (capacity=$capacity, seed=${Stress.seed}):\n" +
+                            history.sortedBy { it.invoke }.joinToString("\n"))
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.bhuang.stress
+
+/**
+ * 有界 FIFO 队列的线性一致性检查（Wing & Gong 算法）。
+ *
+ * 每个操作记录调用时间和返回时间。历史是线性一致的，当且仅当存在一个全序：
+ * 1. 与实时顺序一致：a 返回早于 b 调用时，a 排在 b 前面；
+ * 2. 按这个顺序在顺序模型上执行，每个操作的结果都与实际观察到的一致。
+ *
+ * 阻塞的 give / take 在模型中只能在队列不满 / 不空时执行，它的线性化点落在阻塞结束之后。
+ * 搜索是指数级的，只用于几十个操作以内的小历史；已经访问过的（剩余操作集合，队列内容）状态会被剪枝。
+ */
+object Linearizability {
+
+    enum class Kind { GIVE, TAKE }
+
+    data class Op(val thread: Int, val kind: Kind, val value: String, val invoke: Long, val response: Long)
+
+    fun checkBoundedFifo(history: List<Op>, capacity: Int): Boolean {
+        require(history.size <= 63) { "history too long for exhaustive search: ${history.size}" }
+        val visited = HashSet<Pair<Long, List<String>>>()
+        return search(history, capacity, 0L, ArrayDeque(), visited)
+    }
+
+    private fun search(history: List<Op>, capacity: Int, done: Long, queue: ArrayDeque<String>,
+                       visited: MutableSet<Pair<Long, List<String>>>): Boolean {
+        if (done == (1L shl history.size) - 1) {
+            return true
+        }
+        if (!visited.add(done to queue.toList())) {
+            return false
+        }
+        // 剩余操作中最早的返回时间：调用时间晚于它的操作不能排在下一个
+        var minResponse = Long.MAX_VALUE
+        for (i in history.indices) {
+            if (done and (1L shl i) == 0L) {
+                minResponse = minOf(minResponse, history[i].response)
+            }
+        }
+        for (i in history.indices) {
+            if (done and (1L shl i) != 0L) {
+                continue
+            }
+            val op = history[i]
+            if (op.invoke > minResponse) {
+                continue
+            }
+            when (op.kind) {
+                Kind.GIVE -> if (queue.size < capacity) {
+                    queue.addLast(op.value)
+                    if (search(history, capacity, done or (1L shl i), queue, visited)) {
+                        return true
+                    }
+                    queue.removeLast()
+                }
+                Kind.TAKE -> if (queue.firstOrNull() == op.value) {
+                    queue.removeFirst()
+                    if (search(history, capacity, done or (1L shl i), queue, visited)) {
+                        return true
+                    }
+                    queue.addFirst(op.value)
+                }
+            }
+        }
+        return false
+    }
+}
@@ -0,0 +1,83 @@
+package com.bhuang.stress
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.random.Random
+
+/**
+ * 压力测试的公共部分：可复现的随机种子、同时起跑的线程、活性检查和吞吐量报告。
+ *
+ * - `-Dstress.seed=...` 复现一次失败（失败信息里会打印种子）
+ * - `-Dstress.scale=10` 把每个测试的操作数放大 10 倍，在多核机器上跑更长时间
+ */
+object Stress {
+
+    val seed: Long = System.getProperty("stress.seed")?.toLong() ?: System.nanoTime()
+    val scale: Int = System.getProperty("stress.scale")?.toInt() ?: 1
+
+    fun random(stream: Int): Random = Random(seed * 31 + stream)
+
+    /**
+     * 在两个操作之间随机停顿：大多数时候不停顿（制造竞争），偶尔自旋或让出 CPU（打乱交错顺序）。
+     */
+    fun jitter(random: Random) {
+        when (random.nextInt(16)) {
+            0 -> Thread.yield()
+            1 -> repeat(random.nextInt(100)) { Thread.onSpinWait() }
+        }
+    }
+
+    /**
+     * 启动 threads 个线程同时执行 body(线程编号)，等待它们全部结束。
+     *
+     * 超过 timeout 还没有结束的线程被视为活性失败（例如丢失唤醒之后永远等待），
+     * 失败信息包含它们的调用栈；任何线程抛出的异常都会让测试失败。
+     *
+     * @return 从起跑到全部结束的纳秒数
+     */
+    fun run(name: String, threads: Int, timeout: Long, unit: TimeUnit, body: (Int) -> Unit): Long {
+        val start = CountDownLatch(1)
+        val failure = AtomicReference<Throwable>()
+        val workers = ArrayList<Thread>(threads)
+        for (index in 0 until threads) {
+            workers += Thread({
+                start.await()
+                try {
+                    body(index)
+                } catch (e: Throwable) {
+                    // 第一个失败的线程中断其他线程：否则它们可能永远阻塞在队列上，真正的失败原因被超时掩盖
+                    if (failure.compareAndSet(null, e)) {
+                        workers.forEach { if (it !== Thread.currentThread()) it.interrupt() }
+                    }
+                }
+            }, "$name-$index").apply { isDaemon = true }
+        }
+        workers.forEach { it.start() }
+        val begin = System.nanoTime()
+        start.countDown()
+        val deadline = begin + unit.toNanos(timeout)
+        for (worker in workers) {
+            val remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())
+            if (remaining > 0) {
+                worker.join(remaining)
+            }
+        }
+        val elapsed = System.nanoTime() - begin
+        failure.get()?.let { throw AssertionError("$name failed, seed=$seed", it) }
+        val stuck = workers.filter { it.isAlive }
+        if (stuck.isNotEmpty()) {
+            val dump = stuck.joinToString("\n") { thread ->
+                "${thread.name} (${thread.state})\n" + thread.stackTrace.joinToString("\n") { "    at $it" }
+            }
+            stuck.forEach { it.interrupt() }
+            throw AssertionError("$name: ${stuck.size} thread(s) still running after $timeout $unit, seed=$seed\n$dump")
+        }
+        return elapsed
+    }
+
+    fun report(name: String, operations: Long, nanos: Long) {
+        println(String.format("[stress] %-48s %,12d ops in %5d ms = %,12.0f ops/s (seed=%d)", name, operations,
+                TimeUnit.NANOSECONDS.toMillis(nanos), operations * 1e9 / nanos, seed))
+    }
+}
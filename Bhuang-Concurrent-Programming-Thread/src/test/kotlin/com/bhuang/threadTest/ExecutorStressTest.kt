@@ -0,0 +1,114 @@
+package com.bhuang.threadTest
+
+import com.bhuang.stress.Stress
+import org.junit.jupiter.api.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicIntegerArray
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+/**
+ * SerialExecutor 与 PriorityExecutor 在并发提交下的正确性。
+ */
+class ExecutorStressTest {
+
+    /**
+     * 8 个线程同时提交，底层是 4 个线程的线程池：
+     * - 任何时刻最多只有一个任务在执行（串行）；
+     * - 同一个提交者的任务按提交顺序执行；
+     * - 任务之间有 happens-before：不加同步的计数器最终等于任务数；
+     * - 抛出异常的任务不会让后续任务停下来（所有任务在超时之前完成）。
+     */
+    @Test
+    fun `serial executor never overlaps and preserves submission order`() {
+        val submitters = 8
+        val perSubmitter = 20_000 * Stress.scale
+        val uncaught = AtomicInteger()
+        // 抛出异常的任务会终止线程池中的工作线程，线程池会补充新线程；这里只计数，不打印调用栈
+        val factory = ThreadFactory { r ->
+            Thread(r).apply { setUncaughtExceptionHandler { _, _ -> uncaught.incrementAndGet() } }
+        }
+        val pool = Executors.newFixedThreadPool(4, factory)
+        val serial = ExecutorDemo.SerialExecutor(pool)
+        val total = submitters * perSubmitter
+        val done = CountDownLatch(total)
+        val running = AtomicInteger()
+        val overlaps = AtomicInteger()
+        val orderViolations = AtomicInteger()
+        val next = IntArray(submitters)
+        val executed = AtomicIntegerArray(total)
+        var unsynchronizedCounter = 0
+
+        val nanos = Stress.run("serial-submit", submitters, 60, TimeUnit.SECONDS) { submitter ->
+            val random = Stress.random(submitter)
+            for (seq in 0 until perSubmitter) {
+                val fail = random.nextInt(97) == 0
+                serial.execute {
+                    try {
+                        if (running.incrementAndGet() != 1) {
+                            overlaps.incrementAndGet()
+                        }
+                        // next 和计数器都不是线程安全的：只有串行执行并且有 happens-before 时结果才正确
+                        if (next[submitter] != seq) {
+                            orderViolations.incrementAndGet()
+                        }
+                        next[submitter] = seq + 1
+                        unsynchronizedCounter++
+                        executed.incrementAndGet(submitter * perSubmitter + seq)
+                        running.decrementAndGet()
+                        if (fail) {
+                            throw IllegalStateException("task failure injected by the stress test")
+                        }
+                    } finally {
+                        done.countDown()
+                    }
+                }
+            }
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS), "${done.count} tasks never ran (seed=${Stress.seed})")
+        val elapsed = nanos
+        pool.shutdown()
+        pool.awaitTermination(10, TimeUnit.SECONDS)
+
+        assertEquals(0, overlaps.get(), "tasks overlapped")
+        assertEquals(0, orderViolations.get(), "tasks of one submitter ran out of order")
+        for (i in 0 until total) {
+            assertEquals(1, executed[i], "task $i ran ${executed[i]} times")
+        }
+        synchronized(serial) {
+            assertEquals(total, unsynchronizedCounter)
+        }
+        Stress.report("SerialExecutor ${submitters} submitters on 4 threads", total.toLong(), elapsed)
+    }
+
+    /**
+     * 并发提交不同等级的任务，然后 shutdown：每个任务恰好执行一次，awaitTermination 在所有任务执行完之后返回。
+     */
+    @Test
+    fun `priority executor runs every task exactly once and drains on shutdown`() {
+        val submitters = 6
+        val perSubmitter = 20_000 * Stress.scale
+        val total = submitters * perSubmitter
+        val executor = PriorityExecutor("stress", 3, 1, TimeUnit.MILLISECONDS, 8, 4, 1)
+        val executed = AtomicIntegerArray(total)
+        val priorities = PriorityExecutor.Priority.values()
+
+        val nanos = Stress.run("priority-submit", submitters, 60, TimeUnit.SECONDS) { submitter ->
+            val random = Stress.random(submitter)
+            for (seq in 0 until perSubmitter) {
+                val id = submitter * perSubmitter + seq
+                executor.execute({ executed.incrementAndGet(id) }, priorities[random.nextInt(priorities.size)])
+            }
+        }
+        executor.shutdown()
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS), "workers did not finish (seed=${Stress.seed})")
+        for (i in 0 until total) {
+            assertEquals(1, executed[i], "task $i ran ${executed[i]} times")
+        }
+        Stress.report("PriorityExecutor ${submitters} submitters on 3 threads", total.toLong(), nanos)
+    }
+}